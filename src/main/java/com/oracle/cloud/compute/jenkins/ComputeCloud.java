@@ -6,11 +6,19 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,14 +35,17 @@ import org.kohsuke.stapler.StaplerResponse;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientUnauthorizedException;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientUnavailableException;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudUser;
+import com.oracle.cloud.compute.jenkins.client.InstanceOrchestrationPoller;
 import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
+import com.oracle.cloud.compute.jenkins.ssh.SshConnectionHandoff;
 import com.oracle.cloud.compute.jenkins.ssh.SshConnector;
+import com.oracle.cloud.compute.jenkins.ssh.SshPortProber;
 import com.trilead.ssh2.Connection;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
-import hudson.model.Computer;
 import hudson.model.ComputerSet;
 import hudson.model.Descriptor;
 import hudson.model.Failure;
@@ -79,16 +90,65 @@ public class ComputeCloud extends AbstractCloudImpl {
      */
     public static final String ORCHESTRATION_NAME_PREFIX = "jenkins-";
 
+    /**
+     * The prefix to add to the names of orchestrations with the instances of
+     * several agents.
+     */
+    static final String BATCH_ORCHESTRATION_NAME_PREFIX = ORCHESTRATION_NAME_PREFIX + "batch-";
+
     /**
      * The prefix to add to the names of provisioned agents.
      */
     public static final String AGENT_NAME_PREFIX = "oci-compute-classic-";
 
-    /** Time to sleep while polling if an orchestration has started. */
-    private static final long POLL_SLEEP_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    /**
+     * The policy for polling SSH after an orchestration is ready.  Durations
+     * are not recorded, so polls back off from the minimum interval.
+     */
+    private static final PollingPolicy SSH_POLLING_POLICY = new PollingPolicy();
+
+    /**
+     * The delay returned by a provisioning step that waits for a callback to
+     * schedule the next step.
+     */
+    private static final long AWAIT_CALLBACK = -1;
 
     /** Time to recycle cloud resources, throw exception if timeout */
-    private static final long RECYCLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+    static final long RECYCLE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * The number of threads used to advance the provisioning state machines
+     * of each cloud.
+     */
+    static final int PROVISIONING_THREADS = Integer.getInteger(ComputeCloud.class.getName() + ".provisioningThreads", 4);
+
+    /**
+     * The maximum number of SSH handshakes of each cloud in progress at the
+     * same time.  Handshakes block, so they do not run on the provisioning
+     * threads.
+     */
+    static final int SSH_CONNECT_THREADS = Integer.getInteger(ComputeCloud.class.getName() + ".sshConnectThreads", 8);
+
+    /**
+     * The minimum weight of a template that is failing, relative to one
+     * that is succeeding, when spreading agents across the templates
+     * matching a label.
+     */
+    static final double MIN_SUCCESS_RATE = 0.05;
+
+    /**
+     * The number of labels whose matching templates are cached.  The cache
+     * is cleared when it is full, which only happens if the label
+     * expressions of jobs keep changing.
+     */
+    static final int MATCHING_TEMPLATES_CACHE_SIZE = Integer.getInteger(ComputeCloud.class.getName() + ".matchingTemplatesCacheSize", 1000);
+
+    /**
+     * The names of orchestrations of all clouds that are being provisioned.
+     * Orchestrations are added before they are created so that they are
+     * never mistaken for orphans.  Guarded by itself.
+     */
+    private static final Set<String> PROVISIONING_ORCH_NAMES = new HashSet<>();
 
     private final String apiEndpoint;
     private final String identityDomainName;
@@ -97,6 +157,23 @@ public class ComputeCloud extends AbstractCloudImpl {
     private final int nextTemplateId;
     private final List<? extends ComputeCloudAgentTemplate> templates;
 
+    private transient InstanceOrchestrationPoller orchestrationPoller;
+
+    private transient PollingPolicy stopPollingPolicy;
+    private transient ComputeCloudReaper reaper;
+
+    /**
+     * The time each orchestration was first found to be orphaned by
+     * {@link #collectOrphans}.  Guarded by this.
+     */
+    private transient Map<String, Long> orphanNanos;
+
+    /**
+     * The templates matching each label that has been provisioned, by
+     * {@link #getMatchingTemplates}.  Guarded by this.
+     */
+    private transient Map<Label, List<ComputeCloudAgentTemplate>> matchingTemplates;
+
     @DataBoundConstructor
     public ComputeCloud(
             String cloudName,
@@ -109,138 +186,1427 @@ public class ComputeCloud extends AbstractCloudImpl {
             List<? extends ComputeCloudAgentTemplate> templates) {
         super(cloudNameToName(cloudName), instanceCapStr);
 
-        this.apiEndpoint = apiEndpoint;
-        this.identityDomainName = identityDomainName;
-        this.userName = userName;
-        this.password = this.getEncryptedValue(password);
+        this.apiEndpoint = apiEndpoint;
+        this.identityDomainName = identityDomainName;
+        this.userName = userName;
+        this.password = this.getEncryptedValue(password);
+
+        this.nextTemplateId = nextTemplateId;
+        if (templates == null) {
+            this.templates = Collections.emptyList();
+        } else {
+            this.templates = templates;
+        }
+
+    }
+
+    @Override
+    public String getDisplayName() {
+        return getCloudName();
+    }
+
+    /**
+     * Called by {@code provision.jelly}.
+     *
+     * @return the full display name
+     */
+    public String getFullDisplayName() {
+        return DescriptorImpl.DISPLAY_NAME + ' ' + getCloudName();
+    }
+
+    public String getCloudName() {
+        return nameToCloudName(name);
+    }
+
+    public int getNextTemplateId() {
+        return nextTemplateId;
+    }
+
+    public List<? extends ComputeCloudAgentTemplate> getTemplates() {
+        return templates;
+    }
+
+    public String getApiEndpoint() {
+        return apiEndpoint;
+    }
+
+    public URI getApiEndpointUrl() {
+        try {
+            return new URI(apiEndpoint);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getIdentityDomainName() {
+        return identityDomainName;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public ComputeCloudUser getUser() {
+        try {
+            return ComputeCloudUser.valueOf(identityDomainName, userName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected String getEncryptedValue(String str) {
+        return Secret.fromString(str).getEncryptedValue();
+    }
+
+    protected String getPlainText(String str) {
+        return  str == null ? null : Secret.decrypt(str).getPlainText();
+    }
+
+    public final String getPassword() {
+        return getPlainText(password);
+    }
+
+    synchronized InstanceOrchestrationPoller getOrchestrationPoller() {
+        // This is lazily created since the field is not set when the cloud is
+        // deserialized.
+        if (orchestrationPoller == null) {
+            orchestrationPoller = new InstanceOrchestrationPoller(ORCHESTRATION_NAME_PREFIX);
+        }
+        return orchestrationPoller;
+    }
+
+    /**
+     * Returns the policy for polling orchestrations of agents while they
+     * stop.  Agents do not record their template, so this is shared by all
+     * templates.
+     */
+    synchronized PollingPolicy getStopPollingPolicy() {
+        if (stopPollingPolicy == null) {
+            stopPollingPolicy = new PollingPolicy();
+        }
+        return stopPollingPolicy;
+    }
+
+    /**
+     * Returns the reaper that stops and deletes the orchestrations of
+     * terminated agents.
+     */
+    synchronized ComputeCloudReaper getReaper() {
+        if (reaper == null) {
+            reaper = new ComputeCloudReaper(this);
+        }
+        return reaper;
+    }
+
+    /**
+     * Gets an orchestration created by this cloud.  Concurrent calls for
+     * different orchestrations share a single request.
+     */
+    InstanceOrchestration getInstanceOrchestration(ComputeCloudClient client, String orchName) throws ComputeCloudClientException {
+        return getOrchestrationPoller().getInstanceOrchestration(client, orchName);
+    }
+
+    ComputeCloudProvisioningLimits getProvisioningLimits() {
+        return ComputeCloudProvisioningLimits.Registry.INSTANCE.get(name);
+    }
+
+    ComputeCloudRecycleJournal getRecycleJournal() {
+        return ComputeCloudRecycleJournal.Registry.INSTANCE.get(getApiEndpointUrl(), getUser());
+    }
+
+    ComputeCloudAgentRegistry getAgentRegistry() {
+        return ComputeCloudAgentRegistry.INSTANCE;
+    }
+
+    /**
+     * Returns the breaker that stops provisioning after consecutive failures
+     * to reach the API endpoint.
+     */
+    public ComputeCloudCircuitBreaker getEndpointCircuitBreaker() {
+        return ComputeCloudCircuitBreaker.Registry.INSTANCE.get(apiEndpoint);
+    }
+
+    ScheduledExecutorService getProvisioningExecutor() {
+        return getProvisioningLimits().getExecutor();
+    }
+
+    Executor getSshConnectExecutor() {
+        return getProvisioningLimits().getSshConnectExecutor();
+    }
+
+    PlannedNode newPlannedNode(String displayName, Future<Node> future, int numExecutors, ComputeCloudAgentTemplate template) {
+        return new PlannedNode(displayName, future, numExecutors);
+    }
+
+    @Override
+    public Collection<PlannedNode> provision(final Label label, int excessWorkload) {
+        List<ComputeCloudAgentTemplate> candidates = getTemplates(label);
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        TemplateSelector selector = new TemplateSelector(candidates);
+        int numAgents = countCurrentComputeCloudAgents() + countPlannedAgents() + countWarmPoolAgents();
+
+        List<PlannedNode> r = new ArrayList<>();
+        while (excessWorkload > 0) {
+            // Agents in the warm pools were already counted, so they can be
+            // taken regardless of the instance cap.
+            ComputeCloudAgentTemplate t = null;
+            ComputeCloudAgent agent = null;
+            for (ComputeCloudAgentTemplate candidate : candidates) {
+                ComputeCloudWarmPool pool = getWarmPool(candidate);
+                if (candidate.getMaxSpareAgentsValue() != 0 && pool.getSize() != 0) {
+                    agent = pool.take();
+                    if (agent != null) {
+                        t = candidate;
+                        break;
+                    }
+                }
+            }
+            if (agent != null) {
+                LOGGER.log(Level.FINE, "Using orchestration {0} from the warm pool", agent.getOrchName());
+                // The agent is owned by its node from now on rather than by
+                // the journal.
+                getRecycleJournal().remove(agent.getOrchName());
+                // The agent is no longer counted by the pool.
+                getAgentRegistry().addPlanned(name, t.getTemplateId(), agent.getNodeName());
+                getAgentRegistry().provisioned(agent.getNodeName(), getClock().nanoTime());
+                ProvisionFuture future = new ProvisionFuture();
+                future.set(agent);
+
+                int numExecutors = agent.getNumExecutors();
+                r.add(newPlannedNode(agent.getOrchName(), future, numExecutors, t));
+                excessWorkload -= numExecutors;
+                continue;
+            }
+
+            if (getProvisioningLimits().getCreateCapacity() <= 0) {
+                LOGGER.log(Level.FINE, "Too many orchestrations are waiting to be created for cloud {0}", name);
+                break;
+            }
+
+            t = selector.next();
+            if (t == null) {
+                break;
+            }
+
+            // A template or API endpoint whose breaker is open is probed with
+            // a single agent once its cooldown has elapsed.
+            ComputeCloudCircuitBreaker.State templateState = tryAcquire(t.getCircuitBreaker());
+            if (templateState != ComputeCloudCircuitBreaker.State.CLOSED) {
+                selector.remove(t);
+                if (templateState == null) {
+                    continue;
+                }
+            }
+            ComputeCloudCircuitBreaker.State endpointState = tryAcquire(getEndpointCircuitBreaker());
+            if (endpointState == null) {
+                LOGGER.log(Level.FINE, "Provisioning is stopped for the API endpoint of cloud {0}", name);
+                cancelProbes(t, templateState == ComputeCloudCircuitBreaker.State.HALF_OPEN, false);
+                break;
+            }
+            boolean templateProbe = templateState == ComputeCloudCircuitBreaker.State.HALF_OPEN;
+            boolean endpointProbe = endpointState == ComputeCloudCircuitBreaker.State.HALF_OPEN;
+
+            ComputeCloudWarmPool pool = getWarmPool(t);
+            if (t.getMaxSpareAgentsValue() != 0) {
+                // Record the miss so the pool is filled to the maximum.
+                pool.recordMiss();
+            }
+
+            // Stopped orchestrations were also already counted.
+            String suspendedOrchName = pool.resume();
+            if (suspendedOrchName == null) {
+                if (numAgents >= getInstanceCap()) {
+                    cancelProbes(t, templateProbe, endpointProbe);
+                    break;
+                }
+
+                int share = templateProbe || endpointProbe ? 1 : (int)Math.ceil(excessWorkload * selector.getShare(t));
+                int batchSize = getBatchSize(t, share, getInstanceCap() - numAgents);
+                if (batchSize > 1) {
+                    BatchProvisioner batch = new BatchProvisioner(t, batchSize);
+                    for (BatchMemberProvisioner member : batch.members) {
+                        member.addPlannedNode();
+                        r.add(newPlannedNode(member.getPlannedNodeDisplayName(), member.future, member.numExecutors, t));
+                        excessWorkload -= member.numExecutors;
+                    }
+                    numAgents += batchSize;
+                    selector.add(t, batchSize);
+                    batch.start();
+                    continue;
+                }
+                numAgents++;
+            }
+
+            Provisioner provisioner = new Provisioner(t, suspendedOrchName);
+            String displayName = provisioner.getPlannedNodeDisplayName();
+            provisioner.setProbes(templateProbe, endpointProbe);
+            provisioner.addPlannedNode();
+            provisioner.start();
+            selector.add(t, 1);
+
+            int numExecutors = provisioner.numExecutors;
+            r.add(newPlannedNode(displayName, provisioner.future, numExecutors, t));
+            excessWorkload -= numExecutors;
+        }
+
+        int capacity = getInstanceCap() - numAgents;
+        for (ComputeCloudAgentTemplate t : candidates) {
+            capacity = replenishWarmPool(t, capacity);
+        }
+        return r;
+    }
+
+    /**
+     * Spreads the agents provisioned for a label across the templates that
+     * match it.  Each agent is provisioned with the template that has the
+     * fewest agents being provisioned relative to its weight, which is
+     * derived from its recent failure rate and time to ready.  Agents of a
+     * slow template are counted for longer, so further agents spill over to
+     * the other templates.  Templates whose last provisioning failed are
+     * weighted down by their consecutive failures but stay in rotation, so
+     * they can recover without waiting for their breaker to open.  Templates
+     * whose breaker is open are returned first so that they are probed as
+     * soon as their cooldown has elapsed.
+     */
+    private class TemplateSelector {
+        private final List<ComputeCloudAgentTemplate> probes = new ArrayList<>();
+        private final List<ComputeCloudAgentTemplate> templates = new ArrayList<>();
+        private final double[] weights;
+        private final int[] counts;
+        private final boolean[] removed;
+        private double totalWeight;
+
+        TemplateSelector(List<ComputeCloudAgentTemplate> candidates) {
+            for (ComputeCloudAgentTemplate t : candidates) {
+                if (t.getCircuitBreaker().getState() != ComputeCloudCircuitBreaker.State.CLOSED) {
+                    probes.add(t);
+                } else {
+                    templates.add(t);
+                }
+            }
+
+            long minReadyNanos = Long.MAX_VALUE;
+            for (ComputeCloudAgentTemplate t : templates) {
+                long readyNanos = t.getReadyNanos();
+                if (readyNanos > 0) {
+                    minReadyNanos = Math.min(minReadyNanos, readyNanos);
+                }
+            }
+
+            weights = new double[templates.size()];
+            counts = new int[templates.size()];
+            removed = new boolean[templates.size()];
+            long nowNanos = getClock().nanoTime();
+            for (int i = 0; i < weights.length; i++) {
+                ComputeCloudAgentTemplate t = templates.get(i);
+                // Templates that have not provisioned an agent yet are
+                // assumed to be as fast as the fastest.
+                long readyNanos = t.getReadyNanos();
+                double speed = readyNanos == 0 ? 1 : (double)minReadyNanos / readyNanos;
+                // Each consecutive failure divides the weight further, so a
+                // template that just started failing gets fewer agents
+                // before its breaker opens.
+                weights[i] = Math.max(1 - t.getFailureRate(), MIN_SUCCESS_RATE) * speed / (1 + t.getFailureCount());
+                totalWeight += weights[i];
+                counts[i] = templates.size() == 1 ? 0 : getAgentRegistry().getPlannedCount(name, t.getTemplateId(), nowNanos);
+            }
+        }
+
+        /**
+         * Returns the template for the next agent, or null if all templates
+         * have been removed.  Ties are broken in favor of the template that
+         * is configured first.
+         */
+        ComputeCloudAgentTemplate next() {
+            if (!probes.isEmpty()) {
+                return probes.get(0);
+            }
+
+            int best = -1;
+            for (int i = 0; i < weights.length; i++) {
+                if (!removed[i] && (best == -1 || (counts[i] + 1) / weights[i] < (counts[best] + 1) / weights[best])) {
+                    best = i;
+                }
+            }
+            return best == -1 ? null : templates.get(best);
+        }
+
+        /**
+         * Returns the fraction of agents that should be provisioned with a
+         * template.
+         */
+        double getShare(ComputeCloudAgentTemplate t) {
+            return weights[templates.indexOf(t)] / totalWeight;
+        }
+
+        void add(ComputeCloudAgentTemplate t, int numAgents) {
+            int i = templates.indexOf(t);
+            if (i != -1) {
+                counts[i] += numAgents;
+            }
+        }
+
+        /**
+         * Stops returning a template, either because it was probed or because
+         * its breaker does not allow provisioning.
+         */
+        void remove(ComputeCloudAgentTemplate t) {
+            if (!probes.remove(t)) {
+                removed[templates.indexOf(t)] = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the state in which a breaker allows provisioning, or null if
+     * it does not.  The clock is only read if the breaker is not closed.
+     */
+    private ComputeCloudCircuitBreaker.State tryAcquire(ComputeCloudCircuitBreaker breaker) {
+        if (breaker.getState() == ComputeCloudCircuitBreaker.State.CLOSED) {
+            return ComputeCloudCircuitBreaker.State.CLOSED;
+        }
+        return breaker.tryAcquire(getClock().nanoTime());
+    }
+
+    private boolean isAvailable(ComputeCloudCircuitBreaker breaker) {
+        return breaker.getState() == ComputeCloudCircuitBreaker.State.CLOSED || breaker.isAvailable(getClock().nanoTime());
+    }
+
+    /**
+     * Reopens the breakers of probes that were not provisioned.
+     */
+    private void cancelProbes(ComputeCloudAgentTemplate template, boolean templateProbe, boolean endpointProbe) {
+        if (templateProbe) {
+            template.getCircuitBreaker().recordCancelled();
+        }
+        if (endpointProbe) {
+            getEndpointCircuitBreaker().recordCancelled();
+        }
+    }
+
+    /**
+     * Returns the number of agents to provision with a single orchestration.
+     *
+     * @param template the template
+     * @param excessWorkload the number of executors needed
+     * @param capacity the number of agents that can be provisioned without
+     * exceeding the instance cap
+     * @return the number of agents
+     */
+    private static int getBatchSize(ComputeCloudAgentTemplate template, int excessWorkload, int capacity) {
+        int numExecutors = Math.max(template.getNumExecutorsValue(), 1);
+        int numAgents = (excessWorkload + numExecutors - 1) / numExecutors;
+        return Math.min(Math.min(numAgents, capacity), template.getMaxBatchSizeValue());
+    }
+
+    /**
+     * A future that is completed by a {@link Provisioner}.
+     */
+    private static class ProvisionFuture extends FutureTask<Node> {
+        ProvisionFuture() {
+            super(new Callable<Node>() {
+                @Override
+                public Node call() {
+                    throw new IllegalStateException();
+                }
+            });
+        }
+
+        @Override
+        public void set(Node node) {
+            super.set(node);
+        }
+
+        @Override
+        public void setException(Throwable t) {
+            super.setException(t);
+        }
+    }
+
+    private enum ProvisionState {
+        CREATE,
+        START,
+        AWAIT_READY,
+        AWAIT_SSH,
+        CONNECT_SSH,
+        AWAIT_MEMBERS,
+        RECYCLE,
+        DONE,
+    }
+
+    /**
+     * Provisions an agent as a state machine.  Each step makes at most one
+     * request and then schedules the next step on the provisioning executor,
+     * so waiting for the orchestration to start or for SSH to be available
+     * does not occupy a thread, and the number of threads does not depend on
+     * the number of agents being provisioned.  The SSH handshake blocks, so
+     * it runs on a separate executor and then schedules the next step.
+     */
+    private class Provisioner {
+        final ComputeCloudAgentTemplate template;
+        final int numExecutors;
+        final String name;
+        final String orchName;
+        final ProvisionFuture future = new ProvisionFuture();
+
+        // The remaining fields are only accessed by the running step.  Steps
+        // do not run concurrently since each step schedules the next.
+        ProvisionState state;
+        private boolean resumed;
+        ComputeCloudClient client;
+        long startNanos;
+        private long readyNanos;
+        long recycleNanos;
+        private long stopNanos;
+        private boolean stopRequested;
+        private String ip;
+        private ComputeCloudAgent agent;
+        Exception failure;
+
+        // SSH probes run concurrently with the steps, so the remaining
+        // fields are guarded by this.
+        private long scheduleSeq;
+        private boolean stepRunning;
+        private boolean wakeRequested;
+        private boolean sshProbing;
+        private Boolean sshProbeResult;
+        private boolean awaitingSshProbe;
+        private Boolean sshConnectResult;
+        private Exception sshConnectFailure;
+        private boolean createPermit;
+        private boolean deletePermit;
+
+        /**
+         * True if the agent is counted as planned by the agent registry.
+         * Only set before the provisioner is started.
+         */
+        private boolean plannedNode;
+
+        /**
+         * True if the agent is the probe of a half-open breaker of the
+         * template or the API endpoint.  Only set before the provisioner is
+         * started.
+         */
+        private boolean templateProbe;
+        private boolean endpointProbe;
+
+        private final SshPortProber.Listener sshProbeListener = new SshPortProber.Listener() {
+            @Override
+            public void probed(boolean available) {
+                synchronized (Provisioner.this) {
+                    sshProbing = false;
+                    sshProbeResult = available;
+                    if (awaitingSshProbe) {
+                        awaitingSshProbe = false;
+                    } else if (!available) {
+                        return;
+                    } else if (stepRunning) {
+                        // The SSH server started before the orchestration
+                        // was ready, so poll the orchestration as soon as
+                        // the running step finishes.
+                        wakeRequested = true;
+                        return;
+                    }
+                }
+                // Poll now rather than waiting for the next poll.  This
+                // supersedes the step that was already scheduled.
+                schedule(0);
+            }
+        };
+
+        Provisioner(ComputeCloudAgentTemplate template) {
+            this(template, null);
+        }
+
+        /**
+         * @param template the template
+         * @param suspendedOrchName the name of a stopped orchestration to
+         * start again, or null to create a new orchestration
+         */
+        Provisioner(ComputeCloudAgentTemplate template, String suspendedOrchName) {
+            this(template, suspendedOrchName, suspendedOrchName == null ? ProvisionState.CREATE : ProvisionState.START);
+            this.resumed = suspendedOrchName != null;
+        }
+
+        /**
+         * @param template the template
+         * @param orchName the name of the orchestration, or null to name a new
+         * orchestration after the agent
+         * @param state the first step
+         */
+        Provisioner(ComputeCloudAgentTemplate template, String orchName, ProvisionState state) {
+            this.template = template;
+            this.numExecutors = template.getNumExecutorsValue();
+
+            UUID uuid = UUID.randomUUID();
+            this.name = AGENT_NAME_PREFIX + uuid;
+            this.orchName = orchName == null ? ORCHESTRATION_NAME_PREFIX + uuid : orchName;
+            this.state = state;
+        }
+
+        public String getPlannedNodeDisplayName() {
+            return orchName;
+        }
+
+        /**
+         * Counts the agent toward the instance cap until it is added to
+         * Jenkins or provisioning fails.  Must be called before the
+         * provisioner is started.
+         */
+        void addPlannedNode() {
+            plannedNode = true;
+            getAgentRegistry().addPlanned(ComputeCloud.this.name, template.getTemplateId(), name);
+        }
+
+        void setProbes(boolean templateProbe, boolean endpointProbe) {
+            this.templateProbe = templateProbe;
+            this.endpointProbe = endpointProbe;
+        }
+
+        void start() {
+            if (ownsOrchestration()) {
+                synchronized (PROVISIONING_ORCH_NAMES) {
+                    PROVISIONING_ORCH_NAMES.add(orchName);
+                }
+            }
+            if (state == ProvisionState.CREATE || state == ProvisionState.START) {
+                if (!getProvisioningLimits().getCreatePermits().tryAcquire(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (Provisioner.this) {
+                            createPermit = true;
+                        }
+                        schedule(0);
+                    }
+                })) {
+                    LOGGER.log(Level.FINE, "Waiting to create orchestration {0}", orchName);
+                    return;
+                }
+                synchronized (this) {
+                    createPermit = true;
+                }
+            }
+            schedule(0);
+        }
+
+        /**
+         * Releases the permit to create the orchestration once it is ready or
+         * has failed.
+         */
+        void releaseCreatePermit() {
+            synchronized (this) {
+                if (!createPermit) {
+                    return;
+                }
+                createPermit = false;
+            }
+            getProvisioningLimits().getCreatePermits().release();
+        }
+
+        private void releaseDeletePermit() {
+            synchronized (this) {
+                if (!deletePermit) {
+                    return;
+                }
+                deletePermit = false;
+            }
+            getProvisioningLimits().getDeletePermits().release();
+        }
+
+        /**
+         * Starts waiting for SSH of an instance of an orchestration that is
+         * created and started by another provisioner.
+         *
+         * @param ip the public IP of the instance
+         * @param startNanos the time the orchestration was started
+         */
+        void startAwaitSsh(String ip, long startNanos) {
+            this.ip = ip;
+            this.startNanos = startNanos;
+            this.readyNanos = getClock().nanoTime();
+            start();
+        }
+
+        void schedule(long delayMillis) {
+            try {
+                synchronized (this) {
+                    if (wakeRequested) {
+                        wakeRequested = false;
+                        delayMillis = 0;
+                    }
+                    final long seq = ++scheduleSeq;
+                    getProvisioningExecutor().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            Provisioner.this.run(seq);
+                        }
+                    }, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.WARNING, "Unable to continue provisioning orchestration " + orchName, e);
+                if (failure == null) {
+                    failure = e;
+                }
+                finish();
+            }
+        }
+
+        private void run(long seq) {
+            synchronized (this) {
+                if (seq != scheduleSeq) {
+                    // Superseded by a later schedule.
+                    return;
+                }
+                stepRunning = true;
+            }
+
+            long delayMillis;
+            try {
+                if (future.isCancelled() && failure == null) {
+                    throw new CancellationException("Provisioning was cancelled");
+                }
+                delayMillis = step();
+            } catch (Exception e) {
+                delayMillis = fail(e);
+            } catch (Error e) {
+                if (failure == null) {
+                    failure = new IOException(e);
+                }
+                finish();
+                throw e;
+            }
+
+            synchronized (this) {
+                if (seq == scheduleSeq) {
+                    stepRunning = false;
+                }
+
+                // Do not access the state while awaiting a callback since the
+                // next step might already be running.
+                if (delayMillis != AWAIT_CALLBACK && state != ProvisionState.DONE) {
+                    schedule(delayMillis);
+                }
+            }
+        }
+
+        private boolean isTimedOut(long beginNanos, long timeoutNanos) {
+            return timeoutNanos != 0 && getClock().nanoTime() - beginNanos >= timeoutNanos;
+        }
+
+        /**
+         * Advances the state machine.
+         *
+         * @return the delay before the next step
+         */
+        long step() throws Exception {
+            switch (state) {
+            case CREATE:
+                client = createClient();
+                create();
+                getEndpointCircuitBreaker().recordSuccess();
+                state = ProvisionState.START;
+                return 0;
+
+            case START:
+                if (resumed) {
+                    LOGGER.info("Provisioning new node by starting suspended Oracle Cloud Infrastructure Compute Classic orchestration " + orchName);
+                    client = createClient();
+                }
+                startNanos = getClock().nanoTime();
+                client.startOrchestration(orchName);
+                getEndpointCircuitBreaker().recordSuccess();
+                state = ProvisionState.AWAIT_READY;
+                return 0;
+
+            case AWAIT_READY: {
+                InstanceOrchestration instanceOrch = getInstanceOrchestration(client, orchName);
+
+                PollingPolicy pollingPolicy = resumed ? template.getResumePollingPolicy() : template.getStartPollingPolicy();
+                long elapsedNanos = getClock().nanoTime() - startNanos;
+
+                InstanceOrchestration.Status status = instanceOrch.getStatus();
+                if (status == InstanceOrchestration.Status.ready) {
+                    pollingPolicy.recordDuration(elapsedNanos);
+                    releaseCreatePermit();
+                    return ready(instanceOrch);
+                }
+
+                if (status != InstanceOrchestration.Status.starting) {
+                    throw new IOException("Instance " + orchName + " has status " + status + " rather than starting or ready");
+                }
+
+                if (isTimedOut(startNanos, template.getStartTimeoutNanos())) {
+                    IOException ex = new IOException("Timed out waiting for orchestration to have ready status");
+                    // in case exception would be override by stopAndDeleteInstance exception
+                    LOGGER.log(Level.WARNING, "Timed out waiting for orchestration to have ready status", ex);
+                    throw ex;
+                }
+
+                return starting(instanceOrch, pollingPolicy.getDelayMillis(elapsedNanos));
+            }
+
+            case AWAIT_SSH:
+                synchronized (this) {
+                    if (Boolean.TRUE.equals(sshProbeResult)) {
+                        state = ProvisionState.CONNECT_SSH;
+                        return 0;
+                    }
+                    if (sshProbing) {
+                        // Wait for the probe started while the orchestration
+                        // was starting.
+                        awaitingSshProbe = true;
+                        return AWAIT_CALLBACK;
+                    }
+                    if (sshProbeResult != null) {
+                        sshProbeResult = null;
+                        return getSshRetryDelayMillis();
+                    }
+                }
+
+                if (startSshProbe(true)) {
+                    return AWAIT_CALLBACK;
+                }
+                state = ProvisionState.CONNECT_SSH;
+                return 0;
+
+            case CONNECT_SSH: {
+                Boolean connected;
+                Exception connectFailure;
+                synchronized (this) {
+                    sshProbeResult = null;
+                    connected = sshConnectResult;
+                    connectFailure = sshConnectFailure;
+                    sshConnectResult = null;
+                    sshConnectFailure = null;
+                }
+                if (connectFailure != null) {
+                    throw connectFailure;
+                }
+                if (connected == null) {
+                    startSshConnect();
+                    return AWAIT_CALLBACK;
+                }
+                if (connected) {
+                    template.resetFailureCount();
+                    template.recordProvisioned(resumed ? 0 : getClock().nanoTime() - startNanos);
+                    agent = newComputeCloudAgent(name, template, ComputeCloud.this.name, orchName, ip);
+                    finish();
+                    return 0;
+                }
+
+                state = ProvisionState.AWAIT_SSH;
+                return getSshRetryDelayMillis();
+            }
+
+            case RECYCLE:
+                synchronized (this) {
+                    if (!deletePermit) {
+                        if (!getProvisioningLimits().getDeletePermits().tryAcquire(new Runnable() {
+                            @Override
+                            public void run() {
+                                synchronized (Provisioner.this) {
+                                    deletePermit = true;
+                                }
+                                schedule(0);
+                            }
+                        })) {
+                            LOGGER.log(Level.FINE, "Waiting to recycle orchestration {0}", orchName);
+                            return AWAIT_CALLBACK;
+                        }
+                        deletePermit = true;
+                        recycleNanos = getClock().nanoTime();
+                    }
+                }
+                return recycle();
+
+            default:
+                throw new IllegalStateException(state.toString());
+            }
+        }
+
+        /**
+         * Creates the orchestration.
+         */
+        void create() throws ComputeCloudClientException {
+            LOGGER.info("Provisioning new node with Oracle Cloud Infrastructure Compute Classic orchestration " + orchName);
+            client.createInstanceOrchestration(orchName, template);
+        }
+
+        /**
+         * Called when the orchestration has ready status.
+         *
+         * @return the delay before the next step
+         */
+        long ready(InstanceOrchestration instanceOrch) {
+            ip = instanceOrch.getIp();
+            LOGGER.info("Provisioned orchestration " + orchName + " with public ip " + ip);
+            readyNanos = getClock().nanoTime();
+            synchronized (this) {
+                if (Boolean.FALSE.equals(sshProbeResult)) {
+                    // Probes before the orchestration was ready are expected
+                    // to fail.
+                    sshProbeResult = null;
+                }
+            }
+            state = ProvisionState.AWAIT_SSH;
+            return 0;
+        }
+
+        /**
+         * Called when the orchestration still has starting status.
+         *
+         * @param delayMillis the delay before polling again
+         * @return the delay before the next step
+         */
+        long starting(InstanceOrchestration instanceOrch, long delayMillis) {
+            // The IP reservation is usually assigned well before the instance
+            // is ready, so probe SSH while the orchestration finishes
+            // starting.
+            if (ip == null) {
+                ip = instanceOrch.getIp();
+            }
+            if (ip != null && startSshProbe(false)) {
+                LOGGER.log(Level.FINE, "Probing SSH of starting orchestration {0} with public ip {1}", new Object[] { orchName, ip });
+            }
+
+            synchronized (this) {
+                if (Boolean.TRUE.equals(sshProbeResult)) {
+                    // The instance is running, so the orchestration should be
+                    // ready soon.
+                    delayMillis = Math.min(delayMillis, PollingPolicy.MIN_INTERVAL_MILLIS);
+                }
+            }
+            return delayMillis;
+        }
+
+        /**
+         * Waits for the SSH banner without blocking a thread before
+         * attempting the SSH handshake.  Hosts that are reached through the
+         * Jenkins proxy cannot be probed directly.
+         *
+         * @param await true if the next step should wait for the result
+         * @return true if the probe was started
+         */
+        private boolean startSshProbe(boolean await) {
+            if (getSshConnector().isProxied(ip)) {
+                return false;
+            }
+
+            synchronized (this) {
+                if (sshProbing || Boolean.TRUE.equals(sshProbeResult)) {
+                    return false;
+                }
+                sshProbing = true;
+                sshProbeResult = null;
+                awaitingSshProbe = await;
+            }
+
+            try {
+                getSshPortProber().probe(ip, template.getSshConnectTimeoutMillis(), sshProbeListener);
+                return true;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to probe SSH port, connecting directly", e);
+                synchronized (this) {
+                    sshProbing = false;
+                    awaitingSshProbe = false;
+                }
+                return false;
+            }
+        }
+
+        /**
+         * Attempts the SSH handshake on the SSH connect executor, and then
+         * runs the step again with the result.
+         */
+        private void startSshConnect() {
+            getSshConnectExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Boolean result = null;
+                    Exception ex = null;
+                    try {
+                        result = isSshAvailable(ip, template);
+                    } catch (Exception e) {
+                        ex = e;
+                    }
+                    synchronized (Provisioner.this) {
+                        sshConnectResult = result;
+                        sshConnectFailure = ex;
+                    }
+                    schedule(0);
+                }
+            });
+        }
+
+        private long getSshRetryDelayMillis() throws IOException {
+            if (isTimedOut(startNanos, template.getStartTimeoutNanos())) {
+                throw new IOException("Timed out connecting to SSH");
+            }
+            return SSH_POLLING_POLICY.getDelayMillis(getClock().nanoTime() - readyNanos);
+        }
+
+        /**
+         * Stops and then deletes the orchestration after a failure.
+         */
+        private long recycle() throws Exception {
+            InstanceOrchestration instanceOrch = getInstanceOrchestration(client, orchName);
+            PollingPolicy pollingPolicy = template.getStopPollingPolicy();
+
+            InstanceOrchestration.Status status = instanceOrch.getStatus();
+            logOrchestrationErrors(orchName, instanceOrch);
+
+            if (status != InstanceOrchestration.Status.stopped && status != InstanceOrchestration.Status.stopping) {
+                client.stopOrchestration(orchName);
+                if (!stopRequested) {
+                    stopRequested = true;
+                    stopNanos = getClock().nanoTime();
+                }
+            }
+
+            if (status == InstanceOrchestration.Status.stopped) {
+                if (stopRequested) {
+                    pollingPolicy.recordDuration(getClock().nanoTime() - stopNanos);
+                }
+                client.deleteOrchestration(orchName);
+                getRecycleJournal().remove(orchName);
+                LOGGER.log(Level.WARNING, "Provision node: " + orchName + " failed, and created resources have been recycled.", failure);
+                finish();
+                return 0;
+            }
+
+            if (isTimedOut(recycleNanos, template.getStartTimeoutNanos())) {
+                throw new IOException("Provision node: " + orchName + " failed, and created resources failed to recycle");
+            }
+            return pollingPolicy.getDelayMillis(stopRequested ? getClock().nanoTime() - stopNanos : 0);
+        }
+
+        /**
+         * Handles a failed step.
+         *
+         * @return the delay before the next step
+         */
+        long fail(Exception e) {
+            releaseCreatePermit();
+            if (state == ProvisionState.CREATE || !ownsOrchestration()) {
+                // The orchestration was not created, or it is recycled by
+                // another provisioner.
+                failure = e;
+                finish();
+                return 0;
+            }
+
+            if (state == ProvisionState.RECYCLE) {
+                LOGGER.log(Level.WARNING, "Provision node: " + orchName + " failed, and failed to recycle node " + orchName + ", retrying in the background", e);
+                finish();
+                getReaper().recycle(orchName);
+                return 0;
+            }
+
+            failure = e;
+            state = ProvisionState.RECYCLE;
+            recycleNanos = getClock().nanoTime();
+            getRecycleJournal().add(orchName);
+            return 0;
+        }
+
+        void finish() {
+            state = ProvisionState.DONE;
+            releaseCreatePermit();
+            releaseDeletePermit();
+            try {
+                if (client != null) {
+                    client.close();
+                }
+                if (failure instanceof ComputeCloudClientUnavailableException) {
+                    // The template is not at fault if the API endpoint is
+                    // unavailable.
+                    getEndpointCircuitBreaker().recordFailure(failure.getMessage(), getClock().nanoTime());
+                    cancelProbes(template, templateProbe, false);
+                } else if (failure instanceof CancellationException) {
+                    cancelProbes(template, templateProbe, endpointProbe);
+                } else if (failure != null) {
+                    template.increaseFailureCount(failure.getMessage(), getClock().nanoTime());
+                    cancelProbes(template, false, endpointProbe);
+                }
+            } finally {
+                if (ownsOrchestration()) {
+                    synchronized (PROVISIONING_ORCH_NAMES) {
+                        PROVISIONING_ORCH_NAMES.remove(orchName);
+                    }
+                }
+                if (plannedNode) {
+                    if (failure == null) {
+                        getAgentRegistry().provisioned(name, getClock().nanoTime());
+                        if (resumed) {
+                            // A stopped orchestration from the warm pool is
+                            // owned by its node from now on.
+                            getRecycleJournal().remove(orchName);
+                        }
+                    } else {
+                        getAgentRegistry().removePlanned(name);
+                    }
+                }
+
+                // Always complete the future so that the planned node is not
+                // pending forever.
+                if (failure == null) {
+                    future.set(agent);
+                } else {
+                    future.setException(failure);
+                }
+                done(agent, failure);
+            }
+        }
+
+        /**
+         * Called when provisioning has finished.
+         *
+         * @param node the provisioned node, or null if provisioning failed
+         * @param failure the failure, or null if provisioning succeeded
+         */
+        void done(Node node, Exception failure) {}
+
+        /**
+         * Returns true if this provisioner recycles the orchestration if
+         * provisioning fails.
+         */
+        boolean ownsOrchestration() {
+            return true;
+        }
+    }
+
+    /**
+     * Provisions several agents with a single orchestration.  The
+     * orchestration is created, started and polled once for all of its
+     * instances, and each instance is handed to a
+     * {@link BatchMemberProvisioner} as soon as its IP is assigned, so agents
+     * are added as their instances accept SSH connections.  If no agent is
+     * provisioned, the orchestration is recycled after all members finish.
+     */
+    private class BatchProvisioner extends Provisioner {
+        final List<BatchMemberProvisioner> members = new ArrayList<>();
+
+        // Only accessed by the running step.
+        private final boolean[] handedOff;
+        private boolean created;
+
+        // Members finish concurrently, so the remaining fields are guarded
+        // by this.
+        private int doneCount;
+        private int successCount;
+        private boolean awaitingMembers;
+        private Exception batchFailure;
+
+        BatchProvisioner(ComputeCloudAgentTemplate template, int size) {
+            super(template, BATCH_ORCHESTRATION_NAME_PREFIX + UUID.randomUUID(), ProvisionState.CREATE);
+            for (int i = 0; i < size; i++) {
+                members.add(new BatchMemberProvisioner(this, i));
+            }
+            this.handedOff = new boolean[size];
+        }
+
+        synchronized Exception getBatchFailure() {
+            return batchFailure;
+        }
+
+        @Override
+        void create() throws ComputeCloudClientException {
+            LOGGER.info("Provisioning " + members.size() + " new nodes with Oracle Cloud Infrastructure Compute Classic orchestration " + orchName);
+            client.createInstanceOrchestration(orchName, template, members.size());
+            created = true;
+        }
+
+        @Override
+        long step() throws Exception {
+            if (state == ProvisionState.AWAIT_MEMBERS) {
+                return membersDone();
+            }
+            return super.step();
+        }
+
+        @Override
+        long ready(InstanceOrchestration instanceOrch) {
+            LOGGER.info("Provisioned orchestration " + orchName + " with public ips " + instanceOrch.getIps());
+            handOff(instanceOrch);
+
+            IOException e = null;
+            for (int i = 0; i < handedOff.length; i++) {
+                if (!handedOff[i]) {
+                    if (e == null) {
+                        e = new IOException("Orchestration " + orchName + " is ready without a public ip for instance " + i);
+                    }
+                    members.get(i).abort(e);
+                }
+            }
+            return awaitMembers();
+        }
+
+        @Override
+        long starting(InstanceOrchestration instanceOrch, long delayMillis) {
+            handOff(instanceOrch);
+            return delayMillis;
+        }
+
+        /**
+         * Starts the members whose instances have been assigned an IP.
+         */
+        private void handOff(InstanceOrchestration instanceOrch) {
+            List<String> ips = instanceOrch.getIps();
+            for (int i = 0; i < handedOff.length && i < ips.size(); i++) {
+                String ip = ips.get(i);
+                if (!handedOff[i] && ip != null) {
+                    handedOff[i] = true;
+                    LOGGER.log(Level.FINE, "Waiting for SSH of instance {0} of orchestration {1} with public ip {2}", new Object[] { i, orchName, ip });
+                    members.get(i).startAwaitSsh(ip, startNanos);
+                }
+            }
+        }
+
+        @Override
+        long fail(Exception e) {
+            if (state == ProvisionState.AWAIT_MEMBERS || state == ProvisionState.RECYCLE) {
+                return super.fail(e);
+            }
+
+            // Fail the members that are still waiting for the orchestration,
+            // and recycle the orchestration once the others finish.
+            releaseCreatePermit();
+            failure = e;
+            synchronized (this) {
+                batchFailure = e;
+            }
+            for (int i = 0; i < handedOff.length; i++) {
+                if (!handedOff[i]) {
+                    handedOff[i] = true;
+                    members.get(i).abort(e);
+                }
+            }
+            return awaitMembers();
+        }
+
+        private long awaitMembers() {
+            state = ProvisionState.AWAIT_MEMBERS;
+            synchronized (this) {
+                if (doneCount < members.size()) {
+                    awaitingMembers = true;
+                    return AWAIT_CALLBACK;
+                }
+            }
+            return membersDone();
+        }
 
-        this.nextTemplateId = nextTemplateId;
-        if (templates == null) {
-            this.templates = Collections.emptyList();
-        } else {
-            this.templates = templates;
+        void memberDone(boolean success) {
+            synchronized (this) {
+                doneCount++;
+                if (success) {
+                    successCount++;
+                }
+                if (!awaitingMembers || doneCount < members.size()) {
+                    return;
+                }
+                awaitingMembers = false;
+            }
+            schedule(0);
         }
 
-    }
+        private long membersDone() {
+            int successCount;
+            synchronized (this) {
+                successCount = this.successCount;
+            }
 
-    @Override
-    public String getDisplayName() {
-        return getCloudName();
+            if (successCount == 0 && created) {
+                if (failure == null) {
+                    failure = new IOException("No nodes were provisioned with orchestration " + orchName);
+                }
+                state = ProvisionState.RECYCLE;
+                recycleNanos = getClock().nanoTime();
+                return 0;
+            }
+
+            if (failure != null) {
+                LOGGER.log(Level.WARNING, "Provisioned " + successCount + " of " + members.size() + " nodes with orchestration " + orchName, failure);
+                // The template only fails if no node was provisioned, and
+                // the members that failed have already been counted.
+                failure = null;
+            }
+            finish();
+            return 0;
+        }
     }
 
     /**
-     * Called by {@code provision.jelly}.
-     *
-     * @return the full display name
+     * Provisions an agent for an instance of an orchestration of a
+     * {@link BatchProvisioner}.
      */
-    public String getFullDisplayName() {
-        return DescriptorImpl.DISPLAY_NAME + ' ' + getCloudName();
-    }
-
-    public String getCloudName() {
-        return nameToCloudName(name);
-    }
+    private class BatchMemberProvisioner extends Provisioner {
+        final BatchProvisioner batch;
+        final int index;
+
+        BatchMemberProvisioner(BatchProvisioner batch, int index) {
+            super(batch.template, batch.orchName, ProvisionState.AWAIT_SSH);
+            this.batch = batch;
+            this.index = index;
+        }
 
-    public int getNextTemplateId() {
-        return nextTemplateId;
-    }
+        @Override
+        public String getPlannedNodeDisplayName() {
+            return orchName + '_' + index;
+        }
 
-    public List<? extends ComputeCloudAgentTemplate> getTemplates() {
-        return templates;
-    }
+        @Override
+        long step() throws Exception {
+            Exception batchFailure = batch.getBatchFailure();
+            if (batchFailure != null) {
+                abort(batchFailure);
+                return 0;
+            }
+            return super.step();
+        }
 
-    public String getApiEndpoint() {
-        return apiEndpoint;
-    }
+        /**
+         * Fails because the orchestration could not be provisioned.  The
+         * failure is counted once by the batch rather than by each member.
+         */
+        void abort(Exception e) {
+            CancellationException ce = new CancellationException("Provisioning orchestration " + orchName + " failed");
+            ce.initCause(e);
+            failure = ce;
+            finish();
+        }
 
-    public URI getApiEndpointUrl() {
-        try {
-            return new URI(apiEndpoint);
-        } catch (URISyntaxException e) {
-            throw new IllegalStateException(e);
+        @Override
+        boolean ownsOrchestration() {
+            return false;
         }
-    }
 
-    public String getIdentityDomainName() {
-        return identityDomainName;
+        @Override
+        void done(Node node, Exception failure) {
+            batch.memberDone(failure == null);
+        }
     }
 
-    public String getUserName() {
-        return userName;
-    }
+    /**
+     * Provisions an agent for the warm pool rather than for a planned node.
+     */
+    private class WarmPoolProvisioner extends Provisioner {
+        final ComputeCloudWarmPool pool;
 
-    public ComputeCloudUser getUser() {
-        try {
-            return ComputeCloudUser.valueOf(identityDomainName, userName);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException(e);
+        WarmPoolProvisioner(ComputeCloudAgentTemplate template, ComputeCloudWarmPool pool, String suspendedOrchName) {
+            super(template, suspendedOrchName);
+            this.pool = pool;
         }
-    }
-
-    protected String getEncryptedValue(String str) {
-        return Secret.fromString(str).getEncryptedValue();
-    }
 
-    protected String getPlainText(String str) {
-        return  str == null ? null : Secret.decrypt(str).getPlainText();
+        @Override
+        void done(Node node, Exception failure) {
+            if (failure == null) {
+                LOGGER.log(Level.FINE, "Added orchestration {0} to the warm pool", orchName);
+                // Pools are only kept in memory, so the journal recycles the
+                // orchestration if Jenkins restarts before it is taken.
+                getRecycleJournal().add(orchName);
+                pool.filled((ComputeCloudAgent)node, getClock().nanoTime());
+            } else {
+                pool.fillFailed();
+            }
+        }
     }
 
-    public final String getPassword() {
-        return getPlainText(password);
+    ComputeCloudWarmPool.Registry getWarmPools() {
+        return ComputeCloudWarmPool.Registry.INSTANCE;
     }
 
-    ExecutorService getThreadPoolForRemoting() {
-        return Computer.threadPoolForRemoting;
+    /**
+     * Called by {@code computerSet.jelly} to show warm pool metrics.
+     *
+     * @param template the template
+     * @return the warm pool of the template
+     */
+    public ComputeCloudWarmPool getWarmPool(ComputeCloudAgentTemplate template) {
+        return getWarmPools().get(name, ComputeCloudWarmPool.getKey(template));
     }
 
-    PlannedNode newPlannedNode(String displayName, Future<Node> future, int numExecutors, ComputeCloudAgentTemplate template) {
-        return new PlannedNode(displayName, future, numExecutors);
+    int countWarmPoolAgents() {
+        int r = 0;
+        for (ComputeCloudWarmPool pool : getWarmPools().getAll(name).values()) {
+            r += pool.getTotalCount();
+        }
+        return r;
     }
 
-    @Override
-    public Collection<PlannedNode> provision(final Label label, int excessWorkload) {
-        final ComputeCloudAgentTemplate t = getTemplate(label);
-        if (t == null) {
-            return Collections.emptyList();
+    /**
+     * Starts provisioning agents for the warm pool of a template as needed.
+     *
+     * @param template the template
+     * @param capacity the number of agents that can be provisioned without
+     * exceeding the instance cap
+     * @return the remaining capacity
+     */
+    private int replenishWarmPool(ComputeCloudAgentTemplate template, int capacity) {
+        int maxSpare = template.getMaxSpareAgentsValue();
+        // Warm pools are not replenished while a breaker is open or being
+        // probed.
+        if (maxSpare == 0 || template.getCircuitBreaker().getState() != ComputeCloudCircuitBreaker.State.CLOSED
+                || getEndpointCircuitBreaker().getState() != ComputeCloudCircuitBreaker.State.CLOSED) {
+            return capacity;
         }
 
-        int numAgents = countCurrentComputeCloudAgents();
-
-        List<PlannedNode> r = new ArrayList<>();
-        for (; excessWorkload > 0 && numAgents < getInstanceCap(); numAgents++) {
-            Provisioner provisioner = new Provisioner(t);
-            String displayName = provisioner.getPlannedNodeDisplayName();
-            Future<Node> future = getThreadPoolForRemoting().submit(provisioner);
-
-            int numExecutors = provisioner.numExecutors;
-            r.add(newPlannedNode(displayName, future, numExecutors, t));
-            excessWorkload -= numExecutors;
+        ComputeCloudWarmPool pool = getWarmPool(template);
+        // Stopped orchestrations count toward the instance cap, so they can
+        // be started regardless of the capacity.
+        int count = pool.reserveFill(template.getMinSpareAgentsValue(), maxSpare,
+                Math.min(capacity + pool.getSuspendedCount(), getProvisioningLimits().getCreateCapacity()));
+        for (int i = 0; i < count; i++) {
+            String suspendedOrchName = pool.resume();
+            if (suspendedOrchName == null && capacity-- <= 0) {
+                pool.fillFailed();
+                continue;
+            }
+            new WarmPoolProvisioner(template, pool, suspendedOrchName).start();
         }
-        return r;
+        return capacity;
     }
 
-    private class Provisioner implements Callable<Node> {
-        final ComputeCloudAgentTemplate template;
-        final int numExecutors;
-        final String name;
-        final String orchName;
+    /**
+     * Terminates agents that are no longer needed in the warm pools, and
+     * replenishes the warm pools.  Called periodically by
+     * {@link ComputeCloudWarmPoolMaintainer}.
+     */
+    void maintainWarmPools() {
+        Map<String, ComputeCloudWarmPool> pools = getWarmPools().getAll(name);
+        long nowNanos = getClock().nanoTime();
 
-        Provisioner(ComputeCloudAgentTemplate template) {
-            this.template = template;
-            this.numExecutors = template.getNumExecutorsValue();
+        for (ComputeCloudAgentTemplate t : templates) {
+            ComputeCloudWarmPool pool = pools.remove(ComputeCloudWarmPool.getKey(t));
+            if (pool != null) {
+                terminateWarmPoolAgents(pool.removeExcess(t.getMinSpareAgentsValue(), t.getMaxSpareAgentsValue(), t.getIdleTerminationNanos(), nowNanos));
+                terminateWarmPoolOrchestrations(pool.removeExcessSuspended(t.getMaxSuspendedAgentsValue()));
+            }
+            replenishWarmPool(t, getInstanceCap() - countCurrentComputeCloudAgents() - countPlannedAgents() - countWarmPoolAgents());
+        }
 
-            UUID uuid = UUID.randomUUID();
-            this.name = AGENT_NAME_PREFIX + uuid;
-            this.orchName = ORCHESTRATION_NAME_PREFIX + uuid;
+        // Drain the pools of templates that were removed or reconfigured.
+        for (Map.Entry<String, ComputeCloudWarmPool> entry : pools.entrySet()) {
+            terminateWarmPoolAgents(entry.getValue().removeExcess(0, 0, 0, nowNanos));
+            terminateWarmPoolOrchestrations(entry.getValue().removeExcessSuspended(0));
+            getWarmPools().removeIfEmpty(name, entry.getKey());
         }
+    }
 
-        public String getPlannedNodeDisplayName() {
-            return orchName;
+    private void terminateWarmPoolAgents(List<ComputeCloudAgent> agents) {
+        List<String> orchNames = new ArrayList<>();
+        for (ComputeCloudAgent agent : agents) {
+            orchNames.add(agent.getOrchName());
         }
+        terminateWarmPoolOrchestrations(orchNames);
+    }
 
-        @Override
-        public Node call() throws Exception {
-            return provision(name, template, orchName);
+    private void terminateWarmPoolOrchestrations(List<String> orchNames) {
+        for (String orchName : orchNames) {
+            LOGGER.log(Level.INFO, "Terminating orchestration {0} from the warm pool", orchName);
+            getReaper().recycle(orchName);
         }
     }
 
@@ -253,167 +1619,354 @@ public class ComputeCloud extends AbstractCloudImpl {
         return new ComputeCloudAgent(name, template, cloudName, orchName, host);
     }
 
+    static void logOrchestrationErrors(String orchName, InstanceOrchestration instanceOrch) {
+        if (instanceOrch.getStatus() == InstanceOrchestration.Status.error
+                && instanceOrch.getErrors() != null && instanceOrch.getErrors().size() > 0) {
+            StringBuilder errMsgBuilder = new StringBuilder();
+            for (String msg : instanceOrch.getErrors()) {
+                errMsgBuilder.append("\n");
+                errMsgBuilder.append(msg);
+            }
+            LOGGER.warning("Orchestration " + orchName + " in error status would be recycled, error messages:" + errMsgBuilder.toString());
+        }
+    }
+
     // Stop and delete orchestration related cloud resources
-    protected void stopAndDeleteOrchestration(ComputeCloudClient client, long timeoutNanos, String orchName) throws ComputeCloudClientException, InterruptedException, IOException {
+    protected void stopAndDeleteOrchestration(ComputeCloudClient client, long timeoutNanos, String orchName, PollingPolicy pollingPolicy) throws ComputeCloudClientException, InterruptedException, IOException {
+        if (!stopOrchestration(client, timeoutNanos, orchName, pollingPolicy)) {
+            throw new IOException("Provision node: " + orchName + " failed, AND CREATED RESOURCES FAILED TO RECYCLE, REQUIRE MANUAL OPERATION!!!");
+        }
+        client.deleteOrchestration(orchName);
+    }
 
-        TimeoutHelper timeoutHelper = new TimeoutHelper(getClock(), timeoutNanos, POLL_SLEEP_MILLIS);
+    /**
+     * Stops an orchestration and waits for it to have stopped status.
+     *
+     * @return true if the orchestration stopped, or false if timed out
+     */
+    private boolean stopOrchestration(ComputeCloudClient client, long timeoutNanos, String orchName, PollingPolicy pollingPolicy) throws ComputeCloudClientException, InterruptedException {
+        TimeoutHelper timeoutHelper = new TimeoutHelper(getClock(), timeoutNanos, pollingPolicy);
+        boolean stopRequested = false;
         do {
-            InstanceOrchestration instanceOrch = client.getInstanceOrchestration(orchName);
+            InstanceOrchestration instanceOrch = getInstanceOrchestration(client, orchName);
 
             InstanceOrchestration.Status status = instanceOrch.getStatus();
-
-            if (status == InstanceOrchestration.Status.error
-                    && instanceOrch.getErrors() != null && instanceOrch.getErrors().size() > 0) {
-                StringBuilder errMsgBuilder = new StringBuilder();
-                for (String msg : instanceOrch.getErrors()) {
-                    errMsgBuilder.append("\n");
-                    errMsgBuilder.append(msg);
-                }
-                LOGGER.warning("Orchestration " + orchName + " in error status would be recycled, error messages:" + errMsgBuilder.toString());
-            }
+            logOrchestrationErrors(orchName, instanceOrch);
 
             if (status != InstanceOrchestration.Status.stopped && status != InstanceOrchestration.Status.stopping) {
                 client.stopOrchestration(orchName);
+                stopRequested = true;
             }
 
             if (status == InstanceOrchestration.Status.stopped) {
-                client.deleteOrchestration(orchName);
-                return;
+                if (stopRequested) {
+                    pollingPolicy.recordDuration(timeoutHelper.getElapsedNanos());
+                }
+                return true;
             }
         } while (timeoutHelper.sleep());
 
-        throw new IOException("Provision node: " + orchName + " failed, AND CREATED RESOURCES FAILED TO RECYCLE, REQUIRE MANUAL OPERATION!!!");
+        return false;
     }
 
     /**
-     * recycle orchestration related cloud resources with specified orchestration name
+     * recycle orchestration related cloud resources with specified orchestration name.
+     * The orchestration is recorded in the recycle journal until it has been
+     * deleted, so it is retried later if this fails.
      *
      * @param orchName the name of orchestration to be recycled.
      * @throws InterruptedException if thread is interrupted.
      * @throws IOException if request hit IO exception.
      */
     public void recycleCloudResources(String orchName) throws InterruptedException, IOException {
-        try (ComputeCloudClient client = createClient()) {
-            stopAndDeleteOrchestration(client, RECYCLE_TIMEOUT_NANOS, orchName);
+        ComputeCloudRecycleJournal journal = getRecycleJournal();
+        journal.add(orchName);
+
+        ComputeCloudProvisioningLimits.Permits deletePermits = getProvisioningLimits().getDeletePermits();
+        boolean recycled = false;
+        deletePermits.acquire();
+        try (ComputeCloudClient client = createClient(ComputeCloudWorkload.TERMINATE)) {
+            stopAndDeleteOrchestration(client, RECYCLE_TIMEOUT_NANOS, orchName, getStopPollingPolicy());
+            recycled = true;
         } catch (ComputeCloudClientException e) {
             throw new IOException(e);
+        } finally {
+            deletePermits.release();
+            if (recycled) {
+                journal.remove(orchName);
+            } else {
+                journal.retryLater(orchName, getClock().nanoTime());
+            }
         }
     }
 
-    private ComputeCloudAgent provision(String name, ComputeCloudAgentTemplate template, String orchName) throws Exception {
-        LOGGER.info("Provisioning new node with Oracle Cloud Infrastructure Compute Classic orchestration " + orchName);
+    /**
+     * Recycles orchestrations from the journal that failed to recycle or
+     * were being recycled when Jenkins stopped.  Called periodically by
+     * {@link ComputeCloudRecycleRetrier}.
+     */
+    void retryRecycles() {
+        ComputeCloudRecycleJournal journal;
+        try {
+            journal = getRecycleJournal();
+        } catch (IllegalStateException e) {
+            // This cloud has an invalid apiEndpoint, identityDomainName, or
+            // userName, so it cannot have recycled anything.
+            return;
+        }
 
-        try (ComputeCloudClient client = createClient()) {
-            client.createInstanceOrchestration(orchName, template);
+        for (String orchName : journal.takeDue(getClock().nanoTime())) {
+            LOGGER.log(Level.INFO, "Retrying recycle of orchestration {0}", orchName);
+            getReaper().recycle(orchName);
+        }
+    }
 
-            TimeoutHelper timeoutHelper = new TimeoutHelper(getClock(), template.getStartTimeoutNanos(), POLL_SLEEP_MILLIS);
+    /**
+     * Returns the names of orchestrations that are used by agents, warm
+     * pools or provisioning in progress in any cloud.
+     */
+    private Set<String> getUsedOrchNames() {
+        Set<String> result;
+        synchronized (PROVISIONING_ORCH_NAMES) {
+            result = new HashSet<>(PROVISIONING_ORCH_NAMES);
+        }
+        for (ComputeCloudAgent agent : getAgentRegistry().getAgents()) {
+            result.add(agent.getOrchName());
+        }
+        result.addAll(getWarmPools().getOrchNames());
+        return result;
+    }
 
-            // If the start/wait fails, delete the orchestration.
-            // However, if the orchestration is in error status, extract the error message from the orchestration
-            // and include it in the exception message or else the user will have no way to diagnose the failure after we delete the orchestration.
-            InstanceOrchestration instance;
-            try {
-                instance = startInstanceAndAwait(client, orchName, timeoutHelper);
-                String ip = instance.getIp();
-                LOGGER.info("Provisioned orchestration " + orchName + " with public ip " + ip);
-                awaitInstanceSshAvailable(ip, template.getSshConnectTimeoutMillis(), timeoutHelper);
-                template.resetFailureCount();
+    /**
+     * Recycles orchestrations named with {@link #ORCHESTRATION_NAME_PREFIX}
+     * that are not used by any agent, warm pool, provisioning in progress or
+     * recycle.  Orchestrations are only recycled once they have been orphaned
+     * for the grace period, so agents that have been provisioned but not yet
+     * added to Jenkins are not recycled.  Called periodically by
+     * {@link ComputeCloudOrphanCollector}.
+     *
+     * @param graceNanos the time an orchestration must be orphaned before it
+     * is recycled
+     * @param dryRun true to only log the orphans rather than recycling them
+     * @return the names of the orphans that were recycled, or that would
+     * have been recycled if this is a dry run
+     * @throws ComputeCloudClientException if the orchestrations cannot be
+     * listed
+     */
+    List<String> collectOrphans(long graceNanos, boolean dryRun) throws ComputeCloudClientException {
+        Collection<InstanceOrchestration> orchs;
+        try (ComputeCloudClient client = createClient(ComputeCloudWorkload.MONITOR)) {
+            orchs = client.getInstanceOrchestrations(ORCHESTRATION_NAME_PREFIX);
+        }
 
-                return newComputeCloudAgent(name, template, this.name, orchName, ip);
-            } catch (Exception e) {
-                try {
-                    stopAndDeleteOrchestration(client, template.getStartTimeoutNanos(), orchName);
-                    LOGGER.log(Level.WARNING, "Provision node: " + orchName + " failed, and created resources have been recycled.", e);
-                } catch (Exception ex) {
-                    LOGGER.log(Level.WARNING, "Provision node: " + orchName + " failed, and failed to recycle node " + orchName, ex);
+        // Find the used orchestrations after listing so that orchestrations
+        // created in the meantime are used.
+        Set<String> used = getUsedOrchNames();
+        ComputeCloudRecycleJournal journal = getRecycleJournal();
+        long nowNanos = getClock().nanoTime();
+
+        List<String> result = new ArrayList<>();
+        synchronized (this) {
+            Map<String, Long> previousOrphanNanos = orphanNanos == null ? Collections.<String, Long>emptyMap() : orphanNanos;
+            orphanNanos = new HashMap<>();
+            for (InstanceOrchestration orch : orchs) {
+                String orchName = orch.getName();
+                if (!orchName.startsWith(ORCHESTRATION_NAME_PREFIX) || used.contains(orchName) || journal.contains(orchName)) {
+                    continue;
+                }
+
+                Long firstNanos = previousOrphanNanos.get(orchName);
+                if (firstNanos == null) {
+                    firstNanos = nowNanos;
+                }
+                if (dryRun || nowNanos - firstNanos < graceNanos) {
+                    orphanNanos.put(orchName, firstNanos);
+                }
+                if (nowNanos - firstNanos >= graceNanos) {
+                    result.add(orchName);
                 }
-                throw e;
             }
-        } catch (Exception e) {
-            template.increaseFailureCount(e.getMessage());
-            throw e;
         }
-    }
 
-    Clock getClock() {
-        return Clock.INSTANCE;
+        for (String orchName : result) {
+            if (dryRun) {
+                LOGGER.log(Level.INFO, "Found orphaned orchestration {0}, which would be recycled", orchName);
+            } else {
+                LOGGER.log(Level.WARNING, "Recycling orphaned orchestration {0}", orchName);
+                getReaper().recycle(orchName);
+            }
+        }
+        return result;
     }
 
     /**
-     * Start instance and await its status to be running before return this instance
+     * Stops the orchestration of a terminated agent so it can be started
+     * again if its template keeps suspended orchestrations, or otherwise
+     * recycles it.  Orchestrations with several agents are recycled when the
+     * last agent is terminated.  The orchestration is stopped in the
+     * background by {@link ComputeCloudReaper}, so this does not wait for it
+     * to stop.
+     *
+     * @param agentName the name of the agent
+     * @param orchName the name of orchestration
+     * @param templateId the id of the template of the agent, or null if
+     * unknown
+     * @param configDigest the configuration digest of the template when the
+     * orchestration was created, or null if unknown.  The orchestration is
+     * only kept if the template still has the same configuration.
+     * @throws InterruptedException if thread is interrupted.
+     * @throws IOException if request hit IO exception.
      */
-    private InstanceOrchestration startInstanceAndAwait(ComputeCloudClient client, String orchName, TimeoutHelper timeoutHelper) throws Exception {
-        client.startOrchestration(orchName);
-
-        do {
-            InstanceOrchestration instanceOrch = client.getInstanceOrchestration(orchName);
-
-            InstanceOrchestration.Status status = instanceOrch.getStatus();
-            if (status == InstanceOrchestration.Status.ready) {
-                return instanceOrch;
+    public void releaseCloudResources(String agentName, String orchName, Integer templateId, String configDigest) throws InterruptedException, IOException {
+        if (orchName.startsWith(BATCH_ORCHESTRATION_NAME_PREFIX)) {
+            // The instances of the orchestration cannot be stopped or deleted
+            // individually, and starting it again would start all of them.
+            if (getAgentRegistry().removeTerminated(name, templateId, agentName, orchName)) {
+                getReaper().recycle(orchName);
+            } else {
+                LOGGER.log(Level.FINE, "Keeping orchestration {0} for other agents", orchName);
             }
+            return;
+        }
 
-            if (status != InstanceOrchestration.Status.starting) {
-                throw new IOException("Instance " + orchName + " has status " + status + " rather than starting or ready");
+        ComputeCloudAgentTemplate template = templateId == null ? null : getTemplateById(templateId);
+        if (template != null && template.getConfigDigest().equals(configDigest)) {
+            ComputeCloudWarmPool pool = getWarmPool(template);
+            if (pool.reserveSuspend(template.getMaxSuspendedAgentsValue())) {
+                getReaper().suspend(orchName, pool);
+                return;
             }
-        } while (timeoutHelper.sleep());
+        }
 
-        IOException ex = new IOException("Timed out waiting for orchestration to have ready status");
-        // in case exception would be override by stopAndDeleteInstance exception
-        LOGGER.log(Level.WARNING, "Timed out waiting for orchestration to have ready status", ex);
-        throw ex;
+        getReaper().recycle(orchName);
+    }
+
+    Clock getClock() {
+        return Clock.INSTANCE;
     }
 
     SshConnector getSshConnector() {
         return SshConnector.INSTANCE;
     }
 
-    private void awaitInstanceSshAvailable(String host, int connectTimeoutMillis, TimeoutHelper timeoutHelper) throws IOException, InterruptedException {
+    SshPortProber getSshPortProber() {
+        return SshPortProber.INSTANCE;
+    }
+
+    SshConnectionHandoff getSshConnectionHandoff() {
+        return SshConnectionHandoff.INSTANCE;
+    }
+
+    private boolean isSshAvailable(String host, ComputeCloudAgentTemplate template) throws IOException, InterruptedException {
         SshConnector sshConnector = getSshConnector();
-        do {
-            Connection conn = sshConnector.createConnection(host);
-            try {
-                sshConnector.connect(conn, connectTimeoutMillis);
-                return;
-            } catch (IOException e) {
-                LOGGER.log(Level.FINER, "Ignoring exception connecting to SSH during privision", e);
-            } finally {
+        Connection conn = sshConnector.createConnection(host);
+        try {
+            sshConnector.connect(conn, template.getSshConnectTimeoutMillis());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Ignoring exception connecting to SSH during privision", e);
+            conn.close();
+            return false;
+        }
+
+        // Authenticate and hand the connection to the first launch of the
+        // agent.  The launcher connects again if authentication fails here,
+        // for example if the key has not been installed yet.
+        boolean offered = false;
+        try {
+            String privateKey = template.getPrivateKey();
+            if (privateKey != null && sshConnector.authenticate(conn, template.getSshUserValue(), privateKey)) {
+                getSshConnectionHandoff().offer(host, conn);
+                offered = true;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Ignoring exception authenticating to SSH during privision", e);
+        } finally {
+            if (!offered) {
                 conn.close();
             }
-        } while (timeoutHelper.sleep());
+        }
+        return true;
+    }
 
-        throw new IOException("Timed out connecting to SSH");
+    public int countCurrentComputeCloudAgents() {
+        return getAgentRegistry().getAgentCount(name);
     }
 
-    List<Node> getNodes() {
-        return JenkinsUtil.getJenkinsInstance().getNodes();
+    /**
+     * Returns the number of agents that are being provisioned for planned
+     * nodes, or that have been provisioned but not yet added to Jenkins.
+     */
+    int countPlannedAgents() {
+        return getAgentRegistry().getPlannedCount(name, getClock().nanoTime());
     }
 
-    public int countCurrentComputeCloudAgents() {
-        int r = 0;
-        for (Node n : getNodes())
-            if (n instanceof ComputeCloudAgent) {
-                ComputeCloudAgent agent = (ComputeCloudAgent)n;
-                if (name.equals(agent.getCloudName())) {
-                    r++;
-                }
-            }
-        return r;
+    private static boolean matches(ComputeCloudAgentTemplate t, Label label) {
+        if (t.getMode() == Node.Mode.NORMAL) {
+            return label == null || label.matches(t.getLabelAtoms());
+        }
+        if (t.getMode() == Node.Mode.EXCLUSIVE) {
+            return label != null && label.matches(t.getLabelAtoms());
+        }
+        return false;
     }
 
-    public ComputeCloudAgentTemplate getTemplate(Label label) {
+    /**
+     * Returns the templates whose labels match a label, including disabled
+     * templates.  The result is cached since it is needed for each label in
+     * the queue every time NodeProvisioner runs, and it does not change
+     * since the templates are replaced along with the cloud.
+     */
+    private List<ComputeCloudAgentTemplate> getMatchingTemplates(Label label) {
+        synchronized (this) {
+            if (matchingTemplates == null) {
+                matchingTemplates = new HashMap<>();
+            }
+            List<ComputeCloudAgentTemplate> result = matchingTemplates.get(label);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        List<ComputeCloudAgentTemplate> result = new ArrayList<>();
         for (ComputeCloudAgentTemplate t : templates) {
-            if (t.getDisableCause() != null) {
-                continue;
+            if (matches(t, label)) {
+                result.add(t);
             }
-            if (t.getMode() == Node.Mode.NORMAL) {
-                if (label == null || label.matches(t.getLabelAtoms())) {
-                    return t;
-                }
-            } else if (t.getMode() == Node.Mode.EXCLUSIVE) {
-                if (label != null && label.matches(t.getLabelAtoms())) {
-                    return t;
-                }
+        }
+        result = Collections.unmodifiableList(result);
+
+        synchronized (this) {
+            if (matchingTemplates.size() >= MATCHING_TEMPLATES_CACHE_SIZE) {
+                matchingTemplates.clear();
+            }
+            matchingTemplates.put(label, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the templates that can provision agents for a label, in order
+     * of preference, which is the order they are configured.  Templates
+     * whose breaker is open are only returned once their cooldown has
+     * elapsed.
+     *
+     * @param label the label, or null for jobs without a label
+     * @return the templates
+     */
+    public List<ComputeCloudAgentTemplate> getTemplates(Label label) {
+        List<ComputeCloudAgentTemplate> result = new ArrayList<>();
+        for (ComputeCloudAgentTemplate t : getMatchingTemplates(label)) {
+            if (isAvailable(t.getCircuitBreaker())) {
+                result.add(t);
+            }
+        }
+        return result;
+    }
+
+    public ComputeCloudAgentTemplate getTemplate(Label label) {
+        for (ComputeCloudAgentTemplate t : getMatchingTemplates(label)) {
+            if (isAvailable(t.getCircuitBreaker())) {
+                return t;
             }
         }
         return null;
@@ -445,16 +1998,26 @@ public class ComputeCloud extends AbstractCloudImpl {
             sendError(Messages.ComputeCloud_provision_templateNotFound(), req, rsp);
             return;
         }
-        if (template.getDisableCause() != null) {
+        ComputeCloudCircuitBreaker.State templateState = tryAcquire(template.getCircuitBreaker());
+        if (templateState == null) {
             sendError(Messages.ComputeCloud_provision_templateDisabled(), req, rsp);
             return;
         }
+        boolean templateProbe = templateState == ComputeCloudCircuitBreaker.State.HALF_OPEN;
+        ComputeCloudCircuitBreaker.State endpointState = tryAcquire(getEndpointCircuitBreaker());
+        if (endpointState == null) {
+            cancelProbes(template, templateProbe, false);
+            sendError(Messages.ComputeCloud_provision_endpointUnavailable(), req, rsp);
+            return;
+        }
 
         // Note that this will directly add a new node without involving
         // NodeProvisioner, so that class will not be aware that a node is being
         // provisioned until ExplicitProvisioner adds it.
         ExplicitProvisioner provisioner = new ExplicitProvisioner(template);
-        getThreadPoolForRemoting().submit(provisioner);
+        provisioner.setProbes(templateProbe, endpointState == ComputeCloudCircuitBreaker.State.HALF_OPEN);
+        provisioner.addPlannedNode();
+        provisioner.start();
 
         req.setAttribute(PROVISION_ATTR_AGENT_NAME, provisioner.name);
         req.setAttribute(PROVISION_ATTR_NUM_EXECUTORS, provisioner.numExecutors);
@@ -471,18 +2034,20 @@ public class ComputeCloud extends AbstractCloudImpl {
         }
 
         @Override
-        public Node call() throws Exception {
+        void done(Node node, Exception failure) {
             // Simulate NodeProvisioner.update.
             String displayName = getPlannedNodeDisplayName();
-            try {
-                addNode(super.call());
-                LOGGER.log(Level.INFO, "{0} provisioning successfully completed", displayName);
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "Provisioned slave " + displayName + " failed!", e);
+            if (failure == null) {
+                try {
+                    addNode(node);
+                    LOGGER.log(Level.INFO, "{0} provisioning successfully completed", displayName);
+                    return;
+                } catch (Exception e) {
+                    failure = e;
+                    getAgentRegistry().removePlanned(name);
+                }
             }
-
-            // doProvision does not use the Future.
-            return null;
+            LOGGER.log(Level.WARNING, "Provisioned slave " + displayName + " failed!", failure);
         }
     }
 
@@ -532,7 +2097,17 @@ public class ComputeCloud extends AbstractCloudImpl {
     }
 
     public ComputeCloudClient createClient() {
-        return ComputeCloudPlugin.CLIENT_MANAGER.createClient(this);
+        return createClient(ComputeCloudWorkload.PROVISION);
+    }
+
+    /**
+     * Creates a client that shares the request permits of a workload.
+     *
+     * @param workload the workload
+     * @return the client
+     */
+    public ComputeCloudClient createClient(ComputeCloudWorkload workload) {
+        return ComputeCloudPlugin.CLIENT_MANAGER.createClient(this, workload);
     }
 
     @Override
@@ -708,7 +2283,7 @@ public class ComputeCloud extends AbstractCloudImpl {
 
             URI apiEndpointUrl = apiEndpointValid.getValue();
             ComputeCloudUser user = ComputeCloudUser.valueOf(identityDomainName, userName);
-            return getComputeCloudClientManager().createClient(apiEndpointUrl, user, password);
+            return getComputeCloudClientManager().createClient(apiEndpointUrl, user, password, ComputeCloudWorkload.FORM_FILL);
         }
 
         public static FormValidation toFormValidation(ComputeCloudClientException e) {
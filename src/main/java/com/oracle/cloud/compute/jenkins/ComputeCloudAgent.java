@@ -35,6 +35,17 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
 
     private final String cloudName;
     private final String orchName;
+    /**
+     * The id of the template, or null for agents that were created before
+     * the id was recorded.
+     */
+    private final Integer templateId;
+    /**
+     * The {@link ComputeCloudAgentTemplate#getConfigDigest} of the template
+     * when the orchestration was created, or null for agents that were
+     * created before the digest was recorded.
+     */
+    private String configDigest;
 
     public ComputeCloudAgent(
             final String name,
@@ -53,12 +64,14 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
                 Collections.<NodeProperty<?>> emptyList(),
                 cloudName,
                 orchName,
+                template.getTemplateId(),
                 template.getSshUserValue(),
                 template.getSshConnectTimeoutMillis(),
                 template.getPrivateKey(),
                 template.getInitScript(),
                 template.getInitScriptTimeoutSeconds(),
                 host);
+        this.configDigest = template.getConfigDigest();
     }
 
     @DataBoundConstructor
@@ -73,6 +86,7 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
             final List<? extends NodeProperty<?>> nodeProperties,
             final String cloudName,
             final String orchName,
+            final Integer templateId,
             final String sshUser,
             final int sshConnectTimeoutMillis,
             final String privateKey,
@@ -98,6 +112,7 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
                 nodeProperties);
         this.cloudName = cloudName;
         this.orchName = orchName;
+        this.templateId = templateId;
     }
 
     @Override
@@ -113,6 +128,18 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
         return cloudName;
     }
 
+    public String getOrchName() {
+        return orchName;
+    }
+
+    public Integer getTemplateId() {
+        return templateId;
+    }
+
+    public String getConfigDigest() {
+        return configDigest;
+    }
+
     /**
      * Terminates the instance in Oracle Cloud Infrastructure Compute Classic
      */
@@ -125,8 +152,8 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
             return;
         }
 
-        // recycle cloud resources; remove this node from jenkins has been done in parent class
-        cloud.recycleCloudResources(orchName);
+        // suspend or recycle cloud resources; remove this node from jenkins has been done in parent class
+        cloud.releaseCloudResources(getNodeName(), orchName, templateId, configDigest);
     }
 
     boolean isAlive() throws IOException, ComputeCloudClientException {
@@ -135,8 +162,8 @@ public class ComputeCloudAgent extends AbstractCloudSlave {
             throw new IllegalStateException("the Oracle Cloud Infrastructure Compute Classic " + getCloudName() + " does not exist");
         }
 
-        try (ComputeCloudClient client = cloud.createClient()) {
-            InstanceOrchestration.Status status = client.getInstanceOrchestration(orchName).getStatus();
+        try (ComputeCloudClient client = cloud.createClient(ComputeCloudWorkload.MONITOR)) {
+            InstanceOrchestration.Status status = cloud.getInstanceOrchestration(client, orchName).getStatus();
             if (status == InstanceOrchestration.Status.ready
                     || status == InstanceOrchestration.Status.starting
                     || status == InstanceOrchestration.Status.updating) {
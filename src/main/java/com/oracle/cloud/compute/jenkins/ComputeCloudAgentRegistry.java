@@ -0,0 +1,326 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The agents of all clouds that have been added to Jenkins, indexed by cloud
+ * name and template id, and the agents that are being provisioned for
+ * planned nodes.  Agents are registered by {@link ComputeCloudComputer} as
+ * Jenkins creates and removes their computers, so the agents of a cloud can
+ * be counted without iterating over all nodes of Jenkins, and agents that
+ * are still booting count toward the instance cap.
+ */
+public class ComputeCloudAgentRegistry {
+    private static final String CLASS_NAME = ComputeCloudAgentRegistry.class.getName();
+
+    public static final ComputeCloudAgentRegistry INSTANCE = new ComputeCloudAgentRegistry();
+
+    /**
+     * The time that a provisioned agent is counted as planned until it is
+     * added to Jenkins.  Agents that are never added, for example because
+     * adding the node failed, are no longer counted after this time.
+     */
+    static final long PLANNED_NODE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".plannedNodeTimeoutMinutes", 5));
+
+    private static class Planned {
+        final String cloudName;
+        final Integer templateId;
+
+        /**
+         * True once the agent has been provisioned and handed to Jenkins.
+         */
+        boolean provisioned;
+        long provisionedNanos;
+
+        Planned(String cloudName, Integer templateId) {
+            this.cloudName = cloudName;
+            this.templateId = templateId;
+        }
+    }
+
+    private static class CloudAgents {
+        /**
+         * The agents by node name by template id.  The template id is null
+         * for agents that were created before the id was recorded.
+         */
+        final Map<Integer, Map<String, ComputeCloudAgent>> agents = new HashMap<>();
+        int agentCount;
+
+        /**
+         * The planned agents by node name.
+         */
+        final Map<String, Planned> planned = new LinkedHashMap<>();
+
+        boolean isEmpty() {
+            return agentCount == 0 && planned.isEmpty();
+        }
+    }
+
+    // Guarded by this.
+    private final Map<String, ComputeCloudAgent> agents = new HashMap<>();
+    private final Map<String, CloudAgents> clouds = new HashMap<>();
+    private final Map<String, Planned> planned = new HashMap<>();
+
+    private CloudAgents getCloudAgents(String cloudName) {
+        CloudAgents result = clouds.get(cloudName);
+        if (result == null) {
+            result = new CloudAgents();
+            clouds.put(cloudName, result);
+        }
+        return result;
+    }
+
+    private void removeIfEmpty(String cloudName, CloudAgents cloudAgents) {
+        if (cloudAgents.isEmpty()) {
+            clouds.remove(cloudName);
+        }
+    }
+
+    /**
+     * Registers an agent that has been added to Jenkins, replacing any agent
+     * with the same node name.  The agent is no longer counted as planned.
+     *
+     * @param agent the agent
+     */
+    public synchronized void add(ComputeCloudAgent agent) {
+        String nodeName = agent.getNodeName();
+        remove(nodeName);
+        removePlanned(nodeName);
+
+        agents.put(nodeName, agent);
+        CloudAgents cloudAgents = getCloudAgents(agent.getCloudName());
+        Map<String, ComputeCloudAgent> templateAgents = cloudAgents.agents.get(agent.getTemplateId());
+        if (templateAgents == null) {
+            templateAgents = new LinkedHashMap<>();
+            cloudAgents.agents.put(agent.getTemplateId(), templateAgents);
+        }
+        templateAgents.put(nodeName, agent);
+        cloudAgents.agentCount++;
+    }
+
+    /**
+     * Unregisters an agent that has been removed from Jenkins.
+     *
+     * @param nodeName the node name of the agent
+     */
+    public synchronized void remove(String nodeName) {
+        ComputeCloudAgent agent = agents.remove(nodeName);
+        if (agent == null) {
+            return;
+        }
+
+        CloudAgents cloudAgents = clouds.get(agent.getCloudName());
+        Map<String, ComputeCloudAgent> templateAgents = cloudAgents.agents.get(agent.getTemplateId());
+        templateAgents.remove(nodeName);
+        if (templateAgents.isEmpty()) {
+            cloudAgents.agents.remove(agent.getTemplateId());
+        }
+        cloudAgents.agentCount--;
+        removeIfEmpty(agent.getCloudName(), cloudAgents);
+    }
+
+    /**
+     * Unregisters an agent that is being terminated, and returns whether no
+     * other registered agent of the template uses its orchestration.
+     * Jenkins only removes an agent after it is terminated, so the agent is
+     * unregistered early, and doing so atomically with the check ensures
+     * that exactly one of several agents of an orchestration that are
+     * terminated concurrently finds that it was the last.
+     *
+     * @param cloudName the name of the cloud
+     * @param templateId the id of the template of the agent
+     * @param nodeName the node name of the agent
+     * @param orchName the name of the orchestration of the agent
+     * @return true if no other agents use the orchestration
+     */
+    public synchronized boolean removeTerminated(String cloudName, Integer templateId, String nodeName, String orchName) {
+        remove(nodeName);
+        for (ComputeCloudAgent agent : getAgents(cloudName, templateId)) {
+            if (orchName.equals(agent.getOrchName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the agents of all clouds.
+     *
+     * @return the agents
+     */
+    public synchronized List<ComputeCloudAgent> getAgents() {
+        return new ArrayList<>(agents.values());
+    }
+
+    /**
+     * Returns the agents of a cloud.
+     *
+     * @param cloudName the name of the cloud
+     * @return the agents
+     */
+    public synchronized List<ComputeCloudAgent> getAgents(String cloudName) {
+        List<ComputeCloudAgent> result = new ArrayList<>();
+        CloudAgents cloudAgents = clouds.get(cloudName);
+        if (cloudAgents != null) {
+            for (Map<String, ComputeCloudAgent> templateAgents : cloudAgents.agents.values()) {
+                result.addAll(templateAgents.values());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the agents of a template of a cloud.
+     *
+     * @param cloudName the name of the cloud
+     * @param templateId the id of the template
+     * @return the agents
+     */
+    public synchronized List<ComputeCloudAgent> getAgents(String cloudName, Integer templateId) {
+        CloudAgents cloudAgents = clouds.get(cloudName);
+        Map<String, ComputeCloudAgent> templateAgents = cloudAgents == null ? null : cloudAgents.agents.get(templateId);
+        return templateAgents == null ? new ArrayList<ComputeCloudAgent>() : new ArrayList<>(templateAgents.values());
+    }
+
+    /**
+     * Returns the number of agents of a cloud.
+     *
+     * @param cloudName the name of the cloud
+     * @return the number of agents
+     */
+    public synchronized int getAgentCount(String cloudName) {
+        CloudAgents cloudAgents = clouds.get(cloudName);
+        return cloudAgents == null ? 0 : cloudAgents.agentCount;
+    }
+
+    /**
+     * Returns the number of agents of a template of a cloud.
+     *
+     * @param cloudName the name of the cloud
+     * @param templateId the id of the template
+     * @return the number of agents
+     */
+    public synchronized int getAgentCount(String cloudName, Integer templateId) {
+        CloudAgents cloudAgents = clouds.get(cloudName);
+        Map<String, ComputeCloudAgent> templateAgents = cloudAgents == null ? null : cloudAgents.agents.get(templateId);
+        return templateAgents == null ? 0 : templateAgents.size();
+    }
+
+    /**
+     * Records that an agent is being provisioned for a planned node.  The
+     * agent is counted until it is added to Jenkins or provisioning fails.
+     *
+     * @param cloudName the name of the cloud
+     * @param templateId the id of the template
+     * @param nodeName the node name of the agent
+     */
+    public synchronized void addPlanned(String cloudName, Integer templateId, String nodeName) {
+        if (agents.containsKey(nodeName) || planned.containsKey(nodeName)) {
+            return;
+        }
+
+        Planned p = new Planned(cloudName, templateId);
+        planned.put(nodeName, p);
+        getCloudAgents(cloudName).planned.put(nodeName, p);
+    }
+
+    /**
+     * Records that an agent for a planned node has been provisioned and
+     * handed to Jenkins, which adds it shortly.
+     *
+     * @param nodeName the node name of the agent
+     * @param nowNanos the current time
+     */
+    public synchronized void provisioned(String nodeName, long nowNanos) {
+        Planned p = planned.get(nodeName);
+        if (p != null) {
+            p.provisioned = true;
+            p.provisionedNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Records that an agent for a planned node failed to provision.
+     *
+     * @param nodeName the node name of the agent
+     */
+    public synchronized void removePlanned(String nodeName) {
+        Planned p = planned.remove(nodeName);
+        if (p != null) {
+            CloudAgents cloudAgents = clouds.get(p.cloudName);
+            cloudAgents.planned.remove(nodeName);
+            removeIfEmpty(p.cloudName, cloudAgents);
+        }
+    }
+
+    /**
+     * Returns the number of agents of a cloud that are being provisioned for
+     * planned nodes or have not yet been added to Jenkins.
+     *
+     * @param cloudName the name of the cloud
+     * @param nowNanos the current time
+     * @return the number of agents
+     */
+    public synchronized int getPlannedCount(String cloudName, long nowNanos) {
+        CloudAgents cloudAgents = getPlanned(cloudName, nowNanos);
+        return cloudAgents == null ? 0 : cloudAgents.planned.size();
+    }
+
+    /**
+     * Returns the number of agents of a template of a cloud that are being
+     * provisioned for planned nodes or have not yet been added to Jenkins.
+     *
+     * @param cloudName the name of the cloud
+     * @param templateId the id of the template
+     * @param nowNanos the current time
+     * @return the number of agents
+     */
+    public synchronized int getPlannedCount(String cloudName, Integer templateId, long nowNanos) {
+        CloudAgents cloudAgents = getPlanned(cloudName, nowNanos);
+        if (cloudAgents == null) {
+            return 0;
+        }
+
+        int result = 0;
+        for (Planned p : cloudAgents.planned.values()) {
+            if (Objects.equals(templateId, p.templateId)) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the planned agents of a cloud that have timed out.
+     *
+     * @return the agents of the cloud, or null if there are none
+     */
+    private CloudAgents getPlanned(String cloudName, long nowNanos) {
+        CloudAgents cloudAgents = clouds.get(cloudName);
+        if (cloudAgents == null) {
+            return null;
+        }
+
+        for (Iterator<Map.Entry<String, Planned>> iter = cloudAgents.planned.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, Planned> entry = iter.next();
+            Planned p = entry.getValue();
+            if (p.provisioned && nowNanos - p.provisionedNanos >= PLANNED_NODE_TIMEOUT_NANOS) {
+                iter.remove();
+                planned.remove(entry.getKey());
+            }
+        }
+
+        if (cloudAgents.isEmpty()) {
+            clouds.remove(cloudName);
+            return null;
+        }
+        return cloudAgents;
+    }
+}
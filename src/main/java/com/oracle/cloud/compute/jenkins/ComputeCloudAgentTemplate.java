@@ -2,11 +2,16 @@ package com.oracle.cloud.compute.jenkins;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.UnrecoverableKeyException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -55,6 +60,12 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
     private static final String DEFAULT_SSH_USER = "opc";
     static final int FAILURE_COUNT_LIMIT = 3;
 
+    /**
+     * The weight of the most recent provisioning in the failure rate and
+     * time to ready of a template.
+     */
+    static final double OUTCOME_WEIGHT = 0.25;
+
     private static FormValidationValue<String> checkVolumeSize(String value) {
         FormValidation fv = JenkinsUtil.validateRequired(value);
         if (fv.kind != FormValidation.Kind.OK) {
@@ -104,9 +115,23 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
     private final String privateKey;
     private final String startTimeoutSeconds;
     private final String initScriptTimeoutSeconds;
+    private final String minSpareAgents;
+    private final String maxSpareAgents;
+    private final String maxSuspendedAgents;
+    private final String maxBatchSize;
+
+    private transient String configDigest;
+    private transient ComputeCloudCircuitBreaker circuitBreaker;
 
-    private transient int failureCount;
-    private transient String disableCause;
+    // Moving averages of recent provisioning.  The failure rate rather than
+    // the success rate is recorded since transient fields are zero when the
+    // template is deserialized.
+    private transient double failureRate;
+    private transient long readyNanos;
+
+    private transient PollingPolicy startPollingPolicy;
+    private transient PollingPolicy stopPollingPolicy;
+    private transient PollingPolicy resumePollingPolicy;
 
     @DataBoundConstructor
     public ComputeCloudAgentTemplate(
@@ -131,7 +156,11 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
             final String privateKey,
             final String initScript,
             final String startTimeoutSeconds,
-            final String initScriptTimeoutSeconds) {
+            final String initScriptTimeoutSeconds,
+            final String minSpareAgents,
+            final String maxSpareAgents,
+            final String maxSuspendedAgents,
+            final String maxBatchSize) {
         this.description = description;
         this.numExecutors = numExecutors;
         this.mode = mode;
@@ -155,6 +184,10 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
         this.initScript = initScript;
         this.startTimeoutSeconds = startTimeoutSeconds;
         this.initScriptTimeoutSeconds = initScriptTimeoutSeconds;
+        this.minSpareAgents = minSpareAgents;
+        this.maxSpareAgents = maxSpareAgents;
+        this.maxSuspendedAgents = maxSuspendedAgents;
+        this.maxBatchSize = maxBatchSize;
     }
 
     public String getDisplayName() {
@@ -202,10 +235,58 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
         return idleTerminationMinutes;
     }
 
+    private static FormValidationValue<Integer> checkIdleTerminationMinutes(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return FormValidationValue.ok(0);
+        }
+        return FormValidationValue.validateNonNegativeInteger(value, 0);
+    }
+
+    /**
+     * Returns the time that agents can be idle before they are terminated,
+     * or 0 if idle agents are not terminated.
+     */
+    public long getIdleTerminationNanos() {
+        return TimeUnit.MINUTES.toNanos(checkIdleTerminationMinutes(idleTerminationMinutes).getValue());
+    }
+
     public int getTemplateId() {
         return templateId;
     }
 
+    /**
+     * Returns a digest of the configuration that is used to create
+     * orchestrations and agents.  Orchestrations created for a template with
+     * a different digest must not be reused for this template.  Settings
+     * that only affect how many agents are provisioned or how long to wait
+     * for them are not included.
+     *
+     * @return the digest as a hexadecimal string
+     */
+    public String getConfigDigest() {
+        if (configDigest == null) {
+            StringBuilder config = new StringBuilder();
+            for (Object value : Arrays.asList(
+                    description, labelString, mode, initScript, numExecutors, idleTerminationMinutes,
+                    orchDescription, shapeName, securityListNames, imageListSource, imageListName,
+                    imageListEntry, hypervisorPVEnabled, volumeSize, remoteFS, sshUser,
+                    sshConnectTimeoutSeconds, sshKeyName, privateKey, initScriptTimeoutSeconds)) {
+                // Prefix each value with its length so that values cannot
+                // run into each other.
+                String s = String.valueOf(value);
+                config.append(s.length()).append(':').append(s);
+            }
+
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(config.toString().getBytes(StandardCharsets.UTF_8));
+                configDigest = String.format("%064x", new BigInteger(1, digest));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return configDigest;
+    }
+
     public String getOrchDescription() {
         return orchDescription;
     }
@@ -324,26 +405,180 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
         return TimeUnit.SECONDS.toNanos(checkStartTimeoutSeconds(startTimeoutSeconds).getValue());
     }
 
-    public synchronized void increaseFailureCount(String cause) {
-        if (++failureCount >= FAILURE_COUNT_LIMIT) {
-            LOGGER.warning("Agent template " + getDisplayName() + " disabled due to error: " + cause);
-            disableCause = cause;
+    public String getMinSpareAgents() {
+        return minSpareAgents;
+    }
+
+    private static FormValidationValue<Integer> checkSpareAgents(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return FormValidationValue.ok(0);
         }
+        return FormValidationValue.validateNonNegativeInteger(value, 0);
     }
 
-    public synchronized void resetFailureCount() {
-        if (failureCount > 0) {
-            failureCount = 0;
-            if (LOGGER.isLoggable(Level.FINE)) LOGGER.fine("Agent template " + getDisplayName() + " is reset");
+    /**
+     * Returns the number of agents to keep in the warm pool.
+     */
+    public int getMinSpareAgentsValue() {
+        return checkSpareAgents(minSpareAgents).getValue();
+    }
+
+    public String getMaxSpareAgents() {
+        return maxSpareAgents;
+    }
+
+    /**
+     * Returns the number of agents to keep in the warm pool after an agent
+     * was requested while the pool was empty.  This is at least the minimum.
+     */
+    public int getMaxSpareAgentsValue() {
+        return Math.max(checkSpareAgents(maxSpareAgents).getValue(), getMinSpareAgentsValue());
+    }
+
+    public String getMaxSuspendedAgents() {
+        return maxSuspendedAgents;
+    }
+
+    /**
+     * Returns the number of orchestrations of terminated agents to stop
+     * rather than delete so they can be started again.
+     */
+    public int getMaxSuspendedAgentsValue() {
+        return checkSpareAgents(maxSuspendedAgents).getValue();
+    }
+
+    public String getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    private static FormValidationValue<Integer> checkMaxBatchSize(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return FormValidationValue.ok(1);
         }
-        if (disableCause != null) {
-            disableCause = null;
-            LOGGER.info("Agent template " + getDisplayName() + " is re-enabled");
+        return FormValidationValue.validatePositiveInteger(value, 1);
+    }
+
+    /**
+     * Returns the maximum number of agents to provision with a single
+     * orchestration when more than one agent is needed.
+     */
+    public int getMaxBatchSizeValue() {
+        return checkMaxBatchSize(maxBatchSize).getValue();
+    }
+
+    /**
+     * Returns the circuit breaker that stops provisioning from this template
+     * after consecutive failures, and that allows a probe after a cooldown.
+     */
+    public synchronized ComputeCloudCircuitBreaker getCircuitBreaker() {
+        if (circuitBreaker == null) {
+            circuitBreaker = new ComputeCloudCircuitBreaker("agent template " + getDisplayName(), FAILURE_COUNT_LIMIT);
         }
+        return circuitBreaker;
     }
 
-    public synchronized String getDisableCause() {
-        return disableCause;
+    /**
+     * Records that provisioning from this template failed at the current
+     * time.
+     *
+     * @param cause the error
+     */
+    public void increaseFailureCount(String cause) {
+        increaseFailureCount(cause, Clock.INSTANCE.nanoTime());
+    }
+
+    /**
+     * Records that provisioning from this template failed.
+     *
+     * @param cause the error
+     * @param nowNanos the current time
+     */
+    public void increaseFailureCount(String cause, long nowNanos) {
+        synchronized (this) {
+            failureRate += (1 - failureRate) * OUTCOME_WEIGHT;
+        }
+        getCircuitBreaker().recordFailure(cause, nowNanos);
+    }
+
+    public void resetFailureCount() {
+        getCircuitBreaker().recordSuccess();
+    }
+
+    /**
+     * Returns the most recent error if provisioning from this template is
+     * stopped or being probed, or null otherwise.
+     */
+    public String getDisableCause() {
+        return getCircuitBreaker().getCause();
+    }
+
+    int getFailureCount() {
+        return getCircuitBreaker().getFailureCount();
+    }
+
+    /**
+     * Records that an agent was provisioned.
+     *
+     * @param durationNanos the time from creating or starting the
+     * orchestration until the agent accepted SSH connections, or 0 if the
+     * time should not be recorded
+     */
+    synchronized void recordProvisioned(long durationNanos) {
+        failureRate -= failureRate * OUTCOME_WEIGHT;
+        if (durationNanos > 0) {
+            readyNanos = readyNanos == 0 ? durationNanos : readyNanos + (long)((durationNanos - readyNanos) * OUTCOME_WEIGHT);
+        }
+    }
+
+    /**
+     * Returns the moving average of the fraction of provisioning that
+     * failed.
+     */
+    synchronized double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * Returns the moving average of the time to provision an agent, or 0 if
+     * no agent has been provisioned.
+     */
+    synchronized long getReadyNanos() {
+        return readyNanos;
+    }
+
+    /**
+     * Returns the policy for polling orchestrations of this template while
+     * they start.
+     */
+    synchronized PollingPolicy getStartPollingPolicy() {
+        // Lazily created since transient fields are not set when the
+        // template is deserialized.
+        if (startPollingPolicy == null) {
+            startPollingPolicy = new PollingPolicy();
+        }
+        return startPollingPolicy;
+    }
+
+    /**
+     * Returns the policy for polling stopped orchestrations of this template
+     * while they start again, which is much faster than creating them.
+     */
+    synchronized PollingPolicy getResumePollingPolicy() {
+        if (resumePollingPolicy == null) {
+            resumePollingPolicy = new PollingPolicy();
+        }
+        return resumePollingPolicy;
+    }
+
+    /**
+     * Returns the policy for polling orchestrations of this template while
+     * they stop.
+     */
+    synchronized PollingPolicy getStopPollingPolicy() {
+        if (stopPollingPolicy == null) {
+            stopPollingPolicy = new PollingPolicy();
+        }
+        return stopPollingPolicy;
     }
 
     @Override
@@ -750,6 +985,22 @@ public class ComputeCloudAgentTemplate implements Describable<ComputeCloudAgentT
             return FormValidation.ok(Messages.ComputeCloudAgentTemplate_verifySshKeyPair_success());
         }
 
+        public FormValidation doCheckMinSpareAgents(@QueryParameter String value) {
+            return checkSpareAgents(value).getFormValidation();
+        }
+
+        public FormValidation doCheckMaxSpareAgents(@QueryParameter String value) {
+            return checkSpareAgents(value).getFormValidation();
+        }
+
+        public FormValidation doCheckMaxSuspendedAgents(@QueryParameter String value) {
+            return checkSpareAgents(value).getFormValidation();
+        }
+
+        public FormValidation doCheckMaxBatchSize(@QueryParameter String value) {
+            return checkMaxBatchSize(value).getFormValidation();
+        }
+
         public static int getDefaultStartTimeoutSeconds() {
             return checkStartTimeoutSeconds(null).getValue();
         }
@@ -0,0 +1,313 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A circuit breaker that stops provisioning from something that keeps
+ * failing, such as a template or an API endpoint.  The breaker opens after a
+ * number of consecutive failures.  Once a cooldown has elapsed, the breaker
+ * is half-open and allows a single probe: a success closes the breaker, and
+ * a failure opens it again with a doubled cooldown.
+ */
+public class ComputeCloudCircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudCircuitBreaker.class.getName());
+    private static final String CLASS_NAME = ComputeCloudCircuitBreaker.class.getName();
+
+    /**
+     * The time that a breaker stays open before the first probe.  The
+     * cooldown doubles with each failed probe.
+     */
+    static final long MIN_COOLDOWN_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".minCooldownMinutes", 5));
+
+    /**
+     * The maximum time that a breaker stays open before a probe.
+     */
+    static final long MAX_COOLDOWN_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".maxCooldownMinutes", 60));
+
+    /**
+     * The number of consecutive failures of an API endpoint before its
+     * breaker opens.
+     */
+    static final int ENDPOINT_FAILURE_THRESHOLD = Integer.getInteger(CLASS_NAME + ".endpointFailureThreshold", 3);
+
+    /**
+     * The number of state transitions that are kept for each breaker.
+     */
+    static final int MAX_TRANSITIONS = Integer.getInteger(CLASS_NAME + ".maxTransitions", 10);
+
+    public enum State {
+        /**
+         * Provisioning is allowed.
+         */
+        CLOSED,
+
+        /**
+         * Provisioning is not allowed until the cooldown has elapsed.
+         */
+        OPEN,
+
+        /**
+         * A single probe is being provisioned, and further provisioning is
+         * not allowed until it completes.
+         */
+        HALF_OPEN,
+    }
+
+    /**
+     * The breakers of all API endpoints.
+     */
+    public static class Registry {
+        public static final Registry INSTANCE = new Registry();
+
+        /**
+         * The breakers by API endpoint.  Guarded by this.
+         */
+        private final Map<String, ComputeCloudCircuitBreaker> breakers = new HashMap<>();
+
+        /**
+         * Returns the breaker for an API endpoint, creating it if needed.
+         * The breaker is shared by all clouds using the endpoint, and it is
+         * kept when a cloud is reconfigured.
+         *
+         * @param apiEndpoint the API endpoint
+         * @return the breaker
+         */
+        public synchronized ComputeCloudCircuitBreaker get(String apiEndpoint) {
+            ComputeCloudCircuitBreaker result = breakers.get(apiEndpoint);
+            if (result == null) {
+                result = new ComputeCloudCircuitBreaker("API endpoint " + apiEndpoint, ENDPOINT_FAILURE_THRESHOLD);
+                breakers.put(apiEndpoint, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A change of the state of a breaker.
+     */
+    public static class Transition {
+        private final long timeMillis;
+        private final State from;
+        private final State to;
+        private final String cause;
+
+        Transition(long timeMillis, State from, State to, String cause) {
+            this.timeMillis = timeMillis;
+            this.from = from;
+            this.to = to;
+            this.cause = cause;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public State getFrom() {
+            return from;
+        }
+
+        public State getTo() {
+            return to;
+        }
+
+        /**
+         * Returns the error that opened the breaker, or null if the
+         * transition was not caused by an error.
+         */
+        public String getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return from + " -> " + to + (cause == null ? "" : ": " + cause);
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+
+    // Guarded by this.
+    private State state = State.CLOSED;
+    private int failureCount;
+    private String cause;
+    private long openedNanos;
+    private long cooldownNanos;
+    private final Deque<Transition> transitions = new ArrayDeque<>();
+
+    /**
+     * @param name the name used in log messages
+     * @param failureThreshold the number of consecutive failures before the
+     * breaker opens
+     */
+    public ComputeCloudCircuitBreaker(String name, int failureThreshold) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+    }
+
+    private void transition(State to, String cause) {
+        LOGGER.log(to == State.OPEN ? Level.WARNING : Level.INFO, "Circuit breaker of {0} changed from {1} to {2}{3}",
+                new Object[] { name, state, to, cause == null ? "" : ": " + cause });
+        if (transitions.size() >= MAX_TRANSITIONS) {
+            transitions.removeFirst();
+        }
+        transitions.addLast(new Transition(System.currentTimeMillis(), state, to, cause));
+        state = to;
+    }
+
+    private boolean isCooledDown(long nowNanos) {
+        return nowNanos - openedNanos >= cooldownNanos;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the most recent error if the breaker is not closed, or null
+     * otherwise.
+     */
+    public synchronized String getCause() {
+        return state == State.CLOSED ? null : cause;
+    }
+
+    /**
+     * Returns the number of consecutive failures.
+     */
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the most recent state transitions, oldest first.
+     */
+    public synchronized List<Transition> getTransitions() {
+        return new ArrayList<>(transitions);
+    }
+
+    /**
+     * Returns true if provisioning would be allowed by {@link #tryAcquire},
+     * without changing the state of the breaker.
+     *
+     * @param nowNanos the current time
+     * @return true if provisioning is allowed
+     */
+    public synchronized boolean isAvailable(long nowNanos) {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            return isCooledDown(nowNanos);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns the state in which provisioning is allowed, or null if it is
+     * not allowed.  If the breaker is open and the cooldown has elapsed, the
+     * breaker becomes half-open and the caller must provision a single probe
+     * and then call {@link #recordSuccess}, {@link #recordFailure}, or
+     * {@link #recordCancelled}.
+     *
+     * @param nowNanos the current time
+     * @return {@link State#CLOSED}, {@link State#HALF_OPEN}, or null
+     */
+    public synchronized State tryAcquire(long nowNanos) {
+        switch (state) {
+        case CLOSED:
+            return State.CLOSED;
+        case OPEN:
+            if (isCooledDown(nowNanos)) {
+                transition(State.HALF_OPEN, null);
+                return State.HALF_OPEN;
+            }
+            return null;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Records a successful provision, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        failureCount = 0;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED, null);
+            cause = null;
+        }
+    }
+
+    /**
+     * Records a failed provision, which opens the breaker if the failure
+     * threshold is reached or if a probe failed.
+     *
+     * @param cause the error
+     * @param nowNanos the current time
+     */
+    public synchronized void recordFailure(String cause, long nowNanos) {
+        failureCount++;
+        this.cause = cause;
+        switch (state) {
+        case CLOSED:
+            if (failureCount >= failureThreshold) {
+                cooldownNanos = MIN_COOLDOWN_NANOS;
+                openedNanos = nowNanos;
+                transition(State.OPEN, cause);
+            }
+            break;
+        case HALF_OPEN:
+            cooldownNanos = cooldownNanos * 2;
+            if (cooldownNanos <= 0 || cooldownNanos > MAX_COOLDOWN_NANOS) {
+                cooldownNanos = MAX_COOLDOWN_NANOS;
+            }
+            openedNanos = nowNanos;
+            transition(State.OPEN, cause);
+            break;
+        default:
+            // Failures of provisions that started before the breaker opened
+            // do not extend the cooldown.
+            break;
+        }
+    }
+
+    /**
+     * Records that a probe allowed by {@link #tryAcquire} was not
+     * provisioned after all, or failed for an unrelated reason.  The breaker
+     * is open again, and the next call to {@link #tryAcquire} allows another
+     * probe without waiting for a further cooldown.
+     */
+    public synchronized void recordCancelled() {
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN, null);
+        }
+    }
+
+    /**
+     * Returns the remaining cooldown in nanoseconds, or 0 if the breaker is
+     * not open or the cooldown has elapsed.
+     *
+     * @param nowNanos the current time
+     * @return the remaining cooldown
+     */
+    public synchronized long getRemainingCooldownNanos(long nowNanos) {
+        if (state != State.OPEN || isCooledDown(nowNanos)) {
+            return 0;
+        }
+        return cooldownNanos - (nowNanos - openedNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + ": " + state;
+    }
+}
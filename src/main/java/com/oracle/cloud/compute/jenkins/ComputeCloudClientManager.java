@@ -13,7 +13,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientFactory;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudUser;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
 import com.oracle.cloud.compute.jenkins.client.ProxyComputeCloudClient;
+import com.oracle.cloud.compute.jenkins.client.ThrottledComputeCloudClient;
 
 import hudson.slaves.Cloud;
 import jenkins.model.Jenkins;
@@ -21,7 +23,10 @@ import jenkins.model.Jenkins;
 /**
  * This manages a cache of ComputeCloudClient instances.  Instances are created
  * and added to the cache on demand, and instances are lazily removed from the
- * cache when there is no active ComputeCloud instance using it.
+ * cache when there is no active ComputeCloud instance using it.  Each
+ * returned client sends its requests as a {@link ComputeCloudWorkload}, which
+ * a {@link ThrottledComputeCloudClient} created by the factory can use to
+ * limit the concurrent requests of each workload separately.
  */
 public class ComputeCloudClientManager implements AutoCloseable, ComputeCloudClientFactory {
     static class ClientKey {
@@ -83,19 +88,31 @@ public class ComputeCloudClientManager implements AutoCloseable, ComputeCloudCli
     }
 
     /**
-     * A client implementation that calls {@link ClientData#decrement}
-     * when {@link #close} is called.
+     * A client implementation that sends requests as a workload and calls
+     * {@link ClientData#removeReference} when {@link #close} is called.
      */
     private static class ManagedComputeCloudClient extends ProxyComputeCloudClient {
         private final ClientData clientData;
+        private final ComputeCloudWorkload workload;
         private final AtomicBoolean closed = new AtomicBoolean();
 
-        public ManagedComputeCloudClient(ClientData clientData) {
+        public ManagedComputeCloudClient(ClientData clientData, ComputeCloudWorkload workload) {
             super(clientData.client);
             this.clientData = clientData;
+            this.workload = workload;
             clientData.addReference();
         }
 
+        @Override
+        protected <T> T invoke(Method<T> method) throws ComputeCloudClientException {
+            ComputeCloudWorkload previous = ComputeCloudWorkload.setCurrent(workload);
+            try {
+                return super.invoke(method);
+            } finally {
+                ComputeCloudWorkload.setCurrent(previous);
+            }
+        }
+
         @Override
         public void close() {
             if (closed.compareAndSet(false, true)) {
@@ -161,7 +178,7 @@ public class ComputeCloudClientManager implements AutoCloseable, ComputeCloudCli
         }
     }
 
-    private synchronized ComputeCloudClient createClient(ClientKey key) {
+    private synchronized ComputeCloudClient createClient(ClientKey key, ComputeCloudWorkload workload) {
         ClientData clientData = clients.get(key);
         if (clientData == null) {
             removeUnusedClients();
@@ -169,15 +186,23 @@ public class ComputeCloudClientManager implements AutoCloseable, ComputeCloudCli
             clients.put(key, clientData);
         }
 
-        return new ManagedComputeCloudClient(clientData);
+        return new ManagedComputeCloudClient(clientData, workload);
     }
 
     public ComputeCloudClient createClient(ComputeCloud cloud) {
-        return createClient(createKey(cloud));
+        return createClient(cloud, ComputeCloudWorkload.PROVISION);
+    }
+
+    public ComputeCloudClient createClient(ComputeCloud cloud, ComputeCloudWorkload workload) {
+        return createClient(createKey(cloud), workload);
     }
 
     @Override
     public ComputeCloudClient createClient(URI apiEndpoint, ComputeCloudUser user, String password) {
-        return createClient(new ClientKey(apiEndpoint, user, password));
+        return createClient(apiEndpoint, user, password, ComputeCloudWorkload.PROVISION);
+    }
+
+    public ComputeCloudClient createClient(URI apiEndpoint, ComputeCloudUser user, String password, ComputeCloudWorkload workload) {
+        return createClient(new ClientKey(apiEndpoint, user, password), workload);
     }
 }
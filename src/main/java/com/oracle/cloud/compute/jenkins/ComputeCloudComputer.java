@@ -1,9 +1,26 @@
 package com.oracle.cloud.compute.jenkins;
 
+import hudson.model.Node;
 import hudson.slaves.AbstractCloudComputer;
 
 public class ComputeCloudComputer extends AbstractCloudComputer<ComputeCloudAgent> {
     public ComputeCloudComputer(ComputeCloudAgent slave) {
         super(slave);
     }
+
+    /**
+     * Called by Jenkins when the computer is created for an agent, and when
+     * the agent is replaced by a reconfigured one.
+     */
+    @Override
+    protected void setNode(Node node) {
+        super.setNode(node);
+        ComputeCloudAgentRegistry.INSTANCE.add((ComputeCloudAgent)node);
+    }
+
+    @Override
+    protected void onRemoved() {
+        ComputeCloudAgentRegistry.INSTANCE.remove(getName());
+        super.onRemoved();
+    }
 }
@@ -8,7 +8,6 @@ import java.util.logging.Logger;
 
 import hudson.Extension;
 import hudson.model.AsyncPeriodicWork;
-import hudson.model.Node;
 import hudson.model.TaskListener;
 
 @Extension
@@ -27,28 +26,25 @@ public class ComputeCloudInstanceMonitor extends AsyncPeriodicWork {
         return recurrencePeriod;
     }
 
-    List<Node> getNodes() {
-        return JenkinsUtil.getJenkinsInstance().getNodes();
+    List<ComputeCloudAgent> getAgents() {
+        return ComputeCloudAgentRegistry.INSTANCE.getAgents();
     }
 
     @Override
     protected void execute(TaskListener listener) {
-        for (Node node : getNodes()) {
-            if (node instanceof ComputeCloudAgent) {
-                final ComputeCloudAgent agent = (ComputeCloudAgent)node;
-                try {
-                    if (!agent.isAlive()) {
-                        LOGGER.fine("Compute instance is offline: " + agent.getDisplayName());
-                        agent._terminate(listener);
-                        LOGGER.info("Compute instance is terminated: " + agent.getDisplayName());
-                        removeNode(agent);
-                    } else {
-                        LOGGER.fine("Compute instance is online: " + agent.getDisplayName());
-                    }
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "Failed to terminate node : " + agent.getDisplayName(), e);
+        for (ComputeCloudAgent agent : getAgents()) {
+            try {
+                if (!agent.isAlive()) {
+                    LOGGER.fine("Compute instance is offline: " + agent.getDisplayName());
+                    agent._terminate(listener);
+                    LOGGER.info("Compute instance is terminated: " + agent.getDisplayName());
                     removeNode(agent);
+                } else {
+                    LOGGER.fine("Compute instance is online: " + agent.getDisplayName());
                 }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to terminate node : " + agent.getDisplayName(), e);
+                removeNode(agent);
             }
         }
     }
@@ -0,0 +1,71 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+
+/**
+ * Periodically finds orchestrations of all clouds that are no longer used by
+ * any agent, such as orchestrations created before Jenkins stopped but not
+ * yet added as agents, or orchestrations of agents that were deleted
+ * manually.  Since orchestrations are recognized by their name, the
+ * orchestrations of other Jenkins instances using the same user would look
+ * like orphans too, so by default orphans are only logged.  They are only
+ * recycled if {@link #DRY_RUN} is disabled, which is only safe if no other
+ * Jenkins instance uses the users of the clouds.
+ */
+@Extension
+public class ComputeCloudOrphanCollector extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudOrphanCollector.class.getName());
+    private static final String CLASS_NAME = ComputeCloudOrphanCollector.class.getName();
+
+    private static final long recurrencePeriod = Long.getLong(CLASS_NAME + ".recurrencePeriod", TimeUnit.MINUTES.toMillis(10));
+
+    /**
+     * The time an orchestration must be orphaned before it is recycled.
+     */
+    static final long GRACE_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".gracePeriodMinutes", 60));
+
+    /**
+     * True to log orphans rather than recycling them.
+     */
+    static final boolean DRY_RUN = Boolean.parseBoolean(System.getProperty(CLASS_NAME + ".dryRun", "true"));
+
+    public ComputeCloudOrphanCollector() {
+        super("Oracle Cloud Infrastructure Compute Classic orphan collector");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return recurrencePeriod;
+    }
+
+    List<? extends Cloud> getClouds() {
+        return JenkinsUtil.getJenkinsInstance().clouds;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud cloud : getClouds()) {
+            if (cloud instanceof ComputeCloud) {
+                try {
+                    List<String> orphans = ((ComputeCloud)cloud).collectOrphans(GRACE_PERIOD_NANOS, DRY_RUN);
+                    if (!orphans.isEmpty()) {
+                        listener.getLogger().println((DRY_RUN ? "Would recycle " : "Recycled ") + orphans.size()
+                                + " orphaned orchestrations of cloud " + cloud.getDisplayName() + ": " + orphans);
+                    }
+                } catch (ComputeCloudClientException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to collect orphaned orchestrations of cloud " + cloud.getDisplayName(), e);
+                }
+            }
+        }
+    }
+}
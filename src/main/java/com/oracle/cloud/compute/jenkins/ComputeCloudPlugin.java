@@ -3,6 +3,7 @@ package com.oracle.cloud.compute.jenkins;
 import com.oracle.cloud.compute.jenkins.client.AutoAuthComputeCloudClientFactory;
 import com.oracle.cloud.compute.jenkins.client.CachingComputeCloudClientFactory;
 import com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClientFactory;
+import com.oracle.cloud.compute.jenkins.client.ThrottledComputeCloudClientFactory;
 
 import hudson.Extension;
 import hudson.Plugin;
@@ -11,7 +12,8 @@ import hudson.Plugin;
 @Extension
 public class ComputeCloudPlugin extends Plugin {
     public static final ComputeCloudClientManager CLIENT_MANAGER = new ComputeCloudClientManager(
-            new AutoAuthComputeCloudClientFactory(new CachingComputeCloudClientFactory(JaxrsComputeCloudClientFactory.INSTANCE)),
+            new AutoAuthComputeCloudClientFactory(new CachingComputeCloudClientFactory(
+                    new ThrottledComputeCloudClientFactory(JaxrsComputeCloudClientFactory.INSTANCE))),
             JenkinsUtil.getJenkinsInstance().clouds);
 
     @Override
@@ -0,0 +1,258 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.ExceptionCatchingThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * The provisioning threads and concurrency limits of a cloud.  Each cloud
+ * has its own threads, so a burst of provisioning for one cloud does not
+ * delay the provisioning of other clouds, and the number of orchestrations
+ * that a cloud creates or deletes at the same time is limited.
+ */
+public class ComputeCloudProvisioningLimits {
+    private static final String CLASS_NAME = ComputeCloudProvisioningLimits.class.getName();
+
+    /**
+     * The maximum number of orchestrations of a cloud being created and
+     * started at the same time.
+     */
+    static final int MAX_IN_FLIGHT_CREATES = Integer.getInteger(CLASS_NAME + ".maxInFlightCreates", 20);
+
+    /**
+     * The maximum number of orchestrations of a cloud being stopped and
+     * deleted at the same time.
+     */
+    static final int MAX_IN_FLIGHT_DELETES = Integer.getInteger(CLASS_NAME + ".maxInFlightDeletes", 10);
+
+    /**
+     * The maximum number of orchestrations of a cloud waiting to be created.
+     * Further agents are not planned until the queue drains.
+     */
+    static final int MAX_QUEUED_CREATES = Integer.getInteger(CLASS_NAME + ".maxQueuedCreates", 100);
+
+    /**
+     * The limits of all clouds.
+     */
+    public static class Registry {
+        public static final Registry INSTANCE = new Registry();
+
+        /**
+         * The limits by cloud name.  Guarded by this.
+         */
+        private final Map<String, ComputeCloudProvisioningLimits> limits = new HashMap<>();
+
+        /**
+         * Returns the limits for a cloud, creating them if needed.  The
+         * limits are kept when the cloud is reconfigured so that provisioning
+         * that is still in progress continues to count toward them.
+         *
+         * @param cloudName the name of the cloud
+         * @return the limits
+         */
+        public synchronized ComputeCloudProvisioningLimits get(String cloudName) {
+            ComputeCloudProvisioningLimits result = limits.get(cloudName);
+            if (result == null) {
+                result = new ComputeCloudProvisioningLimits(cloudName);
+                limits.put(cloudName, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A number of permits that are granted to waiters in order as they are
+     * released.  Waiters are called rather than blocked so that provisioning
+     * steps do not hold a thread while waiting.
+     */
+    public static class Permits {
+        private final int max;
+
+        // Guarded by this.
+        private int inUse;
+        private final Deque<Runnable> waiters = new ArrayDeque<>();
+
+        public Permits(int max) {
+            this.max = Math.max(max, 1);
+        }
+
+        /**
+         * Acquires a permit if one is available, or otherwise queues the
+         * waiter, which is called from the thread that releases a permit
+         * once the permit has been granted to it.
+         *
+         * @param waiter the waiter
+         * @return true if the permit was acquired
+         */
+        public boolean tryAcquire(Runnable waiter) {
+            synchronized (this) {
+                if (inUse < max) {
+                    inUse++;
+                    return true;
+                }
+                waiters.addLast(waiter);
+                return false;
+            }
+        }
+
+        /**
+         * Acquires a permit, blocking until one is available.
+         *
+         * @throws InterruptedException if the thread is interrupted
+         */
+        public void acquire() throws InterruptedException {
+            final CountDownLatch latch = new CountDownLatch(1);
+            Runnable waiter = new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            };
+            if (tryAcquire(waiter)) {
+                return;
+            }
+
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    if (waiters.remove(waiter)) {
+                        throw e;
+                    }
+                }
+                // The permit was granted concurrently.
+                release();
+                throw e;
+            }
+        }
+
+        /**
+         * Releases a permit, granting it to the first waiter if any.
+         */
+        public void release() {
+            Runnable waiter;
+            synchronized (this) {
+                waiter = waiters.pollFirst();
+                if (waiter == null) {
+                    inUse--;
+                    return;
+                }
+            }
+            waiter.run();
+        }
+
+        public synchronized int getInUseCount() {
+            return inUse;
+        }
+
+        public synchronized int getWaitingCount() {
+            return waiters.size();
+        }
+    }
+
+    private final String cloudName;
+    private final Permits createPermits;
+    private final Permits deletePermits;
+    private final int maxQueuedCreates;
+
+    /**
+     * The executor, or null if not yet created.  Guarded by this.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * The SSH connect executor, or null if not yet created.  Guarded by this.
+     */
+    private ExecutorService sshConnectExecutor;
+
+    ComputeCloudProvisioningLimits(String cloudName) {
+        this(cloudName, MAX_IN_FLIGHT_CREATES, MAX_IN_FLIGHT_DELETES, MAX_QUEUED_CREATES);
+    }
+
+    ComputeCloudProvisioningLimits(String cloudName, int maxInFlightCreates, int maxInFlightDeletes, int maxQueuedCreates) {
+        this.cloudName = cloudName;
+        this.createPermits = new Permits(maxInFlightCreates);
+        this.deletePermits = new Permits(maxInFlightDeletes);
+        this.maxQueuedCreates = Math.max(maxQueuedCreates, 0);
+    }
+
+    /**
+     * Returns the executor that runs the provisioning steps of the cloud.
+     * The threads exit when the cloud is idle.
+     *
+     * @return the executor
+     */
+    public synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(Math.max(ComputeCloud.PROVISIONING_THREADS, 1),
+                    new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "ComputeCloud.provisioning[" + cloudName + "]")));
+            newExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);
+            newExecutor.allowCoreThreadTimeOut(true);
+            executor = newExecutor;
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the executor that runs the blocking SSH handshakes of the
+     * cloud.  Handshakes beyond the number of threads are queued.  The
+     * threads exit when the cloud is idle.
+     *
+     * @return the executor
+     */
+    public synchronized ExecutorService getSshConnectExecutor() {
+        if (sshConnectExecutor == null) {
+            int threads = Math.max(ComputeCloud.SSH_CONNECT_THREADS, 1);
+            ThreadPoolExecutor newExecutor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(),
+                    new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), "ComputeCloud.sshConnect[" + cloudName + "]")));
+            newExecutor.allowCoreThreadTimeOut(true);
+            sshConnectExecutor = newExecutor;
+        }
+        return sshConnectExecutor;
+    }
+
+    /**
+     * Returns the permits held by orchestrations from when they are created
+     * or started until they are ready.
+     *
+     * @return the permits
+     */
+    public Permits getCreatePermits() {
+        return createPermits;
+    }
+
+    /**
+     * Returns the permits held by orchestrations while they are stopped and
+     * deleted.
+     *
+     * @return the permits
+     */
+    public Permits getDeletePermits() {
+        return deletePermits;
+    }
+
+    /**
+     * Returns the number of orchestrations that can be planned without
+     * exceeding the maximum number waiting to be created.
+     *
+     * @return the number of orchestrations
+     */
+    public int getCreateCapacity() {
+        synchronized (createPermits) {
+            int pending = createPermits.inUse + createPermits.waiters.size();
+            return Math.max(createPermits.max + maxQueuedCreates - pending, 0);
+        }
+    }
+}
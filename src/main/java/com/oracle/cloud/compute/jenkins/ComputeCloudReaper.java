@@ -0,0 +1,339 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientNotFoundException;
+import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
+
+/**
+ * Stops and deletes the orchestrations of terminated agents in the
+ * background, so terminating an agent does not wait for its orchestration
+ * to stop.  Each orchestration is stopped as soon as a delete permit is
+ * available, the status of all orchestrations being stopped is polled with
+ * a single request, and each orchestration is deleted (or kept suspended)
+ * as soon as it has stopped.  Orchestrations are recorded in the
+ * {@link ComputeCloudRecycleJournal} of the cloud until they have been
+ * deleted, so those that do not stop in time are retried later.  Suspended
+ * orchestrations stay recorded until they are started again for an agent,
+ * so they are deleted rather than leaked if Jenkins restarts.
+ */
+class ComputeCloudReaper {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudReaper.class.getName());
+
+    private final ComputeCloud cloud;
+
+    private static class Entry {
+        final String orchName;
+
+        /**
+         * The pool that keeps the orchestration once it has stopped, or null
+         * if it is deleted.
+         */
+        ComputeCloudWarmPool suspendPool;
+
+        /**
+         * The time when the orchestration was added, or when it was switched
+         * from suspending to deleting.
+         */
+        long startNanos;
+
+        boolean permitAcquired;
+        boolean awaitingPermit;
+        boolean stopRequested;
+        long stopNanos;
+
+        Entry(String orchName, ComputeCloudWarmPool suspendPool, long startNanos) {
+            this.orchName = orchName;
+            this.suspendPool = suspendPool;
+            this.startNanos = startNanos;
+        }
+    }
+
+    // Guarded by this.
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long scheduleSeq;
+    private boolean running;
+    private boolean wakeRequested;
+
+    ComputeCloudReaper(ComputeCloud cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Stops and deletes an orchestration.
+     *
+     * @param orchName the name of the orchestration
+     */
+    void recycle(String orchName) {
+        add(orchName, null);
+    }
+
+    /**
+     * Stops an orchestration and adds it to a warm pool, or deletes it if it
+     * cannot be stopped.  The caller must have reserved space in the pool
+     * with {@link ComputeCloudWarmPool#reserveSuspend}.
+     *
+     * @param orchName the name of the orchestration
+     * @param pool the warm pool
+     */
+    void suspend(String orchName, ComputeCloudWarmPool pool) {
+        add(orchName, pool);
+    }
+
+    private void add(String orchName, ComputeCloudWarmPool suspendPool) {
+        synchronized (this) {
+            if (entries.containsKey(orchName)) {
+                LOGGER.log(Level.FINE, "Orchestration {0} is already being recycled", orchName);
+                if (suspendPool != null) {
+                    suspendPool.suspendFailed();
+                }
+                return;
+            }
+            entries.put(orchName, new Entry(orchName, suspendPool, cloud.getClock().nanoTime()));
+        }
+        cloud.getRecycleJournal().add(orchName);
+        schedule(0);
+    }
+
+    /**
+     * Returns the number of orchestrations that have not yet been deleted
+     * or suspended.
+     */
+    synchronized int getPendingCount() {
+        return entries.size();
+    }
+
+    private void schedule(long delayMillis) {
+        final long seq;
+        synchronized (this) {
+            seq = ++scheduleSeq;
+        }
+
+        try {
+            cloud.getProvisioningExecutor().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    ComputeCloudReaper.this.run(seq);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "Unable to schedule recycling of orchestrations", e);
+        }
+    }
+
+    private void run(long seq) {
+        synchronized (this) {
+            if (seq != scheduleSeq) {
+                // Superseded by a more recent schedule.
+                return;
+            }
+            if (running) {
+                wakeRequested = true;
+                return;
+            }
+            running = true;
+        }
+
+        long delayMillis = -1;
+        try {
+            delayMillis = poll();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected exception while recycling orchestrations", e);
+            delayMillis = PollingPolicy.MIN_INTERVAL_MILLIS;
+        } finally {
+            synchronized (this) {
+                running = false;
+                if (wakeRequested) {
+                    wakeRequested = false;
+                    delayMillis = 0;
+                }
+            }
+            if (delayMillis >= 0) {
+                schedule(delayMillis);
+            }
+        }
+    }
+
+    /**
+     * Advances each orchestration that holds a delete permit.
+     *
+     * @return the delay before the next poll, or -1 if no orchestrations
+     * hold a permit
+     */
+    private long poll() {
+        List<Entry> admitted = new ArrayList<>();
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                if (!entry.permitAcquired && !entry.awaitingPermit) {
+                    if (cloud.getProvisioningLimits().getDeletePermits().tryAcquire(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (ComputeCloudReaper.this) {
+                                entry.awaitingPermit = false;
+                                entry.permitAcquired = true;
+                            }
+                            schedule(0);
+                        }
+                    })) {
+                        entry.permitAcquired = true;
+                    } else {
+                        entry.awaitingPermit = true;
+                    }
+                }
+                if (entry.permitAcquired) {
+                    admitted.add(entry);
+                }
+            }
+        }
+        if (admitted.isEmpty()) {
+            return -1;
+        }
+
+        PollingPolicy pollingPolicy = cloud.getStopPollingPolicy();
+        List<Entry> done = new ArrayList<>();
+        try (ComputeCloudClient client = cloud.createClient(ComputeCloudWorkload.TERMINATE)) {
+            Map<String, InstanceOrchestration> listed = listOrchestrations(client, admitted);
+            for (Entry entry : admitted) {
+                if (poll(client, entry, listed, pollingPolicy)) {
+                    done.add(entry);
+                }
+            }
+        }
+
+        long minStopNanos = Long.MAX_VALUE;
+        synchronized (this) {
+            for (Entry entry : done) {
+                entries.remove(entry.orchName);
+            }
+            for (Entry entry : admitted) {
+                if (!done.contains(entry) && entry.stopRequested) {
+                    minStopNanos = Math.min(minStopNanos, entry.stopNanos);
+                }
+            }
+        }
+        for (int i = 0; i < done.size(); i++) {
+            cloud.getProvisioningLimits().getDeletePermits().release();
+        }
+
+        if (done.size() == admitted.size()) {
+            // Orchestrations that were waiting for the released permits
+            // have scheduled a poll.
+            return -1;
+        }
+        if (minStopNanos == Long.MAX_VALUE) {
+            return PollingPolicy.MIN_INTERVAL_MILLIS;
+        }
+        return pollingPolicy.getDelayMillis(cloud.getClock().nanoTime() - minStopNanos);
+    }
+
+    /**
+     * Lists the orchestrations with a single request if several are being
+     * polled.
+     *
+     * @return the orchestrations by name, which might not include all
+     * polled orchestrations
+     */
+    private Map<String, InstanceOrchestration> listOrchestrations(ComputeCloudClient client, List<Entry> admitted) {
+        Map<String, InstanceOrchestration> result = new HashMap<>();
+        int prefixed = 0;
+        for (Entry entry : admitted) {
+            if (entry.orchName.startsWith(ComputeCloud.ORCHESTRATION_NAME_PREFIX)) {
+                prefixed++;
+            }
+        }
+        if (prefixed < 2) {
+            return result;
+        }
+
+        try {
+            for (InstanceOrchestration orch : client.getInstanceOrchestrations(ComputeCloud.ORCHESTRATION_NAME_PREFIX)) {
+                result.put(orch.getName(), orch);
+            }
+        } catch (ComputeCloudClientException e) {
+            LOGGER.log(Level.FINE, "Failed to list orchestrations, polling them individually", e);
+        }
+        return result;
+    }
+
+    /**
+     * Stops, deletes or suspends an orchestration depending on its status.
+     *
+     * @return true if the orchestration no longer needs to be polled
+     */
+    private boolean poll(ComputeCloudClient client, Entry entry, Map<String, InstanceOrchestration> listed, PollingPolicy pollingPolicy) {
+        String orchName = entry.orchName;
+        long nowNanos = cloud.getClock().nanoTime();
+        try {
+            InstanceOrchestration instanceOrch = listed.get(orchName);
+            if (instanceOrch == null) {
+                instanceOrch = client.getInstanceOrchestration(orchName);
+            }
+
+            InstanceOrchestration.Status status = instanceOrch.getStatus();
+            ComputeCloud.logOrchestrationErrors(orchName, instanceOrch);
+
+            if (status == InstanceOrchestration.Status.stopped) {
+                if (entry.stopRequested) {
+                    pollingPolicy.recordDuration(nowNanos - entry.stopNanos);
+                    entry.stopRequested = false;
+                }
+
+                if (entry.suspendPool != null) {
+                    // The orchestration stays in the journal while it is in
+                    // the pool, so it is deleted if Jenkins restarts.
+                    entry.suspendPool.suspended(orchName);
+                    LOGGER.log(Level.INFO, "Suspended orchestration {0}", orchName);
+                } else {
+                    client.deleteOrchestration(orchName);
+                    LOGGER.log(Level.INFO, "Deleted orchestration {0}", orchName);
+                    cloud.getRecycleJournal().remove(orchName);
+                }
+                return true;
+            }
+
+            if (status != InstanceOrchestration.Status.stopping) {
+                client.stopOrchestration(orchName);
+                if (!entry.stopRequested) {
+                    entry.stopRequested = true;
+                    entry.stopNanos = nowNanos;
+                }
+            }
+        } catch (ComputeCloudClientNotFoundException e) {
+            LOGGER.log(Level.INFO, "Orchestration {0} no longer exists", orchName);
+            if (entry.suspendPool != null) {
+                entry.suspendPool.suspendFailed();
+            }
+            cloud.getRecycleJournal().remove(orchName);
+            return true;
+        } catch (ComputeCloudClientException e) {
+            LOGGER.log(Level.WARNING, "Failed to recycle orchestration " + orchName + ", retrying", e);
+        }
+
+        if (nowNanos - entry.startNanos < ComputeCloud.RECYCLE_TIMEOUT_NANOS) {
+            return false;
+        }
+
+        if (entry.suspendPool != null) {
+            LOGGER.log(Level.WARNING, "Timed out stopping orchestration {0}, deleting it", orchName);
+            entry.suspendPool.suspendFailed();
+            entry.suspendPool = null;
+            entry.startNanos = nowNanos;
+            return false;
+        }
+
+        long retryNanos = cloud.getRecycleJournal().retryLater(orchName, nowNanos);
+        LOGGER.log(Level.SEVERE, "Orchestration {0} failed to recycle, retrying in {1} minutes",
+                new Object[] { orchName, TimeUnit.NANOSECONDS.toMinutes(retryNanos) });
+        return true;
+    }
+}
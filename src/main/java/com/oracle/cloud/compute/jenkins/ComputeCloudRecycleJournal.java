@@ -0,0 +1,317 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudUser;
+
+import hudson.Util;
+
+/**
+ * An append-only journal of the orchestrations of an account that are being
+ * recycled.  An orchestration is recorded before it is first stopped and
+ * removed once it has been deleted, so orchestrations that fail to recycle
+ * before a timeout or a restart of Jenkins are retried rather than leaked.
+ * Orchestrations in warm pools, which are only kept in memory, are also
+ * recorded until they are taken for an agent, so all of them are recycled
+ * after a restart.  The journal is rewritten with only the pending
+ * orchestrations once enough removals have accumulated.
+ */
+public class ComputeCloudRecycleJournal {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudRecycleJournal.class.getName());
+    private static final String CLASS_NAME = ComputeCloudRecycleJournal.class.getName();
+
+    /**
+     * The delay before the first retry of an orchestration that failed to
+     * recycle.  The delay doubles with each further failure.
+     */
+    static final long MIN_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".minRetryDelayMinutes", 5));
+
+    /**
+     * The maximum delay between retries of an orchestration.
+     */
+    static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(Long.getLong(CLASS_NAME + ".maxRetryDelayMinutes", 120));
+
+    /**
+     * The number of removed orchestrations in the file before it is
+     * rewritten.
+     */
+    static final int COMPACT_THRESHOLD = Integer.getInteger(CLASS_NAME + ".compactThreshold", 100);
+
+    private static final char ADD = '+';
+    private static final char REMOVE = '-';
+
+    /**
+     * The journals of all clouds.
+     */
+    public static class Registry {
+        public static final Registry INSTANCE = new Registry(null);
+
+        private final File dir;
+
+        /**
+         * The journals by account.  Guarded by this.
+         */
+        private final Map<String, ComputeCloudRecycleJournal> journals = new HashMap<>();
+
+        /**
+         * @param dir the directory of the journal files, or null for the
+         * default directory in the Jenkins root directory
+         */
+        Registry(File dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * Returns the journal for the account of a cloud, creating it if
+         * needed.  The journal is keyed by account rather than cloud name so
+         * that it is kept when a cloud is renamed or otherwise reconfigured,
+         * and so that clouds sharing an account do not treat orchestrations
+         * being recycled by each other as orphans.
+         *
+         * @param apiEndpoint the API endpoint of the cloud
+         * @param user the user of the cloud
+         * @return the journal
+         */
+        public synchronized ComputeCloudRecycleJournal get(URI apiEndpoint, ComputeCloudUser user) {
+            String account = apiEndpoint + user.getString();
+            ComputeCloudRecycleJournal result = journals.get(account);
+            if (result == null) {
+                File journalDir = dir != null ? dir : new File(JenkinsUtil.getJenkinsInstance().getRootDir(), CLASS_NAME);
+                result = new ComputeCloudRecycleJournal(new File(journalDir, Util.rawEncode(account) + ".log"));
+                journals.put(account, result);
+            }
+            return result;
+        }
+    }
+
+    private static class Entry {
+        /**
+         * True while the orchestration is being recycled.
+         */
+        boolean active;
+
+        int failureCount;
+
+        /**
+         * The time of the next retry, or unset if the orchestration can be
+         * retried immediately.
+         */
+        boolean retryScheduled;
+        long retryNanos;
+    }
+
+    private final File file;
+
+    // Guarded by this.
+    private Map<String, Entry> entries;
+    private int lineCount;
+
+    /**
+     * @param file the file, or null if the journal is not persisted
+     */
+    ComputeCloudRecycleJournal(File file) {
+        this.file = file;
+    }
+
+    private void load() {
+        if (entries != null) {
+            return;
+        }
+
+        entries = new LinkedHashMap<>();
+        if (file == null || !file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null;) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lineCount++;
+
+                String orchName = line.substring(1);
+                if (line.charAt(0) == ADD) {
+                    entries.put(orchName, new Entry());
+                } else if (line.charAt(0) == REMOVE) {
+                    entries.remove(orchName);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read recycle journal " + file, e);
+        }
+
+        if (!entries.isEmpty()) {
+            LOGGER.log(Level.INFO, "Found {0} orchestrations to recycle in {1}", new Object[] { entries.size(), file });
+        }
+    }
+
+    private void append(char op, String orchName) {
+        lineCount++;
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write((op + orchName + '\n').getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write recycle journal " + file, e);
+        }
+    }
+
+    private void compact() {
+        if (entries.isEmpty() ? lineCount == 0 : lineCount - entries.size() < COMPACT_THRESHOLD) {
+            return;
+        }
+
+        lineCount = entries.size();
+        if (file == null) {
+            return;
+        }
+
+        try {
+            if (entries.isEmpty()) {
+                Files.deleteIfExists(file.toPath());
+                return;
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                StringBuilder sb = new StringBuilder();
+                for (String orchName : entries.keySet()) {
+                    sb.append(ADD).append(orchName).append('\n');
+                }
+                out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact recycle journal " + file, e);
+        }
+    }
+
+    /**
+     * Records that an orchestration is being recycled or held in a warm
+     * pool.  This must be called before the orchestration is first stopped
+     * or added to the pool.  It is not retried unless {@link #retryLater} is
+     * called, or Jenkins is restarted.
+     *
+     * @param orchName the name of the orchestration
+     */
+    public synchronized void add(String orchName) {
+        load();
+        Entry entry = entries.get(orchName);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(orchName, entry);
+            append(ADD, orchName);
+        }
+        entry.active = true;
+    }
+
+    /**
+     * Records that an orchestration has been recycled, or that it was taken
+     * from a warm pool for an agent.
+     *
+     * @param orchName the name of the orchestration
+     */
+    public synchronized void remove(String orchName) {
+        load();
+        if (entries.remove(orchName) != null) {
+            append(REMOVE, orchName);
+            compact();
+        }
+    }
+
+    /**
+     * Records that an orchestration failed to recycle, and schedules a
+     * retry.
+     *
+     * @param orchName the name of the orchestration
+     * @param nowNanos the current time
+     * @return the delay before the retry in nanoseconds
+     */
+    public synchronized long retryLater(String orchName, long nowNanos) {
+        load();
+        Entry entry = entries.get(orchName);
+        if (entry == null) {
+            return 0;
+        }
+
+        entry.active = false;
+        entry.failureCount++;
+        long delayNanos = MIN_RETRY_DELAY_NANOS << Math.min(entry.failureCount - 1, 16);
+        if (delayNanos <= 0 || delayNanos > MAX_RETRY_DELAY_NANOS) {
+            delayNanos = MAX_RETRY_DELAY_NANOS;
+        }
+        entry.retryScheduled = true;
+        entry.retryNanos = nowNanos + delayNanos;
+        return delayNanos;
+    }
+
+    /**
+     * Returns the orchestrations that are not being recycled and are due to
+     * be retried, and records that they are being recycled.  This includes
+     * all orchestrations recorded before Jenkins was restarted.
+     *
+     * @param nowNanos the current time
+     * @return the names of the orchestrations
+     */
+    public synchronized List<String> takeDue(long nowNanos) {
+        load();
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (!entry.active && (!entry.retryScheduled || nowNanos - entry.retryNanos >= 0)) {
+                entry.active = true;
+                result.add(mapEntry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if an orchestration has not been recycled.
+     *
+     * @param orchName the name of the orchestration
+     * @return true if the orchestration is pending
+     */
+    public synchronized boolean contains(String orchName) {
+        load();
+        return entries.containsKey(orchName);
+    }
+
+    /**
+     * Returns the number of orchestrations that have not been recycled.
+     */
+    public synchronized int getPendingCount() {
+        load();
+        return entries.size();
+    }
+
+    synchronized int getLineCount() {
+        load();
+        return lineCount;
+    }
+}
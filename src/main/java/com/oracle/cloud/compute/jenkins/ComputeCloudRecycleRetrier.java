@@ -0,0 +1,55 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+
+/**
+ * Periodically recycles the orchestrations in the recycle journals of all
+ * clouds that failed to recycle, or that were being recycled when Jenkins
+ * stopped.
+ */
+@Extension
+public class ComputeCloudRecycleRetrier extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudRecycleRetrier.class.getName());
+
+    private static final long recurrencePeriod = Long.getLong(ComputeCloudRecycleRetrier.class.getName() + ".recurrencePeriod", TimeUnit.MINUTES.toMillis(1));
+
+    public ComputeCloudRecycleRetrier() {
+        super("Oracle Cloud Infrastructure Compute Classic recycle retrier");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return recurrencePeriod;
+    }
+
+    @Override
+    public long getInitialDelay() {
+        // Replay the journals soon after startup.
+        return Math.min(recurrencePeriod, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    List<? extends Cloud> getClouds() {
+        return JenkinsUtil.getJenkinsInstance().clouds;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud cloud : getClouds()) {
+            if (cloud instanceof ComputeCloud) {
+                try {
+                    ((ComputeCloud)cloud).retryRecycles();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to retry recycling orchestrations of cloud " + cloud.getDisplayName(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Agents of a template that have been provisioned ahead of demand.  The
+ * orchestrations of these agents are ready and accepting SSH connections,
+ * but the agents have not been added to Jenkins, so they are handed to
+ * {@link hudson.slaves.NodeProvisioner} as soon as they are requested.
+ *
+ * <p>The pool also holds the stopped orchestrations of terminated agents,
+ * which keep their boot volume and IP reservation, so they can be started
+ * again rather than creating new orchestrations.
+ *
+ * <p>Pools are keyed by the template id and the digest of the template
+ * configuration, so agents provisioned before a template was reconfigured
+ * are not handed out for the new configuration.  The pool for the old
+ * configuration is drained by {@link ComputeCloudWarmPoolMaintainer} like
+ * the pool of a removed template.  Pools are only kept in memory, so the
+ * orchestrations of their agents and their stopped orchestrations are also
+ * recorded in the {@link ComputeCloudRecycleJournal} until they are handed
+ * to an agent, and they are recycled by {@link ComputeCloudRecycleRetrier}
+ * after a restart.
+ */
+public class ComputeCloudWarmPool {
+    /**
+     * Returns the key of the pool for the current configuration of a
+     * template.
+     *
+     * @param template the template
+     * @return the key
+     */
+    public static String getKey(ComputeCloudAgentTemplate template) {
+        return template.getTemplateId() + "-" + template.getConfigDigest();
+    }
+
+    /**
+     * The warm pools of all templates of all clouds.
+     */
+    public static class Registry {
+        public static final Registry INSTANCE = new Registry();
+
+        /**
+         * The pools by key by cloud name.  Guarded by this.
+         */
+        private final Map<String, Map<String, ComputeCloudWarmPool>> pools = new HashMap<>();
+
+        /**
+         * Returns the pool for a template, creating it if needed.
+         *
+         * @param cloudName the name of the cloud
+         * @param key the key of the pool from {@link ComputeCloudWarmPool#getKey}
+         * @return the pool
+         */
+        public synchronized ComputeCloudWarmPool get(String cloudName, String key) {
+            Map<String, ComputeCloudWarmPool> cloudPools = pools.get(cloudName);
+            if (cloudPools == null) {
+                cloudPools = new HashMap<>();
+                pools.put(cloudName, cloudPools);
+            }
+
+            ComputeCloudWarmPool pool = cloudPools.get(key);
+            if (pool == null) {
+                pool = new ComputeCloudWarmPool();
+                cloudPools.put(key, pool);
+            }
+            return pool;
+        }
+
+        /**
+         * Returns the pools of the templates of a cloud.
+         *
+         * @param cloudName the name of the cloud
+         * @return the pools by key
+         */
+        public synchronized Map<String, ComputeCloudWarmPool> getAll(String cloudName) {
+            Map<String, ComputeCloudWarmPool> cloudPools = pools.get(cloudName);
+            return cloudPools == null ? new HashMap<String, ComputeCloudWarmPool>() : new HashMap<>(cloudPools);
+        }
+
+        /**
+         * Returns the names of the orchestrations of the agents and stopped
+         * orchestrations in the pools of all clouds.
+         *
+         * @return the names of the orchestrations
+         */
+        public synchronized Set<String> getOrchNames() {
+            Set<String> result = new HashSet<>();
+            for (Map<String, ComputeCloudWarmPool> cloudPools : pools.values()) {
+                for (ComputeCloudWarmPool pool : cloudPools.values()) {
+                    result.addAll(pool.getOrchNames());
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Removes the pool of a template that no longer exists or whose
+         * configuration changed if it has no agents or stopped orchestrations
+         * and none are being added.
+         *
+         * @param cloudName the name of the cloud
+         * @param key the key of the pool
+         * @return true if the pool was removed
+         */
+        public synchronized boolean removeIfEmpty(String cloudName, String key) {
+            Map<String, ComputeCloudWarmPool> cloudPools = pools.get(cloudName);
+            if (cloudPools == null) {
+                return true;
+            }
+
+            ComputeCloudWarmPool pool = cloudPools.get(key);
+            if (pool != null) {
+                synchronized (pool) {
+                    if (!pool.agents.isEmpty() || pool.fillingCount != 0
+                            || !pool.suspendedOrchNames.isEmpty() || pool.suspendingCount != 0) {
+                        return false;
+                    }
+                }
+                cloudPools.remove(key);
+                if (cloudPools.isEmpty()) {
+                    pools.remove(cloudName);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Entry {
+        final ComputeCloudAgent agent;
+        final long addedNanos;
+
+        Entry(ComputeCloudAgent agent, long addedNanos) {
+            this.agent = agent;
+            this.addedNanos = addedNanos;
+        }
+    }
+
+    /**
+     * The agents, oldest first.  Guarded by this.
+     */
+    private final Deque<Entry> agents = new ArrayDeque<>();
+    private int fillingCount;
+    private boolean missedSinceFill;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * The names of stopped orchestrations, oldest first.  Guarded by this.
+     */
+    private final Deque<String> suspendedOrchNames = new ArrayDeque<>();
+    private int suspendingCount;
+
+    /**
+     * Takes the most recently added agent.
+     *
+     * @return the agent, or null if the pool is empty
+     */
+    public synchronized ComputeCloudAgent take() {
+        Entry entry = agents.pollLast();
+        if (entry == null) {
+            recordMiss();
+            return null;
+        }
+        hitCount++;
+        return entry.agent;
+    }
+
+    /**
+     * Records that an agent was needed but not taken from the pool, so the
+     * pool is filled up to the maximum number of spare agents.  Unlike
+     * {@link #take}, this never removes an agent, so it does not lose an
+     * agent that was added since the pool was found to be empty.
+     */
+    public synchronized void recordMiss() {
+        missCount++;
+        missedSinceFill = true;
+    }
+
+    /**
+     * Reserves agents to be provisioned into the pool.  The pool is filled up
+     * to the minimum number of spare agents, or up to the maximum if an agent
+     * was requested from the pool while it was empty since the last fill.
+     *
+     * @param minSpare the minimum number of spare agents
+     * @param maxSpare the maximum number of spare agents
+     * @param capacity the number of agents that can be provisioned without
+     * exceeding the instance cap
+     * @return the number of agents to provision, each of which must be
+     * followed by a call to {@link #filled} or {@link #fillFailed}
+     */
+    public synchronized int reserveFill(int minSpare, int maxSpare, int capacity) {
+        int target = missedSinceFill ? Math.max(minSpare, maxSpare) : minSpare;
+        int count = Math.min(target - agents.size() - fillingCount, capacity);
+        if (count <= 0) {
+            return 0;
+        }
+        missedSinceFill = false;
+        fillingCount += count;
+        return count;
+    }
+
+    /**
+     * Adds an agent that was provisioned for a reservation.
+     *
+     * @param agent the agent
+     * @param nowNanos the current {@link Clock#nanoTime}
+     */
+    public synchronized void filled(ComputeCloudAgent agent, long nowNanos) {
+        fillingCount--;
+        agents.addLast(new Entry(agent, nowNanos));
+    }
+
+    /**
+     * Releases a reservation for an agent that could not be provisioned.
+     */
+    public synchronized void fillFailed() {
+        fillingCount--;
+    }
+
+    /**
+     * Removes the agents that are no longer needed.  The oldest agents are
+     * removed until the pool has at most the maximum number of agents, and
+     * then agents that have been in the pool for the idle time are removed
+     * until the pool has the minimum number of agents.
+     *
+     * @param minSpare the minimum number of spare agents
+     * @param maxSpare the maximum number of spare agents
+     * @param idleNanos the idle time, or 0 to keep idle agents
+     * @param nowNanos the current {@link Clock#nanoTime}
+     * @return the removed agents, which must be terminated
+     */
+    public synchronized List<ComputeCloudAgent> removeExcess(int minSpare, int maxSpare, long idleNanos, long nowNanos) {
+        List<ComputeCloudAgent> result = new ArrayList<>();
+        while (agents.size() > Math.max(minSpare, maxSpare)) {
+            result.add(agents.pollFirst().agent);
+        }
+        while (idleNanos != 0 && agents.size() > minSpare && nowNanos - agents.peekFirst().addedNanos >= idleNanos) {
+            result.add(agents.pollFirst().agent);
+        }
+        return result;
+    }
+
+    /**
+     * Reserves space for an orchestration to be stopped rather than deleted.
+     *
+     * @param maxSuspended the maximum number of stopped orchestrations
+     * @return true if the orchestration should be stopped, which must be
+     * followed by a call to {@link #suspended} or {@link #suspendFailed}
+     */
+    public synchronized boolean reserveSuspend(int maxSuspended) {
+        if (suspendedOrchNames.size() + suspendingCount >= maxSuspended) {
+            return false;
+        }
+        suspendingCount++;
+        return true;
+    }
+
+    /**
+     * Adds an orchestration that was stopped for a reservation.
+     *
+     * @param orchName the name of the stopped orchestration
+     */
+    public synchronized void suspended(String orchName) {
+        suspendingCount--;
+        suspendedOrchNames.addLast(orchName);
+    }
+
+    /**
+     * Releases a reservation for an orchestration that could not be stopped.
+     */
+    public synchronized void suspendFailed() {
+        suspendingCount--;
+    }
+
+    /**
+     * Takes the most recently stopped orchestration to start it again.
+     *
+     * @return the name of the orchestration, or null if none
+     */
+    public synchronized String resume() {
+        return suspendedOrchNames.pollLast();
+    }
+
+    /**
+     * Removes the oldest stopped orchestrations until the pool has at most
+     * the maximum.
+     *
+     * @param maxSuspended the maximum number of stopped orchestrations
+     * @return the names of the removed orchestrations, which must be deleted
+     */
+    public synchronized List<String> removeExcessSuspended(int maxSuspended) {
+        List<String> result = new ArrayList<>();
+        while (suspendedOrchNames.size() > maxSuspended) {
+            result.add(suspendedOrchNames.pollFirst());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of agents and stopped orchestrations in the pool or
+     * being added to it, which count toward the instance cap.
+     *
+     * @return the number of agents and orchestrations
+     */
+    public synchronized int getTotalCount() {
+        return agents.size() + fillingCount + suspendedOrchNames.size() + suspendingCount;
+    }
+
+    /**
+     * Returns the names of the orchestrations of the agents and stopped
+     * orchestrations in the pool.
+     *
+     * @return the names of the orchestrations
+     */
+    public synchronized List<String> getOrchNames() {
+        List<String> result = new ArrayList<>();
+        for (Entry entry : agents) {
+            result.add(entry.agent.getOrchName());
+        }
+        result.addAll(suspendedOrchNames);
+        return result;
+    }
+
+    public synchronized int getSize() {
+        return agents.size();
+    }
+
+    public synchronized int getFillingCount() {
+        return fillingCount;
+    }
+
+    public synchronized int getSuspendedCount() {
+        return suspendedOrchNames.size();
+    }
+
+    /**
+     * Returns the number of agents requested while the pool had an agent.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of agents requested while the pool was empty.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
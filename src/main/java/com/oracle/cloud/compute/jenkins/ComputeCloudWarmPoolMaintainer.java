@@ -0,0 +1,49 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+
+/**
+ * Periodically terminates agents that are no longer needed in the warm pools
+ * of all clouds, and replenishes the warm pools.  Pools are also replenished
+ * as soon as agents are taken from them.
+ */
+@Extension
+public class ComputeCloudWarmPoolMaintainer extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(ComputeCloudWarmPoolMaintainer.class.getName());
+
+    private static final long recurrencePeriod = Long.getLong(ComputeCloudWarmPoolMaintainer.class.getName() + ".recurrencePeriod", TimeUnit.MINUTES.toMillis(1));
+
+    public ComputeCloudWarmPoolMaintainer() {
+        super("Oracle Cloud Infrastructure Compute Classic warm pool maintainer");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return recurrencePeriod;
+    }
+
+    List<? extends Cloud> getClouds() {
+        return JenkinsUtil.getJenkinsInstance().clouds;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (Cloud cloud : getClouds()) {
+            if (cloud instanceof ComputeCloud) {
+                try {
+                    ((ComputeCloud)cloud).maintainWarmPools();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Failed to maintain warm pools of cloud " + cloud.getDisplayName(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.oracle.cloud.compute.jenkins;
+
+/**
+ * The kinds of work that send requests to Oracle Cloud Infrastructure
+ * Compute Classic.  The requests of each kind of work share a number of
+ * permits per endpoint, which is also how connections are pooled, so a slow
+ * monitor sweep or a configuration page cannot use the connections needed to
+ * provision agents.  The defaults add up to the default number of
+ * connections per endpoint.  Requests that are answered from a cache do not
+ * use permits.
+ */
+public enum ComputeCloudWorkload {
+    /**
+     * Creating, starting and polling orchestrations for new agents, and
+     * recycling orchestrations that failed to provision.
+     */
+    PROVISION(12),
+
+    /**
+     * Stopping and deleting the orchestrations of terminated agents.
+     */
+    TERMINATE(4),
+
+    /**
+     * Checking whether the orchestrations of agents are still running.
+     */
+    MONITOR(2),
+
+    /**
+     * Filling and validating configuration forms, and requests sent in the
+     * background without a workload, such as reloading cached form data and
+     * renewing authentication.
+     */
+    FORM_FILL(2);
+
+    private static final ThreadLocal<ComputeCloudWorkload> CURRENT = new ThreadLocal<>();
+
+    private final int maxConcurrentRequests;
+
+    ComputeCloudWorkload(int defaultMaxConcurrentRequests) {
+        this.maxConcurrentRequests = Math.max(Integer.getInteger(
+                ComputeCloudWorkload.class.getName() + '.' + name() + ".maxConcurrentRequests",
+                defaultMaxConcurrentRequests), 1);
+    }
+
+    /**
+     * Returns the maximum number of concurrent requests for this kind of work
+     * to a single endpoint.
+     *
+     * @return the maximum number of requests
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Returns the workload of the requests sent by the current thread, or
+     * {@link #FORM_FILL} if the thread is not sending requests for a
+     * workload.
+     *
+     * @return the workload
+     */
+    public static ComputeCloudWorkload getCurrent() {
+        ComputeCloudWorkload result = CURRENT.get();
+        return result == null ? FORM_FILL : result;
+    }
+
+    /**
+     * Sets the workload of the requests sent by the current thread.
+     *
+     * @param workload the workload, or null to clear it
+     * @return the previous workload, or null if there was none
+     */
+    static ComputeCloudWorkload setCurrent(ComputeCloudWorkload workload) {
+        ComputeCloudWorkload result = CURRENT.get();
+        if (workload == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(workload);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the delay between status polls while waiting for an operation.
+ * Polls start at a short interval and back off as the wait exceeds the
+ * expected duration of the operation, and a random jitter is applied so
+ * that concurrent waits do not poll in lockstep.  The expected duration is
+ * the moving average of durations recorded by previous waits, so polls are
+ * not wasted early in operations that are known to take longer.
+ */
+public class PollingPolicy {
+    private static final String CLASS_NAME = PollingPolicy.class.getName();
+
+    /**
+     * The minimum delay between polls.
+     */
+    static final long MIN_INTERVAL_MILLIS = Long.getLong(CLASS_NAME + ".minIntervalMillis", TimeUnit.SECONDS.toMillis(2));
+
+    /**
+     * The maximum delay between polls.
+     */
+    static final long MAX_INTERVAL_MILLIS = Long.getLong(CLASS_NAME + ".maxIntervalMillis", TimeUnit.SECONDS.toMillis(30));
+
+    /**
+     * The delay as a fraction of the time since the first poll that was
+     * expected to observe completion, so each delay is this fraction longer
+     * than the previous delay.
+     */
+    static final double BACKOFF_FACTOR = 0.15;
+
+    /**
+     * The maximum fraction of the delay that is randomly added or removed.
+     */
+    static final double JITTER = 0.2;
+
+    /**
+     * The fraction of the expected duration before the first poll.  Polling
+     * starts well before the expected duration since durations vary
+     * widely.
+     */
+    static final double EXPECTED_DURATION_FRACTION = 0.5;
+
+    /**
+     * The weight of each recorded duration in the moving average.
+     */
+    static final double DURATION_WEIGHT = 0.25;
+
+    /**
+     * Returns a policy that always polls at a fixed interval.
+     */
+    public static PollingPolicy fixed(long intervalMillis) {
+        return new PollingPolicy(intervalMillis, intervalMillis, 0, 0);
+    }
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double backoffFactor;
+    private final double jitter;
+
+    /**
+     * The moving average of recorded durations, or 0 if no durations have
+     * been recorded.  Guarded by this.
+     */
+    private long expectedDurationNanos;
+
+    public PollingPolicy() {
+        this(MIN_INTERVAL_MILLIS, MAX_INTERVAL_MILLIS, BACKOFF_FACTOR, JITTER);
+    }
+
+    PollingPolicy(long minIntervalMillis, long maxIntervalMillis, double backoffFactor, double jitter) {
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = Math.max(minIntervalMillis, maxIntervalMillis);
+        this.backoffFactor = backoffFactor;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Records the duration of a completed operation.
+     *
+     * @param durationNanos the duration
+     */
+    public synchronized void recordDuration(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        if (expectedDurationNanos == 0) {
+            expectedDurationNanos = Math.max(durationNanos, 1);
+        } else {
+            expectedDurationNanos = Math.max((long)(expectedDurationNanos + (durationNanos - expectedDurationNanos) * DURATION_WEIGHT), 1);
+        }
+    }
+
+    /**
+     * Returns the expected duration of an operation, or 0 if unknown.
+     */
+    public synchronized long getExpectedDurationNanos() {
+        return expectedDurationNanos;
+    }
+
+    /**
+     * Returns the delay before the next poll.
+     *
+     * @param elapsedNanos the time since the operation started
+     * @return the delay in milliseconds
+     */
+    public long getDelayMillis(long elapsedNanos) {
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(elapsedNanos, 0));
+        long firstPollMillis = (long)(TimeUnit.NANOSECONDS.toMillis(getExpectedDurationNanos()) * EXPECTED_DURATION_FRACTION);
+
+        long delayMillis;
+        if (elapsedMillis < firstPollMillis) {
+            // Wait until the operation might have completed.
+            delayMillis = firstPollMillis - elapsedMillis;
+        } else {
+            delayMillis = (long)((elapsedMillis - firstPollMillis) * backoffFactor);
+        }
+        delayMillis = Math.max(minIntervalMillis, Math.min(maxIntervalMillis, delayMillis));
+
+        if (jitter != 0) {
+            delayMillis += (long)(delayMillis * jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+        }
+        return Math.max(delayMillis, 1);
+    }
+}
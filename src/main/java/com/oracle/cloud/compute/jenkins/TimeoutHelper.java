@@ -4,24 +4,32 @@ public class TimeoutHelper {
     private final Clock clock;
     private final long beginNanos;
     private final long timeoutNanos;
-    private final long sleepMillis;
+    private final PollingPolicy pollingPolicy;
 
     public TimeoutHelper(Clock clock, long timeoutNanos, long sleepMillis) {
+        this(clock, timeoutNanos, PollingPolicy.fixed(sleepMillis));
+    }
+
+    public TimeoutHelper(Clock clock, long timeoutNanos, PollingPolicy pollingPolicy) {
         this.clock = clock;
         this.beginNanos = clock.nanoTime();
         this.timeoutNanos = timeoutNanos;
-        this.sleepMillis = sleepMillis;
+        this.pollingPolicy = pollingPolicy;
+    }
+
+    public long getElapsedNanos() {
+        return clock.nanoTime() - beginNanos;
     }
 
     public boolean sleep() throws InterruptedException {
+        long durationNanos = getElapsedNanos();
         if (timeoutNanos != 0) {
-            long durationNanos = clock.nanoTime() - beginNanos;
             if (durationNanos >= timeoutNanos) {
                 return false;
             }
         }
 
-        clock.sleep(sleepMillis);
+        clock.sleep(pollingPolicy.getDelayMillis(durationNanos));
         return true;
     }
 }
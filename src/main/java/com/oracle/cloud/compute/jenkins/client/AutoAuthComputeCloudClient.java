@@ -1,6 +1,11 @@
 package com.oracle.cloud.compute.jenkins.client;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.oracle.cloud.compute.jenkins.Clock;
 
@@ -8,8 +13,16 @@ import com.oracle.cloud.compute.jenkins.Clock;
  * An implementation of ComputeCloudClient that automatically authenticates
  * when a method is called and automatically reauthenticates when the
  * authentication tokens expire.
+ *
+ * <p>If an executor is specified, then the authentication token is also
+ * renewed in the background before it expires, so callers do not normally
+ * wait for authentication.  If a method fails because the token was rejected
+ * by the server, then this client reauthenticates and retries the method
+ * once.
  */
 public class AutoAuthComputeCloudClient extends ProxyComputeCloudClient {
+    private static final Logger LOGGER = Logger.getLogger(AutoAuthComputeCloudClient.class.getName());
+
     /**
      * The
      * <a href="http://docs.oracle.com/cloud/latest/stcomputecs/STCSA/Authentication.html">documented</a>
@@ -23,48 +36,247 @@ public class AutoAuthComputeCloudClient extends ProxyComputeCloudClient {
      */
     static final long REAUTHENTICATE_SLACK_NANOS = TimeUnit.MINUTES.toNanos(5);
 
+    /**
+     * The time before an authentication timeout when the background refresh
+     * will reauthenticate.  This is larger than
+     * {@link #REAUTHENTICATE_SLACK_NANOS} so that callers do not reach the
+     * proactive reauthentication window.
+     */
+    static final long BACKGROUND_REAUTHENTICATE_SLACK_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * The delay before retrying a failed background refresh.
+     */
+    static final long BACKGROUND_REAUTHENTICATE_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
     private final Clock clock;
-    private boolean authenticated;
-    private long authenticatedNanoTime;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Held while authenticating so that only one thread reauthenticates.
+     */
+    private final ReentrantLock authenticateLock = new ReentrantLock();
+
+    /**
+     * The number of successful authentications, or 0 if not authenticated.
+     * Written after {@link #authenticatedNanoTime} so that readers see a
+     * consistent value without locking.
+     */
+    private volatile int authenticationCount;
+    private volatile long authenticatedNanoTime;
+
+    /**
+     * True if a method has been called since the last authentication.  The
+     * background refresh is skipped for unused clients.
+     */
+    private volatile boolean invokedSinceAuthentication;
+
+    /**
+     * Guarded by authenticateLock.
+     */
+    private ScheduledFuture<?> backgroundRefreshFuture;
+    private boolean closed;
 
     public AutoAuthComputeCloudClient(ComputeCloudClient client) {
         this(client, Clock.INSTANCE);
     }
 
     public AutoAuthComputeCloudClient(ComputeCloudClient client, Clock clock) {
+        this(client, clock, null);
+    }
+
+    /**
+     * @param executor the executor for background refresh, or null to only
+     * reauthenticate when methods are called
+     */
+    public AutoAuthComputeCloudClient(ComputeCloudClient client, Clock clock, ScheduledExecutorService executor) {
         super(client);
         this.clock = clock;
+        this.executor = executor;
     }
 
     @Override
     public void close() {
+        authenticateLock.lock();
+        try {
+            closed = true;
+            cancelBackgroundRefresh();
+        } finally {
+            authenticateLock.unlock();
+        }
         client.close();
     }
 
-    private synchronized void authenticate(long nanoTime) throws ComputeCloudClientException {
+    private void authenticate(long nanoTime) throws ComputeCloudClientException {
         client.authenticate();
-        authenticated = true;
         authenticatedNanoTime = nanoTime;
+        authenticationCount++;
+        invokedSinceAuthentication = false;
+        scheduleBackgroundRefresh(nanoTime + AUTHENTICATION_TIMEOUT_NANOS - BACKGROUND_REAUTHENTICATE_SLACK_NANOS - clock.nanoTime());
     }
 
-
-
     /**
      * {@inheritDoc}
      * This will always reauthenticate even if there is a cached token.
      */
     @Override
     public void authenticate() throws ComputeCloudClientException {
-        authenticate(clock.nanoTime());
+        authenticateLock.lock();
+        try {
+            authenticate(clock.nanoTime());
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    private boolean isAuthenticated(long nanoTime, long maxAgeNanos) {
+        return authenticationCount != 0 && nanoTime - authenticatedNanoTime < maxAgeNanos;
     }
 
     @Override
-    protected synchronized void preInvoke() throws ComputeCloudClientException {
+    protected void preInvoke() throws ComputeCloudClientException {
+        if (!invokedSinceAuthentication) {
+            invokedSinceAuthentication = true;
+        }
+
         long nanoTime = clock.nanoTime();
-        if (authenticated && nanoTime - authenticatedNanoTime < AUTHENTICATION_TIMEOUT_NANOS - REAUTHENTICATE_SLACK_NANOS) {
+        if (isAuthenticated(nanoTime, AUTHENTICATION_TIMEOUT_NANOS - REAUTHENTICATE_SLACK_NANOS)) {
             return;
         }
 
-        authenticate(nanoTime);
+        if (isAuthenticated(nanoTime, AUTHENTICATION_TIMEOUT_NANOS)) {
+            // The token is about to expire but is still valid.  If another
+            // thread is already reauthenticating, then continue using the
+            // current token rather than waiting.
+            if (!authenticateLock.tryLock()) {
+                return;
+            }
+
+            try {
+                if (!isAuthenticated(nanoTime, AUTHENTICATION_TIMEOUT_NANOS - REAUTHENTICATE_SLACK_NANOS)) {
+                    try {
+                        authenticate(nanoTime);
+                    } catch (ComputeCloudClientException e) {
+                        // The current token is still valid, so this call can
+                        // proceed, and the next call will try again.
+                        LOGGER.log(Level.WARNING, "Failed to proactively reauthenticate " + client, e);
+                    }
+                }
+            } finally {
+                authenticateLock.unlock();
+            }
+            return;
+        }
+
+        // The token is expired or missing, so all threads must wait.
+        authenticateLock.lock();
+        try {
+            nanoTime = clock.nanoTime();
+            if (!isAuthenticated(nanoTime, AUTHENTICATION_TIMEOUT_NANOS - REAUTHENTICATE_SLACK_NANOS)) {
+                authenticate(nanoTime);
+            }
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    /**
+     * Called after the server rejects the authentication token.  This method
+     * reauthenticates unless another thread has already done so since the
+     * failed method was called.
+     *
+     * @param count the value of {@link #authenticationCount} when the failed
+     * method was called
+     * @param e the exception thrown by the failed method
+     */
+    private void reauthenticateUnauthorized(int count, ComputeCloudClientUnauthorizedException e) throws ComputeCloudClientException {
+        LOGGER.log(Level.FINE, "Reauthenticating " + client + " after unauthorized error", e);
+
+        authenticateLock.lock();
+        try {
+            if (authenticationCount == count) {
+                authenticate(clock.nanoTime());
+            }
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding authenticateLock.
+     */
+    private void cancelBackgroundRefresh() {
+        if (backgroundRefreshFuture != null) {
+            backgroundRefreshFuture.cancel(false);
+            backgroundRefreshFuture = null;
+        }
+    }
+
+    /**
+     * Must be called while holding authenticateLock.
+     */
+    private void scheduleBackgroundRefresh(long delayNanos) {
+        cancelBackgroundRefresh();
+        if (executor != null && !closed) {
+            backgroundRefreshFuture = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    backgroundRefresh();
+                }
+            }, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void backgroundRefresh() {
+        authenticateLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            long nanoTime = clock.nanoTime();
+            if (isAuthenticated(nanoTime, AUTHENTICATION_TIMEOUT_NANOS - BACKGROUND_REAUTHENTICATE_SLACK_NANOS)) {
+                // Another thread reauthenticated since this was scheduled.
+                scheduleBackgroundRefresh(authenticatedNanoTime + AUTHENTICATION_TIMEOUT_NANOS - BACKGROUND_REAUTHENTICATE_SLACK_NANOS - nanoTime);
+                return;
+            }
+
+            if (!invokedSinceAuthentication) {
+                // Stop refreshing until the client is used again.
+                backgroundRefreshFuture = null;
+                return;
+            }
+
+            try {
+                authenticate(nanoTime);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to reauthenticate " + client + " in the background", e);
+                if (isAuthenticated(clock.nanoTime(), AUTHENTICATION_TIMEOUT_NANOS - REAUTHENTICATE_SLACK_NANOS)) {
+                    scheduleBackgroundRefresh(BACKGROUND_REAUTHENTICATE_RETRY_NANOS);
+                } else {
+                    // Callers will reauthenticate themselves.
+                    backgroundRefreshFuture = null;
+                }
+            }
+        } finally {
+            authenticateLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the server rejects the authentication token, then this client
+     * reauthenticates and retries the method once.
+     */
+    @Override
+    protected <T> T invoke(Method<T> method) throws ComputeCloudClientException {
+        preInvoke();
+        int count = authenticationCount;
+        try {
+            return method.invoke(client);
+        } catch (ComputeCloudClientUnauthorizedException e) {
+            reauthenticateUnauthorized(count, e);
+            return method.invoke(client);
+        }
     }
 }
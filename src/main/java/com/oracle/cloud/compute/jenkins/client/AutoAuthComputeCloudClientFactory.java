@@ -2,6 +2,10 @@ package com.oracle.cloud.compute.jenkins.client;
 
 import java.net.URI;
 
+import com.oracle.cloud.compute.jenkins.Clock;
+
+import jenkins.util.Timer;
+
 public class AutoAuthComputeCloudClientFactory implements ComputeCloudClientFactory {
     private final ComputeCloudClientFactory factory;
 
@@ -11,6 +15,6 @@ public class AutoAuthComputeCloudClientFactory implements ComputeCloudClientFact
 
     @Override
     public ComputeCloudClient createClient(URI endpoint, ComputeCloudUser user, String password) {
-        return new AutoAuthComputeCloudClient(factory.createClient(endpoint, user, password));
+        return new AutoAuthComputeCloudClient(factory.createClient(endpoint, user, password), Clock.INSTANCE, Timer.get());
     }
 }
@@ -1,63 +1,293 @@
 package com.oracle.cloud.compute.jenkins.client;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import com.oracle.cloud.compute.jenkins.Clock;
 import com.oracle.cloud.compute.jenkins.model.ImageList;
+import com.oracle.cloud.compute.jenkins.model.ImageListEntry;
 import com.oracle.cloud.compute.jenkins.model.ImageListSourceType;
+import com.oracle.cloud.compute.jenkins.model.SSHKey;
+import com.oracle.cloud.compute.jenkins.model.SecurityList;
 import com.oracle.cloud.compute.jenkins.model.Shape;
 
 /**
  * An implementation of ComputeCloudClient that caches infrequently changing
- * data from the server.
+ * data from the server.  Concurrent requests for the same data share a
+ * single request to the server, and requests for different data do not
+ * block each other.
+ *
+ * <p>Each kind of data has a time-to-live.  If an executor is specified,
+ * then expired data continues to be returned for up to another time-to-live
+ * while it is reloaded in the background.  Otherwise, or if the data is
+ * older than that, callers wait for the data to be reloaded.
  */
 public class CachingComputeCloudClient extends ProxyComputeCloudClient {
+    private static final Logger LOGGER = Logger.getLogger(CachingComputeCloudClient.class.getName());
+
+    /**
+     * The maximum number of cached entries.  The least recently used entry
+     * is removed when the limit is exceeded.
+     */
+    static final int MAX_ENTRIES = 256;
+
+    enum Resource {
+        SHAPES(TimeUnit.HOURS.toNanos(1)),
+        IMAGE_LISTS(TimeUnit.MINUTES.toNanos(10)),
+        IMAGE_LIST_ENTRIES(TimeUnit.MINUTES.toNanos(10)),
+        SECURITY_LISTS(TimeUnit.MINUTES.toNanos(5)),
+        SSH_KEYS(TimeUnit.MINUTES.toNanos(5));
+
+        final long timeToLiveNanos;
+
+        private Resource(long timeToLiveNanos) {
+            this.timeToLiveNanos = timeToLiveNanos;
+        }
+    }
+
+    private static class CacheKey {
+        final Resource resource;
+        final Object name;
+
+        CacheKey(Resource resource, Object name) {
+            this.resource = resource;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name == null ? resource.toString() : resource.toString() + '[' + name + ']';
+        }
+
+        @Override
+        public int hashCode() {
+            return resource.hashCode() * 31 + Objects.hashCode(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey key = (CacheKey)o;
+            return resource == key.resource && Objects.equals(name, key.name);
+        }
+    }
+
+    private static class CacheEntry {
+        final FutureTask<?> load;
+        final long loadNanoTime;
+
+        /**
+         * True if a background reload is in progress.  Guarded by the cache.
+         */
+        boolean reloading;
+
+        CacheEntry(FutureTask<?> load, long loadNanoTime) {
+            this.load = load;
+            this.loadNanoTime = loadNanoTime;
+        }
+    }
+
+    private final Clock clock;
+    private final Executor executor;
+
+    /**
+     * The cached values (or the in-progress loads).  The lock is only held to
+     * access the map, and never while loading.
+     */
+    private final Map<CacheKey, CacheEntry> cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private volatile boolean closed;
+
     public CachingComputeCloudClient(ComputeCloudClient client) {
+        this(client, Clock.INSTANCE, null);
+    }
+
+    /**
+     * @param executor the executor for background reloads, or null to only
+     * reload when methods are called
+     */
+    public CachingComputeCloudClient(ComputeCloudClient client, Clock clock, Executor executor) {
         super(client);
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        super.close();
+    }
+
+    /**
+     * Returns the cached value for the key, or calls the loader if the value
+     * is not cached or has expired.  If another thread is already calling a
+     * loader for the key, then this thread waits for that result rather than
+     * calling the loader.  Exceptions are not cached.
+     */
+    private <T> T get(CacheKey key, Callable<T> loader) throws ComputeCloudClientException {
+        long nanoTime = clock.nanoTime();
+        long timeToLiveNanos = key.resource.timeToLiveNanos;
+
+        CacheEntry entry;
+        boolean load = false;
+        boolean reload = false;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry != null && entry.load.isDone()) {
+                long ageNanos = nanoTime - entry.loadNanoTime;
+                if (ageNanos >= timeToLiveNanos) {
+                    if (executor != null && ageNanos < 2 * timeToLiveNanos && !closed) {
+                        if (!entry.reloading) {
+                            entry.reloading = true;
+                            reload = true;
+                        }
+                    } else {
+                        entry = null;
+                    }
+                }
+            }
+
+            if (entry == null) {
+                entry = new CacheEntry(new FutureTask<>(loader), nanoTime);
+                cache.put(key, entry);
+                load = true;
+            }
+        }
+
+        if (load) {
+            entry.load.run();
+        } else if (reload) {
+            reloadInBackground(key, entry, loader);
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            T result = (T)entry.load.get();
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ComputeCloudClientException(e.toString(), e);
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                if (cache.get(key) == entry) {
+                    cache.remove(key);
+                }
+            }
+
+            Throwable cause = e.getCause();
+            if (cause instanceof ComputeCloudClientException) {
+                throw (ComputeCloudClientException)cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new ComputeCloudClientException(cause.toString(), cause);
+        }
     }
 
-    private Collection<Shape> shapes;
-    private Collection<ImageList> oraclePublicImageLists;
-    private Collection<ImageList> customerPrivateImageLists;
+    private void reloadInBackground(final CacheKey key, final CacheEntry entry, Callable<?> loader) {
+        final FutureTask<?> task = new FutureTask<>(loader);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long nanoTime = clock.nanoTime();
+                    task.run();
+
+                    boolean loaded;
+                    try {
+                        task.get();
+                        loaded = true;
+                    } catch (InterruptedException | ExecutionException e) {
+                        LOGGER.log(Level.FINE, "Failed to reload " + key + " for " + client, e);
+                        loaded = false;
+                    }
 
-    private synchronized void clearCaches() {
-        shapes = null;
-        oraclePublicImageLists = null;
-        customerPrivateImageLists = null;
+                    synchronized (cache) {
+                        entry.reloading = false;
+                        if (loaded && cache.get(key) == entry) {
+                            cache.put(key, new CacheEntry(task, nanoTime));
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Unable to reload " + key + " for " + client, e);
+            synchronized (cache) {
+                entry.reloading = false;
+            }
+        }
     }
 
     @Override
-    public void authenticate() throws ComputeCloudClientException {
-        clearCaches();
-        super.authenticate();
+    public Collection<Shape> getShapes() throws ComputeCloudClientException {
+        return get(new CacheKey(Resource.SHAPES, null), new Callable<Collection<Shape>>() {
+            @Override
+            public Collection<Shape> call() throws ComputeCloudClientException {
+                return CachingComputeCloudClient.super.getShapes();
+            }
+        });
     }
 
     @Override
-    public synchronized Collection<Shape> getShapes() throws ComputeCloudClientException {
-        Collection<Shape> shapes = this.shapes;
-        if (shapes == null) {
-            shapes = super.getShapes();
-            this.shapes = shapes;
-        }
-        return shapes;
+    public Collection<ImageList> getImageLists(final ImageListSourceType sourceType) throws ComputeCloudClientException {
+        return get(new CacheKey(Resource.IMAGE_LISTS, sourceType), new Callable<Collection<ImageList>>() {
+            @Override
+            public Collection<ImageList> call() throws ComputeCloudClientException {
+                return CachingComputeCloudClient.super.getImageLists(sourceType);
+            }
+        });
     }
 
     @Override
-    public synchronized Collection<ImageList> getImageLists(ImageListSourceType sourceType) throws ComputeCloudClientException {
-        Collection<ImageList> imageLists = null;
-        if (sourceType.equals(ImageListSourceType.ORACLE_PUBLIC_IMAGE)) {
-            imageLists = this.oraclePublicImageLists;
-        } else if (sourceType.equals(ImageListSourceType.PRIVATE_IAMGE)) {
-            imageLists = this.customerPrivateImageLists;
-        }
+    public Collection<ImageListEntry> getImageListEntries(final String imageListName) throws ComputeCloudClientException {
+        return get(new CacheKey(Resource.IMAGE_LIST_ENTRIES, imageListName), new Callable<Collection<ImageListEntry>>() {
+            @Override
+            public Collection<ImageListEntry> call() throws ComputeCloudClientException {
+                return CachingComputeCloudClient.super.getImageListEntries(imageListName);
+            }
+        });
+    }
 
-        if (imageLists == null) {
-            imageLists = super.getImageLists(sourceType);
-            if (sourceType.equals(ImageListSourceType.ORACLE_PUBLIC_IMAGE)) {
-                this.oraclePublicImageLists = imageLists;
-            } else if (sourceType.equals(ImageListSourceType.PRIVATE_IAMGE)) {
-                this.customerPrivateImageLists = imageLists;
+    @Override
+    public Collection<SecurityList> getSecurityLists() throws ComputeCloudClientException {
+        return get(new CacheKey(Resource.SECURITY_LISTS, null), new Callable<Collection<SecurityList>>() {
+            @Override
+            public Collection<SecurityList> call() throws ComputeCloudClientException {
+                return CachingComputeCloudClient.super.getSecurityLists();
             }
-        }
-        return imageLists;
+        });
+    }
+
+    @Override
+    public Collection<SSHKey> getSSHKeys() throws ComputeCloudClientException {
+        return get(new CacheKey(Resource.SSH_KEYS, null), new Callable<Collection<SSHKey>>() {
+            @Override
+            public Collection<SSHKey> call() throws ComputeCloudClientException {
+                return CachingComputeCloudClient.super.getSSHKeys();
+            }
+        });
     }
 }
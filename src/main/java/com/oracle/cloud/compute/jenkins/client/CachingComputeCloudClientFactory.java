@@ -2,6 +2,10 @@ package com.oracle.cloud.compute.jenkins.client;
 
 import java.net.URI;
 
+import com.oracle.cloud.compute.jenkins.Clock;
+
+import jenkins.util.Timer;
+
 public class CachingComputeCloudClientFactory implements ComputeCloudClientFactory {
     private final ComputeCloudClientFactory factory;
 
@@ -11,6 +15,6 @@ public class CachingComputeCloudClientFactory implements ComputeCloudClientFacto
 
     @Override
     public ComputeCloudClient createClient(URI endpoint, ComputeCloudUser user, String password) {
-        return new CachingComputeCloudClient(factory.createClient(endpoint, user, password));
+        return new CachingComputeCloudClient(factory.createClient(endpoint, user, password), Clock.INSTANCE, Timer.get());
     }
 }
@@ -119,6 +119,23 @@ public interface ComputeCloudClient extends AutoCloseable {
      */
     void createInstanceOrchestration(String name, ComputeCloudInstanceOrchestrationConfig params) throws ComputeCloudClientException;
 
+    /**
+     * Creates an orchestration with the specified name that contains a
+     * launchplan for the specified number of instances with the specified
+     * configuration.  Each instance has its own IP reservation and storage
+     * volume, and the IPs are returned by
+     * {@link InstanceOrchestration#getIps} in instance order.
+     *
+     * @param name the orchestration name
+     * @param params the instance configuration
+     * @param instanceCount the number of instances
+     * @throws ComputeCloudClientUnauthorizedException if the authentication
+     * token has timed out or the user is not authorized
+     * @throws ComputeCloudClientException if an error occurs communicating with
+     * the endpoint server
+     */
+    void createInstanceOrchestration(String name, ComputeCloudInstanceOrchestrationConfig params, int instanceCount) throws ComputeCloudClientException;
+
     /**
      * Gets a subset of properties from an instance orchestration created from
      * {@link #createInstanceOrchestration}
@@ -133,6 +150,24 @@ public interface ComputeCloudClient extends AutoCloseable {
      */
     InstanceOrchestration getInstanceOrchestration(String name) throws ComputeCloudClientException;
 
+    /**
+     * Gets a subset of properties from all instance orchestrations of the
+     * current user with names that start with the specified prefix.  This
+     * retrieves the orchestrations with a single request, so it is more
+     * efficient than calling {@link #getInstanceOrchestration} for many
+     * orchestrations.
+     *
+     * @param namePrefix the orchestration name prefix
+     *
+     * @return the collection of {@link InstanceOrchestration}, with names
+     * @throws IllegalStateException if {@link #authenticate} was not called
+     * @throws ComputeCloudClientUnauthorizedException if the authentication
+     * token has timed out or the user is not authorized
+     * @throws ComputeCloudClientException if an error occurs communicating with
+     * the endpoint server
+     */
+    Collection<InstanceOrchestration> getInstanceOrchestrations(String namePrefix) throws ComputeCloudClientException;
+
     /**
      * Starts an orchestration with the specified name.
      *
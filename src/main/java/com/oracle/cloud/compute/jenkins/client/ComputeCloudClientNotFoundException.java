@@ -0,0 +1,12 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+/**
+ * This exception is thrown when the requested object does not exist on the
+ * API endpoint server.
+ */
+@SuppressWarnings("serial")
+public class ComputeCloudClientNotFoundException extends ComputeCloudClientException {
+    public ComputeCloudClientNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+/**
+ * This exception is thrown when the API endpoint server cannot be reached or
+ * responds with a server error, so the request might succeed if retried later.
+ */
+@SuppressWarnings("serial")
+public class ComputeCloudClientUnavailableException extends ComputeCloudClientException {
+    public ComputeCloudClientUnavailableException(String message) {
+        super(message);
+    }
+
+    public ComputeCloudClientUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
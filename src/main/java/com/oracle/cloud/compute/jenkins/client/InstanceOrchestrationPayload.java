@@ -0,0 +1,180 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.json.JsonObject;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * The request body for creating an instance orchestration.  Everything in
+ * the body except the object name is determined by the
+ * {@link ComputeCloudInstanceOrchestrationConfig}, so the body is serialized
+ * once per configuration, and only the object name is written when a
+ * request is sent.
+ */
+class InstanceOrchestrationPayload {
+    /**
+     * The maximum number of cached payloads.  The least recently used payload
+     * is removed when the limit is exceeded.
+     */
+    static final int MAX_CACHED_PAYLOADS = 64;
+
+    /**
+     * Builds the orchestration JSON for an object name.
+     */
+    interface Builder {
+        JsonObject build(String objectName);
+    }
+
+    private static final Map<List<Object>, InstanceOrchestrationPayload> CACHE = new LinkedHashMap<List<Object>, InstanceOrchestrationPayload>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, InstanceOrchestrationPayload> eldest) {
+            return size() > MAX_CACHED_PAYLOADS;
+        }
+    };
+
+    /**
+     * The serialized JSON split at each occurrence of the object name.
+     */
+    private final byte[][] fragments;
+
+    private InstanceOrchestrationPayload(byte[][] fragments) {
+        this.fragments = fragments;
+    }
+
+    /**
+     * Returns the values of the configuration that affect the payload.
+     */
+    static List<Object> getCacheKey(ComputeCloudInstanceOrchestrationConfig params) {
+        List<String> securityListNames = params.getSecurityListNames();
+        return Arrays.<Object>asList(
+                params.getOrchDescriptionValue(),
+                params.getShapeName(),
+                securityListNames == null ? null : new ArrayList<>(securityListNames),
+                params.getImageListName(),
+                params.getImageListEntry(),
+                params.getVolumeSizeValue(),
+                params.getSshKeyName(),
+                params.isHypervisorPvEnabled());
+    }
+
+    /**
+     * Returns the cached payload for the configuration, or compiles it using
+     * the builder.
+     */
+    static InstanceOrchestrationPayload get(ComputeCloudInstanceOrchestrationConfig params, Builder builder) {
+        return get(params, 1, builder);
+    }
+
+    /**
+     * Returns the cached payload for the configuration and number of
+     * instances, or compiles it using the builder.
+     */
+    static InstanceOrchestrationPayload get(ComputeCloudInstanceOrchestrationConfig params, int instanceCount, Builder builder) {
+        List<Object> key = new ArrayList<>(getCacheKey(params));
+        key.add(instanceCount);
+        synchronized (CACHE) {
+            InstanceOrchestrationPayload payload = CACHE.get(key);
+            if (payload != null) {
+                return payload;
+            }
+        }
+
+        // Compile outside the lock.  Concurrent compiles of the same
+        // configuration produce equivalent payloads, so either can be kept.
+        InstanceOrchestrationPayload payload = compile(builder);
+        synchronized (CACHE) {
+            CACHE.put(key, payload);
+        }
+        return payload;
+    }
+
+    static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Builds the JSON using a unique placeholder for the object name, and
+     * splits the serialized JSON at each occurrence of the placeholder.
+     */
+    static InstanceOrchestrationPayload compile(Builder builder) {
+        // The placeholder only contains characters that are not escaped in
+        // JSON strings, and it is random so that it cannot occur in any of
+        // the configuration values.
+        String placeholder = "_" + UUID.randomUUID().toString().replace("-", "") + "_";
+        String json = builder.build(placeholder).toString();
+
+        List<byte[]> fragments = new ArrayList<>();
+        int begin = 0;
+        for (int index; (index = json.indexOf(placeholder, begin)) != -1; begin = index + placeholder.length()) {
+            fragments.add(json.substring(begin, index).getBytes(StandardCharsets.UTF_8));
+        }
+        fragments.add(json.substring(begin).getBytes(StandardCharsets.UTF_8));
+        return new InstanceOrchestrationPayload(fragments.toArray(new byte[fragments.size()][]));
+    }
+
+    /**
+     * Escapes a string for use within a JSON string literal.
+     */
+    static String escape(String s) {
+        StringBuilder b = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                if (b == null) {
+                    b = new StringBuilder(s.length() + 16).append(s, 0, i);
+                }
+                switch (c) {
+                case '"': b.append("\\\""); break;
+                case '\\': b.append("\\\\"); break;
+                case '\b': b.append("\\b"); break;
+                case '\f': b.append("\\f"); break;
+                case '\n': b.append("\\n"); break;
+                case '\r': b.append("\\r"); break;
+                case '\t': b.append("\\t"); break;
+                default: b.append(String.format("\\u%04x", (int)c)); break;
+                }
+            } else if (b != null) {
+                b.append(c);
+            }
+        }
+        return b == null ? s : b.toString();
+    }
+
+    /**
+     * Writes the JSON for the object name.
+     */
+    void write(OutputStream out, String objectName) throws IOException {
+        byte[] objectNameBytes = escape(objectName).getBytes(StandardCharsets.UTF_8);
+        out.write(fragments[0]);
+        for (int i = 1; i < fragments.length; i++) {
+            out.write(objectNameBytes);
+            out.write(fragments[i]);
+        }
+    }
+
+    /**
+     * Returns an entity that writes the JSON for the object name directly to
+     * the request stream.
+     */
+    StreamingOutput toStreamingOutput(final String objectName) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                InstanceOrchestrationPayload.this.write(out, objectName);
+            }
+        };
+    }
+}
@@ -0,0 +1,209 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
+
+/**
+ * Answers concurrent orchestration status queries with a single request.
+ * Queries that arrive while a request is in progress are batched, and the
+ * next request uses {@link ComputeCloudClient#getInstanceOrchestrations} to
+ * answer the whole batch.  Every query is answered by a request that was
+ * sent after the query was made, so results are never older than they would
+ * be with {@link ComputeCloudClient#getInstanceOrchestration}.
+ *
+ * <p>A poller should be shared by all callers that use clients for the same
+ * user.
+ */
+public class InstanceOrchestrationPoller {
+    private static final String CLASS_NAME = InstanceOrchestrationPoller.class.getName();
+
+    /**
+     * The minimum number of queries in a batch before the orchestrations are
+     * listed.  Smaller batches query each orchestration individually, which
+     * avoids listing all orchestrations for a single query.
+     */
+    static final int MIN_BATCH_SIZE = Integer.getInteger(CLASS_NAME + ".minBatchSize", 2);
+
+    private final String namePrefix;
+    private final int minBatchSize;
+
+    private final Object lock = new Object();
+
+    /**
+     * The batch accepting queries, or null.  Guarded by {@link #lock}.
+     */
+    private Batch pending;
+
+    /**
+     * True if a batch is being polled.  Guarded by {@link #lock}.
+     */
+    private boolean polling;
+
+    /**
+     * @param namePrefix the prefix of all orchestration names that will be
+     * queried in batches
+     */
+    public InstanceOrchestrationPoller(String namePrefix) {
+        this(namePrefix, MIN_BATCH_SIZE);
+    }
+
+    InstanceOrchestrationPoller(String namePrefix, int minBatchSize) {
+        this.namePrefix = namePrefix;
+        this.minBatchSize = minBatchSize;
+    }
+
+    private class Batch implements Callable<Map<String, InstanceOrchestration>> {
+        final ComputeCloudClient client;
+        final FutureTask<Map<String, InstanceOrchestration>> task = new FutureTask<>(this);
+
+        /**
+         * The queried names.  Guarded by {@link InstanceOrchestrationPoller#lock}
+         * until the batch is no longer pending.
+         */
+        final Set<String> names = new LinkedHashSet<>();
+
+        /**
+         * The errors from querying orchestrations individually.
+         */
+        final Map<String, ComputeCloudClientException> errors = new HashMap<>();
+
+        Batch(ComputeCloudClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Returns the orchestrations by name.  Small batches are queried
+         * individually while still holding the polling flag so that
+         * queries made in the meantime are batched.
+         */
+        @Override
+        public Map<String, InstanceOrchestration> call() throws ComputeCloudClientException {
+            Map<String, InstanceOrchestration> result = new HashMap<>();
+            if (names.size() < minBatchSize) {
+                for (String name : names) {
+                    try {
+                        result.put(name, client.getInstanceOrchestration(name));
+                    } catch (ComputeCloudClientException e) {
+                        errors.put(name, e);
+                    }
+                }
+            } else {
+                for (InstanceOrchestration orch : client.getInstanceOrchestrations(namePrefix)) {
+                    result.put(orch.getName(), orch);
+                }
+            }
+            return result;
+        }
+
+        void poll() {
+            boolean interrupted = false;
+            synchronized (lock) {
+                // Other threads are waiting for this batch, so do not stop
+                // waiting if interrupted.
+                while (polling) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+
+                polling = true;
+                pending = null;
+            }
+
+            try {
+                task.run();
+            } finally {
+                synchronized (lock) {
+                    polling = false;
+                    lock.notifyAll();
+                }
+
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        Map<String, InstanceOrchestration> get() throws ComputeCloudClientException {
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ComputeCloudClientException(e.toString(), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ComputeCloudClientException) {
+                    throw (ComputeCloudClientException)cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException)cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error)cause;
+                }
+                throw new ComputeCloudClientException(cause.toString(), cause);
+            }
+        }
+    }
+
+    int getPendingCount() {
+        synchronized (lock) {
+            return pending == null ? 0 : pending.names.size();
+        }
+    }
+
+    /**
+     * Gets an orchestration, possibly by waiting for a request made on
+     * behalf of other concurrent callers.
+     *
+     * @param client the client to use if this caller sends the request
+     * @param name the orchestration name
+     * @return the orchestration
+     * @throws ComputeCloudClientException if an error occurs communicating
+     * with the endpoint server
+     * @see ComputeCloudClient#getInstanceOrchestration
+     */
+    public InstanceOrchestration getInstanceOrchestration(ComputeCloudClient client, String name) throws ComputeCloudClientException {
+        if (!name.startsWith(namePrefix)) {
+            return client.getInstanceOrchestration(name);
+        }
+
+        Batch batch;
+        boolean poll = false;
+        synchronized (lock) {
+            batch = pending;
+            if (batch == null) {
+                batch = pending = new Batch(client);
+                poll = true;
+            }
+            batch.names.add(name);
+        }
+
+        if (poll) {
+            batch.poll();
+        }
+
+        Map<String, InstanceOrchestration> result = batch.get();
+        ComputeCloudClientException error = batch.errors.get(name);
+        if (error != null) {
+            throw error;
+        }
+
+        InstanceOrchestration orch = result.get(name);
+        if (orch == null) {
+            // The orchestration was not listed, so get the orchestration
+            // individually to get the same result or error.
+            orch = client.getInstanceOrchestration(name);
+        }
+        return orch;
+    }
+}
@@ -1,8 +1,9 @@
 package com.oracle.cloud.compute.jenkins.client;
 
-import java.math.BigDecimal;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
@@ -16,8 +17,9 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonStructure;
-import javax.json.JsonValue;
 import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
@@ -113,7 +115,7 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                 }
             }
 
-            throw new ComputeCloudClientException(message, e);
+            throw new ComputeCloudClientUnavailableException(message, e);
         }
 
         StatusType statusInfo = response.getStatusInfo();
@@ -133,10 +135,20 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                 }
             }
 
+            // Release the pooled connection even if the entity was not read.
+            response.close();
+
             String message = messageBuilder.toString();
-            if (Response.Status.fromStatusCode(statusInfo.getStatusCode()) == Response.Status.UNAUTHORIZED) {
+            Response.Status status = Response.Status.fromStatusCode(statusInfo.getStatusCode());
+            if (status == Response.Status.UNAUTHORIZED) {
                 throw new ComputeCloudClientUnauthorizedException(message);
             }
+            if (status == Response.Status.NOT_FOUND) {
+                throw new ComputeCloudClientNotFoundException(message);
+            }
+            if (statusInfo.getFamily() == Response.Status.Family.SERVER_ERROR) {
+                throw new ComputeCloudClientUnavailableException(message);
+            }
             throw new ComputeCloudClientException(message);
         }
 
@@ -150,7 +162,9 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                         .add("user", user.getString())
                         .add("password", password)
                         .build()));
-        authenticationCookies = invoke(inv).getCookies().values();
+        try (Response response = invoke(inv)) {
+            authenticationCookies = response.getCookies().values();
+        }
     }
 
     private Invocation.Builder addAuthenticationCookies(Invocation.Builder builder) {
@@ -178,8 +192,30 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         return readEntity(invoke(inv), JsonObject.class);
     }
 
-    private JsonArray invokeAndGetResultArray(Invocation inv) throws ComputeCloudClientException {
-        return invokeAndReadJsonObject(inv).getJsonArray("result");
+    /**
+     * Invokes the request and reads the objects in the "result" array of the
+     * response using a streaming parser.
+     */
+    private <T> Collection<T> invokeAndReadResultArray(Invocation inv, JsonParserUtil.ObjectReader<T> reader) throws ComputeCloudClientException {
+        Collection<T> result = new ArrayList<>();
+        try (JsonParser parser = JSON_PROVIDER.createParser(readEntity(invoke(inv), InputStream.class))) {
+            JsonParserUtil.readResultArray(parser, reader, result);
+        } catch (JsonException e) {
+            throw new ComputeCloudClientException(e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Invokes the request and reads the object in the response using a
+     * streaming parser.
+     */
+    private <T> T invokeAndReadObject(Invocation inv, JsonParserUtil.ObjectReader<T> reader) throws ComputeCloudClientException {
+        try (JsonParser parser = JSON_PROVIDER.createParser(readEntity(invoke(inv), InputStream.class))) {
+            return JsonParserUtil.readObject(parser, reader);
+        } catch (JsonException e) {
+            throw new ComputeCloudClientException(e.getMessage(), e);
+        }
     }
 
     private static Boolean getBoolean(JsonObject o, String key) {
@@ -187,21 +223,11 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         return b;
     }
 
-    private static Long getLong(JsonObject o, String key) {
-        JsonNumber n = o.getJsonNumber(key);
-        return n == null ? null : n.longValueExact();
-    }
-
     private static Integer getInteger(JsonObject o, String key) {
         JsonNumber n = o.getJsonNumber(key);
         return n == null ? null : n.intValueExact();
     }
 
-    private static BigDecimal getBigDecimal(JsonObject o, String key) {
-        JsonNumber n = o.getJsonNumber(key);
-        return n == null ? null : n.bigDecimalValue();
-    }
-
     private static String getString(JsonObject o, String key) {
         return o.getString(key, null);
     }
@@ -231,55 +257,67 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         };
     }
 
+    private static final JsonParserUtil.ObjectReader<Shape> SHAPE_READER = new JsonParserUtil.ObjectReader<Shape>() {
+        @Override
+        public Shape read(JsonParser parser) {
+            Shape shape = new Shape();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "cpus": shape.cpus(JsonParserUtil.getBigDecimal(parser, event)); break;
+                case "gpus": shape.gpus(JsonParserUtil.getLong(parser, event)); break;
+                case "io": shape.io(JsonParserUtil.getLong(parser, event)); break;
+                case "is_root_ssd": shape.isRootSsd(JsonParserUtil.getBoolean(parser, event)); break;
+                case "name": shape.name(JsonParserUtil.getString(parser, event)); break;
+                case "nds_iops_limit": shape.ndsIopsLimit(JsonParserUtil.getLong(parser, event)); break;
+                case "placement_requirements": shape.placementRequirements(JsonParserUtil.getStringList(parser, event)); break;
+                case "ram": shape.ram(JsonParserUtil.getLong(parser, event)); break;
+                case "root_disk_size": shape.rootDiskSize(JsonParserUtil.getLong(parser, event)); break;
+                case "ssd_data_size": shape.ssdDataSize(JsonParserUtil.getLong(parser, event)); break;
+                case "uri": shape.uri(JsonParserUtil.getString(parser, event)); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return shape;
+        }
+    };
+
     @Override
     public Collection<Shape> getShapes() throws ComputeCloudClientException {
-        Collection<Shape> result = new ArrayList<>();
         Invocation inv = request("shape/").accept(ORACLE_COMPUTE_V3_MEDIA_TYPE).buildGet();
-        for (JsonObject shapeJson : invokeAndGetResultArray(inv).getValuesAs(JsonObject.class)) {
-            result.add(toShape(shapeJson));
+        return invokeAndReadResultArray(inv, SHAPE_READER);
+    }
+
+    private static final JsonParserUtil.ObjectReader<SecurityList> SECURITY_LIST_READER = new JsonParserUtil.ObjectReader<SecurityList>() {
+        @Override
+        public SecurityList read(JsonParser parser) {
+            SecurityList securityList = new SecurityList();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "account": securityList.account(JsonParserUtil.getString(parser, event)); break;
+                case "description": securityList.description(JsonParserUtil.getString(parser, event)); break;
+                case "uri": securityList.uri(JsonParserUtil.getString(parser, event)); break;
+                case "outbound_cidr_policy": securityList.outboundCidrPolicy(JsonParserUtil.getString(parser, event)); break;
+                case "policy": securityList.policy(JsonParserUtil.getString(parser, event)); break;
+                case "group_id": securityList.groupId(JsonParserUtil.getString(parser, event)); break;
+                case "id": securityList.id(JsonParserUtil.getString(parser, event)); break;
+                case "name": securityList.name(JsonParserUtil.getString(parser, event)); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return securityList;
         }
-        return result;
-    }
-
-    private Shape toShape(JsonObject shapeJson) throws ComputeCloudClientException {
-        return new Shape()
-                .cpus(getBigDecimal(shapeJson, "cpus"))
-                .gpus(getLong(shapeJson, "gpus"))
-                .io(getLong(shapeJson, "io"))
-                .isRootSsd(getBoolean(shapeJson, "is_root_ssd"))
-                .name(getString(shapeJson, "name"))
-                .ndsIopsLimit(getLong(shapeJson, "nds_iops_limit"))
-                .placementRequirements(getStringList(shapeJson, "placement_requirements"))
-                .ram(getLong(shapeJson, "ram"))
-                .rootDiskSize(getLong(shapeJson, "root_disk_size"))
-                .ssdDataSize(getLong(shapeJson, "ssd_data_size"))
-                .uri(getString(shapeJson, "uri"))
-                ;
-    }
+    };
 
     @Override
     public Collection<SecurityList> getSecurityLists() throws ComputeCloudClientException {
-        Collection<SecurityList> result = new ArrayList<>();
         Invocation inv = request("seclist" + user.getString() + '/').accept(ORACLE_COMPUTE_V3_MEDIA_TYPE).buildGet();
-        for (JsonObject securityJson : invokeAndGetResultArray(inv).getValuesAs(JsonObject.class)) {
-            result.add(toSecurityList(securityJson));
-        }
-        return result;
+        return invokeAndReadResultArray(inv, SECURITY_LIST_READER);
     }
 
-    private SecurityList toSecurityList(JsonObject securityJson) throws ComputeCloudClientException {
-        return new SecurityList()
-                .account(getString(securityJson, "account"))
-                .description(getString(securityJson, "description"))
-                .uri(getString(securityJson, "uri"))
-                .outboundCidrPolicy(getString(securityJson, "outbound_cidr_policy"))
-                .policy(getString(securityJson, "policy"))
-                .groupId(getString(securityJson, "group_id"))
-                .id(getString(securityJson, "id"))
-                .name(getString(securityJson, "name"))
-                ;
-     }
-
     private SSHKey toSSHKey(JsonObject sshKeyJson) throws ComputeCloudClientException {
         return new SSHKey()
                 .enabled(getBoolean(sshKeyJson, "enabled"))
@@ -288,14 +326,29 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                 .name(getString(sshKeyJson, "name"));
     }
 
+    private static final JsonParserUtil.ObjectReader<SSHKey> SSH_KEY_READER = new JsonParserUtil.ObjectReader<SSHKey>() {
+        @Override
+        public SSHKey read(JsonParser parser) {
+            SSHKey sshKey = new SSHKey();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "enabled": sshKey.enabled(JsonParserUtil.getBoolean(parser, event)); break;
+                case "uri": sshKey.uri(JsonParserUtil.getString(parser, event)); break;
+                case "key": sshKey.key(JsonParserUtil.getString(parser, event)); break;
+                case "name": sshKey.name(JsonParserUtil.getString(parser, event)); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return sshKey;
+        }
+    };
+
     @Override
     public Collection<SSHKey> getSSHKeys() throws ComputeCloudClientException {
-        Collection<SSHKey> result = new ArrayList<>();
         Invocation inv = request("sshkey" + user.getString() + '/').accept(ORACLE_COMPUTE_V3_MEDIA_TYPE).buildGet();
-        for (JsonObject sshkey : invokeAndGetResultArray(inv).getValuesAs(JsonObject.class)) {
-            result.add(toSSHKey(sshkey));
-        }
-        return result;
+        return invokeAndReadResultArray(inv, SSH_KEY_READER);
     }
 
     @Override
@@ -312,19 +365,28 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                 .version(getInteger(imageListEntryJson, "version"));
     }
 
-    private ImageList toImageList(JsonObject imageListJson) throws ComputeCloudClientException {
-        return new ImageList()
-                ._default(getInteger(imageListJson, "default"))
-                .description(getString(imageListJson, "description"))
-                //TODO: skip entries when generate imagelists, as only name is needed.
-                //.entries(toImageListEntryList(imageListJson, "entries"))
-                .name(getString(imageListJson, "name"))
-                .uri(getString(imageListJson, "uri"));
-    }
+    private static final JsonParserUtil.ObjectReader<ImageList> IMAGE_LIST_READER = new JsonParserUtil.ObjectReader<ImageList>() {
+        @Override
+        public ImageList read(JsonParser parser) {
+            ImageList imageList = new ImageList();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "default": imageList._default(JsonParserUtil.getInteger(parser, event)); break;
+                case "description": imageList.description(JsonParserUtil.getString(parser, event)); break;
+                case "name": imageList.name(JsonParserUtil.getString(parser, event)); break;
+                case "uri": imageList.uri(JsonParserUtil.getString(parser, event)); break;
+                // The entries are skipped since only the name is needed.
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return imageList;
+        }
+    };
 
     @Override
     public Collection<ImageList> getImageLists(ImageListSourceType sourceType) throws ComputeCloudClientException {
-        Collection<ImageList> result = new ArrayList<>();
         String uri = "imagelist";
         if (sourceType.equals(ImageListSourceType.ORACLE_PUBLIC_IMAGE))
             uri += "/oracle/public/";
@@ -332,10 +394,7 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
             uri += user.getString() + '/';
 
         Invocation inv = request(uri).accept(ORACLE_COMPUTE_V3_MEDIA_TYPE).buildGet();
-        for (JsonObject imageListJson : invokeAndGetResultArray(inv).getValuesAs(JsonObject.class)) {
-            result.add(toImageList(imageListJson));
-        }
-        return result;
+        return invokeAndReadResultArray(inv, IMAGE_LIST_READER);
     }
 
     @Override
@@ -362,15 +421,38 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
     static final String STORAGE_VOLUME_LABEL = "storage-volume";
     static final String LAUNCHPLAN_LABEL = "launchplan";
 
-    private String getAttributeNameString(ComputeCloudObjectName attributeName) {
-        return attributeName.getString();
+    /**
+     * Returns the name of the instance, IP reservation and storage volume for
+     * an instance of an orchestration.
+     */
+    static String getInstanceObjectName(String objectName, int instanceIndex, int instanceCount) {
+        return instanceCount == 1 ? objectName : objectName + '_' + instanceIndex;
+    }
+
+    /**
+     * Returns the index of the instance from a name returned by
+     * {@link #getInstanceObjectName} for an orchestration with several
+     * instances, or -1 if the name does not have a valid index.
+     */
+    static int getInstanceIndex(String instanceObjectName, int instanceCount) {
+        int separator = instanceObjectName == null ? -1 : instanceObjectName.lastIndexOf('_');
+        if (separator == -1) {
+            return -1;
+        }
+
+        try {
+            int result = Integer.parseInt(instanceObjectName.substring(separator + 1));
+            return result >= 0 && result < instanceCount ? result : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
-    private JsonObject buildSingleInstanceJsonObject(ComputeCloudObjectName objectName, ComputeCloudInstanceOrchestrationConfig params) {
+    private static JsonObject buildSingleInstanceJsonObject(String objectName, ComputeCloudInstanceOrchestrationConfig params) {
 
-        ComputeCloudObjectName instanceName = objectName;
-        String volumeNameString = getAttributeNameString(objectName);
-        String ipReservationNameString = getAttributeNameString(objectName);
+        String instanceName = objectName;
+        String volumeNameString = objectName;
+        String ipReservationNameString = objectName;
 
         String shapeName = params.getShapeName();
         String sshKeyName = params.getSshKeyName();
@@ -382,7 +464,7 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
 
         JsonObjectBuilder instanceObjBuilder = createObjectBuilder()
                 .add("shape", shapeName == null ? "" : shapeName)
-                .add("name", instanceName.getString())
+                .add("name", instanceName)
                 .add("storage_attachments", createArrayBuilder()
                         .add(createObjectBuilder()
                                 .add("index", 1)
@@ -407,23 +489,50 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         return instanceObjBuilder.build();
     }
 
-    @Override
-    public void createInstanceOrchestration(String name, ComputeCloudInstanceOrchestrationConfig params) throws ComputeCloudClientException {
-        ComputeCloudObjectName objectName = ComputeCloudObjectName.valueOf(user, name);
-        String volumeNameString = getAttributeNameString(objectName);
-        String ipReservationNameString = getAttributeNameString(objectName);
+    static JsonObject buildInstanceOrchestrationJsonObject(String objectName, ComputeCloudInstanceOrchestrationConfig params) {
+        return buildInstanceOrchestrationJsonObject(objectName, params, 1);
+    }
+
+    static JsonObject buildInstanceOrchestrationJsonObject(String objectName, ComputeCloudInstanceOrchestrationConfig params, int instanceCount) {
         String description = params.getOrchDescriptionValue();
         String imageListName = params.getImageListName();
         String imageListEntry = params.getImageListEntry();
         String volumeSize = params.getVolumeSizeValue();
 
-        JsonObject instanceJsonObject = buildSingleInstanceJsonObject(objectName, params);
-
+        JsonArrayBuilder ipReservationsJson = createArrayBuilder();
+        JsonArrayBuilder volumesJson = createArrayBuilder();
+        JsonArrayBuilder instancesJson = createArrayBuilder();
+        for (int i = 0; i < instanceCount; i++) {
+            String instanceObjectName = getInstanceObjectName(objectName, i, instanceCount);
+            ipReservationsJson
+                    // Orchestration Attributes for ip/reservation
+                    // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-F55F2BE3-5400-4105-91C4-01C0342EEAA1.htm
+                    .add(createObjectBuilder()
+                            .add("name", instanceObjectName)
+                            .add("parentpool", "/oracle/public/ippool")
+                            .add("permanent", true)
+                            .build());
+            volumesJson
+                    // Orchestration Attributes for storage/volume
+                    // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-3C22B1C6-8ED6-4C9A-88E7-45FE13A3BC37.htm
+                    .add(createObjectBuilder()
+                            .add("name", instanceObjectName)
+                            .add("bootable", true)
+                            .add("imagelist", imageListName == null ? "" : imageListName)
+                            // TODO: configurable?
+                            .add("imagelist_entry", imageListEntry == null ? "" : imageListEntry)
+                            .add("size", volumeSize == null ? "" : volumeSize)
+                            .add("properties", createArrayBuilder().add("/oracle/public/storage/default"))
+                            .build());
+            // Orchestration Attributes for instances
+            // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-1E557077-D859-4F7E-ADA6-988B5CC1072A.htm
+            instancesJson.add(buildSingleInstanceJsonObject(instanceObjectName, params));
+        }
 
-        Invocation inv = request("orchestration/").accept(ORACLE_COMPUTE_V3_MEDIA_TYPE).buildPost(entity(createObjectBuilder()
+        return createObjectBuilder()
                 // Top-Level Attributes in Orchestrations
                 // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-6D65F452-AC5C-4A3A-ABB4-0690602CC1C8.htm
-                .add("name", objectName.getString())
+                .add("name", objectName)
                 .add("description", description)
                 .add("oplans", createArrayBuilder()
                         // Object Plan Attributes
@@ -431,32 +540,12 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                         .add(createObjectBuilder()
                                 .add("label", IP_RESERVATION_LABEL)
                                 .add("obj_type", "ip/reservation")
-                                .add("objects", createArrayBuilder()
-                                        // Orchestration Attributes for ip/reservation
-                                        // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-F55F2BE3-5400-4105-91C4-01C0342EEAA1.htm
-                                        .add(createObjectBuilder()
-                                                .add("name", ipReservationNameString)
-                                                .add("parentpool", "/oracle/public/ippool")
-                                                .add("permanent", true)
-                                                .build())
-                                        .build())
+                                .add("objects", ipReservationsJson)
                                 .build())
                         .add(createObjectBuilder()
                                 .add("label", STORAGE_VOLUME_LABEL)
                                 .add("obj_type", "storage/volume")
-                                .add("objects", createArrayBuilder()
-                                        // Orchestration Attributes for storage/volume
-                                        // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-3C22B1C6-8ED6-4C9A-88E7-45FE13A3BC37.htm
-                                        .add(createObjectBuilder()
-                                                .add("name", volumeNameString)
-                                                .add("bootable", true)
-                                                .add("imagelist", imageListName == null ? "" : imageListName)
-                                                // TODO: configurable?
-                                                .add("imagelist_entry", imageListEntry == null ? "" : imageListEntry)
-                                                .add("size", volumeSize == null ? "" : volumeSize)
-                                                .add("properties", createArrayBuilder().add("/oracle/public/storage/default"))
-                                                .build())
-                                        .build())
+                                .add("objects", volumesJson)
                                 .build())
                         .add(createObjectBuilder()
                                 .add("label", LAUNCHPLAN_LABEL)
@@ -468,11 +557,7 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                                         // Orchestration Attributes for launchplan
                                         // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-DEBE9723-82C2-4BC6-BE2C-8FAECAE1B943.htm
                                         .add(createObjectBuilder()
-                                                .add("instances", createArrayBuilder()
-                                                        // Orchestration Attributes for instances
-                                                        // https://docs.oracle.com/cloud/latest/stcomputecs/STCSG/GUID-1E557077-D859-4F7E-ADA6-988B5CC1072A.htm
-                                                        .add(instanceJsonObject)
-                                                        .build())
+                                                .add("instances", instancesJson)
                                                 .build())
                                         .build())
                                 .build())
@@ -481,8 +566,32 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
                         .add(createDependsRelationshipJson(LAUNCHPLAN_LABEL, IP_RESERVATION_LABEL))
                         .add(createDependsRelationshipJson(LAUNCHPLAN_LABEL, STORAGE_VOLUME_LABEL))
                         .build())
-                .build()));
+                .build();
+    }
+
+    @Override
+    public void createInstanceOrchestration(String name, ComputeCloudInstanceOrchestrationConfig params) throws ComputeCloudClientException {
+        createInstanceOrchestration(name, params, 1);
+    }
 
+    @Override
+    public void createInstanceOrchestration(String name, final ComputeCloudInstanceOrchestrationConfig params, final int instanceCount) throws ComputeCloudClientException {
+        if (instanceCount < 1) {
+            throw new IllegalArgumentException("instanceCount must be positive: " + instanceCount);
+        }
+        String objectName = ComputeCloudObjectName.valueOf(user, name).getString();
+
+        // Only the object name varies between orchestrations for the same
+        // configuration, so the rest of the body is serialized once.
+        InstanceOrchestrationPayload payload = InstanceOrchestrationPayload.get(params, instanceCount, new InstanceOrchestrationPayload.Builder() {
+            @Override
+            public JsonObject build(String objectName) {
+                return buildInstanceOrchestrationJsonObject(objectName, params, instanceCount);
+            }
+        });
+
+        Invocation inv = request("orchestration/").accept(ORACLE_COMPUTE_V3_MEDIA_TYPE)
+                .buildPost(Entity.entity(payload.toStreamingOutput(objectName), ORACLE_COMPUTE_V3_MEDIA_TYPE));
         invokeAndReadJsonObject(inv);
     }
 
@@ -490,33 +599,146 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         return newUriBuilder().path("orchestration" + ComputeCloudObjectName.valueOf(user, name).getString());
     }
 
-    private JsonObject findOplanObjectJson(JsonArray oplansJson, String label) throws ComputeCloudClientException {
-        for (JsonObject oplanJson : oplansJson.getValuesAs(JsonObject.class)) {
-            if (oplanJson.getString("label").equals(label)) {
-                JsonArray objects = oplanJson.getJsonArray("objects");
-                if (objects.size() != 1) {
-                    throw new ComputeCloudClientException("expected 1 object for the " + label + " oplan, found " + objects.size());
+    /**
+     * The fields of an orchestration that are needed to create an
+     * {@link InstanceOrchestration}.
+     */
+    private static class OrchestrationJson {
+        String name;
+        String status;
+        List<OplanJson> oplans;
+    }
+
+    private static class OplanJson {
+        String label;
+        String status;
+        List<OplanObjectJson> objects;
+        boolean info;
+
+        /**
+         * The errors in the info, or null if there are none.
+         */
+        List<String> errors;
+    }
+
+    private static class OplanObjectJson {
+        String name;
+        String ip;
+    }
+
+    private static final JsonParserUtil.ObjectReader<OplanObjectJson> OPLAN_OBJECT_READER = new JsonParserUtil.ObjectReader<OplanObjectJson>() {
+        @Override
+        public OplanObjectJson read(JsonParser parser) {
+            OplanObjectJson object = new OplanObjectJson();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "name": object.name = JsonParserUtil.getString(parser, event); break;
+                case "ip": object.ip = JsonParserUtil.getString(parser, event); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return object;
+        }
+    };
+
+    /**
+     * Reads the values of the "errors" object of the "info" object of an
+     * oplan.
+     */
+    private static List<String> getInfoErrors(JsonParser parser, Event event) {
+        if (event != Event.START_OBJECT) {
+            JsonParserUtil.skipValue(parser, event);
+            return null;
+        }
+
+        List<String> result = null;
+        for (Event infoEvent; (infoEvent = parser.next()) == Event.KEY_NAME;) {
+            String infoKey = parser.getString();
+            infoEvent = parser.next();
+            if (!infoKey.equals("errors") || infoEvent != Event.START_OBJECT) {
+                JsonParserUtil.skipValue(parser, infoEvent);
+                continue;
+            }
+
+            result = new ArrayList<>();
+            for (Event errorEvent; (errorEvent = parser.next()) == Event.KEY_NAME;) {
+                String errorKey = parser.getString();
+                errorEvent = parser.next();
+                String error = JsonParserUtil.getString(parser, errorEvent);
+                result.add(error == null ? errorKey : error);
+            }
+        }
+        return result;
+    }
+
+    private static final JsonParserUtil.ObjectReader<OplanJson> OPLAN_READER = new JsonParserUtil.ObjectReader<OplanJson>() {
+        @Override
+        public OplanJson read(JsonParser parser) {
+            OplanJson oplan = new OplanJson();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "label": oplan.label = JsonParserUtil.getString(parser, event); break;
+                case "status": oplan.status = JsonParserUtil.getString(parser, event); break;
+                case "objects": oplan.objects = JsonParserUtil.getObjectList(parser, event, OPLAN_OBJECT_READER); break;
+                case "info":
+                    oplan.info = event == Event.START_OBJECT;
+                    oplan.errors = getInfoErrors(parser, event);
+                    break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return oplan;
+        }
+    };
+
+    private static final JsonParserUtil.ObjectReader<OrchestrationJson> ORCHESTRATION_READER = new JsonParserUtil.ObjectReader<OrchestrationJson>() {
+        @Override
+        public OrchestrationJson read(JsonParser parser) {
+            OrchestrationJson orch = new OrchestrationJson();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "name": orch.name = JsonParserUtil.getString(parser, event); break;
+                case "status": orch.status = JsonParserUtil.getString(parser, event); break;
+                // The objects of the oplans other than the IP reservations
+                // are skipped since only the IPs are needed.
+                case "oplans": orch.oplans = JsonParserUtil.getObjectList(parser, event, OPLAN_READER); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return orch;
+        }
+    };
+
+    private static List<OplanObjectJson> findOplanObjects(OrchestrationJson orch, String label) throws ComputeCloudClientException {
+        if (orch.oplans != null) {
+            for (OplanJson oplan : orch.oplans) {
+                if (label.equals(oplan.label)) {
+                    if (oplan.objects == null || oplan.objects.isEmpty()) {
+                        throw new ComputeCloudClientException("expected at least 1 object for the " + label + " oplan, found 0");
+                    }
+                    return oplan.objects;
                 }
-                return objects.getJsonObject(0);
             }
         }
 
         throw new ComputeCloudClientException("oplan not found: " + label);
     }
 
-    private List<String> findErrorObjectsJson(JsonArray oplansJson) throws ComputeCloudClientException {
+    private static List<String> findErrors(OrchestrationJson orch) {
         List<String> errors = new ArrayList<String>();
-        for (JsonObject oplanJson : oplansJson.getValuesAs(JsonObject.class)) {
-            if (oplanJson.getString("status") != null
-                    && oplanJson.getString("status").equals(Status.error.toString())
-                    && oplanJson.getJsonObject("info") != null) {
-                String opanLabel = oplanJson.getString("label");
-                JsonObject infoObject = oplanJson.getJsonObject("info");
-                if (infoObject.getJsonObject("errors") == null) {
-                    errors.add(opanLabel + " in error status with unknown error!");
+        for (OplanJson oplan : orch.oplans) {
+            if (Status.error.toString().equals(oplan.status) && oplan.info) {
+                if (oplan.errors == null) {
+                    errors.add(oplan.label + " in error status with unknown error!");
                 } else {
-                    for (JsonValue errorVal : infoObject.getJsonObject("errors").values()) {
-                        errors.add("<------ OPlan " + opanLabel + " in error status with message: " + errorVal.toString() + "------>");
+                    for (String error : oplan.errors) {
+                        errors.add("<------ OPlan " + oplan.label + " in error status with message: " + error + "------>");
                     }
                 }
             }
@@ -525,26 +747,77 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
         return errors;
     }
 
-    @Override
-    public InstanceOrchestration getInstanceOrchestration(String name) throws ComputeCloudClientException {
-        JsonObject orchJson = invokeAndReadJsonObject(request(newOrchestrationUriBuilder(name))
-                .accept(ORACLE_COMPUTE_V3_MEDIA_TYPE)
-                .buildGet());
-        JsonArray oplansJson = orchJson.getJsonArray("oplans");
-        JsonObject ipReservationJson = findOplanObjectJson(oplansJson, IP_RESERVATION_LABEL);
+    private InstanceOrchestration toInstanceOrchestration(String name, OrchestrationJson orch) throws ComputeCloudClientException {
+        List<OplanObjectJson> ipReservations = findOplanObjects(orch, IP_RESERVATION_LABEL);
+        if (orch.status == null) {
+            throw new ComputeCloudClientException("missing status for orchestration " + name);
+        }
 
         InstanceOrchestration instanceOrch = new InstanceOrchestration()
-                .status(Status.valueOf(orchJson.getString("status")))
-                .ip(ipReservationJson.getString("ip", null));
+                .name(name)
+                .status(Status.valueOf(orch.status));
+
+        if (ipReservations.size() == 1) {
+            instanceOrch = instanceOrch.ip(ipReservations.get(0).ip);
+        } else {
+            // Match the IP reservations to the instances by the index in
+            // their names rather than relying on the order of the objects.
+            String[] ips = new String[ipReservations.size()];
+            boolean[] found = new boolean[ips.length];
+            for (OplanObjectJson ipReservation : ipReservations) {
+                int index = getInstanceIndex(ipReservation.name, ips.length);
+                if (index == -1 || found[index]) {
+                    throw new ComputeCloudClientException("unexpected " + IP_RESERVATION_LABEL + " object name: " + ipReservation.name);
+                }
+                found[index] = true;
+                ips[index] = ipReservation.ip;
+            }
+            instanceOrch = instanceOrch.ip(ips[0]).ips(Arrays.asList(ips));
+        }
 
-        if (orchJson.getString("status") != null && orchJson.getString("status").equals(Status.error.toString())) {
-            List<String> errors = findErrorObjectsJson(oplansJson);
-            instanceOrch = instanceOrch.errors(errors);
+        if (orch.status.equals(Status.error.toString())) {
+            instanceOrch = instanceOrch.errors(findErrors(orch));
         }
 
         return instanceOrch;
     }
 
+    @Override
+    public InstanceOrchestration getInstanceOrchestration(String name) throws ComputeCloudClientException {
+        OrchestrationJson orch = invokeAndReadObject(request(newOrchestrationUriBuilder(name))
+                .accept(ORACLE_COMPUTE_V3_MEDIA_TYPE)
+                .buildGet(), ORCHESTRATION_READER);
+        return toInstanceOrchestration(name, orch);
+    }
+
+    @Override
+    public Collection<InstanceOrchestration> getInstanceOrchestrations(String namePrefix) throws ComputeCloudClientException {
+        Collection<OrchestrationJson> orchs = invokeAndReadResultArray(request("orchestration" + user.getString() + '/')
+                .accept(ORACLE_COMPUTE_V3_MEDIA_TYPE)
+                .buildGet(), ORCHESTRATION_READER);
+
+        Collection<InstanceOrchestration> result = new ArrayList<>();
+        for (OrchestrationJson orch : orchs) {
+            String name;
+            try {
+                name = ComputeCloudObjectName.parse(orch.name == null ? "" : orch.name).getName();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+
+            if (name.startsWith(namePrefix)) {
+                try {
+                    result.add(toInstanceOrchestration(name, orch));
+                } catch (ComputeCloudClientException | IllegalArgumentException e) {
+                    // Callers can still get the error for this orchestration
+                    // from getInstanceOrchestration.
+                    LOGGER.log(Level.FINE, "Ignoring orchestration " + name, e);
+                }
+            }
+        }
+        return result;
+    }
+
     private void updateOrchestrationState(String name, String action) throws ComputeCloudClientException {
         UriBuilder uriBuilder = newOrchestrationUriBuilder(name)
                 .queryParam("action", action);
@@ -566,6 +839,6 @@ public class JaxrsComputeCloudClient implements ComputeCloudClient {
     @Override
     public void deleteOrchestration(String name) throws ComputeCloudClientException {
         invoke(request(newOrchestrationUriBuilder(name))
-                .buildDelete());
+                .buildDelete()).close();
     }
 }
@@ -1,34 +1,200 @@
 package com.oracle.cloud.compute.jenkins.client;
 
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.logging.LoggingFeature;
 
+import jenkins.util.Timer;
+
+/**
+ * Creates JAX-RS clients that share one pooled connection manager per
+ * endpoint.  Connections are kept alive between requests, so consecutive
+ * requests (for example, polling orchestration status) do not need to repeat
+ * the TCP and TLS handshakes.  The shared client for an endpoint is closed
+ * when the last client using it is closed.
+ */
 public class JaxrsComputeCloudClientFactory implements ComputeCloudClientFactory {
     public static final ComputeCloudClientFactory INSTANCE = new JaxrsComputeCloudClientFactory();
 
+    private static final Logger LOGGER = Logger.getLogger(JaxrsComputeCloudClientFactory.class.getName());
     private static final String CLASS_NAME = JaxrsComputeCloudClientFactory.class.getName();
     static final boolean DEBUG = Boolean.getBoolean(CLASS_NAME + ".debug");
 
-    private static final ClientBuilder BUILDER = ClientBuilder.newBuilder();
-    static {
+    /**
+     * The maximum number of pooled connections per endpoint.
+     */
+    static final int MAX_CONNECTIONS_PER_ENDPOINT = Integer.getInteger(CLASS_NAME + ".maxConnectionsPerEndpoint", 20);
+
+    /**
+     * The number of seconds a pooled connection can be idle before it is
+     * closed, or 0 to only close connections when the server closes them.
+     */
+    static final int CONNECTION_IDLE_TIMEOUT_SECONDS = Integer.getInteger(CLASS_NAME + ".connectionIdleTimeoutSeconds", 60);
+
+    private final Map<String, SharedClient> sharedClients = new HashMap<>();
+
+    JaxrsComputeCloudClientFactory() {}
+
+    @Override
+    public ComputeCloudClient createClient(URI endpoint, ComputeCloudUser user, String password) {
+        SharedClient sharedClient = acquireSharedClient(endpoint);
+        return new SharedJaxrsComputeCloudClient(endpoint, user, password, sharedClient);
+    }
+
+    static String getSharedClientKey(URI endpoint) {
+        return endpoint.getScheme() + "://" + endpoint.getRawAuthority();
+    }
+
+    synchronized SharedClient acquireSharedClient(URI endpoint) {
+        String key = getSharedClientKey(endpoint);
+        SharedClient sharedClient = sharedClients.get(key);
+        if (sharedClient == null) {
+            sharedClient = new SharedClient(key, endpoint);
+            sharedClients.put(key, sharedClient);
+        }
+        sharedClient.refs++;
+        return sharedClient;
+    }
+
+    synchronized void releaseSharedClient(SharedClient sharedClient) {
+        if (--sharedClient.refs == 0) {
+            sharedClients.remove(sharedClient.key);
+            sharedClient.close();
+        }
+    }
+
+    synchronized int getSharedClientCount() {
+        return sharedClients.size();
+    }
+
+    static PoolingHttpClientConnectionManager newConnectionManager() {
+        // Use the JVM default SSLContext (as HttpsURLConnection does) so that
+        // TLS sessions are cached and resumed across pooled connections.
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                        .build());
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_ENDPOINT);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ENDPOINT);
+        return connectionManager;
+    }
+
+    static Client newClient(URI endpoint, PoolingHttpClientConnectionManager connectionManager) {
+        ClientConfig config = new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager)
+                // The client is shared by all users of the endpoint, so the
+                // authentication cookies must not be stored by the connector.
+                .property(ApacheClientProperties.DISABLE_COOKIES, true)
+                .property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.BUFFERED);
+
+        // The Apache connector does not use the default ProxySelector like
+        // HttpURLConnection, so explicitly configure the proxy.
+        URI proxyUri = getProxyUri(endpoint);
+        if (proxyUri != null) {
+            config.property(ClientProperties.PROXY_URI, proxyUri.toString());
+        }
+
         if (DEBUG) {
             // We pass maxEntitySize=null, which defaults to
             // LoggingFeature.DEFAULT_MAX_ENTITY_SIZE (8192), but
             // https://java.net/jira/browse/JERSEY-3035 causes the response to
             // be truncated at fewer bytes anyway.
-            BUILDER.register(new LoggingFeature(Logger.getLogger(CLASS_NAME), Level.INFO, LoggingFeature.Verbosity.PAYLOAD_ANY, null));
+            config.register(new LoggingFeature(Logger.getLogger(CLASS_NAME), Level.INFO, LoggingFeature.Verbosity.PAYLOAD_ANY, null));
+        }
+
+        return ClientBuilder.newClient(config);
+    }
+
+    static URI getProxyUri(URI endpoint) {
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector != null) {
+            try {
+                for (Proxy proxy : proxySelector.select(endpoint)) {
+                    if (proxy.type() == Proxy.Type.HTTP && proxy.address() instanceof InetSocketAddress) {
+                        InetSocketAddress address = (InetSocketAddress)proxy.address();
+                        return URI.create("http://" + address.getHostString() + ':' + address.getPort());
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.FINE, "Unable to select proxy for " + endpoint, e);
+            }
         }
+        return null;
     }
 
-    private JaxrsComputeCloudClientFactory() {}
+    static class SharedClient {
+        final String key;
+        final PoolingHttpClientConnectionManager connectionManager;
+        final Client client;
+        private final ScheduledFuture<?> idleConnectionEvictor;
+        int refs;
 
-    @Override
-    public ComputeCloudClient createClient(URI endpoint, ComputeCloudUser user, String password) {
-        return new JaxrsComputeCloudClient(endpoint, user, password, BUILDER.build());
+        SharedClient(String key, URI endpoint) {
+            this.key = key;
+            this.connectionManager = newConnectionManager();
+            this.client = newClient(endpoint, connectionManager);
+            this.idleConnectionEvictor = CONNECTION_IDLE_TIMEOUT_SECONDS <= 0 ? null : Timer.get().scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(CONNECTION_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            }, CONNECTION_IDLE_TIMEOUT_SECONDS, CONNECTION_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        void close() {
+            if (idleConnectionEvictor != null) {
+                idleConnectionEvictor.cancel(false);
+            }
+            client.close();
+            // The connector is created lazily by the first request, so the
+            // connection manager might not have been shut down by the client.
+            connectionManager.shutdown();
+        }
+    }
+
+    private class SharedJaxrsComputeCloudClient extends JaxrsComputeCloudClient {
+        private final SharedClient sharedClient;
+        private boolean closed;
+
+        SharedJaxrsComputeCloudClient(URI apiEndpoint, ComputeCloudUser user, String password, SharedClient sharedClient) {
+            super(apiEndpoint, user, password, sharedClient.client);
+            this.sharedClient = sharedClient;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            releaseSharedClient(sharedClient);
+        }
     }
 }
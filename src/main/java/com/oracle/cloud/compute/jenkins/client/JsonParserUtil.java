@@ -0,0 +1,204 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+/**
+ * Helpers for reading responses with a streaming {@link JsonParser} rather
+ * than building a {@code JsonObject} tree for the entire response.  Values
+ * that are not of the expected type are treated as missing, and fields that
+ * are not needed are skipped without being materialized.
+ */
+class JsonParserUtil {
+    private JsonParserUtil() {}
+
+    /**
+     * Reads a JSON object from the parser.
+     *
+     * @param <T> the type of object
+     */
+    interface ObjectReader<T> {
+        /**
+         * Reads an object after {@link Event#START_OBJECT} has been returned
+         * by the parser.  When this method returns, the parser must have
+         * returned the corresponding {@link Event#END_OBJECT}.
+         *
+         * @param parser the parser
+         * @return the object
+         */
+        T read(JsonParser parser);
+    }
+
+    /**
+     * Returns the next event from the parser, or throws if there are no
+     * more events.
+     */
+    static Event next(JsonParser parser) throws ComputeCloudClientException {
+        if (!parser.hasNext()) {
+            throw new ComputeCloudClientException("Unexpected end of JSON at " + parser.getLocation());
+        }
+        return parser.next();
+    }
+
+    /**
+     * Skips the value for the event, including all nested values if the
+     * event starts an object or array.
+     */
+    static void skipValue(JsonParser parser, Event event) {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+            default:
+                break;
+            }
+        }
+    }
+
+    static String getString(JsonParser parser, Event event) {
+        if (event == Event.VALUE_STRING) {
+            return parser.getString();
+        }
+        skipValue(parser, event);
+        return null;
+    }
+
+    static Boolean getBoolean(JsonParser parser, Event event) {
+        if (event == Event.VALUE_TRUE) {
+            return Boolean.TRUE;
+        }
+        if (event == Event.VALUE_FALSE) {
+            return Boolean.FALSE;
+        }
+        skipValue(parser, event);
+        return null;
+    }
+
+    static Long getLong(JsonParser parser, Event event) {
+        if (event == Event.VALUE_NUMBER) {
+            return parser.isIntegralNumber() ? parser.getLong() : parser.getBigDecimal().longValueExact();
+        }
+        skipValue(parser, event);
+        return null;
+    }
+
+    static Integer getInteger(JsonParser parser, Event event) {
+        if (event == Event.VALUE_NUMBER) {
+            return parser.getBigDecimal().intValueExact();
+        }
+        skipValue(parser, event);
+        return null;
+    }
+
+    static BigDecimal getBigDecimal(JsonParser parser, Event event) {
+        if (event == Event.VALUE_NUMBER) {
+            return parser.getBigDecimal();
+        }
+        skipValue(parser, event);
+        return null;
+    }
+
+    static List<String> getStringList(JsonParser parser, Event event) {
+        if (event != Event.START_ARRAY) {
+            skipValue(parser, event);
+            return null;
+        }
+
+        List<String> result = new ArrayList<>();
+        for (Event valueEvent; (valueEvent = parser.next()) != Event.END_ARRAY;) {
+            if (valueEvent == Event.VALUE_STRING) {
+                result.add(parser.getString());
+            } else {
+                skipValue(parser, valueEvent);
+            }
+        }
+        return result;
+    }
+
+    static <T> List<T> getObjectList(JsonParser parser, Event event, ObjectReader<T> reader) {
+        if (event != Event.START_ARRAY) {
+            skipValue(parser, event);
+            return null;
+        }
+
+        List<T> result = new ArrayList<>();
+        for (Event valueEvent; (valueEvent = parser.next()) != Event.END_ARRAY;) {
+            if (valueEvent == Event.START_OBJECT) {
+                result.add(reader.read(parser));
+            } else {
+                skipValue(parser, valueEvent);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the top-level object.
+     *
+     * @param parser the parser positioned before the top-level object
+     * @param reader the reader for the object
+     * @return the object
+     * @throws ComputeCloudClientException if the JSON does not contain a
+     * top-level object
+     */
+    static <T> T readObject(JsonParser parser, ObjectReader<T> reader) throws ComputeCloudClientException {
+        if (next(parser) != Event.START_OBJECT) {
+            throw new ComputeCloudClientException("Expected JSON object at " + parser.getLocation());
+        }
+        return reader.read(parser);
+    }
+
+    /**
+     * Reads the objects in the "result" array of the top-level object.  All
+     * other fields are skipped.
+     *
+     * @param parser the parser positioned before the top-level object
+     * @param reader the reader for the elements of the "result" array
+     * @param result the collection to add the objects to
+     * @throws ComputeCloudClientException if the JSON does not contain a
+     * top-level object with a "result" array
+     */
+    static <T> void readResultArray(JsonParser parser, ObjectReader<? extends T> reader, Collection<T> result) throws ComputeCloudClientException {
+        if (next(parser) != Event.START_OBJECT) {
+            throw new ComputeCloudClientException("Expected JSON object at " + parser.getLocation());
+        }
+
+        boolean foundResult = false;
+        for (Event event; (event = next(parser)) == Event.KEY_NAME;) {
+            String key = parser.getString();
+            event = next(parser);
+            if (key.equals("result") && event == Event.START_ARRAY) {
+                foundResult = true;
+                for (Event elementEvent; (elementEvent = next(parser)) != Event.END_ARRAY;) {
+                    if (elementEvent == Event.START_OBJECT) {
+                        result.add(reader.read(parser));
+                    } else {
+                        skipValue(parser, elementEvent);
+                    }
+                }
+            } else {
+                skipValue(parser, event);
+            }
+        }
+
+        if (!foundResult) {
+            throw new ComputeCloudClientException("Missing result array in JSON");
+        }
+    }
+}
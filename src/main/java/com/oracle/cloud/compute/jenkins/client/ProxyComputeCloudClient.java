@@ -22,8 +22,32 @@ public class ProxyComputeCloudClient implements ComputeCloudClient {
         return getClass().getSimpleName() + '[' + client + ']';
     }
 
+    /**
+     * A method of the proxied client.
+     *
+     * @param <T> the result type, or {@link Void} for methods without a
+     * result
+     */
+    protected interface Method<T> {
+        T invoke(ComputeCloudClient client) throws ComputeCloudClientException;
+    }
+
     protected void preInvoke() throws ComputeCloudClientException {}
 
+    /**
+     * Calls {@link #preInvoke} and then a method of the proxied client.  All
+     * methods other than {@link #close} are called through this method, so
+     * subclasses can override it to surround every request.
+     *
+     * @param method the method
+     * @return the result of the method
+     * @throws ComputeCloudClientException if the method fails
+     */
+    protected <T> T invoke(Method<T> method) throws ComputeCloudClientException {
+        preInvoke();
+        return method.invoke(client);
+    }
+
     @Override
     public void close() {
         client.close();
@@ -31,73 +55,147 @@ public class ProxyComputeCloudClient implements ComputeCloudClient {
 
     @Override
     public void authenticate() throws ComputeCloudClientException {
-        preInvoke();
-        client.authenticate();
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.authenticate();
+                return null;
+            }
+        });
     }
 
     @Override
     public Collection<Shape> getShapes() throws ComputeCloudClientException {
-        preInvoke();
-        return client.getShapes();
+        return invoke(new Method<Collection<Shape>>() {
+            @Override
+            public Collection<Shape> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getShapes();
+            }
+        });
     }
 
     @Override
     public Collection<SecurityList> getSecurityLists() throws ComputeCloudClientException {
-        preInvoke();
-        return client.getSecurityLists();
+        return invoke(new Method<Collection<SecurityList>>() {
+            @Override
+            public Collection<SecurityList> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getSecurityLists();
+            }
+        });
     }
 
     @Override
     public Collection<SSHKey> getSSHKeys() throws ComputeCloudClientException {
-        preInvoke();
-        return client.getSSHKeys();
+        return invoke(new Method<Collection<SSHKey>>() {
+            @Override
+            public Collection<SSHKey> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getSSHKeys();
+            }
+        });
     }
 
     @Override
-    public SSHKey getSSHKey(String name) throws ComputeCloudClientException {
-        preInvoke();
-        return client.getSSHKey(name);
+    public SSHKey getSSHKey(final String name) throws ComputeCloudClientException {
+        return invoke(new Method<SSHKey>() {
+            @Override
+            public SSHKey invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getSSHKey(name);
+            }
+        });
     }
 
     @Override
-    public Collection<ImageList> getImageLists(ImageListSourceType sourceType) throws ComputeCloudClientException {
-        preInvoke();
-        return client.getImageLists(sourceType);
+    public Collection<ImageList> getImageLists(final ImageListSourceType sourceType) throws ComputeCloudClientException {
+        return invoke(new Method<Collection<ImageList>>() {
+            @Override
+            public Collection<ImageList> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getImageLists(sourceType);
+            }
+        });
     }
 
     @Override
-    public Collection<ImageListEntry> getImageListEntries(String imageListName) throws ComputeCloudClientException {
-        preInvoke();
-        return client.getImageListEntries(imageListName);
+    public Collection<ImageListEntry> getImageListEntries(final String imageListName) throws ComputeCloudClientException {
+        return invoke(new Method<Collection<ImageListEntry>>() {
+            @Override
+            public Collection<ImageListEntry> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getImageListEntries(imageListName);
+            }
+        });
     }
 
     @Override
-    public void createInstanceOrchestration(String name, ComputeCloudInstanceOrchestrationConfig params) throws ComputeCloudClientException {
-        preInvoke();
-        client.createInstanceOrchestration(name, params);
+    public void createInstanceOrchestration(final String name, final ComputeCloudInstanceOrchestrationConfig params) throws ComputeCloudClientException {
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.createInstanceOrchestration(name, params);
+                return null;
+            }
+        });
     }
 
     @Override
-    public InstanceOrchestration getInstanceOrchestration(String name) throws ComputeCloudClientException {
-        preInvoke();
-        return client.getInstanceOrchestration(name);
+    public void createInstanceOrchestration(final String name, final ComputeCloudInstanceOrchestrationConfig params, final int instanceCount) throws ComputeCloudClientException {
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.createInstanceOrchestration(name, params, instanceCount);
+                return null;
+            }
+        });
     }
 
     @Override
-    public void startOrchestration(String name) throws ComputeCloudClientException {
-        preInvoke();
-        client.startOrchestration(name);
+    public InstanceOrchestration getInstanceOrchestration(final String name) throws ComputeCloudClientException {
+        return invoke(new Method<InstanceOrchestration>() {
+            @Override
+            public InstanceOrchestration invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getInstanceOrchestration(name);
+            }
+        });
     }
 
     @Override
-    public void stopOrchestration(String name) throws ComputeCloudClientException {
-        preInvoke();
-        client.stopOrchestration(name);
+    public Collection<InstanceOrchestration> getInstanceOrchestrations(final String namePrefix) throws ComputeCloudClientException {
+        return invoke(new Method<Collection<InstanceOrchestration>>() {
+            @Override
+            public Collection<InstanceOrchestration> invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                return client.getInstanceOrchestrations(namePrefix);
+            }
+        });
     }
 
     @Override
-    public void deleteOrchestration(String name) throws ComputeCloudClientException {
-        preInvoke();
-        client.deleteOrchestration(name);
+    public void startOrchestration(final String name) throws ComputeCloudClientException {
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.startOrchestration(name);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void stopOrchestration(final String name) throws ComputeCloudClientException {
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.stopOrchestration(name);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void deleteOrchestration(final String name) throws ComputeCloudClientException {
+        invoke(new Method<Void>() {
+            @Override
+            public Void invoke(ComputeCloudClient client) throws ComputeCloudClientException {
+                client.deleteOrchestration(name);
+                return null;
+            }
+        });
     }
 }
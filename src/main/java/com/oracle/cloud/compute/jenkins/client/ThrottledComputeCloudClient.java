@@ -0,0 +1,48 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.oracle.cloud.compute.jenkins.ComputeCloudWorkload;
+
+/**
+ * An implementation of ComputeCloudClient that limits the number of
+ * concurrent requests.  Each request holds a permit of the
+ * {@linkplain ComputeCloudWorkload#getCurrent current workload} while it is
+ * sent, so clients that share the same permits cannot use more than that
+ * number of connections regardless of how many threads call them.
+ *
+ * <p>This client must be below any caching or authenticating client so that
+ * requests answered from a cache do not hold permits, and so that requests
+ * sent in the background also hold permits.
+ */
+public class ThrottledComputeCloudClient extends ProxyComputeCloudClient {
+    private final Map<ComputeCloudWorkload, Semaphore> permits;
+
+    /**
+     * @param client the client
+     * @param permits the permits of each workload shared by the clients of
+     * an endpoint
+     */
+    public ThrottledComputeCloudClient(ComputeCloudClient client, Map<ComputeCloudWorkload, Semaphore> permits) {
+        super(client);
+        this.permits = permits;
+    }
+
+    @Override
+    protected <T> T invoke(Method<T> method) throws ComputeCloudClientException {
+        Semaphore semaphore = permits.get(ComputeCloudWorkload.getCurrent());
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ComputeCloudClientException("Interrupted while waiting to send a request", e);
+        }
+
+        try {
+            return super.invoke(method);
+        } finally {
+            semaphore.release();
+        }
+    }
+}
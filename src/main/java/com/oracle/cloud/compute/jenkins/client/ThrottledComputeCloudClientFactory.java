@@ -0,0 +1,47 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.oracle.cloud.compute.jenkins.ComputeCloudWorkload;
+
+/**
+ * Creates clients that share the permits of each workload with all other
+ * clients of the same endpoint, regardless of user, since they also share
+ * the connections of {@link JaxrsComputeCloudClientFactory}.
+ */
+public class ThrottledComputeCloudClientFactory implements ComputeCloudClientFactory {
+    private final ComputeCloudClientFactory factory;
+
+    /**
+     * The permits by {@link JaxrsComputeCloudClientFactory#getSharedClientKey}.
+     * Guarded by this.  Permits are kept for the life of the factory, since
+     * there are only a few endpoints.
+     */
+    private final Map<String, Map<ComputeCloudWorkload, Semaphore>> permits = new HashMap<>();
+
+    public ThrottledComputeCloudClientFactory(ComputeCloudClientFactory factory) {
+        this.factory = factory;
+    }
+
+    synchronized Map<ComputeCloudWorkload, Semaphore> getPermits(URI endpoint) {
+        String key = JaxrsComputeCloudClientFactory.getSharedClientKey(endpoint);
+        Map<ComputeCloudWorkload, Semaphore> result = permits.get(key);
+        if (result == null) {
+            result = new EnumMap<>(ComputeCloudWorkload.class);
+            for (ComputeCloudWorkload workload : ComputeCloudWorkload.values()) {
+                result.put(workload, new Semaphore(workload.getMaxConcurrentRequests(), true));
+            }
+            permits.put(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public ComputeCloudClient createClient(URI endpoint, ComputeCloudUser user, String password) {
+        return new ThrottledComputeCloudClient(factory.createClient(endpoint, user, password), getPermits(endpoint));
+    }
+}
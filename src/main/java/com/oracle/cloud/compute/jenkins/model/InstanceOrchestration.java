@@ -1,5 +1,6 @@
 package com.oracle.cloud.compute.jenkins.model;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -18,10 +19,21 @@ public class InstanceOrchestration {
         stopped
     }
 
+    private String name;
     private Status status;
     private String ip;
+    private List<String> ips;
     private List<String> errors;
 
+    public String getName() {
+        return name;
+    }
+
+    public InstanceOrchestration name(String name) {
+        this.name = name;
+        return this;
+    }
+
     public Status getStatus() {
         return status;
     }
@@ -40,6 +52,22 @@ public class InstanceOrchestration {
         return this;
     }
 
+    /**
+     * Returns the IPs of the instances of an orchestration with multiple
+     * instances in instance order, or a list of {@link #getIp} otherwise.
+     * IPs that have not been assigned are null.
+     *
+     * @return the IPs
+     */
+    public List<String> getIps() {
+        return ips == null ? Collections.singletonList(ip) : ips;
+    }
+
+    public InstanceOrchestration ips(List<String> ips) {
+        this.ips = ips;
+        return this;
+    }
+
     public List<String> getErrors() {
         return errors;
     }
@@ -52,16 +80,20 @@ public class InstanceOrchestration {
     @Override
     public String toString() {
         return getClass().getSimpleName() +
-                "[status=" + status +
+                "[name=" + name +
+                ", status=" + status +
                 ", ip=" + ip +
+                (ips == null ? "" : ", ips=" + ips) +
                 ']';
     }
 
     @Override
     public int hashCode() {
         int result = 1;
+        result = 31 * result + Objects.hashCode(name);
         result = 31 * result + Objects.hashCode(status);
         result = 31 * result + Objects.hashCode(ip);
+        result = 31 * result + Objects.hashCode(ips);
         return result;
     }
 
@@ -72,7 +104,9 @@ public class InstanceOrchestration {
         }
 
         InstanceOrchestration i = (InstanceOrchestration)o;
-        return Objects.equals(status, i.status) &&
-                Objects.equals(ip, i.ip);
+        return Objects.equals(name, i.name) &&
+                Objects.equals(status, i.status) &&
+                Objects.equals(ip, i.ip) &&
+                Objects.equals(ips, i.ips);
     }
 }
@@ -50,44 +50,9 @@ public class SshComputerLauncher extends ComputerLauncher {
     @Override
     public void launch(final SlaveComputer computer, final TaskListener listener) throws IOException, InterruptedException {
         LOGGER.info("Launch agent on host: " + this.host);
-        final Connection conn;
-        Connection retryConn = null;
         PrintStream logger = listener.getLogger();
         try {
-            SshConnector sshConnector = SshConnector.INSTANCE;
-
-            int i = 0;
-            do {
-                retryConn = sshConnector.createConnection(host);
-                try {
-                    sshConnector.connect(retryConn, connectTimeoutMillis);
-                    break;
-                } catch (Exception e) {
-                    retryConn.close();
-
-                    if (i++ == RETRY_TIMES) {
-                        throw new IOException("SSH launch failed at connecting to host: " + this.host, e);
-                    }
-                    LOGGER.log(Level.FINER, "Ignoring connection exception when executing ssh launch on host: " + this.host, e);
-                }
-            } while (true);
-
-            conn = retryConn;
-
-            i = 0;
-            do {
-               try {
-                   if (conn.authenticateWithPublicKey(remoteAdmin, this.privateKey.toCharArray(), null))
-                       break;
-               } catch (IOException e) {
-                   if (i++ == RETRY_TIMES) {
-                       conn.close();
-                       throw new IOException("SSH launch failed at authenticating to host: " + this.host, e);
-                   }
-                   LOGGER.log(Level.FINER, "Ignoring connection exception when authenticating with public key during ssh launch on host: " + this.host, e);
-               }
-            } while (true);
-
+            final Connection conn = connectAndAuthenticate();
 
             SCPClient scp = conn.createSCPClient();
 
@@ -143,6 +108,50 @@ public class SshComputerLauncher extends ComputerLauncher {
         }
     }
 
+    private Connection connectAndAuthenticate() throws IOException, InterruptedException {
+        // Use the connection from the readiness check during provisioning if
+        // this is the first launch.
+        Connection conn = SshConnectionHandoff.INSTANCE.take(host);
+        if (conn != null) {
+            LOGGER.fine("Reusing SSH connection from provisioning for host: " + this.host);
+            return conn;
+        }
+
+        SshConnector sshConnector = SshConnector.INSTANCE;
+
+        int i = 0;
+        do {
+            conn = sshConnector.createConnection(host);
+            try {
+                sshConnector.connect(conn, connectTimeoutMillis);
+                break;
+            } catch (Exception e) {
+                conn.close();
+
+                if (i++ == RETRY_TIMES) {
+                    throw new IOException("SSH launch failed at connecting to host: " + this.host, e);
+                }
+                LOGGER.log(Level.FINER, "Ignoring connection exception when executing ssh launch on host: " + this.host, e);
+            }
+        } while (true);
+
+        i = 0;
+        do {
+           try {
+               if (sshConnector.authenticate(conn, remoteAdmin, this.privateKey))
+                   break;
+           } catch (IOException e) {
+               if (i++ == RETRY_TIMES) {
+                   conn.close();
+                   throw new IOException("SSH launch failed at authenticating to host: " + this.host, e);
+               }
+               LOGGER.log(Level.FINER, "Ignoring connection exception when authenticating with public key during ssh launch on host: " + this.host, e);
+           }
+        } while (true);
+
+        return conn;
+    }
+
     private int waitCompletion(Session session) throws InterruptedException {
         // I noticed that the exit status delivery often gets delayed. Wait up
         // to 1 sec.
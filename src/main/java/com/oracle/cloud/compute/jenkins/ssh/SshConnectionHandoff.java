@@ -0,0 +1,100 @@
+package com.oracle.cloud.compute.jenkins.ssh;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.trilead.ssh2.Connection;
+
+import jenkins.util.Timer;
+
+/**
+ * Hands an authenticated connection from the SSH readiness check during
+ * provisioning to the first launch of the agent, so the launch does not
+ * need to connect and exchange keys again.  Connections that are not taken
+ * within {@link #TIMEOUT_SECONDS} are closed.
+ */
+public class SshConnectionHandoff {
+    private static final Logger LOGGER = Logger.getLogger(SshConnectionHandoff.class.getName());
+
+    public static final SshConnectionHandoff INSTANCE = new SshConnectionHandoff();
+
+    /**
+     * The time to keep a connection that has not been taken.
+     */
+    static final int TIMEOUT_SECONDS = Integer.getInteger(SshConnectionHandoff.class.getName() + ".timeoutSeconds", 120);
+
+    /**
+     * The connections by host.  Guarded by this.
+     */
+    private final Map<String, Connection> connections = new HashMap<>();
+
+    ScheduledExecutorService getTimer() {
+        return Timer.get();
+    }
+
+    /**
+     * Offers an authenticated connection to the next launch for the host.
+     * The caller must not use or close the connection after offering it.
+     *
+     * @param host the host
+     * @param conn the authenticated connection
+     */
+    public void offer(final String host, final Connection conn) {
+        Connection oldConn;
+        synchronized (this) {
+            oldConn = connections.put(host, conn);
+        }
+        if (oldConn != null) {
+            oldConn.close();
+        }
+
+        getTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (remove(host, conn)) {
+                    LOGGER.log(Level.FINE, "Closing SSH connection to {0} that was not used to launch an agent", host);
+                    conn.close();
+                }
+            }
+        }, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private synchronized boolean remove(String host, Connection conn) {
+        if (connections.get(host) == conn) {
+            connections.remove(host);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Takes the connection offered for the host if it is still open.
+     *
+     * @param host the host
+     * @return the authenticated connection, or null if none
+     */
+    public Connection take(String host) {
+        Connection conn;
+        synchronized (this) {
+            conn = connections.remove(host);
+        }
+        if (conn == null) {
+            return null;
+        }
+
+        try {
+            // Check that the connection has not been closed by the server.
+            conn.sendIgnorePacket();
+            return conn;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Ignoring exception using offered SSH connection to " + host, e);
+            conn.close();
+            return null;
+        }
+    }
+}
@@ -15,16 +15,29 @@ public class SshConnector {
 
     public static final SshConnector INSTANCE = new SshConnector();
 
-    private static final int PORT = 22;
+    static final int PORT = 22;
 
     public ProxyConfiguration getProxyConfiguration() {
         return JenkinsUtil.getJenkinsInstance().proxy;
     }
 
+    private Proxy getProxy(ProxyConfiguration proxyConfig, String host) {
+        return proxyConfig == null ? Proxy.NO_PROXY : proxyConfig.createProxy(host);
+    }
+
+    /**
+     * Returns true if connections to the host use the Jenkins proxy, so the
+     * host cannot be probed directly.
+     */
+    public boolean isProxied(String host) {
+        Proxy proxy = getProxy(getProxyConfiguration(), host);
+        return !proxy.equals(Proxy.NO_PROXY) && proxy.address() instanceof InetSocketAddress;
+    }
+
     public Connection createConnection(String host) throws IOException, InterruptedException {
         Connection conn = new Connection(host, PORT);
         ProxyConfiguration proxyConfig = getProxyConfiguration();
-        Proxy proxy = proxyConfig == null ? Proxy.NO_PROXY : proxyConfig.createProxy(host);
+        Proxy proxy = getProxy(proxyConfig, host);
         if (!proxy.equals(Proxy.NO_PROXY) && proxy.address() instanceof InetSocketAddress) {
             InetSocketAddress address = (InetSocketAddress) proxy.address();
             HTTPProxyData proxyData = null;
@@ -38,6 +51,10 @@ public class SshConnector {
         return conn;
     }
 
+    public boolean authenticate(Connection conn, String user, String privateKey) throws IOException {
+        return conn.authenticateWithPublicKey(user, privateKey.toCharArray(), null);
+    }
+
     public void connect(Connection conn, int timeoutMillis) throws IOException {
         conn.connect(new ServerHostKeyVerifier() {
             @Override
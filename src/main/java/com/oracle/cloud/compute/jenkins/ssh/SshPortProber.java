@@ -0,0 +1,323 @@
+package com.oracle.cloud.compute.jenkins.ssh;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks whether SSH servers are accepting connections without blocking a
+ * thread per host.  A single thread uses a {@link Selector} to connect to
+ * the SSH port of every probed host and to wait for the SSH identification
+ * banner, so the SSH handshake is only attempted once the server is known
+ * to be running.  Connections that fail immediately, for example because
+ * the port is not yet open or the host is unreachable, are retried with a
+ * backoff until the probe times out.
+ */
+public class SshPortProber {
+    private static final Logger LOGGER = Logger.getLogger(SshPortProber.class.getName());
+    private static final String CLASS_NAME = SshPortProber.class.getName();
+
+    public static final SshPortProber INSTANCE = new SshPortProber();
+
+    /**
+     * The maximum number of bytes to read while looking for the banner.  The
+     * server can send other lines before the banner, but the total is
+     * limited in practice.
+     */
+    static final int MAX_BANNER_BYTES = 1024;
+
+    /**
+     * The delay before connecting again after the first failed connection.
+     * The delay doubles after each failed connection.
+     */
+    static final long MIN_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(CLASS_NAME + ".minRetryMillis", 100));
+
+    /**
+     * The maximum delay before connecting again after a failed connection.
+     */
+    static final long MAX_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(CLASS_NAME + ".maxRetryMillis", 2000));
+
+    /**
+     * The time to wait for a probe with a timeout of 0, which means no
+     * timeout for SSH connections.  The probe is still bounded so that it
+     * does not run forever for a host that never starts; the caller probes
+     * again if the host is still wanted.
+     */
+    static final long DEFAULT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong(CLASS_NAME + ".defaultTimeoutMillis", 30000));
+
+    /**
+     * Receives the result of a probe.
+     */
+    public interface Listener {
+        /**
+         * Called by the probe thread when the probe has completed.  This
+         * method should return quickly since it delays other probes.
+         *
+         * @param available true if the server sent the SSH banner
+         */
+        void probed(boolean available);
+    }
+
+    private static class Probe {
+        final String host;
+        final int port;
+        final long deadlineNanos;
+        final Listener listener;
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_BANNER_BYTES);
+        SocketChannel channel;
+
+        /**
+         * True if the probe is waiting to connect again after a failed
+         * connection at retryNanos.
+         */
+        boolean retrying;
+        long retryNanos;
+        long retryDelayNanos = MIN_RETRY_NANOS;
+
+        Probe(String host, int port, long deadlineNanos, Listener listener) {
+            this.host = host;
+            this.port = port;
+            this.deadlineNanos = deadlineNanos;
+            this.listener = listener;
+        }
+
+        /**
+         * Returns true if the banner has been read, false if it cannot be
+         * read, or null if more data is needed.
+         */
+        Boolean checkBanner() {
+            String data = new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+            if (data.startsWith("SSH-") || data.contains("\nSSH-")) {
+                return true;
+            }
+            return buffer.hasRemaining() ? null : false;
+        }
+    }
+
+    /**
+     * Probes that have not been started by the probe thread.
+     */
+    private final Queue<Probe> newProbes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Probes that are in progress.  Only accessed by the probe thread.
+     */
+    private final Set<Probe> probes = new LinkedHashSet<>();
+
+    /**
+     * The selector, or null if the probe thread has not been started.
+     * Guarded by this.
+     */
+    private Selector selector;
+
+    private synchronized Selector getSelector() throws IOException {
+        if (selector == null) {
+            final Selector newSelector = Selector.open();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SshPortProber.this.run(newSelector);
+                }
+            }, SshPortProber.class.getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+            selector = newSelector;
+        }
+        return selector;
+    }
+
+    /**
+     * Probes the SSH port of a host.  The host should be an IP address
+     * since the probe thread would block resolving a host name.
+     *
+     * @param host the host
+     * @param port the SSH port
+     * @param timeoutMillis the time to wait for the connection and banner,
+     * or 0 to wait for {@link #DEFAULT_TIMEOUT_NANOS}
+     * @param listener the listener for the result
+     * @throws IOException if the probe thread cannot be started
+     */
+    public void probe(String host, int port, int timeoutMillis, Listener listener) throws IOException {
+        Selector selector = getSelector();
+        long timeoutNanos = timeoutMillis == 0 ? DEFAULT_TIMEOUT_NANOS : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        newProbes.add(new Probe(host, port, System.nanoTime() + timeoutNanos, listener));
+        selector.wakeup();
+    }
+
+    /**
+     * Probes the default SSH port of a host.
+     *
+     * @see #probe(String, int, int, Listener)
+     */
+    public void probe(String host, int timeoutMillis, Listener listener) throws IOException {
+        probe(host, SshConnector.PORT, timeoutMillis, listener);
+    }
+
+    private void run(Selector selector) {
+        for (;;) {
+            try {
+                select(selector);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unexpected exception probing SSH ports", e);
+            }
+        }
+    }
+
+    private void select(Selector selector) throws IOException {
+        for (Probe probe; (probe = newProbes.poll()) != null;) {
+            start(selector, probe);
+        }
+
+        // Expire probes, retry failed connections, and wait until the next
+        // deadline or retry.
+        long nowNanos = System.nanoTime();
+        long timeoutMillis = 0;
+        List<Probe> expired = new ArrayList<>();
+        List<Probe> retries = new ArrayList<>();
+        for (Probe probe : probes) {
+            long remainingNanos = probe.deadlineNanos - nowNanos;
+            if (remainingNanos <= 0) {
+                expired.add(probe);
+            } else if (probe.retrying && probe.retryNanos - nowNanos <= 0) {
+                retries.add(probe);
+            } else {
+                if (probe.retrying) {
+                    remainingNanos = Math.min(remainingNanos, probe.retryNanos - nowNanos);
+                }
+                long remainingMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(remainingNanos), 1);
+                timeoutMillis = timeoutMillis == 0 ? remainingMillis : Math.min(timeoutMillis, remainingMillis);
+            }
+        }
+        for (Probe probe : expired) {
+            LOGGER.log(Level.FINER, "Timed out probing SSH port of {0}", probe.host);
+            finish(probe, false);
+        }
+        for (Probe probe : retries) {
+            probe.retrying = false;
+            connect(selector, probe);
+        }
+        if (!expired.isEmpty() || !retries.isEmpty()) {
+            // Recompute the timeout.
+            return;
+        }
+
+        selector.select(timeoutMillis);
+
+        for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext();) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            handle(key, (Probe)key.attachment());
+        }
+    }
+
+    private void start(Selector selector, Probe probe) {
+        probes.add(probe);
+        connect(selector, probe);
+    }
+
+    private void connect(Selector selector, Probe probe) {
+        try {
+            probe.channel = SocketChannel.open();
+            probe.channel.configureBlocking(false);
+            if (probe.channel.connect(new InetSocketAddress(probe.host, probe.port))) {
+                probe.channel.register(selector, SelectionKey.OP_READ, probe);
+            } else {
+                probe.channel.register(selector, SelectionKey.OP_CONNECT, probe);
+            }
+        } catch (IOException e) {
+            retry(probe, e);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINER, "Ignoring exception probing SSH port of " + probe.host, e);
+            finish(probe, false);
+        }
+    }
+
+    /**
+     * Closes the channel after a failed connection, and connects again after
+     * the retry delay unless the probe would time out first.
+     */
+    private void retry(Probe probe, IOException e) {
+        LOGGER.log(Level.FINER, "Retrying connection to SSH port of " + probe.host, e);
+        closeChannel(probe);
+
+        long retryNanos = System.nanoTime() + probe.retryDelayNanos;
+        if (retryNanos - probe.deadlineNanos >= 0) {
+            finish(probe, false);
+            return;
+        }
+
+        probe.retrying = true;
+        probe.retryNanos = retryNanos;
+        probe.retryDelayNanos = Math.min(probe.retryDelayNanos * 2, MAX_RETRY_NANOS);
+    }
+
+    private void handle(SelectionKey key, Probe probe) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+
+            if (key.isConnectable()) {
+                try {
+                    probe.channel.finishConnect();
+                } catch (IOException e) {
+                    retry(probe, e);
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            if (key.isReadable()) {
+                if (probe.channel.read(probe.buffer) < 0) {
+                    finish(probe, false);
+                    return;
+                }
+
+                Boolean available = probe.checkBanner();
+                if (available != null) {
+                    finish(probe, available);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINER, "Ignoring exception probing SSH port of " + probe.host, e);
+            finish(probe, false);
+        }
+    }
+
+    private void closeChannel(Probe probe) {
+        if (probe.channel != null) {
+            try {
+                probe.channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, "Ignoring exception closing SSH probe of " + probe.host, e);
+            }
+            probe.channel = null;
+        }
+    }
+
+    private void finish(Probe probe, boolean available) {
+        probes.remove(probe);
+        closeChannel(probe);
+
+        try {
+            probe.listener.probed(available);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected exception from SSH probe listener for " + probe.host, e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComputeCloudAgentRegistryUnitTest {
+    private static ComputeCloudAgent newAgent(String name, String cloudName, int templateId) throws Exception {
+        return new TestComputeCloudAgent.Builder().name(name).cloudName(cloudName).templateId(templateId).build();
+    }
+
+    @Test
+    public void testAddRemove() throws Exception {
+        ComputeCloudAgentRegistry registry = new ComputeCloudAgentRegistry();
+        ComputeCloudAgent a0 = newAgent("a0", "c0", 1);
+        ComputeCloudAgent a1 = newAgent("a1", "c0", 2);
+        ComputeCloudAgent a2 = newAgent("a2", "c1", 1);
+        registry.add(a0);
+        registry.add(a1);
+        registry.add(a2);
+
+        Assert.assertEquals(3, registry.getAgents().size());
+        Assert.assertEquals(2, registry.getAgentCount("c0"));
+        Assert.assertEquals(1, registry.getAgentCount("c0", 1));
+        Assert.assertEquals(Arrays.asList(a1), registry.getAgents("c0", 2));
+        Assert.assertEquals(Arrays.asList(a2), registry.getAgents("c1"));
+        Assert.assertEquals(0, registry.getAgentCount("c2"));
+
+        registry.remove("a0");
+        registry.remove("a3");
+        Assert.assertEquals(1, registry.getAgentCount("c0"));
+        Assert.assertEquals(0, registry.getAgentCount("c0", 1));
+        Assert.assertEquals(Collections.emptyList(), registry.getAgents("c0", 1));
+    }
+
+    @Test
+    public void testAddReplaced() throws Exception {
+        ComputeCloudAgentRegistry registry = new ComputeCloudAgentRegistry();
+        registry.add(newAgent("a0", "c0", 1));
+
+        // A reconfigured agent replaces the agent with the same name.
+        ComputeCloudAgent a0 = newAgent("a0", "c0", 2);
+        registry.add(a0);
+        Assert.assertEquals(1, registry.getAgentCount("c0"));
+        Assert.assertEquals(0, registry.getAgentCount("c0", 1));
+        Assert.assertEquals(Arrays.asList(a0), registry.getAgents("c0", 2));
+    }
+
+    @Test
+    public void testRemoveTerminated() throws Exception {
+        ComputeCloudAgentRegistry registry = new ComputeCloudAgentRegistry();
+        registry.add(new TestComputeCloudAgent.Builder().name("a0").cloudName("c0").templateId(1).orchName("o0").build());
+        registry.add(new TestComputeCloudAgent.Builder().name("a1").cloudName("c0").templateId(1).orchName("o0").build());
+        registry.add(new TestComputeCloudAgent.Builder().name("a2").cloudName("c0").templateId(1).orchName("o1").build());
+
+        // The orchestration is used until its last agent is terminated.
+        Assert.assertFalse(registry.removeTerminated("c0", 1, "a0", "o0"));
+        Assert.assertTrue(registry.removeTerminated("c0", 1, "a1", "o0"));
+        Assert.assertEquals(1, registry.getAgentCount("c0"));
+
+        // Agents that are not registered, for example because they were
+        // already terminated, are checked against the registered agents.
+        Assert.assertTrue(registry.removeTerminated("c0", 1, "a1", "o0"));
+        Assert.assertFalse(registry.removeTerminated("c0", 1, "a3", "o1"));
+        Assert.assertTrue(registry.removeTerminated("c0", 1, "a2", "o1"));
+        Assert.assertEquals(0, registry.getAgentCount("c0"));
+    }
+
+    @Test
+    public void testPlanned() throws Exception {
+        ComputeCloudAgentRegistry registry = new ComputeCloudAgentRegistry();
+        registry.addPlanned("c0", 1, "a0");
+        registry.addPlanned("c0", 1, "a1");
+        registry.addPlanned("c1", 1, "a2");
+        registry.addPlanned("c0", 2, "a3");
+        Assert.assertEquals(3, registry.getPlannedCount("c0", 0));
+        Assert.assertEquals(2, registry.getPlannedCount("c0", 1, 0));
+        Assert.assertEquals(0, registry.getAgentCount("c0"));
+        registry.removePlanned("a3");
+
+        // Planned agents are counted until they are added or fail.
+        registry.provisioned("a0", 0);
+        registry.add(newAgent("a0", "c0", 1));
+        registry.removePlanned("a1");
+        Assert.assertEquals(0, registry.getPlannedCount("c0", 0));
+        Assert.assertEquals(1, registry.getAgentCount("c0"));
+        Assert.assertEquals(1, registry.getPlannedCount("c1", 0));
+    }
+
+    @Test
+    public void testPlannedTimeout() {
+        ComputeCloudAgentRegistry registry = new ComputeCloudAgentRegistry();
+        registry.addPlanned("c0", 1, "a0");
+        registry.addPlanned("c0", 1, "a1");
+
+        // Agents that are never added are no longer counted after a timeout.
+        long nowNanos = Long.MAX_VALUE;
+        registry.provisioned("a0", nowNanos);
+        Assert.assertEquals(2, registry.getPlannedCount("c0", nowNanos + ComputeCloudAgentRegistry.PLANNED_NODE_TIMEOUT_NANOS - 1));
+        Assert.assertEquals(1, registry.getPlannedCount("c0", nowNanos + ComputeCloudAgentRegistry.PLANNED_NODE_TIMEOUT_NANOS));
+
+        // Agents that are still being provisioned are counted regardless.
+        Assert.assertEquals(1, registry.getPlannedCount("c0", nowNanos + 2 * ComputeCloudAgentRegistry.PLANNED_NODE_TIMEOUT_NANOS));
+    }
+}
@@ -117,6 +117,20 @@ public class ComputeCloudAgentTemplateUnitTest {
         Assert.assertEquals("x", new TestComputeCloudAgentTemplate.Builder().numExecutors("x").build().getNumExecutors());
     }
 
+    @Test
+    public void testGetConfigDigest() {
+        String digest = new TestComputeCloudAgentTemplate().getConfigDigest();
+        Assert.assertEquals(64, digest.length());
+        Assert.assertEquals(digest, new TestComputeCloudAgentTemplate().getConfigDigest());
+        Assert.assertEquals(digest, new TestComputeCloudAgentTemplate.Builder().templateId(1).maxSpareAgents(2).build().getConfigDigest());
+        Assert.assertNotEquals(digest, new TestComputeCloudAgentTemplate.Builder().labelString("l").build().getConfigDigest());
+        Assert.assertNotEquals(digest, new TestComputeCloudAgentTemplate.Builder().numExecutors(2).build().getConfigDigest());
+        Assert.assertNotEquals(digest, new TestComputeCloudAgentTemplate.Builder().initScript("s").build().getConfigDigest());
+        Assert.assertNotEquals(
+                new TestComputeCloudAgentTemplate.Builder().shapeName("ab").imageListName("c").build().getConfigDigest(),
+                new TestComputeCloudAgentTemplate.Builder().shapeName("a").imageListName("bc").build().getConfigDigest());
+    }
+
     @Test
     public void testGetNumExecutorsValue() {
         int defaultNumExecutors = ComputeCloudAgentTemplate.DescriptorImpl.getDefaultNumExecutors();
@@ -156,6 +170,73 @@ public class ComputeCloudAgentTemplateUnitTest {
         Assert.assertEquals("2", new TestComputeCloudAgentTemplate.Builder().idleTerminationMinutes("2").build().getIdleTerminationMinutes());
     }
 
+    @Test
+    public void testGetIdleTerminationNanos() {
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate().getIdleTerminationNanos());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().idleTerminationMinutes("").build().getIdleTerminationNanos());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().idleTerminationMinutes("x").build().getIdleTerminationNanos());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().idleTerminationMinutes("-1").build().getIdleTerminationNanos());
+        Assert.assertEquals(TimeUnit.MINUTES.toNanos(2), new TestComputeCloudAgentTemplate.Builder().idleTerminationMinutes("2").build().getIdleTerminationNanos());
+    }
+
+    @Test
+    public void testGetMinSpareAgents() {
+        Assert.assertNull(new TestComputeCloudAgentTemplate().getMinSpareAgents());
+        Assert.assertEquals("2", new TestComputeCloudAgentTemplate.Builder().minSpareAgents("2").build().getMinSpareAgents());
+    }
+
+    @Test
+    public void testGetMinSpareAgentsValue() {
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate().getMinSpareAgentsValue());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("").build().getMinSpareAgentsValue());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("x").build().getMinSpareAgentsValue());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("-1").build().getMinSpareAgentsValue());
+        Assert.assertEquals(2, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("2").build().getMinSpareAgentsValue());
+    }
+
+    @Test
+    public void testGetMaxSpareAgents() {
+        Assert.assertNull(new TestComputeCloudAgentTemplate().getMaxSpareAgents());
+        Assert.assertEquals("2", new TestComputeCloudAgentTemplate.Builder().maxSpareAgents("2").build().getMaxSpareAgents());
+    }
+
+    @Test
+    public void testGetMaxSpareAgentsValue() {
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate().getMaxSpareAgentsValue());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().maxSpareAgents("x").build().getMaxSpareAgentsValue());
+        Assert.assertEquals(3, new TestComputeCloudAgentTemplate.Builder().maxSpareAgents("3").build().getMaxSpareAgentsValue());
+        Assert.assertEquals(3, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("1").maxSpareAgents("3").build().getMaxSpareAgentsValue());
+        // The maximum is at least the minimum.
+        Assert.assertEquals(2, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("2").build().getMaxSpareAgentsValue());
+        Assert.assertEquals(2, new TestComputeCloudAgentTemplate.Builder().minSpareAgents("2").maxSpareAgents("1").build().getMaxSpareAgentsValue());
+    }
+
+    @Test
+    public void testGetMaxSuspendedAgents() {
+        Assert.assertNull(new TestComputeCloudAgentTemplate().getMaxSuspendedAgents());
+        Assert.assertEquals("2", new TestComputeCloudAgentTemplate.Builder().maxSuspendedAgents("2").build().getMaxSuspendedAgents());
+    }
+
+    @Test
+    public void testGetMaxSuspendedAgentsValue() {
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate().getMaxSuspendedAgentsValue());
+        Assert.assertEquals(0, new TestComputeCloudAgentTemplate.Builder().maxSuspendedAgents("x").build().getMaxSuspendedAgentsValue());
+        Assert.assertEquals(3, new TestComputeCloudAgentTemplate.Builder().maxSuspendedAgents("3").build().getMaxSuspendedAgentsValue());
+    }
+
+    @Test
+    public void testGetMaxBatchSize() {
+        Assert.assertNull(new TestComputeCloudAgentTemplate().getMaxBatchSize());
+        Assert.assertEquals("2", new TestComputeCloudAgentTemplate.Builder().maxBatchSize("2").build().getMaxBatchSize());
+    }
+
+    @Test
+    public void testGetMaxBatchSizeValue() {
+        Assert.assertEquals(1, new TestComputeCloudAgentTemplate().getMaxBatchSizeValue());
+        Assert.assertEquals(1, new TestComputeCloudAgentTemplate.Builder().maxBatchSize("x").build().getMaxBatchSizeValue());
+        Assert.assertEquals(3, new TestComputeCloudAgentTemplate.Builder().maxBatchSize("3").build().getMaxBatchSizeValue());
+    }
+
     @Test
     public void testGetNextTemplateId() {
         Assert.assertEquals(0, new TestComputeCloudAgentTemplate().getTemplateId());
@@ -761,6 +842,46 @@ public class ComputeCloudAgentTemplateUnitTest {
         Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckIdleTerminationMinutes("x").kind);
     }
 
+    @Test
+    public void testDoCheckMinSpareAgents() {
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents(null).kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents("").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents("0").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents("1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents("-1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMinSpareAgents("x").kind);
+    }
+
+    @Test
+    public void testDoCheckMaxSpareAgents() {
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents(null).kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents("").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents("0").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents("1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents("-1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSpareAgents("x").kind);
+    }
+
+    @Test
+    public void testDoCheckMaxSuspendedAgents() {
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents(null).kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents("").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents("0").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents("1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents("-1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxSuspendedAgents("x").kind);
+    }
+
+    @Test
+    public void testDoCheckMaxBatchSize() {
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize(null).kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize("").kind);
+        Assert.assertEquals(FormValidation.Kind.OK, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize("1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize("0").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize("-1").kind);
+        Assert.assertEquals(FormValidation.Kind.ERROR, new ComputeCloudAgentTemplate.DescriptorImpl().doCheckMaxBatchSize("x").kind);
+    }
+
     private TestListBoxModel doFillSshKeyNameItems(ComputeCloudAgentTemplate.DescriptorImpl descriptor, String value) {
         try {
             return new TestListBoxModel(descriptor.doFillSshKeyNameItems(ENDPOINT.toString(), USER.getIdentityDomainName(), USER.getUsername(), PASSWORD, value));
@@ -1018,11 +1139,11 @@ public class ComputeCloudAgentTemplateUnitTest {
         Assert.assertNull(template.getDisableCause());
 
         for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT - 1; i++) {
-            template.increaseFailureCount("error");
+            template.increaseFailureCount("error", 0);
         }
         Assert.assertNull(template.getDisableCause());
 
-        template.increaseFailureCount("error");
+        template.increaseFailureCount("error", 0);
         Assert.assertNotNull(template.getDisableCause());
     }
 
@@ -1032,17 +1153,27 @@ public class ComputeCloudAgentTemplateUnitTest {
         Assert.assertNull(template.getDisableCause());
 
         for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT - 1; i++) {
-            template.increaseFailureCount("error");
+            template.increaseFailureCount("error", 0);
         }
         template.resetFailureCount();
-        template.increaseFailureCount("error");
+        template.increaseFailureCount("error", 0);
         Assert.assertNull(template.getDisableCause());
 
         for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
-            template.increaseFailureCount("error");
+            template.increaseFailureCount("error", 0);
         }
         Assert.assertNotNull(template.getDisableCause());
         template.resetFailureCount();
         Assert.assertNull(template.getDisableCause());
     }
+
+    @Test
+    public void testIncreaseFailureCountNow() {
+        TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate();
+        for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
+            template.increaseFailureCount("error");
+        }
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.OPEN, template.getCircuitBreaker().getState());
+        Assert.assertEquals("error", template.getDisableCause());
+    }
 }
@@ -1,15 +1,16 @@
 package com.oracle.cloud.compute.jenkins;
 
-import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.jmock.Expectations;
 import org.junit.Assert;
-import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientNotFoundException;
 import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
 
 import hudson.model.TaskListener;
@@ -22,21 +23,168 @@ public class ComputeCloudAgentUnitTest {
         return null;
     }
 
+    private final TestClock clock = new TestClock();
+    private final TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+
+    private TestComputeCloud.Builder newTerminateComputeCloudBuilder(ComputeCloudClient client) {
+        return new TestComputeCloud.Builder()
+                .client(client)
+                .clock(clock)
+                .provisioningExecutor(provisioningExecutor);
+    }
+
+    private void assertReaped(TestComputeCloud cloud) {
+        provisioningExecutor.runAll(clock);
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+        Assert.assertEquals(0, cloud.getProvisioningLimits().getDeletePermits().getInUseCount());
+    }
+
     @Test
     public void testTerminateFromReadyStatus() throws Exception {
         final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
         mockery.checking(new Expectations() {{
             oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
             oneOf(client).stopOrchestration("on");
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on");
+            exactly(2).of(client).close();
+        }});
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
+        TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
+                .orchName("on")
+                .cloud(cloud)
+                .build();
+
+        // The orchestration is stopped and deleted in the background, and it
+        // is recorded in the journal until it has been deleted.
+        agent._terminate(newTerminateTaskListener());
+        Assert.assertEquals(1, cloud.getReaper().getPendingCount());
+        Assert.assertEquals(1, cloud.getRecycleJournal().getPendingCount());
+        assertReaped(cloud);
+        Assert.assertEquals(0, cloud.getRecycleJournal().getPendingCount());
+    }
+
+    @Test
+    public void testTerminateSuspend() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
+            oneOf(client).stopOrchestration("on");
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            exactly(2).of(client).close();
+        }});
+        TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().templateId(1).maxSuspendedAgents(1).build();
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client)
+                .templates(Arrays.asList(template))
+                .warmPools(new ComputeCloudWarmPool.Registry())
+                .build();
+        TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
+                .orchName("on")
+                .templateId(1)
+                .configDigest(template.getConfigDigest())
+                .cloud(cloud)
+                .build();
+
+        // The orchestration is stopped rather than deleted.
+        agent._terminate(newTerminateTaskListener());
+        Assert.assertNull(cloud.getWarmPool(template).resume());
+        assertReaped(cloud);
+
+        // The stopped orchestration stays in the journal so that it is
+        // recycled if Jenkins restarts, but it is not retried meanwhile.
+        Assert.assertTrue(cloud.getRecycleJournal().contains("on"));
+        Assert.assertEquals(Collections.emptyList(), cloud.getRecycleJournal().takeDue(0));
+        Assert.assertEquals("on", cloud.getWarmPool(template).resume());
+    }
+
+    @Test
+    public void testTerminateSuspendReconfiguredTemplate() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
             oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
             oneOf(client).deleteOrchestration("on");
             oneOf(client).close();
         }});
+        TestComputeCloudAgentTemplate oldTemplate = new TestComputeCloudAgentTemplate.Builder().templateId(1).labelString("old").maxSuspendedAgents(1).build();
+        TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().templateId(1).labelString("new").maxSuspendedAgents(1).build();
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client)
+                .templates(Arrays.asList(template))
+                .warmPools(new ComputeCloudWarmPool.Registry())
+                .build();
+        TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
+                .orchName("on")
+                .templateId(1)
+                .configDigest(oldTemplate.getConfigDigest())
+                .cloud(cloud)
+                .build();
+
+        // The orchestration was created for the old configuration, so it is
+        // deleted rather than stopped.
+        agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
+        Assert.assertNull(cloud.getWarmPool(template).resume());
+    }
+
+    @Test
+    public void testTerminateSuspendTimeout() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
+            oneOf(client).stopOrchestration("on");
+            allowing(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopping)));
+            allowing(client).close();
+        }});
+        TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().templateId(1).maxSuspendedAgents(1).build();
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client)
+                .templates(Arrays.asList(template))
+                .warmPools(new ComputeCloudWarmPool.Registry())
+                .build();
         TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
                 .orchName("on")
-                .cloud(new TestComputeCloud.Builder().client(client).clock(new TestClock()).build())
+                .templateId(1)
+                .configDigest(template.getConfigDigest())
+                .cloud(cloud)
                 .build();
+
+        // The reservation is released once the orchestration fails to stop,
+        // and then it is deleted, which also times out.
         agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
+        Assert.assertEquals(0, cloud.getWarmPool(template).getSuspendedCount());
+        Assert.assertTrue(cloud.getWarmPool(template).reserveSuspend(1));
+        Assert.assertEquals(1, cloud.getRecycleJournal().getPendingCount());
+    }
+
+    @Test
+    public void testTerminateBatch() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final String orchName = ComputeCloud.BATCH_ORCHESTRATION_NAME_PREFIX + "on";
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration(orchName); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration(orchName);
+            oneOf(client).close();
+        }});
+        ComputeCloudAgentRegistry agentRegistry = new ComputeCloudAgentRegistry();
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client)
+                .agentRegistry(agentRegistry)
+                .build();
+        TestComputeCloudAgent agent0 = new TestComputeCloudAgent.Builder().name("a0").cloudName(cloud.name).orchName(orchName).cloud(cloud).build();
+        agentRegistry.add(agent0);
+
+        // The cloud is reconfigured before the last agent is terminated.
+        TestComputeCloud reconfiguredCloud = newTerminateComputeCloudBuilder(client)
+                .agentRegistry(agentRegistry)
+                .build();
+        TestComputeCloudAgent agent1 = new TestComputeCloudAgent.Builder().name("a1").cloudName(cloud.name).orchName(orchName).cloud(reconfiguredCloud).build();
+        agentRegistry.add(agent1);
+
+        // The orchestration is kept until its last agent is terminated, even
+        // though the agents are still registered while being terminated.
+        agent0._terminate(newTerminateTaskListener());
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+        agent1._terminate(newTerminateTaskListener());
+        assertReaped(reconfiguredCloud);
+        Assert.assertEquals(0, agentRegistry.getAgentCount(cloud.name));
     }
 
     @Test
@@ -48,44 +196,135 @@ public class ComputeCloudAgentUnitTest {
             oneOf(client).close();
         }});
 
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
         TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
                 .orchName("on")
-                .cloud(new TestComputeCloud.Builder().client(client).clock(new TestClock()).build())
+                .cloud(cloud)
                 .build();
         agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
     }
 
-    @Test(expected = IOException.class)
+    @Test
+    public void testTerminateMultiple() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final String orchName0 = ComputeCloud.ORCHESTRATION_NAME_PREFIX + "on0";
+        final String orchName1 = ComputeCloud.ORCHESTRATION_NAME_PREFIX + "on1";
+        mockery.checking(new Expectations() {{
+            // All orchestrations are polled with a single request.
+            oneOf(client).getInstanceOrchestrations(ComputeCloud.ORCHESTRATION_NAME_PREFIX); will(returnValue(Arrays.asList(
+                    new InstanceOrchestration().name(orchName0).status(InstanceOrchestration.Status.ready),
+                    new InstanceOrchestration().name(orchName1).status(InstanceOrchestration.Status.ready))));
+            oneOf(client).stopOrchestration(orchName0);
+            oneOf(client).stopOrchestration(orchName1);
+            oneOf(client).getInstanceOrchestrations(ComputeCloud.ORCHESTRATION_NAME_PREFIX); will(returnValue(Arrays.asList(
+                    new InstanceOrchestration().name(orchName0).status(InstanceOrchestration.Status.stopped),
+                    new InstanceOrchestration().name(orchName1).status(InstanceOrchestration.Status.stopping))));
+            oneOf(client).deleteOrchestration(orchName0);
+            // Once only one orchestration is being polled, it is polled
+            // individually rather than listed.
+            oneOf(client).getInstanceOrchestration(orchName1); will(returnValue(new InstanceOrchestration().name(orchName1).status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration(orchName1);
+            exactly(3).of(client).close();
+        }});
+
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
+        TestComputeCloudAgent agent0 = new TestComputeCloudAgent.Builder().name("a0").orchName(orchName0).cloud(cloud).build();
+        TestComputeCloudAgent agent1 = new TestComputeCloudAgent.Builder().name("a1").orchName(orchName1).cloud(cloud).build();
+        agent0._terminate(newTerminateTaskListener());
+        agent1._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
+    }
+
+    @Test
     public void testTerminateStopError() throws Exception {
         final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
         mockery.checking(new Expectations() {{
             oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
             oneOf(client).stopOrchestration("on"); will(throwException(new ComputeCloudClientException("test")));
-            oneOf(client).close();
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
+            oneOf(client).stopOrchestration("on");
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on");
+            exactly(3).of(client).close();
         }});
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
         TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
                 .orchName("on")
-                .cloud(new TestComputeCloud.Builder().client(client).clock(new TestClock()).build())
+                .cloud(cloud)
                 .build();
+
+        // Failed requests are retried.
         agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
     }
 
-    //Ignore this test as timeout value was set as const with value 10 minutes
-    @Test(expected = IOException.class)
-    @Ignore
+    @Test
     public void testTerminateTimeout() throws Exception {
         final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
         mockery.checking(new Expectations() {{
             oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready)));
             oneOf(client).stopOrchestration("on");
             allowing(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopping)));
+            allowing(client).close();
+        }});
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
+        TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
+                .orchName("on")
+                .cloud(cloud)
+                .build();
+
+        // The orchestration is retried from the journal after the timeout.
+        agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
+        Assert.assertEquals(1, cloud.getRecycleJournal().getPendingCount());
+
+        cloud.retryRecycles();
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+        clock.nanoTime += ComputeCloudRecycleJournal.MIN_RETRY_DELAY_NANOS;
+        cloud.retryRecycles();
+        Assert.assertEquals(1, cloud.getReaper().getPendingCount());
+    }
+
+    @Test
+    public void testTerminateNotFound() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on"); will(throwException(new ComputeCloudClientNotFoundException("test")));
             oneOf(client).close();
         }});
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client).build();
         TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder()
                 .orchName("on")
-                .cloud(new TestComputeCloud.Builder().client(client).clock(new TestClock()).build())
+                .cloud(cloud)
                 .build();
+
+        // An orchestration that was already deleted is not retried.
         agent._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
+        Assert.assertEquals(0, cloud.getRecycleJournal().getPendingCount());
+    }
+
+    @Test
+    public void testTerminateDeletePermits() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on0"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on0");
+            oneOf(client).getInstanceOrchestration("on1"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on1");
+            exactly(2).of(client).close();
+        }});
+        TestComputeCloud cloud = newTerminateComputeCloudBuilder(client)
+                .provisioningLimits(new ComputeCloudProvisioningLimits("cloud", 1, 1, 1))
+                .build();
+        TestComputeCloudAgent agent0 = new TestComputeCloudAgent.Builder().name("a0").orchName("on0").cloud(cloud).build();
+        TestComputeCloudAgent agent1 = new TestComputeCloudAgent.Builder().name("a1").orchName("on1").cloud(cloud).build();
+
+        // The second orchestration waits for the permit of the first.
+        agent0._terminate(newTerminateTaskListener());
+        agent1._terminate(newTerminateTaskListener());
+        assertReaped(cloud);
     }
 
     @Test
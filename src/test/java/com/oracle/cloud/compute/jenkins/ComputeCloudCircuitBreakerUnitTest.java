@@ -0,0 +1,130 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComputeCloudCircuitBreakerUnitTest {
+    private static void fail(ComputeCloudCircuitBreaker breaker, int count, long nowNanos) {
+        for (int i = 0; i < count; i++) {
+            breaker.recordFailure("error" + i, nowNanos);
+        }
+    }
+
+    @Test
+    public void testOpen() {
+        ComputeCloudCircuitBreaker breaker = new ComputeCloudCircuitBreaker("test", 3);
+        long nowNanos = Long.MAX_VALUE;
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.tryAcquire(nowNanos));
+
+        fail(breaker, 2, nowNanos);
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertNull(breaker.getCause());
+
+        // A success resets the consecutive failures.
+        breaker.recordSuccess();
+        fail(breaker, 2, nowNanos);
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure("error", nowNanos);
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals("error", breaker.getCause());
+        Assert.assertFalse(breaker.isAvailable(nowNanos));
+        Assert.assertNull(breaker.tryAcquire(nowNanos + ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS - 1));
+        Assert.assertEquals(1, breaker.getRemainingCooldownNanos(nowNanos + ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS - 1));
+    }
+
+    @Test
+    public void testHalfOpenSuccess() {
+        ComputeCloudCircuitBreaker breaker = new ComputeCloudCircuitBreaker("test", 1);
+        long nowNanos = Long.MAX_VALUE;
+        breaker.recordFailure("error", nowNanos);
+
+        // A single probe is allowed once the cooldown has elapsed.
+        nowNanos += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        Assert.assertTrue(breaker.isAvailable(nowNanos));
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, breaker.tryAcquire(nowNanos));
+        Assert.assertFalse(breaker.isAvailable(nowNanos));
+        Assert.assertNull(breaker.tryAcquire(nowNanos));
+        Assert.assertEquals("error", breaker.getCause());
+
+        breaker.recordSuccess();
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertNull(breaker.getCause());
+        Assert.assertEquals(0, breaker.getFailureCount());
+    }
+
+    @Test
+    public void testHalfOpenFailure() {
+        ComputeCloudCircuitBreaker breaker = new ComputeCloudCircuitBreaker("test", 1);
+        long nowNanos = Long.MAX_VALUE;
+        breaker.recordFailure("error", nowNanos);
+
+        // The cooldown doubles with each failed probe up to the maximum.
+        long cooldownNanos = ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        for (int i = 0; i < 64; i++) {
+            nowNanos += cooldownNanos;
+            Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, breaker.tryAcquire(nowNanos));
+            breaker.recordFailure("probe", nowNanos);
+            Assert.assertEquals(ComputeCloudCircuitBreaker.State.OPEN, breaker.getState());
+            Assert.assertEquals("probe", breaker.getCause());
+
+            cooldownNanos = Math.min(cooldownNanos * 2, ComputeCloudCircuitBreaker.MAX_COOLDOWN_NANOS);
+            Assert.assertEquals(cooldownNanos, breaker.getRemainingCooldownNanos(nowNanos));
+        }
+    }
+
+    @Test
+    public void testHalfOpenCancelled() {
+        ComputeCloudCircuitBreaker breaker = new ComputeCloudCircuitBreaker("test", 1);
+        long nowNanos = Long.MAX_VALUE;
+        breaker.recordFailure("error", nowNanos);
+        nowNanos += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, breaker.tryAcquire(nowNanos));
+
+        // Another probe is allowed without a further cooldown.
+        breaker.recordCancelled();
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, breaker.tryAcquire(nowNanos));
+
+        // Cancelling has no effect unless a probe is in progress.
+        breaker.recordSuccess();
+        breaker.recordCancelled();
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testTransitions() {
+        ComputeCloudCircuitBreaker breaker = new ComputeCloudCircuitBreaker("test", 1);
+        long nowNanos = Long.MAX_VALUE;
+        breaker.recordFailure("error", nowNanos);
+        nowNanos += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        breaker.tryAcquire(nowNanos);
+        breaker.recordSuccess();
+
+        List<ComputeCloudCircuitBreaker.Transition> transitions = breaker.getTransitions();
+        Assert.assertEquals(3, transitions.size());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, transitions.get(0).getFrom());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.OPEN, transitions.get(0).getTo());
+        Assert.assertEquals("error", transitions.get(0).getCause());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, transitions.get(1).getTo());
+        Assert.assertNull(transitions.get(1).getCause());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, transitions.get(2).getTo());
+
+        // Only the most recent transitions are kept.
+        for (int i = 0; i < ComputeCloudCircuitBreaker.MAX_TRANSITIONS; i++) {
+            breaker.recordFailure("error", nowNanos);
+            breaker.recordSuccess();
+        }
+        Assert.assertEquals(ComputeCloudCircuitBreaker.MAX_TRANSITIONS, breaker.getTransitions().size());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, breaker.getTransitions().get(ComputeCloudCircuitBreaker.MAX_TRANSITIONS - 1).getTo());
+    }
+
+    @Test
+    public void testRegistry() {
+        ComputeCloudCircuitBreaker.Registry registry = new ComputeCloudCircuitBreaker.Registry();
+        Assert.assertSame(registry.get("https://endpoint0"), registry.get("https://endpoint0"));
+        Assert.assertNotSame(registry.get("https://endpoint0"), registry.get("https://endpoint1"));
+    }
+}
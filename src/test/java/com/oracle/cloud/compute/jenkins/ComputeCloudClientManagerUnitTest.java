@@ -11,8 +11,10 @@ import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.USER;
 import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.USER2;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.jmock.Expectations;
 import org.junit.Assert;
@@ -20,7 +22,10 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientFactory;
+import com.oracle.cloud.compute.jenkins.client.ProxyComputeCloudClient;
+import com.oracle.cloud.compute.jenkins.model.SSHKey;
 
 import hudson.slaves.Cloud;
 
@@ -139,6 +144,38 @@ public class ComputeCloudClientManagerUnitTest {
         }
     }
 
+    @Test
+    public void testCreateClientWorkloads() throws Exception {
+        final ComputeCloudClientFactory factory = mockery.mock(ComputeCloudClientFactory.class);
+        try (ComputeCloudClientManager cm = new ComputeCloudClientManager(factory, Collections.<Cloud>emptyList())) {
+            final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+            final List<ComputeCloudWorkload> workloads = new ArrayList<>();
+            final ComputeCloudClient recordingClient = new ProxyComputeCloudClient(mockClient) {
+                @Override
+                public Collection<SSHKey> getSSHKeys() throws ComputeCloudClientException {
+                    workloads.add(ComputeCloudWorkload.getCurrent());
+                    return super.getSSHKeys();
+                }
+            };
+            mockery.checking(new Expectations() {{
+                oneOf(factory).createClient(ENDPOINT, USER, PASSWORD); will(returnValue(recordingClient));
+                exactly(2).of(mockClient).getSSHKeys();
+            }});
+
+            // Clients of all workloads share the cached client, and requests
+            // are sent as the workload of the client.
+            try (ComputeCloudClient client = cm.createClient(ENDPOINT, USER, PASSWORD, ComputeCloudWorkload.MONITOR)) {
+                client.getSSHKeys();
+            }
+            try (ComputeCloudClient client = cm.createClient(ENDPOINT, USER, PASSWORD, ComputeCloudWorkload.TERMINATE)) {
+                client.getSSHKeys();
+            }
+            Assert.assertEquals(Arrays.asList(ComputeCloudWorkload.MONITOR, ComputeCloudWorkload.TERMINATE), workloads);
+            Assert.assertEquals(ComputeCloudWorkload.FORM_FILL, ComputeCloudWorkload.getCurrent());
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
     @Test
     public void testRemoveUnusedClients() {
         final ComputeCloudClientFactory factory = mockery.mock(ComputeCloudClientFactory.class);
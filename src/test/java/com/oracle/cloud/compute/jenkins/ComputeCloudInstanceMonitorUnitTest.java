@@ -12,22 +12,20 @@ import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
 import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration.Status;
 
-import hudson.model.Node;
-
 public class ComputeCloudInstanceMonitorUnitTest {
     @Rule
     public final ComputeCloudMockery mockery = new ComputeCloudMockery();
 
     static class TestComputeCloudInstanceMonitor extends ComputeCloudInstanceMonitor {
         boolean removed;
-        Node agent;
+        ComputeCloudAgent agent;
 
-        TestComputeCloudInstanceMonitor(Node agent) {
+        TestComputeCloudInstanceMonitor(ComputeCloudAgent agent) {
             this.agent = agent;
         }
 
         @Override
-        protected List<Node> getNodes() {
+        protected List<ComputeCloudAgent> getAgents() {
             return Arrays.asList(agent);
         }
 
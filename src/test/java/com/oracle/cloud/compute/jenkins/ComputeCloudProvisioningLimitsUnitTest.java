@@ -0,0 +1,125 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComputeCloudProvisioningLimitsUnitTest {
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {}
+    };
+
+    private static class TestWaiter implements Runnable {
+        final String name;
+        final List<String> granted;
+
+        TestWaiter(String name, List<String> granted) {
+            this.name = name;
+            this.granted = granted;
+        }
+
+        @Override
+        public void run() {
+            granted.add(name);
+        }
+    }
+
+    @Test
+    public void testPermits() {
+        ComputeCloudProvisioningLimits.Permits permits = new ComputeCloudProvisioningLimits.Permits(2);
+        List<String> granted = new ArrayList<>();
+        Assert.assertTrue(permits.tryAcquire(new TestWaiter("a", granted)));
+        Assert.assertTrue(permits.tryAcquire(new TestWaiter("b", granted)));
+        Assert.assertFalse(permits.tryAcquire(new TestWaiter("c", granted)));
+        Assert.assertFalse(permits.tryAcquire(new TestWaiter("d", granted)));
+        Assert.assertEquals(2, permits.getInUseCount());
+        Assert.assertEquals(2, permits.getWaitingCount());
+
+        // Released permits are granted to the waiters in order.
+        permits.release();
+        Assert.assertEquals(2, permits.getInUseCount());
+        Assert.assertEquals(1, permits.getWaitingCount());
+        permits.release();
+        permits.release();
+        Assert.assertEquals(1, permits.getInUseCount());
+        permits.release();
+        Assert.assertEquals(0, permits.getInUseCount());
+        Assert.assertEquals(0, permits.getWaitingCount());
+
+        List<String> expected = new ArrayList<>();
+        expected.add("c");
+        expected.add("d");
+        Assert.assertEquals(expected, granted);
+    }
+
+    @Test
+    public void testPermitsAcquire() throws Exception {
+        final ComputeCloudProvisioningLimits.Permits permits = new ComputeCloudProvisioningLimits.Permits(1);
+        permits.acquire();
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    permits.acquire();
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        permits.release();
+        Assert.assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, permits.getInUseCount());
+    }
+
+    @Test
+    public void testPermitsAcquireInterrupted() throws Exception {
+        ComputeCloudProvisioningLimits.Permits permits = new ComputeCloudProvisioningLimits.Permits(1);
+        permits.acquire();
+
+        Thread.currentThread().interrupt();
+        try {
+            permits.acquire();
+            Assert.fail();
+        } catch (InterruptedException e) {
+            // Expected.
+        }
+        Assert.assertEquals(1, permits.getInUseCount());
+        Assert.assertEquals(0, permits.getWaitingCount());
+    }
+
+    @Test
+    public void testCreateCapacity() {
+        ComputeCloudProvisioningLimits limits = new ComputeCloudProvisioningLimits("cloud", 2, 1, 1);
+        Assert.assertEquals(3, limits.getCreateCapacity());
+        Assert.assertTrue(limits.getCreatePermits().tryAcquire(NO_OP));
+        Assert.assertTrue(limits.getCreatePermits().tryAcquire(NO_OP));
+        Assert.assertEquals(1, limits.getCreateCapacity());
+        Assert.assertFalse(limits.getCreatePermits().tryAcquire(NO_OP));
+        Assert.assertEquals(0, limits.getCreateCapacity());
+
+        // Deletes do not count toward the create queue.
+        Assert.assertTrue(limits.getDeletePermits().tryAcquire(NO_OP));
+        Assert.assertFalse(limits.getDeletePermits().tryAcquire(NO_OP));
+        Assert.assertEquals(0, limits.getCreateCapacity());
+    }
+
+    @Test
+    public void testRegistry() {
+        ComputeCloudProvisioningLimits.Registry registry = new ComputeCloudProvisioningLimits.Registry();
+        ComputeCloudProvisioningLimits limits = registry.get("cloud");
+        Assert.assertSame(limits, registry.get("cloud"));
+        Assert.assertNotSame(limits, registry.get("other"));
+    }
+}
@@ -0,0 +1,121 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ComputeCloudRecycleJournalUnitTest {
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
+    private File newJournalFile() {
+        return new File(new File(tmp.getRoot(), "journal"), "cloud.log");
+    }
+
+    @Test
+    public void testAddRemove() {
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(null);
+        journal.add("on0");
+        journal.add("on1");
+        journal.add("on0");
+        Assert.assertEquals(2, journal.getPendingCount());
+
+        journal.remove("on0");
+        journal.remove("on2");
+        Assert.assertEquals(1, journal.getPendingCount());
+
+        // Orchestrations being recycled are not retried.
+        Assert.assertEquals(Collections.emptyList(), journal.takeDue(0));
+    }
+
+    @Test
+    public void testReload() {
+        File file = newJournalFile();
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(file);
+        journal.add("on0");
+        journal.add("on1");
+        journal.add("on2");
+        journal.remove("on1");
+        Assert.assertTrue(file.exists());
+
+        // Orchestrations recorded before a restart are retried immediately.
+        ComputeCloudRecycleJournal reloaded = new ComputeCloudRecycleJournal(file);
+        Assert.assertEquals(2, reloaded.getPendingCount());
+        Assert.assertEquals(Arrays.asList("on0", "on2"), reloaded.takeDue(0));
+        Assert.assertEquals(Collections.emptyList(), reloaded.takeDue(0));
+    }
+
+    @Test
+    public void testCompactEmpty() {
+        File file = newJournalFile();
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(file);
+        journal.add("on0");
+        journal.add("on1");
+        journal.remove("on0");
+        Assert.assertEquals(3, journal.getLineCount());
+
+        journal.remove("on1");
+        Assert.assertEquals(0, journal.getLineCount());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testCompactThreshold() {
+        File file = newJournalFile();
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(file);
+        journal.add("keep");
+        for (int i = 0; i < ComputeCloudRecycleJournal.COMPACT_THRESHOLD; i++) {
+            journal.add("on" + i);
+            journal.remove("on" + i);
+        }
+
+        // The file is rewritten with only the pending orchestration.
+        Assert.assertEquals(1, journal.getLineCount());
+        ComputeCloudRecycleJournal reloaded = new ComputeCloudRecycleJournal(file);
+        Assert.assertEquals(1, reloaded.getLineCount());
+        Assert.assertEquals(Arrays.asList("keep"), reloaded.takeDue(0));
+    }
+
+    @Test
+    public void testRetryLater() {
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(null);
+        journal.add("on");
+
+        long nowNanos = Long.MAX_VALUE;
+        long delayNanos = journal.retryLater("on", nowNanos);
+        Assert.assertEquals(ComputeCloudRecycleJournal.MIN_RETRY_DELAY_NANOS, delayNanos);
+        Assert.assertEquals(Collections.emptyList(), journal.takeDue(nowNanos + delayNanos - 1));
+        Assert.assertEquals(Arrays.asList("on"), journal.takeDue(nowNanos + delayNanos));
+
+        // The delay doubles with each failure up to the maximum.
+        Assert.assertEquals(2 * ComputeCloudRecycleJournal.MIN_RETRY_DELAY_NANOS, journal.retryLater("on", nowNanos));
+        for (int i = 0; i < 64; i++) {
+            delayNanos = journal.retryLater("on", nowNanos);
+        }
+        Assert.assertEquals(ComputeCloudRecycleJournal.MAX_RETRY_DELAY_NANOS, delayNanos);
+
+        Assert.assertEquals(0, journal.retryLater("other", nowNanos));
+    }
+
+    @Test
+    public void testRegistry() {
+        File dir = new File(tmp.getRoot(), "journal");
+        ComputeCloudRecycleJournal.Registry registry = new ComputeCloudRecycleJournal.Registry(dir);
+        ComputeCloudRecycleJournal journal = registry.get(ComputeCloudTestUtils.ENDPOINT, ComputeCloudTestUtils.USER);
+        journal.add("on");
+
+        // Clouds of the same account share the journal regardless of name.
+        Assert.assertSame(journal, registry.get(ComputeCloudTestUtils.ENDPOINT, ComputeCloudTestUtils.USER));
+        Assert.assertNotSame(journal, registry.get(ComputeCloudTestUtils.ENDPOINT2, ComputeCloudTestUtils.USER));
+        Assert.assertNotSame(journal, registry.get(ComputeCloudTestUtils.ENDPOINT, ComputeCloudTestUtils.USER2));
+
+        // The journal is found again after a restart.
+        ComputeCloudRecycleJournal reloaded = new ComputeCloudRecycleJournal.Registry(dir).get(ComputeCloudTestUtils.ENDPOINT, ComputeCloudTestUtils.USER);
+        Assert.assertEquals(Arrays.asList("on"), reloaded.takeDue(0));
+    }
+}
@@ -7,19 +7,23 @@ import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.INVALID_USE
 import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.PASSWORD;
 import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.USER;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
+import java.util.concurrent.TimeUnit;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.http.HttpServletRequest;
 
@@ -30,11 +34,10 @@ import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.MatcherAssert;
 import org.jmock.Expectations;
-import org.jmock.api.Invocation;
-import org.jmock.lib.action.CustomAction;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -42,8 +45,11 @@ import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientException;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientFactory;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientUnauthorizedException;
+import com.oracle.cloud.compute.jenkins.client.ComputeCloudClientUnavailableException;
 import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
+import com.oracle.cloud.compute.jenkins.ssh.SshConnectionHandoff;
 import com.oracle.cloud.compute.jenkins.ssh.SshConnector;
+import com.oracle.cloud.compute.jenkins.ssh.SshPortProber;
 import com.trilead.ssh2.Connection;
 
 import hudson.ProxyConfiguration;
@@ -63,6 +69,9 @@ public class ComputeCloudUnitTest {
     @Rule
     public final ComputeCloudMockery mockery = new ComputeCloudMockery();
 
+    @Rule
+    public final TemporaryFolder tmp = new TemporaryFolder();
+
     @Test
     public void testName() throws Exception {
         ComputeCloud cloud = new TestComputeCloud.Builder().cloudName("cn").build();
@@ -131,22 +140,66 @@ public class ComputeCloudUnitTest {
         ComputeCloud cloud = new TestComputeCloud.Builder().templates(Arrays.asList(template)).build();
         Assert.assertSame(template, cloud.getTemplate(null));
         for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
-            template.increaseFailureCount("error");
+            template.increaseFailureCount("error", 0);
+        }
+        template.increaseFailureCount("error", 0);
+    }
+
+    @Test
+    public void testGetTemplatesByLabel() {
+        final int[] getLabelAtomsCount = new int[1];
+        List<ComputeCloudAgentTemplate> templates = new ArrayList<>();
+        Node.Mode[] modes = { Node.Mode.EXCLUSIVE, Node.Mode.NORMAL, Node.Mode.NORMAL, Node.Mode.EXCLUSIVE };
+        String[] labelStrings = { "label0", "label1", "label0", "label0 label1" };
+        for (int i = 0; i < modes.length; i++) {
+            templates.add(new TestComputeCloudAgentTemplate(new TestComputeCloudAgentTemplate.Builder()
+                    .mode(modes[i])
+                    .labelString(labelStrings[i])) {
+                @Override
+                public synchronized Collection<LabelAtom> getLabelAtoms() {
+                    getLabelAtomsCount[0]++;
+                    return super.getLabelAtoms();
+                }
+            });
+        }
+        TestClock clock = new TestClock();
+        ComputeCloud cloud = new TestComputeCloud.Builder().templates(templates).clock(clock).build();
+
+        // Matching templates are returned in the order they are configured.
+        LabelAtom label0 = new LabelAtom("label0");
+        Assert.assertEquals(Arrays.asList(templates.get(0), templates.get(2), templates.get(3)), cloud.getTemplates(label0));
+        Assert.assertEquals(Arrays.asList(templates.get(1), templates.get(2)), cloud.getTemplates(null));
+        Assert.assertSame(templates.get(0), cloud.getTemplate(label0));
+        int count = getLabelAtomsCount[0];
+
+        // Labels are matched once, and disabled templates are skipped.
+        for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
+            templates.get(0).increaseFailureCount("error", clock.nanoTime);
         }
-        template.increaseFailureCount("error");
+        Assert.assertSame(templates.get(2), cloud.getTemplate(new LabelAtom("label0")));
+        Assert.assertEquals(Arrays.asList(templates.get(2), templates.get(3)), cloud.getTemplates(label0));
+        Assert.assertEquals(count, getLabelAtomsCount[0]);
+
+        // Disabled templates are returned again once they can be probed.
+        clock.nanoTime += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        Assert.assertSame(templates.get(0), cloud.getTemplate(label0));
+
+        templates.get(0).resetFailureCount();
+        Assert.assertSame(templates.get(0), cloud.getTemplate(label0));
     }
 
     private static final Matcher<String> AGENT_NAME_MATCHER = CoreMatchers.startsWith(ComputeCloud.AGENT_NAME_PREFIX);
 
     private TestComputeCloud.Builder newProvisionComputeCloudBuilder() {
-        final ExecutorService threadPool = mockery.mock(ExecutorService.class);
-        mockery.checking(new Expectations() {{ allowing(threadPool); }});
+        final ScheduledExecutorService provisioningExecutor = mockery.mock(ScheduledExecutorService.class);
+        mockery.checking(new Expectations() {{ allowing(provisioningExecutor); }});
 
         return new TestComputeCloud.Builder()
                 .templates(Collections.<ComputeCloudAgentTemplate>emptyList())
-                .nodes(Collections.<Node>emptyList())
-                .threadPoolForRemoting(threadPool)
-                .plannedNodeFactory(TestComputeCloud.TestPlannedNode.FACTORY);
+                .provisioningExecutor(provisioningExecutor)
+                .plannedNodeFactory(TestComputeCloud.TestPlannedNode.FACTORY)
+                .clock(new TestClock())
+                .warmPools(new ComputeCloudWarmPool.Registry());
     }
 
     private static Matcher<String> orchNameMatcher() {
@@ -265,6 +318,23 @@ public class ComputeCloudUnitTest {
         assertPlannedNode(plannedNodes.iterator().next(), t);
     }
 
+    @Test
+    public void testProvisionWithInstanceCapAndPlanned() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .instanceCap(2)
+                .clock(clock)
+                .build();
+
+        // Agents that are still being provisioned count toward the cap.
+        Assert.assertEquals(1, cloud.provision(null, 1).size());
+        Assert.assertEquals(1, cloud.provision(null, 2).size());
+        Assert.assertEquals(0, cloud.provision(null, 1).size());
+        Assert.assertEquals(2, cloud.countPlannedAgents());
+    }
+
     @Test
     public void testProvision2WithNumExecutors() {
         TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder()
@@ -281,6 +351,66 @@ public class ComputeCloudUnitTest {
         assertPlannedNode(plannedNodes.iterator().next(), t);
     }
 
+    @Test
+    public void testProvisionBatch() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder()
+                .mode(Node.Mode.NORMAL)
+                .maxBatchSize(3)
+                .build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .build();
+
+        // The workload is split into batches of at most the maximum size.
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 5);
+        Assert.assertEquals(5, plannedNodes.size());
+        for (PlannedNode plannedNode : plannedNodes) {
+            assertPlannedNode(plannedNode, t);
+            MatcherAssert.assertThat(plannedNode.displayName, CoreMatchers.startsWith(ComputeCloud.BATCH_ORCHESTRATION_NAME_PREFIX));
+        }
+    }
+
+    @Test
+    public void testProvisionBatchWithInstanceCap() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder()
+                .mode(Node.Mode.NORMAL)
+                .maxBatchSize(3)
+                .build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .instanceCap(4)
+                .build();
+
+        // The batch is limited by the workload and then by the cap, so the
+        // last agent has an orchestration of its own.
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 5);
+        Assert.assertEquals(4, plannedNodes.size());
+        Iterator<PlannedNode> iter = plannedNodes.iterator();
+        for (int i = 0; i < 3; i++) {
+            MatcherAssert.assertThat(iter.next().displayName, CoreMatchers.startsWith(ComputeCloud.BATCH_ORCHESTRATION_NAME_PREFIX));
+        }
+        PlannedNode plannedNode = iter.next();
+        assertPlannedNode(plannedNode, t);
+        Assert.assertFalse(plannedNode.displayName.startsWith(ComputeCloud.BATCH_ORCHESTRATION_NAME_PREFIX));
+    }
+
+    @Test
+    public void testProvisionCreateQueueFull() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        ComputeCloudProvisioningLimits limits = new ComputeCloudProvisioningLimits(TEST_CLOUD_NAME, 1, 1, 1);
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .provisioningLimits(limits)
+                .build();
+
+        // One orchestration is created, and one waits for it.
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 3);
+        Assert.assertEquals(2, plannedNodes.size());
+        Assert.assertEquals(1, limits.getCreatePermits().getInUseCount());
+        Assert.assertEquals(1, limits.getCreatePermits().getWaitingCount());
+        Assert.assertEquals(0, cloud.provision(null, 1).size());
+    }
+
     @Test
     public void testProvisionWithoutLabelNormal() {
         TestComputeCloudAgentTemplate t0 = new TestComputeCloudAgentTemplate.Builder()
@@ -360,8 +490,391 @@ public class ComputeCloudUnitTest {
         assertPlannedNode(plannedNodes.iterator().next(), t1);
     }
 
-    private interface CallableFuture<T> extends Future<T> {
-        Callable<?> getCallable();
+    @Test
+    public void testProvisionWarmPoolHit() throws Exception {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).minSpareAgents(1).build();
+        ComputeCloudWarmPool.Registry warmPools = new ComputeCloudWarmPool.Registry();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .warmPools(warmPools)
+                .build();
+
+        ComputeCloudWarmPool pool = cloud.getWarmPool(t);
+        Assert.assertEquals(1, pool.reserveFill(1, 1, 1));
+        TestComputeCloudAgent agent = new TestComputeCloudAgent.Builder().orchName("on").numExecutors(1).build();
+        cloud.getRecycleJournal().add("on");
+        pool.filled(agent, 0);
+
+        // The agent is handed over immediately, and the pool is refilled.
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 1);
+        Assert.assertEquals(1, plannedNodes.size());
+        PlannedNode plannedNode = plannedNodes.iterator().next();
+        Assert.assertEquals("on", plannedNode.displayName);
+        Assert.assertSame(agent, getUnchecked(plannedNode.future));
+        Assert.assertEquals(1, pool.getHitCount());
+        Assert.assertEquals(0, pool.getMissCount());
+        Assert.assertEquals(0, pool.getSize());
+        Assert.assertEquals(1, pool.getFillingCount());
+
+        // The orchestration is no longer recycled after a restart.
+        Assert.assertFalse(cloud.getRecycleJournal().contains("on"));
+    }
+
+    @Test
+    public void testProvisionWarmPoolMiss() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).maxSpareAgents(2).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .build();
+
+        // The pool is filled to the maximum after a miss.
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 1);
+        Assert.assertEquals(1, plannedNodes.size());
+        assertPlannedNode(plannedNodes.iterator().next(), t);
+        ComputeCloudWarmPool pool = cloud.getWarmPool(t);
+        Assert.assertEquals(0, pool.getHitCount());
+        Assert.assertEquals(1, pool.getMissCount());
+        Assert.assertEquals(2, pool.getFillingCount());
+    }
+
+    @Test
+    public void testProvisionWarmPoolInstanceCap() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).minSpareAgents(2).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .instanceCap(2)
+                .build();
+
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 1);
+        Assert.assertEquals(1, plannedNodes.size());
+        ComputeCloudWarmPool pool = cloud.getWarmPool(t);
+        Assert.assertEquals(1, pool.getFillingCount());
+
+        // Agents being provisioned for the pool and for planned nodes count
+        // toward the cap.
+        plannedNodes = cloud.provision(null, 2);
+        Assert.assertEquals(0, plannedNodes.size());
+        Assert.assertEquals(1, pool.getFillingCount());
+    }
+
+    @Test
+    public void testProvisionWarmPoolDisabled() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .build();
+
+        Collection<PlannedNode> plannedNodes = cloud.provision(null, 1);
+        Assert.assertEquals(1, plannedNodes.size());
+        ComputeCloudWarmPool pool = cloud.getWarmPool(t);
+        Assert.assertEquals(0, pool.getMissCount());
+        Assert.assertEquals(0, pool.getTotalCount());
+    }
+
+    private static List<ComputeCloudAgentTemplate> getTemplates(Collection<PlannedNode> plannedNodes) {
+        List<ComputeCloudAgentTemplate> result = new ArrayList<>();
+        for (PlannedNode plannedNode : plannedNodes) {
+            result.add(((TestComputeCloud.TestPlannedNode)plannedNode).template);
+        }
+        return result;
+    }
+
+    @Test
+    public void testProvisionSpread() {
+        TestComputeCloudAgentTemplate t0 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(0).build();
+        TestComputeCloudAgentTemplate t1 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(1).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t0, t1))
+                .build();
+
+        Assert.assertEquals(Arrays.asList(t0, t1), getTemplates(cloud.provision(null, 2)));
+
+        // Agents that are still being provisioned are taken into account.
+        Assert.assertEquals(Arrays.asList(t0), getTemplates(cloud.provision(null, 1)));
+        Assert.assertEquals(Arrays.asList(t1), getTemplates(cloud.provision(null, 1)));
+    }
+
+    @Test
+    public void testProvisionSpreadWeighted() {
+        TestComputeCloudAgentTemplate t0 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(0).build();
+        TestComputeCloudAgentTemplate t1 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(1).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t0, t1))
+                .build();
+
+        // The faster template provisions twice as many agents.
+        t0.recordProvisioned(TimeUnit.MINUTES.toNanos(2));
+        t1.recordProvisioned(TimeUnit.MINUTES.toNanos(1));
+        Assert.assertEquals(Arrays.asList(t1, t0, t1), getTemplates(cloud.provision(null, 3)));
+    }
+
+    @Test
+    public void testProvisionSpillOver() {
+        TestComputeCloudAgentTemplate t0 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(0).build();
+        TestComputeCloudAgentTemplate t1 = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).templateId(1).build();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t0, t1))
+                .build();
+
+        // A template that failed is weighted down while others succeed, but
+        // it is still used.
+        t0.increaseFailureCount("error", 0);
+        Assert.assertEquals(Arrays.asList(t1, t1, t0, t1), getTemplates(cloud.provision(null, 4)));
+
+        t1.increaseFailureCount("error", 0);
+        Assert.assertEquals(Arrays.asList(t0), getTemplates(cloud.provision(null, 1)));
+
+        t0.resetFailureCount();
+        Assert.assertEquals(Arrays.asList(t0), getTemplates(cloud.provision(null, 1)));
+    }
+
+    @Test
+    public void testProvisionTemplateHalfOpen() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .clock(clock)
+                .build();
+        for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
+            t.increaseFailureCount("error", clock.nanoTime);
+        }
+        Assert.assertEquals(0, cloud.provision(null, 2).size());
+
+        // A single agent probes the template once the cooldown has elapsed.
+        clock.nanoTime += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        Assert.assertEquals(1, cloud.provision(null, 2).size());
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.HALF_OPEN, t.getCircuitBreaker().getState());
+        Assert.assertEquals(0, cloud.provision(null, 2).size());
+
+        t.resetFailureCount();
+        Assert.assertEquals(2, cloud.provision(null, 2).size());
+    }
+
+    @Test
+    public void testProvisionEndpointHalfOpen() {
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        TestClock clock = new TestClock();
+        ComputeCloudCircuitBreaker endpointCircuitBreaker = new ComputeCloudCircuitBreaker("endpoint", 1);
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .clock(clock)
+                .endpointCircuitBreaker(endpointCircuitBreaker)
+                .build();
+        endpointCircuitBreaker.recordFailure("error", clock.nanoTime);
+        Assert.assertEquals(0, cloud.provision(null, 2).size());
+
+        clock.nanoTime += ComputeCloudCircuitBreaker.MIN_COOLDOWN_NANOS;
+        Assert.assertEquals(1, cloud.provision(null, 2).size());
+        Assert.assertEquals(0, cloud.provision(null, 2).size());
+
+        // The template was not probed.
+        Assert.assertEquals(ComputeCloudCircuitBreaker.State.CLOSED, t.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testMaintainWarmPoolsRemovedTemplate() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on");
+            oneOf(client).close();
+        }});
+
+        ComputeCloudWarmPool.Registry warmPools = new ComputeCloudWarmPool.Registry();
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .client(client)
+                .clock(clock)
+                .provisioningExecutor(provisioningExecutor)
+                .warmPools(warmPools)
+                .build();
+        ComputeCloudWarmPool pool = warmPools.get(cloud.name, "1");
+        Assert.assertEquals(1, pool.reserveFill(1, 1, 1));
+        pool.filled(new TestComputeCloudAgent.Builder().orchName("on").build(), 0);
+
+        cloud.maintainWarmPools();
+        Assert.assertEquals(Collections.emptyMap(), warmPools.getAll(cloud.name));
+        provisioningExecutor.runAll(clock);
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+    }
+
+    @Test
+    public void testMaintainWarmPoolsReconfiguredTemplate() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on0"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on0");
+            oneOf(client).getInstanceOrchestration("on1"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on1");
+            allowing(client).close();
+        }});
+
+        TestComputeCloudAgentTemplate oldTemplate = new TestComputeCloudAgentTemplate.Builder().templateId(1).labelString("old").maxSuspendedAgents(1).build();
+        TestComputeCloudAgentTemplate newTemplate = new TestComputeCloudAgentTemplate.Builder().templateId(1).labelString("new").maxSuspendedAgents(1).build();
+        ComputeCloudWarmPool.Registry warmPools = new ComputeCloudWarmPool.Registry();
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(newTemplate))
+                .client(client)
+                .clock(clock)
+                .provisioningExecutor(provisioningExecutor)
+                .warmPools(warmPools)
+                .build();
+        ComputeCloudWarmPool oldPool = warmPools.get(cloud.name, ComputeCloudWarmPool.getKey(oldTemplate));
+        Assert.assertEquals(1, oldPool.reserveFill(1, 1, 1));
+        oldPool.filled(new TestComputeCloudAgent.Builder().orchName("on0").build(), 0);
+        Assert.assertTrue(oldPool.reserveSuspend(1));
+        oldPool.suspended("on1");
+
+        // The agents provisioned for the old configuration are not used.
+        Assert.assertNotSame(oldPool, cloud.getWarmPool(newTemplate));
+        Assert.assertNull(cloud.getWarmPool(newTemplate).take());
+        Assert.assertNull(cloud.getWarmPool(newTemplate).resume());
+
+        cloud.maintainWarmPools();
+        Assert.assertEquals(Collections.singleton(ComputeCloudWarmPool.getKey(newTemplate)), warmPools.getAll(cloud.name).keySet());
+        provisioningExecutor.runAll(clock);
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+    }
+
+    @Test
+    public void testMaintainWarmPoolsExcessSuspended() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on0"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on0");
+            oneOf(client).close();
+        }});
+
+        TestComputeCloudAgentTemplate t = new TestComputeCloudAgentTemplate.Builder().maxSuspendedAgents(1).build();
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .templates(Arrays.asList(t))
+                .client(client)
+                .clock(clock)
+                .provisioningExecutor(provisioningExecutor)
+                .build();
+        ComputeCloudWarmPool pool = cloud.getWarmPool(t);
+        Assert.assertTrue(pool.reserveSuspend(2));
+        pool.suspended("on0");
+        Assert.assertTrue(pool.reserveSuspend(2));
+        pool.suspended("on1");
+
+        // The oldest stopped orchestration is deleted.
+        cloud.maintainWarmPools();
+        provisioningExecutor.runAll(clock);
+        Assert.assertEquals(1, pool.getSuspendedCount());
+        Assert.assertEquals("on1", pool.resume());
+    }
+
+    private TestComputeCloud newCollectOrphansComputeCloud(final ComputeCloudClient client, TestClock clock, ComputeCloudRecycleJournal journal) throws Exception {
+        mockery.checking(new Expectations() {{
+            allowing(client).getInstanceOrchestrations(ComputeCloud.ORCHESTRATION_NAME_PREFIX); will(returnValue(Arrays.asList(
+                    new InstanceOrchestration().name(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "agent"),
+                    new InstanceOrchestration().name(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "pool"),
+                    new InstanceOrchestration().name(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "suspended"),
+                    new InstanceOrchestration().name(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "recycling"),
+                    new InstanceOrchestration().name(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "orphan"))));
+            allowing(client).close();
+        }});
+
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(new TestComputeCloudAgent.Builder().orchName(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "agent").build());
+        ComputeCloudWarmPool.Registry warmPools = new ComputeCloudWarmPool.Registry();
+        ComputeCloudWarmPool pool = warmPools.get(TEST_CLOUD_NAME, "1");
+        Assert.assertEquals(1, pool.reserveFill(1, 1, 1));
+        pool.filled(new TestComputeCloudAgent.Builder().orchName(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "pool").build(), 0);
+        Assert.assertTrue(pool.reserveSuspend(1));
+        pool.suspended(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "suspended");
+        journal.add(ComputeCloud.ORCHESTRATION_NAME_PREFIX + "recycling");
+
+        return newProvisionComputeCloudBuilder()
+                .client(client)
+                .clock(clock)
+                .nodes(nodes)
+                .warmPools(warmPools)
+                .recycleJournal(journal)
+                .build();
+    }
+
+    @Test
+    public void testCollectOrphans() throws Exception {
+        ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        TestClock clock = new TestClock();
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(null);
+        TestComputeCloud cloud = newCollectOrphansComputeCloud(client, clock, journal);
+        String orphan = ComputeCloud.ORCHESTRATION_NAME_PREFIX + "orphan";
+
+        // Orphans are not recycled until the grace period has passed.
+        long graceNanos = TimeUnit.MINUTES.toNanos(10);
+        Assert.assertEquals(Collections.emptyList(), cloud.collectOrphans(graceNanos, false));
+        clock.nanoTime += graceNanos - 1;
+        Assert.assertEquals(Collections.emptyList(), cloud.collectOrphans(graceNanos, false));
+        clock.nanoTime++;
+        Assert.assertEquals(Arrays.asList(orphan), cloud.collectOrphans(graceNanos, false));
+        Assert.assertEquals(1, cloud.getReaper().getPendingCount());
+        Assert.assertTrue(journal.contains(orphan));
+
+        // The orphan is now being recycled.
+        Assert.assertEquals(Collections.emptyList(), cloud.collectOrphans(graceNanos, false));
+    }
+
+    @Test
+    public void testCollectOrphansDryRun() throws Exception {
+        ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        TestClock clock = new TestClock();
+        TestComputeCloud cloud = newCollectOrphansComputeCloud(client, clock, new ComputeCloudRecycleJournal(null));
+        String orphan = ComputeCloud.ORCHESTRATION_NAME_PREFIX + "orphan";
+
+        // Orphans are reported every time but not recycled.
+        Assert.assertEquals(Arrays.asList(orphan), cloud.collectOrphans(0, true));
+        Assert.assertEquals(Arrays.asList(orphan), cloud.collectOrphans(0, true));
+        Assert.assertEquals(0, cloud.getReaper().getPendingCount());
+    }
+
+    @Test
+    public void testRetryRecycles() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration("on");
+            oneOf(client).close();
+        }});
+
+        // Jenkins stopped while the orchestration was being recycled.
+        File journalFile = new File(tmp.getRoot(), "cloud.log");
+        new ComputeCloudRecycleJournal(journalFile).add("on");
+
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
+        ComputeCloudRecycleJournal journal = new ComputeCloudRecycleJournal(journalFile);
+        TestComputeCloud cloud = newProvisionComputeCloudBuilder()
+                .client(client)
+                .clock(clock)
+                .provisioningExecutor(provisioningExecutor)
+                .recycleJournal(journal)
+                .build();
+        cloud.retryRecycles();
+        provisioningExecutor.runAll(clock);
+        Assert.assertEquals(0, journal.getPendingCount());
+        Assert.assertFalse(journalFile.exists());
+    }
+
+    private static Object getUnchecked(Future<?> future) throws Exception {
+        Assert.assertTrue(future.isDone());
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            }
+            throw (Error)cause;
+        }
     }
 
     private interface NewAgentCallback {
@@ -392,23 +905,61 @@ public class ComputeCloudUnitTest {
         return callback;
     }
 
-    private ComputeCloudAgent provision(ComputeCloudClient client, final ComputeCloudAgentTemplate template, final NewAgentCallback callback) throws Exception {
-        final ExecutorService threadPoolForRemoting = mockery.mock(ExecutorService.class);
-        mockery.checking(new Expectations() {{
-            @SuppressWarnings({ "unchecked", "rawtypes" })
-            Matcher<Callable<?>> anyCallable = (Matcher)any(Callable.class);
-            oneOf(threadPoolForRemoting).submit(with(anyCallable)); will(new CustomAction("submit") {
-                @Override
-                public Object invoke(Invocation invocation) throws Throwable {
-                    final Callable<?> callable = (Callable<?>)invocation.getParameter(0);
-                    final CallableFuture<?> future = mockery.mock(CallableFuture.class);
-                    mockery.checking(new Expectations() {{ allowing(future).getCallable(); will(returnValue(callable)); }});
-                    return future;
-                }
-            });
-        }});
+    /**
+     * The host of the connection offered to the launcher by the last call to
+     * {@link #provision}, or null.
+     */
+    private String offeredSshHost;
+    private long provisionNanos;
+    private final ComputeCloudWarmPool.Registry provisionWarmPools = new ComputeCloudWarmPool.Registry();
+    private final ComputeCloudProvisioningLimits provisionLimits = new ComputeCloudProvisioningLimits(TEST_CLOUD_NAME);
+    private final ComputeCloudRecycleJournal provisionRecycleJournal = new ComputeCloudRecycleJournal(null);
+
+    /**
+     * Reports that the SSH port is unavailable for the first {@link #failures}
+     * probes and available after that.
+     */
+    private static class TestSshPortProber extends SshPortProber {
+        int failures;
+        int probeCount;
 
-        final boolean[] connectCalledRef = new boolean[1];
+        @Override
+        public void probe(String host, int timeoutMillis, Listener listener) {
+            probeCount++;
+            listener.probed(probeCount > failures);
+        }
+    }
+
+    private final TestSshPortProber sshPortProber = new TestSshPortProber();
+
+    /**
+     * Whether the SSH connector was used by the last call to
+     * {@link #provisionAll}.
+     */
+    private boolean sshConnectCalled;
+
+    /**
+     * The hosts of the connections offered to the launcher by the last call to
+     * {@link #provisionAll}.
+     */
+    private final List<String> offeredSshHosts = new ArrayList<>();
+
+    private ComputeCloudAgent provision(ComputeCloudClient client, ComputeCloudAgentTemplate template, NewAgentCallback callback) throws Exception {
+        List<Future<Node>> futures = provisionAll(client, template, callback, 1);
+        Assert.assertEquals(1, futures.size());
+        ComputeCloudAgent agent = (ComputeCloudAgent)getUnchecked(futures.get(0));
+        Assert.assertTrue(sshConnectCalled);
+        Assert.assertTrue(offeredSshHosts.size() <= 1);
+        offeredSshHost = offeredSshHosts.isEmpty() ? null : offeredSshHosts.get(0);
+        return agent;
+    }
+
+    private List<Future<Node>> provisionAll(ComputeCloudClient client, final ComputeCloudAgentTemplate template, final NewAgentCallback callback, int excessWorkload) throws Exception {
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
+        long beginNanos = clock.nanoTime;
+
+        sshConnectCalled = false;
         SshConnector sshConnector = new SshConnector() {
             @Override
             public ProxyConfiguration getProxyConfiguration() {
@@ -417,18 +968,38 @@ public class ComputeCloudUnitTest {
 
             @Override
             public void connect(Connection conn, int timeoutMillis) throws IOException {
-                connectCalledRef[0] = true;
+                sshConnectCalled = true;
                 Assert.assertEquals(timeoutMillis, template.getSshConnectTimeoutMillis());
             }
+
+            @Override
+            public boolean authenticate(Connection conn, String user, String privateKey) {
+                Assert.assertEquals(template.getSshUserValue(), user);
+                Assert.assertEquals(template.getPrivateKey(), privateKey);
+                return true;
+            }
+        };
+
+        offeredSshHosts.clear();
+        SshConnectionHandoff sshConnectionHandoff = new SshConnectionHandoff() {
+            @Override
+            public void offer(String host, Connection conn) {
+                offeredSshHosts.add(host);
+                conn.close();
+            }
         };
 
         ComputeCloud cloud = new TestComputeCloud(new TestComputeCloud.Builder()
-                .nodes(Collections.<Node>emptyList())
                 .templates(Arrays.asList(template))
                 .client(client)
-                .threadPoolForRemoting(threadPoolForRemoting)
-                .clock(new TestClock())
-                .sshConnector(sshConnector)) {
+                .provisioningExecutor(provisioningExecutor)
+                .clock(clock)
+                .sshConnector(sshConnector)
+                .sshConnectionHandoff(sshConnectionHandoff)
+                .sshPortProber(sshPortProber)
+                .warmPools(provisionWarmPools)
+                .provisioningLimits(provisionLimits)
+                .recycleJournal(provisionRecycleJournal)) {
             @Override
             ComputeCloudAgent newComputeCloudAgent(
                     String name,
@@ -439,13 +1010,14 @@ public class ComputeCloudUnitTest {
                 return callback.newComputeCloudAgent(name, template, cloudName, orchName, host);
             }
         };
-        Collection<PlannedNode> plannedNodes = cloud.provision(null, 1);
-        Assert.assertEquals(1, plannedNodes.size());
-        CallableFuture<?> future = (CallableFuture<?>)plannedNodes.iterator().next().future;
-        Callable<?> callable = future.getCallable();
-        ComputeCloudAgent agent = (ComputeCloudAgent)callable.call();
-        Assert.assertTrue(connectCalledRef[0]);
-        return agent;
+        List<Future<Node>> futures = new ArrayList<>();
+        for (PlannedNode plannedNode : cloud.provision(null, excessWorkload)) {
+            Assert.assertFalse(plannedNode.future.isDone());
+            futures.add(plannedNode.future);
+        }
+        provisioningExecutor.runAll(clock);
+        provisionNanos = clock.nanoTime - beginNanos;
+        return futures;
     }
 
     private static class LazyEqualsMatcher<T> extends BaseMatcher<T> {
@@ -490,6 +1062,260 @@ public class ComputeCloudUnitTest {
         }});
 
         provision(client, template, callback);
+        Assert.assertEquals(0, provisionLimits.getCreatePermits().getInUseCount());
+    }
+
+    @Test
+    public void testProvisionSubmitResume() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).maxSuspendedAgents(1).build();
+        final NewAgentCallback callback = mockNewAgentCallback(template, CoreMatchers.equalTo("on"), "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).startOrchestration("on");
+            oneOf(client).getInstanceOrchestration("on"); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        // The stopped orchestration is started rather than creating one.
+        ComputeCloudWarmPool pool = provisionWarmPools.get(TEST_CLOUD_NAME, ComputeCloudWarmPool.getKey(template));
+        Assert.assertTrue(pool.reserveSuspend(1));
+        provisionRecycleJournal.add("on");
+        pool.suspended("on");
+        provision(client, template, callback);
+        Assert.assertEquals(0, pool.getTotalCount());
+
+        // The orchestration is owned by the agent once it has started.
+        Assert.assertFalse(provisionRecycleJournal.contains("on"));
+    }
+
+    private static Matcher<String> batchOrchNameMatcher() {
+        return new LazyEqualsMatcher<>(CoreMatchers.startsWith(ComputeCloud.BATCH_ORCHESTRATION_NAME_PREFIX));
+    }
+
+    @Test
+    public void testProvisionSubmitBatch() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).maxBatchSize(2).build();
+        final Matcher<String> orchNameMatcher = batchOrchNameMatcher();
+        final NewAgentCallback callback = mockery.mock(NewAgentCallback.class);
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template), with(2));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.starting).ip("ip0").ips(Arrays.asList("ip0", null))));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip0").ips(Arrays.asList("ip0", "ip1"))));
+            oneOf(client).close();
+            for (String host : Arrays.asList("ip0", "ip1")) {
+                oneOf(callback).newComputeCloudAgent(
+                        with(AGENT_NAME_MATCHER),
+                        with(template),
+                        with(TEST_CLOUD_NAME),
+                        with(orchNameMatcher),
+                        with(host));
+                will(returnValue(new TestComputeCloudAgent.Builder().build()));
+            }
+        }});
+
+        // The orchestration is created and polled once, and each agent is
+        // connected as soon as its instance has an IP address.
+        List<Future<Node>> futures = provisionAll(client, template, callback, 2);
+        Assert.assertEquals(2, futures.size());
+        for (Future<Node> future : futures) {
+            Assert.assertNotNull(getUnchecked(future));
+        }
+    }
+
+    @Test
+    public void testProvisionSubmitBatchPartial() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).maxBatchSize(2).build();
+        final Matcher<String> orchNameMatcher = batchOrchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip0");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template), with(2));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip0").ips(Arrays.asList("ip0", null))));
+            oneOf(client).close();
+        }});
+
+        // The agent without an IP address fails, but the template is not
+        // counted as failing since the other agent was provisioned.
+        List<Future<Node>> futures = provisionAll(client, template, callback, 2);
+        Assert.assertEquals(2, futures.size());
+        Assert.assertNotNull(getUnchecked(futures.get(0)));
+        try {
+            getUnchecked(futures.get(1));
+            Assert.fail();
+        } catch (CancellationException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(0, template.getFailureCount());
+    }
+
+    @Test
+    public void testProvisionSubmitBatchStatusErrorAndRecycleSuccess() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).maxBatchSize(2).build();
+        mockery.checking(new Expectations() {{
+            Matcher<String> orchNameMatcher = batchOrchNameMatcher();
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template), with(2));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.error)));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.error)));
+            oneOf(client).stopOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration(with(orchNameMatcher));
+            oneOf(client).close();
+        }});
+
+        // Every agent fails, and the orchestration is recycled once.
+        List<Future<Node>> futures = provisionAll(client, template, null, 2);
+        Assert.assertEquals(0, provisionLimits.getCreatePermits().getInUseCount());
+        Assert.assertEquals(0, provisionLimits.getDeletePermits().getInUseCount());
+        Assert.assertEquals(2, futures.size());
+        for (Future<Node> future : futures) {
+            try {
+                getUnchecked(future);
+                Assert.fail();
+            } catch (CancellationException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void testProvisionSubmitOffersSshConnection() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).privateKey("pk").build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        provision(client, template, callback);
+        Assert.assertEquals("ip", offeredSshHost);
+    }
+
+    @Test
+    public void testProvisionSubmitSshProbeRetry() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        // The SSH handshake is only attempted after the banner is seen.
+        sshPortProber.failures = 2;
+        provision(client, template, callback);
+        Assert.assertEquals(3, sshPortProber.probeCount);
+    }
+
+    @Test
+    public void testProvisionSubmitEarlySshProbe() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.starting).ip("ip")));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        // The probe while the orchestration was starting is reused, and the
+        // orchestration is polled again as soon as the banner is seen.
+        provision(client, template, callback);
+        Assert.assertEquals(1, sshPortProber.probeCount);
+        Assert.assertEquals(0, provisionNanos);
+    }
+
+    @Test
+    public void testProvisionSubmitEarlySshProbeRetry() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            exactly(2).of(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.starting).ip("ip")));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        // The first probe fails since SSH has not started, the second probe
+        // succeeds while the orchestration is still starting.
+        sshPortProber.failures = 1;
+        provision(client, template, callback);
+        Assert.assertEquals(2, sshPortProber.probeCount);
+    }
+
+    @Test
+    public void testProvisionSubmitEarlySshProbeFailed() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.starting).ip("ip")));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        // A failed probe while the orchestration was starting does not delay
+        // probing once it is ready.
+        sshPortProber.failures = 1;
+        provision(client, template, callback);
+        Assert.assertEquals(2, sshPortProber.probeCount);
+    }
+
+    @Test(expected = IOException.class)
+    public void testProvisionSubmitSshProbeTimeout() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).startTimeoutSeconds("60").build();
+        mockery.checking(new Expectations() {{
+            Matcher<String> orchNameMatcher = orchNameMatcher();
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).stopOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.stopped)));
+            oneOf(client).deleteOrchestration(with(orchNameMatcher));
+            oneOf(client).close();
+        }});
+
+        sshPortProber.failures = Integer.MAX_VALUE;
+        provision(client, template, null);
+    }
+
+    @Test
+    public void testProvisionSubmitNoPrivateKey() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        final Matcher<String> orchNameMatcher = orchNameMatcher();
+        final NewAgentCallback callback = mockNewAgentCallback(template, orchNameMatcher, "ip");
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            oneOf(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.ready).ip("ip")));
+            oneOf(client).close();
+        }});
+
+        provision(client, template, callback);
+        Assert.assertNull(offeredSshHost);
     }
 
     @Test(expected = ComputeCloudClientException.class)
@@ -556,6 +1382,25 @@ public class ComputeCloudUnitTest {
         provision(client, template, callback);
     }
 
+    @Test(expected = IOException.class)
+    public void testProvisionSubmitStartTimeout() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).startTimeoutSeconds("10").build();
+        mockery.checking(new Expectations() {{
+            Matcher<String> orchNameMatcher = orchNameMatcher();
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher), with(template));
+            oneOf(client).startOrchestration(with(orchNameMatcher));
+            // The orchestration never starts or stops, so the recycle also
+            // times out and is retried in the background.  The number of
+            // polls depends on the polling policy.
+            atLeast(2).of(client).getInstanceOrchestration(with(orchNameMatcher)); will(returnValue(new InstanceOrchestration().status(InstanceOrchestration.Status.starting)));
+            atLeast(1).of(client).stopOrchestration(with(orchNameMatcher));
+            atLeast(1).of(client).close();
+        }});
+
+        provision(client, template, null);
+    }
+
     @Test
     public void testProvisionSubmitCreateConsecutiveErrors() throws Exception {
         final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
@@ -606,6 +1451,23 @@ public class ComputeCloudUnitTest {
         Assert.assertNull("template disable not reset", template.getDisableCause());
     }
 
+    @Test
+    public void testProvisionSubmitCreateUnavailable() throws Exception {
+        final ComputeCloudClient client = mockery.mock(ComputeCloudClient.class);
+        final ComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder().mode(Node.Mode.NORMAL).build();
+        mockery.checking(new Expectations() {{
+            oneOf(client).createInstanceOrchestration(with(orchNameMatcher()), with(template)); will(throwException(new ComputeCloudClientUnavailableException("test")));
+            oneOf(client).close();
+        }});
+        try {
+            provision(client, template, null);
+            Assert.fail("expect to fail");
+        } catch (ComputeCloudClientUnavailableException e) {}
+
+        // The failure is counted by the API endpoint rather than the template.
+        Assert.assertEquals(0, template.getFailureCount());
+    }
+
     private static class TestACL extends ACL {
         private final Permission permission;
         private final boolean hasPermission;
@@ -664,11 +1526,13 @@ public class ComputeCloudUnitTest {
         final StaplerRequest req = mockery.mock(StaplerRequest.class);
         final StaplerResponse rsp = mockery.mock(StaplerResponse.class);
         final TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate();
+        TestClock clock = new TestClock();
         for (int i = 0; i < ComputeCloudAgentTemplate.FAILURE_COUNT_LIMIT; i++) {
-            template.increaseFailureCount("error");
+            template.increaseFailureCount("error", clock.nanoTime);
         }
         ComputeCloud cloud = new TestComputeCloud.Builder()
                 .templates(Arrays.asList(template))
+                .clock(clock)
                 .acl(new TestACL(Cloud.PROVISION, true))
                 .build();
         allowingSendError(cloud, req, rsp);
@@ -681,25 +1545,9 @@ public class ComputeCloudUnitTest {
     }
 
     private boolean doProvision(ComputeCloudClient client, ComputeCloudAgentTemplate template, final NewAgentCallback callback) throws Exception {
-        final ExecutorService threadPoolForRemoting = mockery.mock(ExecutorService.class);
+        TestProvisioningExecutor provisioningExecutor = new TestProvisioningExecutor();
+        TestClock clock = new TestClock();
         final boolean[] addNodeCalled = new boolean[1];
-        mockery.checking(new Expectations() {{
-            @SuppressWarnings({ "unchecked", "rawtypes" })
-            Matcher<Callable<?>> anyCallable = (Matcher)any(Callable.class);
-            oneOf(threadPoolForRemoting).submit(with(anyCallable)); will(new CustomAction("submit") {
-                @Override
-                public Object invoke(Invocation invocation) throws Throwable {
-                    Callable<?> callable = (Callable<?>)invocation.getParameter(0);
-                    try {
-                        callable.call();
-                    } catch (Error e) {
-                        Assert.assertFalse(addNodeCalled[0]);
-                        throw e;
-                    }
-                    return null;
-                }
-            });
-        }});
 
         SshConnector sshConnector = new SshConnector() {
             @Override
@@ -709,15 +1557,21 @@ public class ComputeCloudUnitTest {
 
             @Override
             public void connect(Connection conn, int timeoutMillis) throws IOException {}
+
+            @Override
+            public boolean authenticate(Connection conn, String user, String privateKey) {
+                return false;
+            }
         };
 
         final ComputeCloud cloud = new TestComputeCloud(new TestComputeCloud.Builder()
-                .nodes(Collections.<Node>emptyList())
                 .templates(Arrays.asList(template))
                 .client(client)
-                .threadPoolForRemoting(threadPoolForRemoting)
-                .clock(new TestClock())
+                .provisioningExecutor(provisioningExecutor)
+                .clock(clock)
                 .sshConnector(sshConnector)
+                .sshConnectionHandoff(new SshConnectionHandoff())
+                .sshPortProber(sshPortProber)
                 .acl(new TestACL(Cloud.PROVISION, true))) {
             @Override
             ComputeCloudAgent newComputeCloudAgent(
@@ -740,6 +1594,8 @@ public class ComputeCloudUnitTest {
         allowingGetProvisionView(cloud, req, rsp);
 
         cloud.doProvision(template.getTemplateId(), req, rsp);
+        Assert.assertFalse(addNodeCalled[0]);
+        provisioningExecutor.runAll(clock);
         return addNodeCalled[0];
     }
 
@@ -0,0 +1,181 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComputeCloudWarmPoolUnitTest {
+    private static ComputeCloudAgent newAgent(String orchName) {
+        return new TestComputeCloudAgent.Builder().orchName(orchName).build();
+    }
+
+    private static long minutes(long minutes) {
+        return TimeUnit.MINUTES.toNanos(minutes);
+    }
+
+    @Test
+    public void testTake() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertNull(pool.take());
+        Assert.assertEquals(0, pool.getHitCount());
+        Assert.assertEquals(1, pool.getMissCount());
+
+        Assert.assertEquals(2, pool.reserveFill(2, 2, Integer.MAX_VALUE));
+        ComputeCloudAgent agent0 = newAgent("on0");
+        ComputeCloudAgent agent1 = newAgent("on1");
+        pool.filled(agent0, 0);
+        pool.filled(agent1, 0);
+        Assert.assertEquals(2, pool.getSize());
+
+        // The most recently added agent is taken first.
+        Assert.assertSame(agent1, pool.take());
+        Assert.assertSame(agent0, pool.take());
+        Assert.assertNull(pool.take());
+        Assert.assertEquals(2, pool.getHitCount());
+        Assert.assertEquals(2, pool.getMissCount());
+    }
+
+    @Test
+    public void testReserveFill() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertEquals(1, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        Assert.assertEquals(0, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        Assert.assertEquals(1, pool.getFillingCount());
+
+        pool.fillFailed();
+        Assert.assertEquals(0, pool.getTotalCount());
+        Assert.assertEquals(1, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        pool.filled(newAgent("on"), 0);
+        Assert.assertEquals(1, pool.getTotalCount());
+        Assert.assertEquals(0, pool.getFillingCount());
+    }
+
+    @Test
+    public void testReserveFillAfterMiss() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertNull(pool.take());
+
+        // The pool grows to the maximum after a miss, but only once.
+        Assert.assertEquals(3, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        pool.fillFailed();
+        pool.fillFailed();
+        pool.fillFailed();
+        Assert.assertEquals(1, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecordMiss() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertEquals(1, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        ComputeCloudAgent agent = newAgent("on");
+        pool.filled(agent, 0);
+
+        // Recording a miss does not remove the agent.
+        pool.recordMiss();
+        Assert.assertEquals(1, pool.getSize());
+        Assert.assertEquals(1, pool.getMissCount());
+        Assert.assertEquals(2, pool.reserveFill(1, 3, Integer.MAX_VALUE));
+        Assert.assertSame(agent, pool.take());
+    }
+
+    @Test
+    public void testReserveFillCapacity() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertEquals(1, pool.reserveFill(2, 2, 1));
+        Assert.assertEquals(0, pool.reserveFill(2, 2, 0));
+        Assert.assertEquals(0, pool.reserveFill(2, 2, -1));
+        Assert.assertEquals(1, pool.reserveFill(2, 2, 1));
+        Assert.assertEquals(2, pool.getFillingCount());
+    }
+
+    @Test
+    public void testRemoveExcess() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertEquals(3, pool.reserveFill(3, 3, Integer.MAX_VALUE));
+        ComputeCloudAgent agent0 = newAgent("on0");
+        ComputeCloudAgent agent1 = newAgent("on1");
+        ComputeCloudAgent agent2 = newAgent("on2");
+        pool.filled(agent0, minutes(0));
+        pool.filled(agent1, minutes(10));
+        pool.filled(agent2, minutes(20));
+
+        Assert.assertEquals(Collections.emptyList(), pool.removeExcess(1, 3, 0, minutes(100)));
+        Assert.assertEquals(Collections.emptyList(), pool.removeExcess(1, 3, minutes(30), minutes(29)));
+
+        // Agents are removed above the maximum regardless of idle time.
+        Assert.assertEquals(Arrays.asList(agent0), pool.removeExcess(1, 2, minutes(30), minutes(29)));
+
+        // Idle agents are removed down to the minimum.
+        Assert.assertEquals(Arrays.asList(agent1), pool.removeExcess(1, 2, minutes(30), minutes(40)));
+        Assert.assertEquals(Collections.emptyList(), pool.removeExcess(1, 2, minutes(30), minutes(100)));
+        Assert.assertEquals(Arrays.asList(agent2), pool.removeExcess(0, 0, 0, minutes(100)));
+    }
+
+    @Test
+    public void testSuspend() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        Assert.assertFalse(pool.reserveSuspend(0));
+        Assert.assertNull(pool.resume());
+
+        Assert.assertTrue(pool.reserveSuspend(2));
+        Assert.assertTrue(pool.reserveSuspend(2));
+        Assert.assertFalse(pool.reserveSuspend(2));
+        Assert.assertEquals(2, pool.getTotalCount());
+        pool.suspended("on0");
+        pool.suspendFailed();
+        Assert.assertEquals(1, pool.getSuspendedCount());
+        Assert.assertEquals(1, pool.getTotalCount());
+
+        Assert.assertTrue(pool.reserveSuspend(2));
+        pool.suspended("on1");
+
+        // The most recently stopped orchestration is started first.
+        Assert.assertEquals("on1", pool.resume());
+        Assert.assertEquals("on0", pool.resume());
+        Assert.assertNull(pool.resume());
+        Assert.assertEquals(0, pool.getTotalCount());
+    }
+
+    @Test
+    public void testRemoveExcessSuspended() {
+        ComputeCloudWarmPool pool = new ComputeCloudWarmPool();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(pool.reserveSuspend(3));
+            pool.suspended("on" + i);
+        }
+
+        Assert.assertEquals(Collections.emptyList(), pool.removeExcessSuspended(3));
+        Assert.assertEquals(Arrays.asList("on0"), pool.removeExcessSuspended(2));
+        Assert.assertEquals(Arrays.asList("on1", "on2"), pool.removeExcessSuspended(0));
+    }
+
+    @Test
+    public void testRegistry() {
+        ComputeCloudWarmPool.Registry registry = new ComputeCloudWarmPool.Registry();
+        Assert.assertEquals(Collections.emptyMap(), registry.getAll("c"));
+
+        ComputeCloudWarmPool pool = registry.get("c", "1");
+        Assert.assertSame(pool, registry.get("c", "1"));
+        Assert.assertNotSame(pool, registry.get("c", "2"));
+        Assert.assertNotSame(pool, registry.get("d", "1"));
+        Assert.assertEquals(2, registry.getAll("c").size());
+        Assert.assertSame(pool, registry.getAll("c").get("1"));
+
+        // Pools are only removed when empty.
+        Assert.assertEquals(1, pool.reserveFill(1, 1, 1));
+        Assert.assertFalse(registry.removeIfEmpty("c", "1"));
+        pool.fillFailed();
+        Assert.assertTrue(pool.reserveSuspend(1));
+        Assert.assertFalse(registry.removeIfEmpty("c", "1"));
+        pool.suspended("on");
+        Assert.assertFalse(registry.removeIfEmpty("c", "1"));
+        Assert.assertEquals("on", pool.resume());
+        Assert.assertTrue(registry.removeIfEmpty("c", "1"));
+        Assert.assertTrue(registry.removeIfEmpty("c", "2"));
+        Assert.assertEquals(Collections.emptyMap(), registry.getAll("c"));
+        Assert.assertTrue(registry.removeIfEmpty("c", "1"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PollingPolicyUnitTest {
+    private static final Logger LOGGER = Logger.getLogger(PollingPolicyUnitTest.class.getName());
+
+    private static long seconds(long seconds) {
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    @Test
+    public void testFixed() {
+        PollingPolicy policy = PollingPolicy.fixed(5000);
+        Assert.assertEquals(5000, policy.getDelayMillis(0));
+        Assert.assertEquals(5000, policy.getDelayMillis(seconds(600)));
+    }
+
+    @Test
+    public void testBackoff() {
+        PollingPolicy policy = new PollingPolicy(1000, 30000, 0.5, 0);
+        Assert.assertEquals(0, policy.getExpectedDurationNanos());
+        Assert.assertEquals(1000, policy.getDelayMillis(0));
+        Assert.assertEquals(1000, policy.getDelayMillis(seconds(2)));
+        Assert.assertEquals(2000, policy.getDelayMillis(seconds(4)));
+        Assert.assertEquals(10000, policy.getDelayMillis(seconds(20)));
+        Assert.assertEquals(30000, policy.getDelayMillis(seconds(600)));
+    }
+
+    @Test
+    public void testExpectedDuration() {
+        PollingPolicy policy = new PollingPolicy(1000, 30000, 0.5, 0);
+        policy.recordDuration(seconds(50));
+        Assert.assertEquals(seconds(50), policy.getExpectedDurationNanos());
+        policy.recordDuration(seconds(90));
+        Assert.assertEquals(seconds(60), policy.getExpectedDurationNanos());
+        policy.recordDuration(-1);
+        Assert.assertEquals(seconds(60), policy.getExpectedDurationNanos());
+
+        // The first poll is at half of the expected duration, at most the
+        // maximum interval at a time.
+        long firstPollSeconds = (long)(60 * PollingPolicy.EXPECTED_DURATION_FRACTION);
+        Assert.assertEquals(Math.min(30000, firstPollSeconds * 1000), policy.getDelayMillis(0));
+        Assert.assertEquals(5000, policy.getDelayMillis(seconds(firstPollSeconds - 5)));
+        Assert.assertEquals(1000, policy.getDelayMillis(seconds(firstPollSeconds)));
+        Assert.assertEquals(1000, policy.getDelayMillis(seconds(firstPollSeconds + 2)));
+        Assert.assertEquals(6000, policy.getDelayMillis(seconds(firstPollSeconds + 12)));
+    }
+
+    @Test
+    public void testJitter() {
+        PollingPolicy policy = new PollingPolicy(1000, 30000, 0.5, 0.2);
+        for (int i = 0; i < 100; i++) {
+            long delayMillis = policy.getDelayMillis(seconds(20));
+            Assert.assertTrue(String.valueOf(delayMillis), delayMillis >= 8000 && delayMillis <= 12000);
+        }
+    }
+
+    /**
+     * Simulates waiting for a duration.
+     *
+     * @return the number of polls and the time that the completion was
+     * observed
+     */
+    private static long[] simulate(PollingPolicy policy, long durationNanos) {
+        long polls = 0;
+        long elapsedNanos = 0;
+        for (;;) {
+            polls++;
+            if (elapsedNanos >= durationNanos) {
+                return new long[] { polls, elapsedNanos };
+            }
+            elapsedNanos += TimeUnit.MILLISECONDS.toNanos(policy.getDelayMillis(elapsedNanos));
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Compares the latency and number of polls of the fixed 5 second interval
+     * and the adaptive policy for durations that are typical for starting
+     * orchestrations.
+     */
+    @Test
+    public void testSimulationBenchmark() {
+        Random random = new Random(0);
+        int count = 1000;
+        long[] durations = new long[count];
+        for (int i = 0; i < count; i++) {
+            // Mostly 20 to 90 seconds, with a tail of slow starts.
+            long seconds = 20 + random.nextInt(70) + (random.nextInt(10) == 0 ? random.nextInt(300) : 0);
+            durations[i] = seconds(seconds) + random.nextInt(1000000000);
+        }
+
+        PollingPolicy fixed = PollingPolicy.fixed(5000);
+        PollingPolicy adaptive = new PollingPolicy();
+        long fixedPolls = 0;
+        long adaptivePolls = 0;
+        long[] fixedLatencies = new long[count];
+        long[] adaptiveLatencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            long[] result = simulate(fixed, durations[i]);
+            fixedPolls += result[0];
+            fixedLatencies[i] = result[1] - durations[i];
+
+            result = simulate(adaptive, durations[i]);
+            adaptivePolls += result[0];
+            adaptiveLatencies[i] = result[1] - durations[i];
+            adaptive.recordDuration(result[1]);
+        }
+
+        long fixedMedianMillis = TimeUnit.NANOSECONDS.toMillis(median(fixedLatencies));
+        long adaptiveMedianMillis = TimeUnit.NANOSECONDS.toMillis(median(adaptiveLatencies));
+        LOGGER.info("Median latency after completion: fixed=" + fixedMedianMillis + "ms, adaptive=" + adaptiveMedianMillis + "ms; " +
+                "polls: fixed=" + fixedPolls + ", adaptive=" + adaptivePolls);
+        Assert.assertTrue(adaptiveMedianMillis < fixedMedianMillis);
+        Assert.assertTrue(adaptivePolls < fixedPolls);
+    }
+}
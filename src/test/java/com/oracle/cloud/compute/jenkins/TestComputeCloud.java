@@ -4,12 +4,15 @@ import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Future;
 
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudClient;
 import com.oracle.cloud.compute.jenkins.client.ComputeCloudUser;
+import com.oracle.cloud.compute.jenkins.ssh.SshConnectionHandoff;
 import com.oracle.cloud.compute.jenkins.ssh.SshConnector;
+import com.oracle.cloud.compute.jenkins.ssh.SshPortProber;
 
 import hudson.model.Node;
 import hudson.security.ACL;
@@ -33,10 +36,17 @@ public class TestComputeCloud extends ComputeCloud {
 
         ComputeCloudClient client;
         List<Node> nodes;
-        ExecutorService threadPoolForRemoting;
+        ScheduledExecutorService provisioningExecutor;
         PlannedNodeFactory plannedNodeFactory;
         Clock clock;
         SshConnector sshConnector;
+        SshConnectionHandoff sshConnectionHandoff;
+        SshPortProber sshPortProber;
+        ComputeCloudWarmPool.Registry warmPools;
+        ComputeCloudProvisioningLimits provisioningLimits;
+        ComputeCloudRecycleJournal recycleJournal;
+        ComputeCloudAgentRegistry agentRegistry;
+        ComputeCloudCircuitBreaker endpointCircuitBreaker;
         ACL acl;
 
         public Builder cloudName(String cloudName) {
@@ -103,8 +113,8 @@ public class TestComputeCloud extends ComputeCloud {
             return this;
         }
 
-        public Builder threadPoolForRemoting(ExecutorService threadPoolForRemoting) {
-            this.threadPoolForRemoting = threadPoolForRemoting;
+        public Builder provisioningExecutor(ScheduledExecutorService provisioningExecutor) {
+            this.provisioningExecutor = provisioningExecutor;
             return this;
         }
 
@@ -123,6 +133,41 @@ public class TestComputeCloud extends ComputeCloud {
             return this;
         }
 
+        public Builder sshConnectionHandoff(SshConnectionHandoff sshConnectionHandoff) {
+            this.sshConnectionHandoff = sshConnectionHandoff;
+            return this;
+        }
+
+        public Builder sshPortProber(SshPortProber sshPortProber) {
+            this.sshPortProber = sshPortProber;
+            return this;
+        }
+
+        public Builder warmPools(ComputeCloudWarmPool.Registry warmPools) {
+            this.warmPools = warmPools;
+            return this;
+        }
+
+        public Builder provisioningLimits(ComputeCloudProvisioningLimits provisioningLimits) {
+            this.provisioningLimits = provisioningLimits;
+            return this;
+        }
+
+        public Builder recycleJournal(ComputeCloudRecycleJournal recycleJournal) {
+            this.recycleJournal = recycleJournal;
+            return this;
+        }
+
+        public Builder agentRegistry(ComputeCloudAgentRegistry agentRegistry) {
+            this.agentRegistry = agentRegistry;
+            return this;
+        }
+
+        public Builder endpointCircuitBreaker(ComputeCloudCircuitBreaker endpointCircuitBreaker) {
+            this.endpointCircuitBreaker = endpointCircuitBreaker;
+            return this;
+        }
+
         public Builder acl(ACL acl) {
             this.acl = acl;
             return this;
@@ -154,11 +199,17 @@ public class TestComputeCloud extends ComputeCloud {
     }
 
     private final ComputeCloudClient client;
-    private final List<Node> nodes;
-    private final ExecutorService threadPoolForRemoting;
+    private final ScheduledExecutorService provisioningExecutor;
     private final PlannedNodeFactory plannedNodeFactory;
     private final Clock clock;
     private final SshConnector sshConnector;
+    private final SshConnectionHandoff sshConnectionHandoff;
+    private final SshPortProber sshPortProber;
+    private final ComputeCloudWarmPool.Registry warmPools;
+    private final ComputeCloudProvisioningLimits provisioningLimits;
+    private final ComputeCloudRecycleJournal recycleJournal;
+    private final ComputeCloudAgentRegistry agentRegistry;
+    private final ComputeCloudCircuitBreaker endpointCircuitBreaker;
     private final ACL acl;
 
     public TestComputeCloud() {
@@ -176,27 +227,50 @@ public class TestComputeCloud extends ComputeCloud {
                 builder.nextTemplateId,
                 builder.templates);
         this.client = builder.client;
-        this.nodes = builder.nodes;
-        this.threadPoolForRemoting = builder.threadPoolForRemoting;
+        this.provisioningExecutor = builder.provisioningExecutor;
         this.plannedNodeFactory = builder.plannedNodeFactory;
         this.clock = builder.clock;
         this.sshConnector = builder.sshConnector;
+        this.sshConnectionHandoff = builder.sshConnectionHandoff;
+        this.sshPortProber = builder.sshPortProber;
+        this.warmPools = builder.warmPools;
+        // Tests do not share limits unless requested since provisioning that
+        // is never completed does not release its permits.
+        this.provisioningLimits = builder.provisioningLimits != null ? builder.provisioningLimits : new ComputeCloudProvisioningLimits(builder.cloudName);
+        this.recycleJournal = builder.recycleJournal != null ? builder.recycleJournal : new ComputeCloudRecycleJournal(null);
+        if (builder.agentRegistry != null) {
+            this.agentRegistry = builder.agentRegistry;
+        } else {
+            // Register the agents in the nodes as Jenkins would when they
+            // are added.
+            this.agentRegistry = new ComputeCloudAgentRegistry();
+            if (builder.nodes != null) {
+                for (Node node : builder.nodes) {
+                    if (node instanceof ComputeCloudAgent) {
+                        agentRegistry.add((ComputeCloudAgent)node);
+                    }
+                }
+            }
+        }
+        this.endpointCircuitBreaker = builder.endpointCircuitBreaker != null ? builder.endpointCircuitBreaker :
+                new ComputeCloudCircuitBreaker("API endpoint " + builder.apiEndpoint, ComputeCloudCircuitBreaker.ENDPOINT_FAILURE_THRESHOLD);
         this.acl = builder.acl;
     }
 
     @Override
-    public ComputeCloudClient createClient() {
+    public ComputeCloudClient createClient(ComputeCloudWorkload workload) {
         return Objects.requireNonNull(client, "client");
     }
 
     @Override
-    List<Node> getNodes() {
-        return Objects.requireNonNull(nodes, "nodes");
+    ScheduledExecutorService getProvisioningExecutor() {
+        return Objects.requireNonNull(provisioningExecutor, "provisioningExecutor");
     }
 
     @Override
-    ExecutorService getThreadPoolForRemoting() {
-        return Objects.requireNonNull(threadPoolForRemoting, "threadPoolForRemoting");
+    Executor getSshConnectExecutor() {
+        // Run handshakes as steps so that tests remain deterministic.
+        return getProvisioningExecutor();
     }
 
     @Override
@@ -216,6 +290,41 @@ public class TestComputeCloud extends ComputeCloud {
         return Objects.requireNonNull(sshConnector, "sshConnector");
     }
 
+    @Override
+    SshPortProber getSshPortProber() {
+        return Objects.requireNonNull(sshPortProber, "sshPortProber");
+    }
+
+    @Override
+    SshConnectionHandoff getSshConnectionHandoff() {
+        return Objects.requireNonNull(sshConnectionHandoff, "sshConnectionHandoff");
+    }
+
+    @Override
+    ComputeCloudWarmPool.Registry getWarmPools() {
+        return Objects.requireNonNull(warmPools, "warmPools");
+    }
+
+    @Override
+    ComputeCloudProvisioningLimits getProvisioningLimits() {
+        return provisioningLimits;
+    }
+
+    @Override
+    ComputeCloudRecycleJournal getRecycleJournal() {
+        return recycleJournal;
+    }
+
+    @Override
+    ComputeCloudAgentRegistry getAgentRegistry() {
+        return agentRegistry;
+    }
+
+    @Override
+    public ComputeCloudCircuitBreaker getEndpointCircuitBreaker() {
+        return endpointCircuitBreaker;
+    }
+
     @Override
     public ACL getACL() {
         return Objects.requireNonNull(acl, "acl");
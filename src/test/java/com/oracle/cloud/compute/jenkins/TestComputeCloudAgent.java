@@ -8,12 +8,20 @@ import jenkins.model.Jenkins;
 @SuppressWarnings("serial")
 public class TestComputeCloudAgent extends ComputeCloudAgent {
     public static class Builder {
+        private String name;
         private String numExecutors;
         private String cloudName;
         private String orchName;
+        private Integer templateId;
+        private String configDigest;
 
         private ComputeCloud cloud;
 
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
         public Builder numExecutors(String numExecutors) {
             this.numExecutors = numExecutors;
             return this;
@@ -33,6 +41,16 @@ public class TestComputeCloudAgent extends ComputeCloudAgent {
             return this;
         }
 
+        public Builder templateId(int templateId) {
+            this.templateId = templateId;
+            return this;
+        }
+
+        public Builder configDigest(String configDigest) {
+            this.configDigest = configDigest;
+            return this;
+        }
+
         public Builder cloud(ComputeCloud cloud) {
             this.cloud = cloud;
             return this;
@@ -47,9 +65,12 @@ public class TestComputeCloudAgent extends ComputeCloudAgent {
         public TestComputeCloudAgent build() {
             StringBuilder xml = new StringBuilder();
             xml.append("<slave class='").append(TestComputeCloudAgent.class.getName()).append("'>\n");
+            appendXml(xml, "name", name);
             appendXml(xml, "numExecutors", numExecutors);
             appendXml(xml, "cloudName", cloudName);
             appendXml(xml, "orchName", orchName);
+            appendXml(xml, "templateId", templateId);
+            appendXml(xml, "configDigest", configDigest);
             xml.append("</slave>");
 
             TestComputeCloudAgent agent = (TestComputeCloudAgent)Jenkins.XSTREAM2.fromXML(xml.toString());
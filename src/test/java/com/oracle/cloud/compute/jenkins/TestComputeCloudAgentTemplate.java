@@ -37,6 +37,10 @@ public class TestComputeCloudAgentTemplate extends ComputeCloudAgentTemplate {
         String initScript;
         String startTimeoutSeconds;
         String initScriptTimeoutSeconds;
+        String minSpareAgents;
+        String maxSpareAgents;
+        String maxSuspendedAgents;
+        String maxBatchSize;
 
         public Builder description(String description) {
             this.description = description;
@@ -151,6 +155,42 @@ public class TestComputeCloudAgentTemplate extends ComputeCloudAgentTemplate {
             return this;
         }
 
+        public Builder minSpareAgents(String minSpareAgents) {
+            this.minSpareAgents = minSpareAgents;
+            return this;
+        }
+
+        public Builder minSpareAgents(int minSpareAgents) {
+            return minSpareAgents(String.valueOf(minSpareAgents));
+        }
+
+        public Builder maxSpareAgents(String maxSpareAgents) {
+            this.maxSpareAgents = maxSpareAgents;
+            return this;
+        }
+
+        public Builder maxSpareAgents(int maxSpareAgents) {
+            return maxSpareAgents(String.valueOf(maxSpareAgents));
+        }
+
+        public Builder maxSuspendedAgents(String maxSuspendedAgents) {
+            this.maxSuspendedAgents = maxSuspendedAgents;
+            return this;
+        }
+
+        public Builder maxSuspendedAgents(int maxSuspendedAgents) {
+            return maxSuspendedAgents(String.valueOf(maxSuspendedAgents));
+        }
+
+        public Builder maxBatchSize(String maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder maxBatchSize(int maxBatchSize) {
+            return maxBatchSize(String.valueOf(maxBatchSize));
+        }
+
         public Builder startTimeoutSeconds(String startTimeoutSeconds) {
             this.startTimeoutSeconds = startTimeoutSeconds;
             return this;
@@ -189,7 +229,11 @@ public class TestComputeCloudAgentTemplate extends ComputeCloudAgentTemplate {
                 builder.privateKey,
                 builder.initScript,
                 builder.startTimeoutSeconds,
-                builder.initScriptTimeoutSeconds);
+                builder.initScriptTimeoutSeconds,
+                builder.minSpareAgents,
+                builder.maxSpareAgents,
+                builder.maxSuspendedAgents,
+                builder.maxBatchSize);
     }
 
     @Override
@@ -0,0 +1,48 @@
+package com.oracle.cloud.compute.jenkins;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records scheduled provisioning steps rather than running them.
+ */
+public class TestProvisioningExecutor extends ScheduledThreadPoolExecutor {
+    private static class ScheduledCommand {
+        final Runnable command;
+        final long delayNanos;
+
+        ScheduledCommand(Runnable command, long delayNanos) {
+            this.command = command;
+            this.delayNanos = delayNanos;
+        }
+    }
+
+    private final Queue<ScheduledCommand> commands = new ConcurrentLinkedQueue<>();
+    int scheduleCount;
+
+    public TestProvisioningExecutor() {
+        super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        scheduleCount++;
+        commands.add(new ScheduledCommand(command, unit.toNanos(delay)));
+        // Provisioners do not use the result.
+        return null;
+    }
+
+    /**
+     * Runs scheduled commands in order, including commands scheduled by
+     * those commands, and advances the clock by the delay of each.
+     */
+    public void runAll(TestClock clock) {
+        for (ScheduledCommand scheduled; (scheduled = commands.poll()) != null;) {
+            clock.nanoTime += scheduled.delayNanos;
+            scheduled.command.run();
+        }
+    }
+}
@@ -26,4 +26,21 @@ public class TimeoutHelperTest {
         Assert.assertTrue(th.sleep());
         Assert.assertTrue(th.sleep());
     }
+
+    @Test
+    public void testPollingPolicy() throws Exception {
+        TestClock clock = new TestClock();
+        long beginNanos = clock.nanoTime;
+        TimeoutHelper th = new TimeoutHelper(clock, TimeUnit.SECONDS.toNanos(5), new PollingPolicy(1000, 2000, 0.5, 0));
+        Assert.assertTrue(th.sleep());
+        Assert.assertEquals(1000, TimeUnit.NANOSECONDS.toMillis(th.getElapsedNanos()));
+        Assert.assertTrue(th.sleep());
+        Assert.assertTrue(th.sleep());
+        Assert.assertEquals(3000, TimeUnit.NANOSECONDS.toMillis(clock.nanoTime - beginNanos));
+        Assert.assertTrue(th.sleep());
+        Assert.assertEquals(4500, TimeUnit.NANOSECONDS.toMillis(clock.nanoTime - beginNanos));
+        Assert.assertTrue(th.sleep());
+        Assert.assertEquals(6500, TimeUnit.NANOSECONDS.toMillis(clock.nanoTime - beginNanos));
+        Assert.assertFalse(th.sleep());
+    }
 }
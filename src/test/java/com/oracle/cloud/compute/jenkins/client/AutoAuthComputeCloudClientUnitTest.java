@@ -1,6 +1,19 @@
 package com.oracle.cloud.compute.jenkins.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jmock.Expectations;
 import org.junit.Assert;
@@ -9,6 +22,7 @@ import org.junit.Test;
 
 import com.oracle.cloud.compute.jenkins.ComputeCloudMockery;
 import com.oracle.cloud.compute.jenkins.TestClock;
+import com.oracle.cloud.compute.jenkins.model.Shape;
 
 public class AutoAuthComputeCloudClientUnitTest {
     @Rule
@@ -101,4 +115,204 @@ public class AutoAuthComputeCloudClientUnitTest {
             mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
         }
     }
+
+    /**
+     * A thread-safe client that counts authentications and optionally blocks
+     * an authentication until released.
+     */
+    private static class CountingComputeCloudClient extends ProxyComputeCloudClient {
+        final AtomicInteger authenticateCount = new AtomicInteger();
+        volatile CountDownLatch authenticateEntered;
+        volatile CountDownLatch authenticateRelease;
+
+        CountingComputeCloudClient() {
+            super(null);
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public void authenticate() throws ComputeCloudClientException {
+            authenticateCount.incrementAndGet();
+            CountDownLatch release = authenticateRelease;
+            if (release != null) {
+                authenticateEntered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new ComputeCloudClientException("interrupted", e);
+                }
+            }
+        }
+
+        @Override
+        public Collection<Shape> getShapes() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testReauthenticateDoesNotBlockOtherThreads() throws Exception {
+        final CountingComputeCloudClient countingClient = new CountingComputeCloudClient();
+        TestClock clock = new TestClock();
+        final ComputeCloudClient client = new AutoAuthComputeCloudClient(countingClient, clock);
+        client.getShapes();
+        Assert.assertEquals(1, countingClient.authenticateCount.get());
+
+        clock.nanoTime += AutoAuthComputeCloudClient.AUTHENTICATION_TIMEOUT_NANOS - AutoAuthComputeCloudClient.REAUTHENTICATE_SLACK_NANOS;
+        countingClient.authenticateEntered = new CountDownLatch(1);
+        countingClient.authenticateRelease = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Collection<Shape>> future = executor.submit(new Callable<Collection<Shape>>() {
+                @Override
+                public Collection<Shape> call() throws Exception {
+                    return client.getShapes();
+                }
+            });
+            Assert.assertTrue(countingClient.authenticateEntered.await(10, TimeUnit.SECONDS));
+
+            // The token is still valid, so this thread must not wait for the
+            // reauthentication in progress.
+            client.getShapes();
+            client.getShapes();
+            Assert.assertEquals(2, countingClient.authenticateCount.get());
+
+            countingClient.authenticateRelease.countDown();
+            future.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        countingClient.authenticateRelease = null;
+        client.getShapes();
+        Assert.assertEquals(2, countingClient.authenticateCount.get());
+    }
+
+    @Test
+    public void testConcurrentInvoke() throws Exception {
+        final int threads = 8;
+        final int invocations = 100000;
+
+        CountingComputeCloudClient countingClient = new CountingComputeCloudClient();
+        final ComputeCloudClient client = new AutoAuthComputeCloudClient(countingClient, new TestClock());
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < invocations; i++) {
+                            client.getShapes();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, countingClient.authenticateCount.get());
+    }
+
+    @Test
+    public void testReauthenticateUnauthorized() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        try (ComputeCloudClient client = new AutoAuthComputeCloudClient(mockClient, new TestClock())) {
+            mockery.checking(new Expectations() {{
+                oneOf(mockClient).authenticate();
+                oneOf(mockClient).getShapes(); will(throwException(new ComputeCloudClientUnauthorizedException("test")));
+                oneOf(mockClient).authenticate();
+                oneOf(mockClient).getShapes(); will(returnValue(Collections.emptyList()));
+            }});
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+
+            mockery.checking(new Expectations() {{
+                oneOf(mockClient).deleteOrchestration("on"); will(throwException(new ComputeCloudClientUnauthorizedException("test")));
+                oneOf(mockClient).authenticate();
+                oneOf(mockClient).deleteOrchestration("on"); will(throwException(new ComputeCloudClientUnauthorizedException("test2")));
+            }});
+            try {
+                client.deleteOrchestration("on");
+                Assert.fail();
+            } catch (ComputeCloudClientUnauthorizedException e) {
+                Assert.assertEquals("test2", e.getMessage());
+            }
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
+    /**
+     * Records scheduled tasks rather than running them.
+     */
+    private static class TestScheduledExecutor extends ScheduledThreadPoolExecutor {
+        final List<Runnable> commands = new ArrayList<>();
+        final List<Long> delayNanos = new ArrayList<>();
+
+        TestScheduledExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            commands.add(command);
+            delayNanos.add(unit.toNanos(delay));
+            return super.schedule(command, 1, TimeUnit.DAYS);
+        }
+    }
+
+    @Test
+    public void testBackgroundReauthenticate() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        mockery.checking(new Expectations() {{ allowing(mockClient).getShapes(); will(returnValue(Collections.emptyList())); }});
+
+        final long refreshNanos = AutoAuthComputeCloudClient.AUTHENTICATION_TIMEOUT_NANOS - AutoAuthComputeCloudClient.BACKGROUND_REAUTHENTICATE_SLACK_NANOS;
+        TestScheduledExecutor executor = new TestScheduledExecutor();
+        TestClock clock = new TestClock();
+        try (ComputeCloudClient client = new AutoAuthComputeCloudClient(mockClient, clock, executor)) {
+            mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); }});
+            client.getShapes();
+            Assert.assertEquals(Arrays.asList(refreshNanos), executor.delayNanos);
+
+            // Callers do not reauthenticate after the background refresh.
+            clock.nanoTime += refreshNanos;
+            client.getShapes();
+            mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); }});
+            executor.commands.get(0).run();
+            Assert.assertEquals(Arrays.asList(refreshNanos, refreshNanos), executor.delayNanos);
+
+            clock.nanoTime += AutoAuthComputeCloudClient.AUTHENTICATION_TIMEOUT_NANOS - AutoAuthComputeCloudClient.REAUTHENTICATE_SLACK_NANOS - 1;
+            client.getShapes();
+
+            // The background refresh retries after a failure.
+            mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); will(throwException(new ComputeCloudClientException("test"))); }});
+            executor.commands.get(1).run();
+            Assert.assertEquals(Arrays.asList(refreshNanos, refreshNanos, AutoAuthComputeCloudClient.BACKGROUND_REAUTHENTICATE_RETRY_NANOS), executor.delayNanos);
+
+            // The background refresh stops if the client is not used.
+            mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); }});
+            executor.commands.get(2).run();
+            Assert.assertEquals(4, executor.delayNanos.size());
+            clock.nanoTime += refreshNanos;
+            executor.commands.get(3).run();
+            Assert.assertEquals(4, executor.delayNanos.size());
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -1,7 +1,18 @@
 package com.oracle.cloud.compute.jenkins.client;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jmock.Expectations;
 import org.junit.Assert;
@@ -9,6 +20,9 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import com.oracle.cloud.compute.jenkins.ComputeCloudMockery;
+import com.oracle.cloud.compute.jenkins.TestClock;
+import com.oracle.cloud.compute.jenkins.model.ImageList;
+import com.oracle.cloud.compute.jenkins.model.ImageListEntry;
 import com.oracle.cloud.compute.jenkins.model.ImageListSourceType;
 import com.oracle.cloud.compute.jenkins.model.Shape;
 
@@ -16,19 +30,27 @@ public class CachingComputeCloudClientUnitTest {
     @Rule
     public final ComputeCloudMockery mockery = new ComputeCloudMockery();
 
-    private void clearCaches(final ComputeCloudClient mockClient, CachingComputeCloudClient client) throws Exception {
-        mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); }});
-        client.authenticate();
+    private static void expire(TestClock clock, CachingComputeCloudClient.Resource resource) {
+        clock.nanoTime += resource.timeToLiveNanos;
     }
 
     @Test
     public void testGetShapes() throws Exception {
         final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
-        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient)) {
+        TestClock clock = new TestClock();
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient, clock, null)) {
             mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(Collections.emptyList())); }});
             Assert.assertEquals(client.getShapes(), client.getShapes());
 
-            clearCaches(mockClient, client);
+            // Reauthenticating does not clear the cache.
+            mockery.checking(new Expectations() {{ oneOf(mockClient).authenticate(); }});
+            client.authenticate();
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+
+            clock.nanoTime += CachingComputeCloudClient.Resource.SHAPES.timeToLiveNanos - 1;
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+
+            clock.nanoTime++;
             mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(Arrays.asList(new Shape()))); }});
             Assert.assertEquals(client.getShapes(), client.getShapes());
 
@@ -39,15 +61,230 @@ public class CachingComputeCloudClientUnitTest {
     @Test
     public void testGetImageLists() throws Exception {
         final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
-        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient)) {
+        TestClock clock = new TestClock();
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient, clock, null)) {
             mockery.checking(new Expectations() {{ oneOf(mockClient).getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE); will(returnValue(Collections.emptyList())); }});
             Assert.assertEquals(client.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE), client.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE));
 
-            clearCaches(mockClient, client);
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getImageLists(ImageListSourceType.PRIVATE_IAMGE); will(returnValue(Arrays.asList("pi"))); }});
+            Assert.assertEquals(Arrays.asList("pi"), client.getImageLists(ImageListSourceType.PRIVATE_IAMGE));
+
+            expire(clock, CachingComputeCloudClient.Resource.IMAGE_LISTS);
             mockery.checking(new Expectations() {{ oneOf(mockClient).getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE); will(returnValue(Arrays.asList("iln"))); }});
             Assert.assertEquals(client.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE), client.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE));
 
             mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
         }
     }
+
+    @Test
+    public void testGetImageListEntries() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        TestClock clock = new TestClock();
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient, clock, null)) {
+            mockery.checking(new Expectations() {{
+                oneOf(mockClient).getImageListEntries("il1"); will(returnValue(Arrays.asList("e1")));
+                oneOf(mockClient).getImageListEntries("il2"); will(returnValue(Arrays.asList("e2")));
+            }});
+            Assert.assertEquals(Arrays.asList("e1"), client.getImageListEntries("il1"));
+            Assert.assertEquals(Arrays.asList("e2"), client.getImageListEntries("il2"));
+            Assert.assertEquals(Arrays.asList("e1"), client.getImageListEntries("il1"));
+
+            expire(clock, CachingComputeCloudClient.Resource.IMAGE_LIST_ENTRIES);
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getImageListEntries("il1"); will(returnValue(Collections.emptyList())); }});
+            Assert.assertEquals(Collections.emptyList(), client.getImageListEntries("il1"));
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
+    @Test
+    public void testGetImageListEntriesLeastRecentlyUsed() throws Exception {
+        final List<String> loaded = new ArrayList<>();
+        ComputeCloudClient recordingClient = new ProxyComputeCloudClient(null) {
+            @Override
+            public void close() {}
+
+            @Override
+            public Collection<ImageListEntry> getImageListEntries(String imageListName) {
+                loaded.add(imageListName);
+                return Collections.emptyList();
+            }
+        };
+
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(recordingClient, new TestClock(), null)) {
+            for (int i = 0; i < CachingComputeCloudClient.MAX_ENTRIES; i++) {
+                client.getImageListEntries("il" + i);
+            }
+            client.getImageListEntries("il0");
+            client.getImageListEntries("il" + CachingComputeCloudClient.MAX_ENTRIES);
+            Assert.assertEquals(CachingComputeCloudClient.MAX_ENTRIES + 1, loaded.size());
+
+            // il1 was removed rather than the recently used il0.
+            loaded.clear();
+            client.getImageListEntries("il0");
+            client.getImageListEntries("il1");
+            Assert.assertEquals(Arrays.asList("il1"), loaded);
+        }
+    }
+
+    @Test
+    public void testGetSecurityListsAndSSHKeys() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        TestClock clock = new TestClock();
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient, clock, null)) {
+            mockery.checking(new Expectations() {{
+                oneOf(mockClient).getSecurityLists(); will(returnValue(Collections.emptyList()));
+                oneOf(mockClient).getSSHKeys(); will(returnValue(Collections.emptyList()));
+            }});
+            Assert.assertEquals(client.getSecurityLists(), client.getSecurityLists());
+            Assert.assertEquals(client.getSSHKeys(), client.getSSHKeys());
+
+            expire(clock, CachingComputeCloudClient.Resource.SECURITY_LISTS);
+            expire(clock, CachingComputeCloudClient.Resource.SSH_KEYS);
+            mockery.checking(new Expectations() {{
+                oneOf(mockClient).getSecurityLists(); will(returnValue(Arrays.asList("sl")));
+                oneOf(mockClient).getSSHKeys(); will(returnValue(Arrays.asList("sk")));
+            }});
+            Assert.assertEquals(Arrays.asList("sl"), client.getSecurityLists());
+            Assert.assertEquals(Arrays.asList("sk"), client.getSSHKeys());
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
+    @Test
+    public void testBackgroundReload() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        final List<Runnable> tasks = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        };
+
+        TestClock clock = new TestClock();
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient, clock, executor)) {
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(Collections.emptyList())); }});
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+
+            // Expired values are returned while reloading in the background.
+            expire(clock, CachingComputeCloudClient.Resource.SHAPES);
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+            Assert.assertEquals(1, tasks.size());
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(throwException(new ComputeCloudClientException("test"))); }});
+            tasks.get(0).run();
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+            Assert.assertEquals(2, tasks.size());
+
+            final List<Shape> shapes = Arrays.asList(new Shape());
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(shapes)); }});
+            tasks.get(1).run();
+            Assert.assertEquals(shapes, client.getShapes());
+
+            // Values that are too old are reloaded synchronously.
+            expire(clock, CachingComputeCloudClient.Resource.SHAPES);
+            expire(clock, CachingComputeCloudClient.Resource.SHAPES);
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(Collections.emptyList())); }});
+            Assert.assertEquals(Collections.emptyList(), client.getShapes());
+            Assert.assertEquals(2, tasks.size());
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
+    @Test
+    public void testGetShapesError() throws Exception {
+        final ComputeCloudClient mockClient = mockery.mock(ComputeCloudClient.class);
+        try (CachingComputeCloudClient client = new CachingComputeCloudClient(mockClient)) {
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(throwException(new ComputeCloudClientException("test"))); }});
+            try {
+                client.getShapes();
+                Assert.fail();
+            } catch (ComputeCloudClientException e) {
+                Assert.assertEquals("test", e.getMessage());
+            }
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).getShapes(); will(returnValue(Collections.emptyList())); }});
+            Assert.assertEquals(client.getShapes(), client.getShapes());
+
+            mockery.checking(new Expectations() {{ oneOf(mockClient).close(); }});
+        }
+    }
+
+    /**
+     * A thread-safe client that blocks getShapes until released.
+     */
+    private static class BlockingComputeCloudClient extends ProxyComputeCloudClient {
+        final AtomicInteger getShapesCount = new AtomicInteger();
+        final AtomicInteger getImageListsCount = new AtomicInteger();
+        final CountDownLatch getShapesEntered = new CountDownLatch(1);
+        final CountDownLatch getShapesRelease = new CountDownLatch(1);
+
+        BlockingComputeCloudClient() {
+            super(null);
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public Collection<Shape> getShapes() throws ComputeCloudClientException {
+            getShapesCount.incrementAndGet();
+            getShapesEntered.countDown();
+            try {
+                getShapesRelease.await();
+            } catch (InterruptedException e) {
+                throw new ComputeCloudClientException("interrupted", e);
+            }
+            return Arrays.asList(new Shape());
+        }
+
+        @Override
+        public Collection<ImageList> getImageLists(ImageListSourceType sourceType) {
+            getImageListsCount.incrementAndGet();
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void testConcurrentLoads() throws Exception {
+        final int threads = 16;
+        BlockingComputeCloudClient blockingClient = new BlockingComputeCloudClient();
+        final CachingComputeCloudClient client = new CachingComputeCloudClient(blockingClient);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Collection<Shape>>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<Collection<Shape>>() {
+                    @Override
+                    public Collection<Shape> call() throws Exception {
+                        return client.getShapes();
+                    }
+                }));
+            }
+            Assert.assertTrue(blockingClient.getShapesEntered.await(10, TimeUnit.SECONDS));
+
+            // Loading other keys is not blocked by the slow load.
+            for (int i = 0; i < 1000; i++) {
+                client.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE);
+                client.getImageLists(ImageListSourceType.PRIVATE_IAMGE);
+            }
+            Assert.assertEquals(2, blockingClient.getImageListsCount.get());
+
+            blockingClient.getShapesRelease.countDown();
+            Collection<Shape> shapes = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Collection<Shape>> future : futures) {
+                Assert.assertSame(shapes, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, blockingClient.getShapesCount.get());
+    }
 }
@@ -0,0 +1,154 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.buildInstanceOrchestrationJsonObject;
+import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.createArrayBuilder;
+import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.createObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.json.JsonObject;
+import javax.json.spi.JsonProvider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.cloud.compute.jenkins.TestComputeCloudAgentTemplate;
+import com.oracle.cloud.compute.jenkins.TestMessages;
+
+public class InstanceOrchestrationPayloadUnitTest {
+    static { TestMessages.init(); }
+
+    @After
+    public void after() {
+        InstanceOrchestrationPayload.clearCache();
+    }
+
+    private static JsonObject toJsonObject(InstanceOrchestrationPayload payload, String objectName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        payload.toStreamingOutput(objectName).write(out);
+        return JsonProvider.provider().createReader(new ByteArrayInputStream(out.toByteArray())).readObject();
+    }
+
+    @Test
+    public void testEscape() {
+        Assert.assertEquals("", InstanceOrchestrationPayload.escape(""));
+        Assert.assertEquals("/Compute-acme/jack/n", InstanceOrchestrationPayload.escape("/Compute-acme/jack/n"));
+        Assert.assertEquals("a\\\"b\\\\c\\nd\\u0001\u00e9", InstanceOrchestrationPayload.escape("a\"b\\c\nd\u0001\u00e9"));
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        InstanceOrchestrationPayload.Builder builder = new InstanceOrchestrationPayload.Builder() {
+            @Override
+            public JsonObject build(String objectName) {
+                return createObjectBuilder()
+                        .add("name", objectName)
+                        .add("nat", "ipreservation:" + objectName)
+                        .add("list", createArrayBuilder().add(objectName).add("x"))
+                        .build();
+            }
+        };
+
+        InstanceOrchestrationPayload payload = InstanceOrchestrationPayload.compile(builder);
+        Assert.assertEquals(builder.build("n"), toJsonObject(payload, "n"));
+        Assert.assertEquals(builder.build("a\"b\\c\u00e9"), toJsonObject(payload, "a\"b\\c\u00e9"));
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        final TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder()
+                .orchDescription("od")
+                .shapeName("sn")
+                .securityListNames("sln0", "sln1")
+                .imageListName("iln")
+                .volumeSize("vs")
+                .sshKeyName("ssh_key")
+                .build();
+        InstanceOrchestrationPayload.Builder builder = new InstanceOrchestrationPayload.Builder() {
+            @Override
+            public JsonObject build(String objectName) {
+                return buildInstanceOrchestrationJsonObject(objectName, template);
+            }
+        };
+
+        InstanceOrchestrationPayload payload = InstanceOrchestrationPayload.get(template, builder);
+        Assert.assertEquals(buildInstanceOrchestrationJsonObject("/Compute-acme/jack/n", template), toJsonObject(payload, "/Compute-acme/jack/n"));
+
+        // A template with the same values shares the payload.
+        Assert.assertSame(payload, InstanceOrchestrationPayload.get(new TestComputeCloudAgentTemplate.Builder()
+                .orchDescription("od")
+                .shapeName("sn")
+                .securityListNames("sln0", "sln1")
+                .imageListName("iln")
+                .volumeSize("vs")
+                .sshKeyName("ssh_key")
+                .build(), builder));
+
+        Assert.assertNotSame(payload, InstanceOrchestrationPayload.get(new TestComputeCloudAgentTemplate.Builder()
+                .orchDescription("od")
+                .shapeName("sn2")
+                .securityListNames("sln0", "sln1")
+                .imageListName("iln")
+                .volumeSize("vs")
+                .sshKeyName("ssh_key")
+                .build(), builder));
+    }
+
+    @Test
+    public void testGetBatch() throws Exception {
+        final TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder()
+                .orchDescription("od")
+                .shapeName("sn3")
+                .build();
+        InstanceOrchestrationPayload.Builder builder = new InstanceOrchestrationPayload.Builder() {
+            @Override
+            public JsonObject build(String objectName) {
+                return buildInstanceOrchestrationJsonObject(objectName, template, 3);
+            }
+        };
+
+        InstanceOrchestrationPayload payload = InstanceOrchestrationPayload.get(template, 3, builder);
+        Assert.assertEquals(buildInstanceOrchestrationJsonObject("/Compute-acme/jack/n", template, 3), toJsonObject(payload, "/Compute-acme/jack/n"));
+        Assert.assertSame(payload, InstanceOrchestrationPayload.get(template, 3, builder));
+
+        // The number of instances is part of the key.
+        Assert.assertNotSame(payload, InstanceOrchestrationPayload.get(template, 2, builder));
+        Assert.assertNotSame(payload, InstanceOrchestrationPayload.get(template, builder));
+    }
+
+    /**
+     * The precompiled payload writes the same request body as building the
+     * JSON for every request.
+     */
+    @Test
+    public void testWriteMatchesBuild() throws Exception {
+        final TestComputeCloudAgentTemplate template = new TestComputeCloudAgentTemplate.Builder()
+                .orchDescription("od")
+                .shapeName("oc3")
+                .securityListNames("/Compute-acme/jack/sl0", "/Compute-acme/jack/sl1")
+                .imageListName("/oracle/public/OL_7.2_UEKR4_x86_64")
+                .volumeSize("10")
+                .sshKeyName("/Compute-acme/jack/key")
+                .build();
+        InstanceOrchestrationPayload payload = InstanceOrchestrationPayload.get(template, new InstanceOrchestrationPayload.Builder() {
+            @Override
+            public JsonObject build(String objectName) {
+                return buildInstanceOrchestrationJsonObject(objectName, template);
+            }
+        });
+
+        for (int i = 0; i < 100; i++) {
+            String objectName = "/Compute-acme/jack/jenkins-" + i;
+            JsonObject built = buildInstanceOrchestrationJsonObject(objectName, template);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            payload.write(out, objectName);
+            Assert.assertEquals(built.toString().getBytes(StandardCharsets.UTF_8).length, out.size());
+            Assert.assertEquals(built, JsonProvider.provider().createReader(new ByteArrayInputStream(out.toByteArray())).readObject());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.cloud.compute.jenkins.model.InstanceOrchestration;
+
+public class InstanceOrchestrationPollerUnitTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    private static InstanceOrchestration newInstanceOrchestration(String name) {
+        return new InstanceOrchestration().name(name).status(InstanceOrchestration.Status.ready).ip(name + "-ip");
+    }
+
+    /**
+     * Returns orchestrations with the prefix "p-" other than "p-missing", and
+     * counts the requests.  Requests block while {@link #block} is non-zero.
+     */
+    private static class TestComputeCloudClient extends ProxyComputeCloudClient {
+        final AtomicInteger getCount = new AtomicInteger();
+        final AtomicInteger listCount = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch block = new CountDownLatch(1);
+        volatile ComputeCloudClientException listException;
+
+        TestComputeCloudClient() {
+            super(null);
+        }
+
+        void await() throws ComputeCloudClientException {
+            blocked.countDown();
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                throw new ComputeCloudClientException(e.toString(), e);
+            }
+        }
+
+        @Override
+        public InstanceOrchestration getInstanceOrchestration(String name) throws ComputeCloudClientException {
+            getCount.incrementAndGet();
+            await();
+            if (name.equals("p-missing")) {
+                throw new ComputeCloudClientException("HTTP 404 Not Found");
+            }
+            return newInstanceOrchestration(name);
+        }
+
+        @Override
+        public Collection<InstanceOrchestration> getInstanceOrchestrations(String namePrefix) throws ComputeCloudClientException {
+            Assert.assertEquals("p-", namePrefix);
+            listCount.incrementAndGet();
+            await();
+            if (listException != null) {
+                throw listException;
+            }
+            return Arrays.asList(newInstanceOrchestration("p-0"), newInstanceOrchestration("p-1"), newInstanceOrchestration("p-2"));
+        }
+    }
+
+    private Future<InstanceOrchestration> submit(final InstanceOrchestrationPoller poller, final ComputeCloudClient client, final String name) {
+        return executor.submit(new Callable<InstanceOrchestration>() {
+            @Override
+            public InstanceOrchestration call() throws Exception {
+                return poller.getInstanceOrchestration(client, name);
+            }
+        });
+    }
+
+    private static void awaitPendingCount(InstanceOrchestrationPoller poller, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (poller.getPendingCount() != count) {
+            Assert.assertTrue("timed out waiting for " + count + " pending", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testSingle() throws Exception {
+        TestComputeCloudClient client = new TestComputeCloudClient();
+        client.block.countDown();
+
+        InstanceOrchestrationPoller poller = new InstanceOrchestrationPoller("p-");
+        Assert.assertEquals(newInstanceOrchestration("p-0"), poller.getInstanceOrchestration(client, "p-0"));
+        Assert.assertEquals(newInstanceOrchestration("x"), poller.getInstanceOrchestration(client, "x"));
+        Assert.assertEquals(2, client.getCount.get());
+        Assert.assertEquals(0, client.listCount.get());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        TestComputeCloudClient client = new TestComputeCloudClient();
+        InstanceOrchestrationPoller poller = new InstanceOrchestrationPoller("p-", 2);
+
+        // The first query is sent individually, and the other queries are
+        // batched while it is in progress.
+        Future<InstanceOrchestration> f0 = submit(poller, client, "p-0");
+        Assert.assertTrue(client.blocked.await(10, TimeUnit.SECONDS));
+
+        List<Future<InstanceOrchestration>> futures = new ArrayList<>();
+        futures.add(submit(poller, client, "p-1"));
+        awaitPendingCount(poller, 1);
+        futures.add(submit(poller, client, "p-2"));
+        awaitPendingCount(poller, 2);
+        futures.add(submit(poller, client, "p-2"));
+        futures.add(submit(poller, client, "p-missing"));
+        awaitPendingCount(poller, 3);
+
+        client.block.countDown();
+        Assert.assertEquals(newInstanceOrchestration("p-0"), f0.get());
+        Assert.assertEquals(newInstanceOrchestration("p-1"), futures.get(0).get());
+        Assert.assertEquals(newInstanceOrchestration("p-2"), futures.get(1).get());
+        Assert.assertEquals(newInstanceOrchestration("p-2"), futures.get(2).get());
+        try {
+            futures.get(3).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("HTTP 404 Not Found", e.getCause().getMessage());
+        }
+
+        // p-0 individually, and p-missing after it was not listed.
+        Assert.assertEquals(2, client.getCount.get());
+        Assert.assertEquals(1, client.listCount.get());
+        Assert.assertEquals(0, poller.getPendingCount());
+    }
+
+    @Test
+    public void testBatchError() throws Exception {
+        TestComputeCloudClient client = new TestComputeCloudClient();
+        client.listException = new ComputeCloudClientException("test");
+        client.block.countDown();
+
+        InstanceOrchestrationPoller poller = new InstanceOrchestrationPoller("p-", 1);
+        try {
+            poller.getInstanceOrchestration(client, "p-0");
+            Assert.fail();
+        } catch (ComputeCloudClientException e) {
+            Assert.assertSame(client.listException, e);
+        }
+
+        // Errors are not remembered.
+        client.listException = null;
+        Assert.assertEquals(newInstanceOrchestration("p-0"), poller.getInstanceOrchestration(client, "p-0"));
+        Assert.assertEquals(0, client.getCount.get());
+        Assert.assertEquals(2, client.listCount.get());
+    }
+}
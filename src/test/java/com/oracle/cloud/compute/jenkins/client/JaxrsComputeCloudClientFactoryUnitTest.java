@@ -0,0 +1,50 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.ENDPOINT;
+import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.ENDPOINT2;
+import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.PASSWORD;
+import static com.oracle.cloud.compute.jenkins.ComputeCloudTestUtils.USER;
+
+import java.net.URI;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JaxrsComputeCloudClientFactoryUnitTest {
+    @Test
+    public void testGetSharedClientKey() {
+        Assert.assertEquals("https://api.example.com", JaxrsComputeCloudClientFactory.getSharedClientKey(URI.create("https://api.example.com")));
+        Assert.assertEquals("https://api.example.com", JaxrsComputeCloudClientFactory.getSharedClientKey(URI.create("https://api.example.com/")));
+        Assert.assertEquals("https://api.example.com:8443", JaxrsComputeCloudClientFactory.getSharedClientKey(URI.create("https://api.example.com:8443/x")));
+        Assert.assertEquals("http://api.example.com", JaxrsComputeCloudClientFactory.getSharedClientKey(URI.create("http://api.example.com")));
+    }
+
+    @Test
+    public void testSharedClient() {
+        JaxrsComputeCloudClientFactory factory = new JaxrsComputeCloudClientFactory();
+        Assert.assertEquals(0, factory.getSharedClientCount());
+
+        ComputeCloudClient c1 = factory.createClient(ENDPOINT, USER, PASSWORD);
+        ComputeCloudClient c2 = factory.createClient(ENDPOINT, ComputeCloudUser.parse("/Compute-acme/jill"), PASSWORD);
+        Assert.assertEquals(1, factory.getSharedClientCount());
+
+        ComputeCloudClient c3 = factory.createClient(ENDPOINT2, USER, PASSWORD);
+        Assert.assertEquals(2, factory.getSharedClientCount());
+
+        c1.close();
+        Assert.assertEquals(2, factory.getSharedClientCount());
+        c1.close();
+        Assert.assertEquals(2, factory.getSharedClientCount());
+
+        c2.close();
+        Assert.assertEquals(1, factory.getSharedClientCount());
+
+        c3.close();
+        Assert.assertEquals(0, factory.getSharedClientCount());
+
+        try (ComputeCloudClient c4 = factory.createClient(ENDPOINT, USER, PASSWORD)) {
+            Assert.assertEquals(1, factory.getSharedClientCount());
+        }
+        Assert.assertEquals(0, factory.getSharedClientCount());
+    }
+}
@@ -7,9 +7,13 @@ import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.cr
 import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.createObjectBuilder;
 import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.entity;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Map;
@@ -19,6 +23,7 @@ import javax.json.JsonArray;
 import javax.json.JsonException;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
+import javax.json.spi.JsonProvider;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
@@ -29,6 +34,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 
 import org.hamcrest.BaseMatcher;
@@ -155,7 +161,7 @@ public class JaxrsComputeCloudClientUnitTest {
 
         try (JaxrsComputeCloudClient c = new JaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
             c.authenticate();
-        } catch (ComputeCloudClientException e) {
+        } catch (ComputeCloudClientUnavailableException e) {
             Assert.assertEquals("test", e.getMessage());
             Assert.assertSame(cause, e.getCause());
         }
@@ -212,7 +218,7 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
-    @Test(expected = ComputeCloudClientException.class)
+    @Test(expected = ComputeCloudClientUnavailableException.class)
     public void testAuthenticateInternalServerError() throws Exception {
         final Client client = mockClient();
         allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD, Response.Status.INTERNAL_SERVER_ERROR);
@@ -222,6 +228,16 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
+    @Test(expected = ComputeCloudClientUnavailableException.class)
+    public void testAuthenticateServiceUnavailable() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD, Response.Status.SERVICE_UNAVAILABLE);
+
+        try (JaxrsComputeCloudClient c = new JaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+        }
+    }
+
     @Test(expected = ComputeCloudClientUnauthorizedException.class)
     public void testAuthenticateUnauthorized() throws Exception {
         final Client client = mockClient();
@@ -250,6 +266,11 @@ public class JaxrsComputeCloudClientUnitTest {
             // which does not support readEntity, so we override this method to
             // read the entities stored by addReadEntity.
             Map<?, ?> entities = (Map<?, ?>)response.getHeaders().getFirst(READ_ENTITY_HEADER);
+            if (entityType == InputStream.class && !entities.containsKey(InputStream.class)) {
+                // Serialize the JsonObject for the streaming parser.
+                JsonObject entity = (JsonObject)entities.get(JsonObject.class);
+                return entityType.cast(new ByteArrayInputStream(entity.toString().getBytes(StandardCharsets.UTF_8)));
+            }
             return entityType.cast(entities.get(entityType));
         }
     }
@@ -605,6 +626,29 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
+    @Test
+    public void testGetImageListsEntries() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+        allowingGetImageLists(client, ENDPOINT, USER, createArrayBuilder()
+                .add(createObjectBuilder()
+                        .add("default", 1)
+                        .add("description", "d")
+                        .add("entries", createArrayBuilder()
+                                .add(createObjectBuilder()
+                                        .add("attributes", createObjectBuilder().add("a", createArrayBuilder().add(1)))
+                                        .add("machineimages", createArrayBuilder().add("mi"))
+                                        .add("version", 1)))
+                        .add("name", "iln")
+                        .add("uri", "u"))
+                .build());
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            Assert.assertEquals(Arrays.asList(new ImageList()._default(1).description("d").name("iln").uri("u")), c.getImageLists(ImageListSourceType.ORACLE_PUBLIC_IMAGE));
+        }
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testCreateInstanceOrchestrationUnauthenticated() throws Exception {
         final Client client = mockClient();
@@ -615,7 +659,7 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
-    private void allowingCreateInstanceOrchestration(final Client client, final URI endpoint, final Matcher<Entity<JsonObject>> entityMatcher) {
+    private void allowingCreateInstanceOrchestration(final Client client, final URI endpoint, final Matcher<Entity<?>> entityMatcher) {
         final Invocation.Builder builder = allowingAuthenticatedRequest(client, ENDPOINT + "/orchestration/");
         final Invocation invocation = mockery.mock(Invocation.class);
         mockery.checking(new ClientExpectations() {{
@@ -625,7 +669,7 @@ public class JaxrsComputeCloudClientUnitTest {
         }});
     }
 
-    private static class CreateInstanceOrchestrationEntityMatcher extends BaseMatcher<Entity<JsonObject>> {
+    private static class CreateInstanceOrchestrationEntityMatcher extends BaseMatcher<Entity<?>> {
         private final ComputeCloudObjectName name;
 
         CreateInstanceOrchestrationEntityMatcher(ComputeCloudObjectName name) {
@@ -634,9 +678,19 @@ public class JaxrsComputeCloudClientUnitTest {
 
         @Override
         public boolean matches(Object o) {
-            @SuppressWarnings("unchecked")
-            Entity<JsonObject> entity = (Entity<JsonObject>)o;
-            JsonObject orch = entity.getEntity();
+            Entity<?> entity = (Entity<?>)o;
+            if (!JaxrsComputeCloudClient.ORACLE_COMPUTE_V3_MEDIA_TYPE.equals(entity.getMediaType())) {
+                return false;
+            }
+
+            JsonObject orch;
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ((StreamingOutput)entity.getEntity()).write(out);
+                orch = JsonProvider.provider().createReader(new ByteArrayInputStream(out.toByteArray())).readObject();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
             return name.equals(ComputeCloudObjectName.parse(orch.getString("name"))) && matchesEntity(orch);
         }
 
@@ -646,9 +700,13 @@ public class JaxrsComputeCloudClientUnitTest {
         }
 
         static JsonObject getOplanObjectJson(JsonObject orchJson, String label) {
+            return getSingleObject(getOplanObjectsJson(orchJson, label));
+        }
+
+        static JsonArray getOplanObjectsJson(JsonObject orchJson, String label) {
             for (JsonObject oplanJson : orchJson.getJsonArray("oplans").getValuesAs(JsonObject.class)) {
                 if (oplanJson.getString("label").equals(label)) {
-                    return getSingleObject(oplanJson.getJsonArray("objects"));
+                    return oplanJson.getJsonArray("objects");
                 }
             }
             throw new AssertionError();
@@ -735,6 +793,44 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
+    @Test
+    public void testCreateInstanceOrchestrationBatch() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+
+        final String name = "n";
+        final String objectName = ComputeCloudObjectName.valueOf(USER, name).getString();
+        allowingCreateInstanceOrchestration(client, ENDPOINT, new CreateInstanceOrchestrationEntityMatcher(ComputeCloudObjectName.valueOf(USER, name)) {
+            @Override
+            protected boolean matchesEntity(JsonObject orch) {
+                JsonArray ipReservationsJson = getOplanObjectsJson(orch, JaxrsComputeCloudClient.IP_RESERVATION_LABEL);
+                JsonArray volumesJson = getOplanObjectsJson(orch, JaxrsComputeCloudClient.STORAGE_VOLUME_LABEL);
+                JsonArray instancesJson = getSingleObject(getOplanObjectsJson(orch, JaxrsComputeCloudClient.LAUNCHPLAN_LABEL)).getJsonArray("instances");
+                if (ipReservationsJson.size() != 2 || volumesJson.size() != 2 || instancesJson.size() != 2) {
+                    return false;
+                }
+
+                for (int i = 0; i < 2; i++) {
+                    String instanceObjectName = objectName + '_' + i;
+                    JsonObject instanceJson = instancesJson.getJsonObject(i);
+                    if (!ipReservationsJson.getJsonObject(i).getString("name").equals(instanceObjectName) ||
+                            !volumesJson.getJsonObject(i).getString("name").equals(instanceObjectName) ||
+                            !instanceJson.getString("name").equals(instanceObjectName) ||
+                            !instanceJson.getJsonArray("storage_attachments").getJsonObject(0).getString("volume").equals(instanceObjectName) ||
+                            !instanceJson.getJsonObject("networking").getJsonObject("eth0").getString("nat").equals("ipreservation:" + instanceObjectName)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            c.createInstanceOrchestration(name, new TestComputeCloudAgentTemplate.Builder().build(), 2);
+        }
+    }
+
     private static String getOrchestrationEndpoint(URI endpoint, ComputeCloudUser user, String name) {
         return endpoint + "/orchestration" + ComputeCloudObjectName.valueOf(user, name).getString();
     }
@@ -794,6 +890,24 @@ public class JaxrsComputeCloudClientUnitTest {
         }
     }
 
+    @Test(expected = ComputeCloudClientNotFoundException.class)
+    public void testGetInstanceOrchestrationNotFound() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+        final Invocation.Builder builder = allowingAuthenticatedRequest(client, getOrchestrationEndpoint(ENDPOINT, USER, "n"));
+        final Invocation invocation = mockery.mock(Invocation.class);
+        mockery.checking(new ClientExpectations() {{
+            oneOf(builder).accept(JaxrsComputeCloudClient.ORACLE_COMPUTE_V3_MEDIA_TYPE); will(returnValue(builder));
+            oneOf(builder).buildGet(); will(returnValue(invocation));
+            oneOf(invocation).invoke(); will(returnValue(newResponseBuilder().status(Response.Status.NOT_FOUND).build()));
+        }});
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            c.getInstanceOrchestration("n");
+        }
+    }
+
     @Test
     public void testGetInstanceOrchestrationStopped() throws Exception {
         final Client client = mockClient();
@@ -813,7 +927,7 @@ public class JaxrsComputeCloudClientUnitTest {
         try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
             c.authenticate();
             Assert.assertEquals(
-                    new InstanceOrchestration().status(InstanceOrchestration.Status.stopped),
+                    new InstanceOrchestration().name("n").status(InstanceOrchestration.Status.stopped),
                     c.getInstanceOrchestration("n"));
         }
     }
@@ -839,12 +953,121 @@ public class JaxrsComputeCloudClientUnitTest {
             c.authenticate();
             Assert.assertEquals(
                     new InstanceOrchestration()
+                            .name("n")
                             .status(InstanceOrchestration.Status.ready)
                             .ip("1.1.1.1"),
                     c.getInstanceOrchestration("n"));
         }
     }
 
+    @Test
+    public void testGetInstanceOrchestrationBatch() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+        allowingGetInstanceOrchestration(client, getOrchestrationEndpoint(ENDPOINT, USER, "n"), createObjectBuilder()
+                .add("status", InstanceOrchestration.Status.starting.name())
+                .add("oplans", createArrayBuilder()
+                        .add(createObjectBuilder()
+                                .add("label", JaxrsComputeCloudClient.IP_RESERVATION_LABEL)
+                                // The objects are not necessarily returned
+                                // in the order of the instances.
+                                .add("objects", createArrayBuilder()
+                                        .add(createObjectBuilder()
+                                                .add("name", "n_1"))
+                                        .add(createObjectBuilder()
+                                                .add("name", "n_0")
+                                                .add("ip", "1.1.1.1"))
+                                        .build())
+                                .build())
+                        .build())
+                .build());
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            InstanceOrchestration instanceOrch = c.getInstanceOrchestration("n");
+            Assert.assertEquals("1.1.1.1", instanceOrch.getIp());
+            Assert.assertEquals(Arrays.asList("1.1.1.1", null), instanceOrch.getIps());
+        }
+    }
+
+    @Test(expected = ComputeCloudClientException.class)
+    public void testGetInstanceOrchestrationBatchUnexpectedName() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+        allowingGetInstanceOrchestration(client, getOrchestrationEndpoint(ENDPOINT, USER, "n"), createObjectBuilder()
+                .add("status", InstanceOrchestration.Status.starting.name())
+                .add("oplans", createArrayBuilder()
+                        .add(createObjectBuilder()
+                                .add("label", JaxrsComputeCloudClient.IP_RESERVATION_LABEL)
+                                .add("objects", createArrayBuilder()
+                                        .add(createObjectBuilder()
+                                                .add("name", "n_0"))
+                                        .add(createObjectBuilder()
+                                                .add("name", "n_0"))
+                                        .build())
+                                .build())
+                        .build())
+                .build());
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            c.getInstanceOrchestration("n");
+        }
+    }
+
+    @Test
+    public void testGetInstanceIndex() {
+        Assert.assertEquals(0, JaxrsComputeCloudClient.getInstanceIndex(JaxrsComputeCloudClient.getInstanceObjectName("/C/u/n", 0, 2), 2));
+        Assert.assertEquals(1, JaxrsComputeCloudClient.getInstanceIndex(JaxrsComputeCloudClient.getInstanceObjectName("/C/u/n", 1, 2), 2));
+        Assert.assertEquals(-1, JaxrsComputeCloudClient.getInstanceIndex("/C/u/n_2", 2));
+        Assert.assertEquals(-1, JaxrsComputeCloudClient.getInstanceIndex("/C/u/n_-1", 2));
+        Assert.assertEquals(-1, JaxrsComputeCloudClient.getInstanceIndex("/C/u/n_x", 2));
+        Assert.assertEquals(-1, JaxrsComputeCloudClient.getInstanceIndex("/C/u/n", 2));
+        Assert.assertEquals(-1, JaxrsComputeCloudClient.getInstanceIndex(null, 2));
+    }
+
+    @Test
+    public void testGetInstanceOrchestrations() throws Exception {
+        final Client client = mockClient();
+        allowingAuthenticate(client, ENDPOINT, USER.getString(), PASSWORD);
+        allowingGetInstanceOrchestration(client, ENDPOINT + "/orchestration" + USER.getString() + '/', createObjectBuilder()
+                .add("result", createArrayBuilder()
+                        .add(createObjectBuilder()
+                                .add("name", ComputeCloudObjectName.valueOf(USER, "p-ready").getString())
+                                .add("status", InstanceOrchestration.Status.ready.name())
+                                .add("oplans", createArrayBuilder()
+                                        .add(createObjectBuilder()
+                                                .add("label", JaxrsComputeCloudClient.IP_RESERVATION_LABEL)
+                                                .add("objects", createArrayBuilder()
+                                                        .add(createObjectBuilder()
+                                                                .add("ip", "1.1.1.1"))))))
+                        .add(createObjectBuilder()
+                                .add("name", ComputeCloudObjectName.valueOf(USER, "p-stopped").getString())
+                                .add("status", InstanceOrchestration.Status.stopped.name())
+                                .add("oplans", createArrayBuilder()
+                                        .add(createObjectBuilder()
+                                                .add("label", JaxrsComputeCloudClient.IP_RESERVATION_LABEL)
+                                                .add("objects", createArrayBuilder()
+                                                        .add(createObjectBuilder())))))
+                        .add(createObjectBuilder()
+                                .add("name", ComputeCloudObjectName.valueOf(USER, "p-other").getString())
+                                .add("status", InstanceOrchestration.Status.ready.name())
+                                .add("oplans", createArrayBuilder()))
+                        .add(createObjectBuilder()
+                                .add("name", ComputeCloudObjectName.valueOf(USER, "other").getString())
+                                .add("status", InstanceOrchestration.Status.ready.name())))
+                .build());
+
+        try (JaxrsComputeCloudClient c = new TestJaxrsComputeCloudClient(ENDPOINT, USER, PASSWORD, client)) {
+            c.authenticate();
+            Assert.assertEquals(
+                    Arrays.asList(
+                            new InstanceOrchestration().name("p-ready").status(InstanceOrchestration.Status.ready).ip("1.1.1.1"),
+                            new InstanceOrchestration().name("p-stopped").status(InstanceOrchestration.Status.stopped)),
+                    c.getInstanceOrchestrations("p-"));
+        }
+    }
+
     private static String getOrchestrationActionEndpoint(URI endpoint, ComputeCloudUser user, String name, String action) {
         return getOrchestrationEndpoint(endpoint, user, name) + "?action=" + action;
     }
@@ -0,0 +1,143 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.createArrayBuilder;
+import static com.oracle.cloud.compute.jenkins.client.JaxrsComputeCloudClient.createObjectBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonParserUtilUnitTest {
+    private static final JsonProvider JSON_PROVIDER = JsonProvider.provider();
+
+    private static JsonParser createParser(String json) {
+        return JSON_PROVIDER.createParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final JsonParserUtil.ObjectReader<List<Object>> VALUES_READER = new JsonParserUtil.ObjectReader<List<Object>>() {
+        @Override
+        public List<Object> read(JsonParser parser) {
+            List<Object> values = new ArrayList<>();
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                switch (key) {
+                case "s": values.add(JsonParserUtil.getString(parser, event)); break;
+                case "b": values.add(JsonParserUtil.getBoolean(parser, event)); break;
+                case "l": values.add(JsonParserUtil.getLong(parser, event)); break;
+                case "i": values.add(JsonParserUtil.getInteger(parser, event)); break;
+                case "d": values.add(JsonParserUtil.getBigDecimal(parser, event)); break;
+                case "sl": values.add(JsonParserUtil.getStringList(parser, event)); break;
+                default: JsonParserUtil.skipValue(parser, event); break;
+                }
+            }
+            return values;
+        }
+    };
+
+    private static List<List<Object>> readResultArray(String json) throws Exception {
+        List<List<Object>> result = new ArrayList<>();
+        try (JsonParser parser = createParser(json)) {
+            JsonParserUtil.readResultArray(parser, VALUES_READER, result);
+        }
+        return result;
+    }
+
+    @Test
+    public void testReadResultArray() throws Exception {
+        Assert.assertEquals(Collections.emptyList(), readResultArray("{\"result\":[]}"));
+        Assert.assertEquals(Arrays.asList(Collections.emptyList()), readResultArray("{\"x\":{\"result\":[1]},\"result\":[{}],\"y\":[[{}]]}"));
+        Assert.assertEquals(
+                Arrays.asList(Arrays.<Object>asList("v", true, 1L, 2, new BigDecimal("3.5"), Arrays.asList("a", "b"))),
+                readResultArray("{\"result\":[{\"s\":\"v\",\"o\":{\"s\":\"x\",\"a\":[{}]},\"b\":true,\"l\":1,\"i\":2,\"d\":3.5,\"a\":[[1],{}],\"sl\":[\"a\",1,\"b\",{}]}]}"));
+    }
+
+    @Test
+    public void testReadResultArrayWrongTypes() throws Exception {
+        Assert.assertEquals(
+                Arrays.asList(Arrays.<Object>asList(null, null, null, null, null, null)),
+                readResultArray("{\"result\":[{\"s\":1,\"b\":{\"b\":true},\"l\":\"1\",\"i\":[2],\"d\":null,\"sl\":\"a\"}]}"));
+    }
+
+    @Test(expected = ComputeCloudClientException.class)
+    public void testReadResultArrayMissing() throws Exception {
+        readResultArray("{\"results\":[]}");
+    }
+
+    @Test(expected = ComputeCloudClientException.class)
+    public void testReadResultArrayNotObject() throws Exception {
+        readResultArray("[]");
+    }
+
+    private static final JsonParserUtil.ObjectReader<String> NAME_READER = new JsonParserUtil.ObjectReader<String>() {
+        @Override
+        public String read(JsonParser parser) {
+            String name = null;
+            for (Event event; (event = parser.next()) == Event.KEY_NAME;) {
+                String key = parser.getString();
+                event = parser.next();
+                if (key.equals("name")) {
+                    name = JsonParserUtil.getString(parser, event);
+                } else {
+                    JsonParserUtil.skipValue(parser, event);
+                }
+            }
+            return name;
+        }
+    };
+
+    /**
+     * The streaming parser reads the same names from an image list response
+     * as a JsonObject tree.
+     */
+    @Test
+    public void testReadResultArrayMatchesTree() throws Exception {
+        JsonArrayBuilder imageLists = createArrayBuilder();
+        for (int i = 0; i < 20; i++) {
+            JsonArrayBuilder entries = createArrayBuilder();
+            for (int j = 0; j < 3; j++) {
+                entries.add(createObjectBuilder()
+                        .add("attributes", createObjectBuilder().add("type", "Oracle Linux").add("minimumdisksize", 10))
+                        .add("machineimages", createArrayBuilder().add("/oracle/public/OL_7.2_UEKR4_x86_64-" + j))
+                        .add("uri", "https://api.example.com/imagelist/oracle/public/il" + i + "/entry/" + j)
+                        .add("version", j));
+            }
+            imageLists.add(createObjectBuilder()
+                    .add("default", 1)
+                    .add("description", "Image list " + i)
+                    .add("entries", entries)
+                    .add("name", "/oracle/public/il" + i)
+                    .add("uri", "https://api.example.com/imagelist/oracle/public/il" + i));
+        }
+        byte[] json = createObjectBuilder().add("result", imageLists).build().toString().getBytes(StandardCharsets.UTF_8);
+
+        List<String> treeNames = new ArrayList<>();
+        try (JsonReader reader = JSON_PROVIDER.createReader(new ByteArrayInputStream(json))) {
+            for (JsonObject imageList : reader.readObject().getJsonArray("result").getValuesAs(JsonObject.class)) {
+                treeNames.add(imageList.getString("name"));
+            }
+        }
+
+        List<String> streamingNames = new ArrayList<>();
+        try (JsonParser parser = JSON_PROVIDER.createParser(new ByteArrayInputStream(json))) {
+            JsonParserUtil.readResultArray(parser, NAME_READER, streamingNames);
+        }
+
+        Assert.assertEquals(20, streamingNames.size());
+        Assert.assertEquals(treeNames, streamingNames);
+    }
+}
@@ -1,5 +1,6 @@
 package com.oracle.cloud.compute.jenkins.client;
 
+import java.util.Collection;
 import java.util.Collections;
 
 import org.jmock.Expectations;
@@ -105,6 +106,13 @@ public class ProxyComputeCloudClientUnitTest {
         Assert.assertSame(orch, client.getInstanceOrchestration("n"));
     }
 
+    @Test
+    public void testGetInstanceOrchestrations() throws Exception {
+        final Collection<InstanceOrchestration> orchs = Collections.singletonList(new InstanceOrchestration());
+        mockery.checking(new Expectations() {{ oneOf(mockClient).getInstanceOrchestrations("p"); will(returnValue(orchs)); }});
+        Assert.assertSame(orchs, client.getInstanceOrchestrations("p"));
+    }
+
     @Test
     public void testStartOrchestration() throws Exception {
         mockery.checking(new Expectations() {{ oneOf(mockClient).startOrchestration("n"); will(returnValue(null)); }});
@@ -0,0 +1,158 @@
+package com.oracle.cloud.compute.jenkins.client;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.oracle.cloud.compute.jenkins.ComputeCloudWorkload;
+import com.oracle.cloud.compute.jenkins.model.SSHKey;
+import com.oracle.cloud.compute.jenkins.model.Shape;
+
+public class ThrottledComputeCloudClientUnitTest {
+    /**
+     * A thread-safe client that blocks getShapes until released.
+     */
+    private static class BlockingComputeCloudClient extends ProxyComputeCloudClient {
+        final CountDownLatch getShapesEntered = new CountDownLatch(1);
+        final CountDownLatch getShapesRelease = new CountDownLatch(1);
+
+        BlockingComputeCloudClient() {
+            super(null);
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public Collection<Shape> getShapes() throws ComputeCloudClientException {
+            getShapesEntered.countDown();
+            try {
+                getShapesRelease.await();
+            } catch (InterruptedException e) {
+                throw new ComputeCloudClientException("interrupted", e);
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<SSHKey> getSSHKeys() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void deleteOrchestration(String name) throws ComputeCloudClientException {
+            throw new ComputeCloudClientException(name);
+        }
+    }
+
+    private static Map<ComputeCloudWorkload, Semaphore> toPermits(Semaphore semaphore) {
+        Map<ComputeCloudWorkload, Semaphore> result = new EnumMap<>(ComputeCloudWorkload.class);
+        for (ComputeCloudWorkload workload : ComputeCloudWorkload.values()) {
+            result.put(workload, semaphore);
+        }
+        return result;
+    }
+
+    @Test
+    public void testPermitHeldDuringRequest() throws Exception {
+        final BlockingComputeCloudClient blockingClient = new BlockingComputeCloudClient();
+        final Semaphore permits = new Semaphore(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new ThrottledComputeCloudClient(blockingClient, toPermits(permits)).getShapes();
+                } catch (ComputeCloudClientException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+
+        Assert.assertTrue(blockingClient.getShapesEntered.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, permits.availablePermits());
+
+        // A client sharing the permits waits for the request to finish.
+        final CountDownLatch getSSHKeysDone = new CountDownLatch(1);
+        Thread thread2 = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new ThrottledComputeCloudClient(blockingClient, toPermits(permits)).getSSHKeys();
+                    getSSHKeysDone.countDown();
+                } catch (ComputeCloudClientException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread2.setDaemon(true);
+        thread2.start();
+        Assert.assertFalse(getSSHKeysDone.await(100, TimeUnit.MILLISECONDS));
+
+        // A client with other permits does not.
+        new ThrottledComputeCloudClient(blockingClient, toPermits(new Semaphore(1))).getSSHKeys();
+
+        blockingClient.getShapesRelease.countDown();
+        Assert.assertTrue(getSSHKeysDone.await(10, TimeUnit.SECONDS));
+        thread.join();
+        thread2.join();
+        Assert.assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    public void testPermitReleasedOnException() {
+        Semaphore permits = new Semaphore(1);
+        try {
+            new ThrottledComputeCloudClient(new BlockingComputeCloudClient(), toPermits(permits)).deleteOrchestration("on");
+            Assert.fail();
+        } catch (ComputeCloudClientException e) {
+            Assert.assertEquals("on", e.getMessage());
+        }
+        Assert.assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    public void testInterrupted() {
+        Semaphore permits = new Semaphore(0);
+        Thread.currentThread().interrupt();
+        try {
+            new ThrottledComputeCloudClient(new BlockingComputeCloudClient(), toPermits(permits)).getSSHKeys();
+            Assert.fail();
+        } catch (ComputeCloudClientException e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedException);
+        }
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(0, permits.availablePermits());
+    }
+
+    @Test
+    public void testBackgroundRequestUsesFormFillPermits() throws Exception {
+        Map<ComputeCloudWorkload, Semaphore> permits = toPermits(new Semaphore(0));
+        permits.put(ComputeCloudWorkload.FORM_FILL, new Semaphore(1));
+        new ThrottledComputeCloudClient(new BlockingComputeCloudClient(), permits).getSSHKeys();
+        Assert.assertEquals(1, permits.get(ComputeCloudWorkload.FORM_FILL).availablePermits());
+    }
+
+    @Test
+    public void testFactoryPermitsPerEndpoint() {
+        ThrottledComputeCloudClientFactory factory = new ThrottledComputeCloudClientFactory(JaxrsComputeCloudClientFactory.INSTANCE);
+        Map<ComputeCloudWorkload, Semaphore> permits = factory.getPermits(URI.create("https://a"));
+        for (ComputeCloudWorkload workload : ComputeCloudWorkload.values()) {
+            Assert.assertEquals(workload.getMaxConcurrentRequests(), permits.get(workload).availablePermits());
+        }
+
+        // Endpoints that share connections share permits.
+        Assert.assertSame(permits, factory.getPermits(URI.create("https://a/path")));
+        Assert.assertNotSame(permits, factory.getPermits(URI.create("https://b")));
+        Assert.assertNotSame(permits, factory.getPermits(URI.create("http://a")));
+    }
+}
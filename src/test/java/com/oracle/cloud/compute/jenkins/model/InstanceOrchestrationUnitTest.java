@@ -1,5 +1,8 @@
 package com.oracle.cloud.compute.jenkins.model;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -10,24 +13,36 @@ public class InstanceOrchestrationUnitTest {
     public void test() {
         InstanceOrchestration o = new InstanceOrchestration();
         Assert.assertNotNull(o.toString());
+        Assert.assertNull(o.getName());
         Assert.assertNull(o.getStatus());
         Assert.assertNull(o.getIp());
+        Assert.assertEquals(Collections.singletonList(null), o.getIps());
         Assert.assertEquals(o, new InstanceOrchestration());
         Assert.assertNotEquals(o, null);
         Assert.assertNotEquals(o, "");
+        Assert.assertNotEquals(o, new InstanceOrchestration().name("n"));
         Assert.assertNotEquals(o, new InstanceOrchestration().status(InstanceOrchestration.Status.ready));
         Assert.assertNotEquals(o, new InstanceOrchestration().ip("ip"));
+        Assert.assertNotEquals(o, new InstanceOrchestration().ips(Arrays.asList("ip0", "ip1")));
         Assert.assertEquals(o.hashCode(), new InstanceOrchestration().hashCode());
+        Assert.assertNotEquals(o.hashCode(), new InstanceOrchestration().name("n").hashCode());
         Assert.assertNotEquals(o.hashCode(), new InstanceOrchestration().status(InstanceOrchestration.Status.ready).hashCode());
         Assert.assertNotEquals(o.hashCode(), new InstanceOrchestration().ip("ip").hashCode());
 
         Assert.assertSame(o, o
+                .name("n")
                 .status(InstanceOrchestration.Status.ready)
                 .ip("ip"));
         Assert.assertEquals(o, new InstanceOrchestration()
+                .name("n")
                 .status(InstanceOrchestration.Status.ready)
                 .ip("ip"));
+        Assert.assertEquals("n", o.getName());
         Assert.assertEquals(InstanceOrchestration.Status.ready, o.getStatus());
         Assert.assertEquals("ip", o.getIp());
+        Assert.assertEquals(Arrays.asList("ip"), o.getIps());
+
+        Assert.assertSame(o, o.ips(Arrays.asList("ip", "ip1")));
+        Assert.assertEquals(Arrays.asList("ip", "ip1"), o.getIps());
     }
 }
@@ -0,0 +1,116 @@
+package com.oracle.cloud.compute.jenkins.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.trilead.ssh2.Connection;
+
+public class SshConnectionHandoffUnitTest {
+    private static class TestConnection extends Connection {
+        boolean open = true;
+        boolean closed;
+
+        TestConnection() {
+            super("host");
+        }
+
+        @Override
+        public void sendIgnorePacket() throws IOException {
+            if (!open) {
+                throw new IOException("closed by server");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Records scheduled commands rather than running them.
+     */
+    private static class TestTimer extends ScheduledThreadPoolExecutor {
+        final List<Runnable> commands = new ArrayList<>();
+
+        TestTimer() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Assert.assertEquals(SshConnectionHandoff.TIMEOUT_SECONDS, unit.toSeconds(delay));
+            commands.add(command);
+            // The handoff does not use the result.
+            return null;
+        }
+    }
+
+    private static class TestSshConnectionHandoff extends SshConnectionHandoff {
+        final TestTimer timer = new TestTimer();
+
+        @Override
+        ScheduledExecutorService getTimer() {
+            return timer;
+        }
+    }
+
+    @Test
+    public void testTake() {
+        TestSshConnectionHandoff handoff = new TestSshConnectionHandoff();
+        Assert.assertNull(handoff.take("host"));
+
+        TestConnection conn = new TestConnection();
+        handoff.offer("host", conn);
+        Assert.assertNull(handoff.take("other"));
+        Assert.assertSame(conn, handoff.take("host"));
+        Assert.assertNull(handoff.take("host"));
+
+        // A connection that was taken is not closed when the offer expires.
+        handoff.timer.commands.get(0).run();
+        Assert.assertFalse(conn.closed);
+    }
+
+    @Test
+    public void testTakeClosed() {
+        TestSshConnectionHandoff handoff = new TestSshConnectionHandoff();
+        TestConnection conn = new TestConnection();
+        handoff.offer("host", conn);
+        conn.open = false;
+        Assert.assertNull(handoff.take("host"));
+        Assert.assertTrue(conn.closed);
+    }
+
+    @Test
+    public void testOfferReplace() {
+        TestSshConnectionHandoff handoff = new TestSshConnectionHandoff();
+        TestConnection conn0 = new TestConnection();
+        TestConnection conn1 = new TestConnection();
+        handoff.offer("host", conn0);
+        handoff.offer("host", conn1);
+        Assert.assertTrue(conn0.closed);
+
+        // The expiry of the replaced offer does not affect the new offer.
+        handoff.timer.commands.get(0).run();
+        Assert.assertFalse(conn1.closed);
+        Assert.assertSame(conn1, handoff.take("host"));
+    }
+
+    @Test
+    public void testExpire() {
+        TestSshConnectionHandoff handoff = new TestSshConnectionHandoff();
+        TestConnection conn = new TestConnection();
+        handoff.offer("host", conn);
+        handoff.timer.commands.get(0).run();
+        Assert.assertTrue(conn.closed);
+        Assert.assertNull(handoff.take("host"));
+    }
+}
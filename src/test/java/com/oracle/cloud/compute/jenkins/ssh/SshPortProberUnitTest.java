@@ -0,0 +1,206 @@
+package com.oracle.cloud.compute.jenkins.ssh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SshPortProberUnitTest {
+    private static final Logger LOGGER = Logger.getLogger(SshPortProberUnitTest.class.getName());
+    private static final String HOST = "127.0.0.1";
+
+    private final List<ServerSocket> serverSockets = new ArrayList<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @After
+    public void after() throws IOException {
+        closed.countDown();
+        for (ServerSocket serverSocket : serverSockets) {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Starts a server that sends the data to every connection, or nothing if
+     * the data is null.  Connections are kept open until the test ends.
+     */
+    private int startServer(String data) throws IOException {
+        return startServer(new ServerSocket(0, 1000, InetAddress.getByName(HOST)), data);
+    }
+
+    private int startServer(final ServerSocket serverSocket, final String data) {
+        serverSockets.add(serverSocket);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                List<Socket> sockets = new ArrayList<>();
+                try {
+                    for (;;) {
+                        Socket socket = serverSocket.accept();
+                        sockets.add(socket);
+                        if (data != null) {
+                            OutputStream out = socket.getOutputStream();
+                            out.write(data.getBytes(StandardCharsets.ISO_8859_1));
+                            out.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    // The server socket was closed.
+                } finally {
+                    try {
+                        closed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    for (Socket socket : sockets) {
+                        try {
+                            socket.close();
+                        } catch (IOException e) {
+                            // Ignore.
+                        }
+                    }
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private static int getClosedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName(HOST))) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static class ResultListener implements SshPortProber.Listener {
+        final BlockingQueue<Boolean> results = new ArrayBlockingQueue<>(1000);
+
+        @Override
+        public void probed(boolean available) {
+            results.add(available);
+        }
+
+        boolean await() throws InterruptedException {
+            Boolean result = results.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull("timed out waiting for probe", result);
+            return result;
+        }
+    }
+
+    private static boolean probe(int port, int timeoutMillis) throws Exception {
+        ResultListener listener = new ResultListener();
+        new SshPortProber().probe(HOST, port, timeoutMillis, listener);
+        return listener.await();
+    }
+
+    @Test
+    public void testBanner() throws Exception {
+        Assert.assertTrue(probe(startServer("SSH-2.0-OpenSSH_7.4\r\n"), 5000));
+    }
+
+    @Test
+    public void testBannerAfterOtherLines() throws Exception {
+        Assert.assertTrue(probe(startServer("Welcome\r\nSSH-2.0-OpenSSH_7.4\r\n"), 5000));
+    }
+
+    @Test
+    public void testNotSsh() throws Exception {
+        StringBuilder data = new StringBuilder();
+        while (data.length() <= SshPortProber.MAX_BANNER_BYTES) {
+            data.append("HTTP/1.1 400 Bad Request\r\n");
+        }
+        Assert.assertFalse(probe(startServer(data.toString()), 5000));
+    }
+
+    @Test
+    public void testRefused() throws Exception {
+        // The connection is retried after the minimum delay and then after
+        // double that delay before the probe gives up.
+        long begin = System.nanoTime();
+        Assert.assertFalse(probe(getClosedPort(), 1000));
+        Assert.assertTrue(System.nanoTime() - begin >= 3 * SshPortProber.MIN_RETRY_NANOS);
+    }
+
+    /**
+     * A refused connection is retried with a backoff until the server starts
+     * or the probe times out.
+     */
+    @Test
+    public void testRefusedThenBanner() throws Exception {
+        int port = getClosedPort();
+        ResultListener listener = new ResultListener();
+        new SshPortProber().probe(HOST, port, 5000, listener);
+
+        Thread.sleep(500);
+        Assert.assertNull(listener.results.poll());
+        startServer(new ServerSocket(port, 1000, InetAddress.getByName(HOST)), "SSH-2.0-OpenSSH_7.4\r\n");
+        Assert.assertTrue(listener.await());
+    }
+
+    /**
+     * A timeout of 0 means no SSH connect timeout, so the probe waits for the
+     * default time rather than expiring immediately.
+     */
+    @Test
+    public void testZeroTimeout() throws Exception {
+        int port = getClosedPort();
+        ResultListener listener = new ResultListener();
+        new SshPortProber().probe(HOST, port, 0, listener);
+
+        Thread.sleep(500);
+        Assert.assertNull(listener.results.poll());
+        startServer(new ServerSocket(port, 1000, InetAddress.getByName(HOST)), "SSH-2.0-OpenSSH_7.4\r\n");
+        Assert.assertTrue(listener.await());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        long begin = System.nanoTime();
+        Assert.assertFalse(probe(startServer(null), 200));
+        Assert.assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    /**
+     * Probes many hosts concurrently, most of which are not yet running SSH,
+     * using the single probe thread.
+     */
+    @Test
+    public void testManyProbes() throws Exception {
+        int sshPort = startServer("SSH-2.0-OpenSSH_7.4\r\n");
+        int silentPort = startServer(null);
+        int closedPort = getClosedPort();
+
+        SshPortProber prober = new SshPortProber();
+        ResultListener listener = new ResultListener();
+        int count = 300;
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int port = i % 3 == 0 ? sshPort : i % 3 == 1 ? silentPort : closedPort;
+            prober.probe(HOST, port, 1000, listener);
+        }
+
+        int available = 0;
+        for (int i = 0; i < count; i++) {
+            if (listener.await()) {
+                available++;
+            }
+        }
+        LOGGER.info("Probed " + count + " ports in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms");
+        Assert.assertEquals(count / 3, available);
+    }
+}